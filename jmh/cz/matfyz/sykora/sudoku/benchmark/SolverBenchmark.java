@@ -0,0 +1,229 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.*;
+import org.openjdk.jmh.runner.options.*;
+
+import cz.matfyz.sykora.sudoku.*;
+import cz.matfyz.sykora.sudoku.cache.*;
+
+/**
+ * Measures the time and the memory allocated per puzzle by the operations
+ * of the solving engines on the benchmark corpora, using JMH.
+ * <p>
+ * Each invocation of a benchmark method processes the next puzzle of the
+ * corpus, so the average time of an invocation is the time per puzzle.
+ * The corpus, the engine and the use of {@link SolverMetrics} are the
+ * parameters of the benchmark: all corpora are measured by default, with
+ * the {@link SolverEngineType#PROPAGATION} engine and without metrics.
+ * The {@link #propagate()} and {@link #solveWithStats()} benchmarks need
+ * {@link Sudoku}, and fail with the {@link SolverEngineType#DANCING_LINKS}
+ * engine.
+ * <p>
+ * The benchmarks are run by {@link #main(String[])}, which adds the GC
+ * profiler of JMH; its <code>gc.alloc.rate.norm</code> is the number of
+ * bytes allocated per puzzle. From the build, run
+ * <code>mvn test-compile exec:exec -Djmh.args="options"</code>, where the
+ * options are the command-line options of JMH, e.g.
+ * <code>-p corpus=EASY,MEDIUM -p engineType=BACKJUMPING -p metrics=true
+ * SolverBenchmark.solve</code>.
+ *
+ * @author Ondrej Sykora
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SolverBenchmark {
+	/**
+	 * The corpus of the puzzles; all corpora by default.
+	 */
+	@Param
+	public Corpus corpus;
+	/**
+	 * The type of the benchmarked engine.
+	 */
+	@Param("PROPAGATION")
+	public SolverEngineType engineType;
+	/**
+	 * Attaches {@link SolverMetrics} to the solver, to measure their
+	 * overhead.
+	 */
+	@Param("false")
+	public boolean metrics;
+	
+	/**
+	 * The cache of {@link #solveCached()}. It is shared by all invocations
+	 * of a trial, so only the first invocation on each puzzle solves it; the
+	 * others measure the lookup.
+	 */
+	private SolutionCache cache;
+	
+	private SymmetryCanonicalizer canonicalizer;
+	
+	private SolverEngine engine;
+	/**
+	 * The index of the next puzzle.
+	 */
+	private int next;
+	
+	private String[] puzzles;
+	
+	private final SolveStats stats = new SolveStats();
+	/**
+	 * The parsed values of the puzzles, indexed by <code>x + y * size</code>.
+	 */
+	private int[][] values;
+	
+	/**
+	 * Computes the canonical form of the puzzle with
+	 * {@link SymmetryCanonicalizer}. The engine is not used.
+	 *
+	 * @return the length of the canonical key.
+	 */
+	@Benchmark
+	public int canonicalize() {
+		return canonicalizer.canonicalize(values[nextPuzzle()]).getKey().length();
+	}
+	
+	/**
+	 * Returns the engine as {@link Sudoku}, for the benchmarks that need it.
+	 */
+	private Sudoku getSudoku() {
+		if(!(engine instanceof Sudoku))
+			throw new UnsupportedOperationException("Not supported by " + engineType);
+		return (Sudoku)engine;
+	}
+	
+	/**
+	 * Parses the puzzle and propagates its clues, using
+	 * {@link SolverEngine#loadGameState(String)}.
+	 *
+	 * @return the value of the first cell.
+	 */
+	@Benchmark
+	public int load() {
+		engine.loadGameState(puzzles[nextPuzzle()]);
+		return engine.getValue(0, 0);
+	}
+	
+	/**
+	 * Runs the benchmarks with the GC profiler.
+	 *
+	 * @param _args the command-line options of JMH.
+	 * @throws CommandLineOptionException if the options are not valid.
+	 * @throws RunnerException if a benchmark fails to run.
+	 */
+	public static void main(String[] _args) throws CommandLineOptionException, RunnerException {
+		Options options = new OptionsBuilder()
+				.parent(new CommandLineOptions(_args))
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+	
+	private int nextPuzzle() {
+		int puzzle = next;
+		next = puzzle + 1 < puzzles.length ? puzzle + 1 : 0;
+		return puzzle;
+	}
+	
+	/**
+	 * Sets the already parsed clues and propagates them, using
+	 * {@link Sudoku#propagateConstraints()}.
+	 *
+	 * @return the value of the first cell.
+	 */
+	@Benchmark
+	public int propagate() {
+		Sudoku sudoku = getSudoku();
+		int[] puzzle = values[nextPuzzle()];
+		int size = sudoku.getSize();
+		for(int cell = 0; cell < puzzle.length; cell++) {
+			if(puzzle[cell] == 0)
+				sudoku.clearValue(cell % size, cell / size);
+			else
+				sudoku.setValue(cell % size, cell / size, puzzle[cell]);
+		}
+		sudoku.propagateConstraints();
+		return sudoku.getValue(0, 0);
+	}
+	
+	/**
+	 * Creates the engine and parses the puzzles of the corpus.
+	 */
+	@Setup
+	public void setUp() {
+		engine = engineType.create(corpus.getSquareSize());
+		if(metrics && engine instanceof Sudoku)
+			((Sudoku)engine).setMetrics(new SolverMetrics());
+		puzzles = corpus.getPuzzles();
+		values = new int[puzzles.length][];
+		for(int i = 0; i < puzzles.length; i++) {
+			values[i] = new int[puzzles[i].length()];
+			for(int cell = 0; cell < values[i].length; cell++)
+				values[i][cell] = Sudoku.parseValue(puzzles[i].charAt(cell));
+		}
+		canonicalizer = new SymmetryCanonicalizer(corpus.getSquareSize());
+		cache = new SolutionCache(1 << 16);
+		next = 0;
+	}
+	
+	/**
+	 * Loads and solves the puzzle.
+	 *
+	 * @return the value of the first cell, or <code>-1</code> if the puzzle
+	 * 			has no solution.
+	 */
+	@Benchmark
+	public int solve() {
+		engine.loadGameState(puzzles[nextPuzzle()]);
+		return engine.solve() ? engine.getValue(0, 0) : -1;
+	}
+	
+	/**
+	 * Solves the puzzle through a {@link SolutionCache}.
+	 *
+	 * @return the value of the first cell, or <code>-1</code> if the puzzle
+	 * 			has no solution.
+	 */
+	@Benchmark
+	public int solveCached() {
+		return cache.solve(engine, puzzles[nextPuzzle()]) ? engine.getValue(0, 0) : -1;
+	}
+	
+	/**
+	 * Loads and solves the puzzle, collecting the statistics of the solve
+	 * through {@link Sudoku#solve(SolveStats)}.
+	 *
+	 * @return the number of nodes, or <code>-1</code> if the puzzle has no
+	 * 			solution.
+	 */
+	@Benchmark
+	public long solveWithStats() {
+		Sudoku sudoku = getSudoku();
+		sudoku.loadGameState(puzzles[nextPuzzle()]);
+		return sudoku.solve(stats) ? stats.getNodeCount() : -1;
+	}
+}
@@ -0,0 +1,34 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku;
+
+/**
+ * Tries the values of a cell in ascending order.
+ *
+ * @author Ondrej Sykora
+ */
+public class AscendingValueOrdering implements ValueOrdering {
+	public int orderValues(Sudoku _sudoku, int _cell, int[] _values) {
+		long mask = _sudoku.getCandidates(_cell);
+		int count = 0;
+		while(mask != 0) {
+			_values[count++] = Long.numberOfTrailingZeros(mask) + 1;
+			mask &= mask - 1;
+		}
+		return count;
+	}
+}
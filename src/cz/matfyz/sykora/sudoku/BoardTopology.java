@@ -0,0 +1,232 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku;
+
+import java.util.*;
+
+/**
+ * The topology of a game board: the groups, the peers of each cell and the
+ * intersections of squares with rows and columns. The topology depends
+ * only on the size of the board, so it is computed once per size and
+ * shared by all solvers of that size; the arrays must never be changed.
+ * <p>
+ * The groups are numbered as follows: the columns (<code>0</code> -
+ * <code>size - 1</code>), the rows (<code>size</code> -
+ * <code>2 * size - 1</code>), and the squares.
+ * <p>
+ * The tables are used directly by the solvers of this package; other
+ * packages get copies of them through the public methods.
+ *
+ * @author Ondrej Sykora
+ */
+public final class BoardTopology {
+	/**
+	 * The shared topologies, indexed by the size of an edge of a square
+	 * group. Created on first use.
+	 */
+	private static final BoardTopology[] topologies = new BoardTopology[Sudoku.MAX_SQUARE_SIZE + 1];
+
+	final int squareSize;
+
+	final int size;
+
+	final int cellCount;
+
+	final int groupCount;
+	/**
+	 * Contains the indices of the cells in each group on the game board.
+	 */
+	final int[][] groups;
+	/**
+	 * Contains the indices of the adjacent groups for each cell in the game.
+	 * An adjacent group is a group of cells in the same column, row, or
+	 * square as the given cell.
+	 */
+	final int[][] cellGroups;
+	/**
+	 * Contains the indices of all cells that share a group with the given
+	 * cell, not including the cell itself.
+	 */
+	final int[][] peers;
+	/**
+	 * Contains the cells of each intersection of a square with a row or
+	 * a column.
+	 */
+	final int[][] intersections;
+	/**
+	 * For each intersection, the indices of the square and of the row or
+	 * column.
+	 */
+	final int[][] intersectionGroups;
+	/**
+	 * For each intersection, the cells of the square outside of the
+	 * intersection.
+	 */
+	final int[][] intersectionSquareRest;
+	/**
+	 * For each intersection, the cells of the row or column outside of the
+	 * intersection.
+	 */
+	final int[][] intersectionLineRest;
+
+	private void addGroup(int _group, int _position, int _cell) {
+		groups[_group][_position] = _cell;
+		int[] cell_groups = cellGroups[_cell];
+		for(int i = 0; i < cell_groups.length; i++)
+			if(cell_groups[i] < 0) {
+				cell_groups[i] = _group;
+				return;
+			}
+	}
+
+	/**
+	 * Returns the shared topology of the board of the given size.
+	 *
+	 * @param _squareSize the size of an edge of a square group, in range
+	 * 			{@link Sudoku#MIN_SQUARE_SIZE} -
+	 * 			{@link Sudoku#MAX_SQUARE_SIZE}.
+	 * @return the topology.
+	 * @throws IllegalArgumentException if the size is out of range.
+	 */
+	public static BoardTopology get(int _squareSize) {
+		if(_squareSize < Sudoku.MIN_SQUARE_SIZE || _squareSize > Sudoku.MAX_SQUARE_SIZE)
+			throw new IllegalArgumentException("Unsupported square size: " + _squareSize);
+		synchronized(topologies) {
+			BoardTopology topology = topologies[_squareSize];
+			if(topology == null) {
+				topology = new BoardTopology(_squareSize);
+				topologies[_squareSize] = topology;
+			}
+			return topology;
+		}
+	}
+
+	/**
+	 * Returns the cells of each group, with the groups numbered as described
+	 * in the class documentation. The arrays are copies, so the caller may
+	 * change them.
+	 *
+	 * @return the indices of the cells of each group, indexed by
+	 * 			<code>x + y * size</code>.
+	 */
+	public int[][] getGroups() {
+		int[][] result = new int[groupCount][];
+		for(int group = 0; group < groupCount; group++)
+			result[group] = groups[group].clone();
+		return result;
+	}
+
+	/**
+	 * Returns the size of an edge of a square group.
+	 *
+	 * @return the square size.
+	 */
+	public int getSquareSize() {
+		return squareSize;
+	}
+
+	/**
+	 * Returns the cells of <code>_first</code> that are (or are not)
+	 * contained in <code>_second</code>.
+	 *
+	 * @param _first the first group.
+	 * @param _second the second group.
+	 * @param _common <code>true</code> if the common cells are returned;
+	 * 			<code>false</code> if the cells not in <code>_second</code>
+	 * 			are returned.
+	 * @return the indices of the selected cells.
+	 */
+	private static int[] intersectGroups(int[] _first, int[] _second, boolean _common) {
+		int[] result = new int[_first.length];
+		int count = 0;
+		for(int cell : _first) {
+			boolean contained = false;
+			for(int other : _second)
+				contained |= cell == other;
+			if(contained == _common)
+				result[count++] = cell;
+		}
+		return Arrays.copyOf(result, count);
+	}
+
+	private BoardTopology(int _squareSize) {
+		squareSize = _squareSize;
+		size = _squareSize * _squareSize;
+		cellCount = size * size;
+		groupCount = 3 * size;
+
+		// Create representations of the adjacent groups
+		groups = new int[groupCount][size];
+		cellGroups = new int[cellCount][3];
+		for(int[] cell_groups : cellGroups)
+			Arrays.fill(cell_groups, -1);
+
+		for(int i=0; i < size; i++)
+			for(int j=0; j < size; j++)
+				addGroup(i, j, i + j * size);
+		for(int i=0; i < size; i++)
+			for(int j=0; j < size; j++)
+				addGroup(size + i, j, j + i * size);
+		for(int xg=0; xg < squareSize; xg++)
+			for(int yg=0; yg < squareSize; yg++) {
+				int group = 2 * size + xg * squareSize + yg;
+				int pos = 0;
+				for(int x=0; x < squareSize; x++)
+					for(int y = 0; y < squareSize; y++)
+						addGroup(group, pos++, (xg*squareSize + x) + (yg*squareSize + y) * size);
+			}
+
+		// Collect the peers of each cell from its groups
+		peers = new int[cellCount][];
+		boolean[] is_peer = new boolean[cellCount];
+		for(int cell=0; cell < cellCount; cell++) {
+			Arrays.fill(is_peer, false);
+			int count = 0;
+			for(int group : cellGroups[cell])
+				for(int peer : groups[group])
+					if(peer != cell && !is_peer[peer]) {
+						is_peer[peer] = true;
+						count++;
+					}
+			peers[cell] = new int[count];
+			int pos = 0;
+			for(int peer=0; peer < cellCount; peer++)
+				if(is_peer[peer])
+					peers[cell][pos++] = peer;
+		}
+
+		// Collect the intersections of squares with rows and columns
+		List<int[]> intersection_list = new ArrayList<int[]>();
+		List<int[]> square_rest_list = new ArrayList<int[]>();
+		List<int[]> line_rest_list = new ArrayList<int[]>();
+		List<int[]> groups_list = new ArrayList<int[]>();
+		for(int square = 2 * size; square < groupCount; square++)
+			for(int line = 0; line < 2 * size; line++) {
+				int[] intersection = intersectGroups(groups[square], groups[line], true);
+				if(intersection.length == 0)
+					continue;
+				intersection_list.add(intersection);
+				square_rest_list.add(intersectGroups(groups[square], groups[line], false));
+				line_rest_list.add(intersectGroups(groups[line], groups[square], false));
+				groups_list.add(new int[] { square, line });
+			}
+		intersections = intersection_list.toArray(new int[intersection_list.size()][]);
+		intersectionSquareRest = square_rest_list.toArray(new int[square_rest_list.size()][]);
+		intersectionLineRest = line_rest_list.toArray(new int[line_rest_list.size()][]);
+		intersectionGroups = groups_list.toArray(new int[groups_list.size()][]);
+	}
+}
@@ -0,0 +1,35 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku;
+
+/**
+ * Selects the cell, on which the search branches at the current node of
+ * the search tree.
+ *
+ * @author Ondrej Sykora
+ * @see Sudoku#setBranchingStrategy(BranchingStrategy)
+ */
+public interface BranchingStrategy {
+	/**
+	 * Selects the cell to branch on.
+	 *
+	 * @param _sudoku the solver, whose current game state is examined.
+	 * @return the index of the selected cell (<code>x + y * size</code>),
+	 * 			or <code>-1</code> if all cells have an assigned value.
+	 */
+	int selectCell(Sudoku _sudoku);
+}
@@ -0,0 +1,46 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku;
+
+/**
+ * Stops a running solve from another thread. The solver checks the token
+ * periodically, so the solve returns shortly after the token was
+ * cancelled. A token may be shared by any number of solves.
+ *
+ * @author Ondrej Sykora
+ * @see SolveLimits#setCancellationToken(CancellationToken)
+ */
+public class CancellationToken {
+	private volatile boolean cancelled;
+	
+	/**
+	 * Requests all solves that use this token to stop.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+	
+	/**
+	 * Checks if the token was cancelled.
+	 *
+	 * @return <code>true</code> if {@link #cancel()} was called; otherwise,
+	 * 			<code>false</code>.
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+}
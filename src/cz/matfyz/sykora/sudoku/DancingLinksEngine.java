@@ -0,0 +1,321 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku;
+
+/**
+ * Solves the game as an exact cover problem using Knuth's Algorithm X with
+ * dancing links. The matrix has one row for each (cell, value) pair and
+ * four constraint columns per pair: the cell has a value, and the value is
+ * placed in the row, the column and the square of the cell.
+ * <p>
+ * The links are stored in flat primitive arrays indexed by the node number.
+ * The node with index zero is the root header, the nodes
+ * <code>1</code> - <code>columnCount</code> are the column headers, and
+ * the remaining nodes form the rows of the matrix. The matrix is built
+ * only once; the search always restores it to its original form.
+ *
+ * @author Ondrej Sykora
+ */
+public class DancingLinksEngine implements SolverEngine {
+	/**
+	 * The number of nodes in each row of the matrix.
+	 */
+	private static final int ROW_NODES = 4;
+	/**
+	 * The number of cells on the game board.
+	 */
+	private final int cellCount;
+	/**
+	 * For each node, the index of the header of its column.
+	 */
+	private final int[] columns;
+	/**
+	 * For each column, the number of rows that are not covered.
+	 */
+	private final int[] columnSizes;
+	/**
+	 * The stack of columns covered by the given values.
+	 *
+	 * @see #coverGiven(int)
+	 */
+	private final int[] coveredColumns;
+	/**
+	 * The number of columns in {@link #coveredColumns}.
+	 */
+	private int coveredCount;
+	/**
+	 * The links to the lower node in the same column.
+	 */
+	private final int[] down;
+	/**
+	 * The links to the node on the left in the same row.
+	 */
+	private final int[] left;
+	/**
+	 * The links to the node on the right in the same row.
+	 */
+	private final int[] right;
+	/**
+	 * For each node, the index of its row in the matrix. The row index
+	 * is <code>cell * size + value - 1</code>.
+	 */
+	private final int[] rows;
+	/**
+	 * The size of the game board (the number of cells in a row/column).
+	 */
+	private final int size;
+	/**
+	 * The rows selected by the search at each depth.
+	 */
+	private final int[] solution;
+	/**
+	 * The size of an edge of a square group.
+	 */
+	private final int squareSize;
+	/**
+	 * The links to the upper node in the same column.
+	 */
+	private final int[] up;
+	/**
+	 * Contains the values assigned to the cells, or zero for cells without
+	 * an assigned value.
+	 */
+	private final int[] values;
+
+	public void clearValue(int x, int y) {
+		values[x + y * size] = 0;
+	}
+
+	/**
+	 * Removes the column from the header list, and removes all rows that
+	 * have a node in the column from the other columns.
+	 *
+	 * @param _column the index of the column header.
+	 */
+	private void cover(int _column) {
+		right[left[_column]] = right[_column];
+		left[right[_column]] = left[_column];
+		for(int i = down[_column]; i != _column; i = down[i])
+			for(int j = right[i]; j != i; j = right[j]) {
+				down[up[j]] = down[j];
+				up[down[j]] = up[j];
+				columnSizes[columns[j]]--;
+			}
+	}
+
+	/**
+	 * Selects the row of the matrix that corresponds to a given value by
+	 * covering all its columns. The covered columns are pushed to
+	 * {@link #coveredColumns}.
+	 *
+	 * @param _row the index of the row.
+	 * @return <code>false</code> if one of the columns was already covered,
+	 * 			i.e. the value collides with another given value; otherwise,
+	 * 			<code>true</code>.
+	 */
+	private boolean coverGiven(int _row) {
+		int first = rowNode(_row);
+		int node = first;
+		do {
+			int column = columns[node];
+			if(!isColumnActive(column))
+				return false;
+			cover(column);
+			coveredColumns[coveredCount++] = column;
+			node = right[node];
+		} while(node != first);
+		return true;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public int getValue(int x, int y) {
+		return values[x + y * size];
+	}
+
+	/**
+	 * Checks if a column is still linked in the header list.
+	 */
+	private boolean isColumnActive(int _column) {
+		return right[left[_column]] == _column;
+	}
+
+	public boolean isValueSet(int x, int y) {
+		return values[x + y * size] != 0;
+	}
+
+	public void loadGameState(String _source) {
+		Sudoku.readGameState(_source, size, values);
+	}
+
+	/**
+	 * Returns the index of the first node of the given row of the matrix.
+	 */
+	private int rowNode(int _row) {
+		return 1 + ROW_NODES * cellCount + ROW_NODES * _row;
+	}
+
+	private boolean search(int _depth) {
+		if(right[0] == 0)
+			return true;
+		// Select the column with the fewest rows
+		int column = right[0];
+		int column_size = columnSizes[column];
+		for(int j = right[column]; j != 0 && column_size > 1; j = right[j])
+			if(columnSizes[j] < column_size) {
+				column = j;
+				column_size = columnSizes[j];
+			}
+		if(column_size == 0)
+			return false;
+
+		boolean found = false;
+		cover(column);
+		for(int i = down[column]; i != column && !found; i = down[i]) {
+			solution[_depth] = rows[i];
+			for(int j = right[i]; j != i; j = right[j])
+				cover(columns[j]);
+			found = search(_depth + 1);
+			for(int j = left[i]; j != i; j = left[j])
+				uncover(columns[j]);
+		}
+		uncover(column);
+		return found;
+	}
+
+	public void setValue(int x, int y, int value) {
+		values[x + y * size] = value;
+	}
+
+	public boolean solve() {
+		// Select the rows of the given values first
+		boolean collision = false;
+		int depth = 0;
+		for(int cell=0; cell < cellCount && !collision; cell++) {
+			if(values[cell] == 0)
+				continue;
+			int row = cell * size + values[cell] - 1;
+			solution[depth++] = row;
+			collision = !coverGiven(row);
+		}
+		boolean found = !collision && search(depth);
+		if(found)
+			storeSolution();
+		while(coveredCount > 0)
+			uncover(coveredColumns[--coveredCount]);
+		return found;
+	}
+
+	/**
+	 * Writes the values selected by the search to {@link #values}. After
+	 * a successful search, {@link #solution} contains one row for each cell.
+	 */
+	private void storeSolution() {
+		for(int i=0; i < cellCount; i++) {
+			int row = solution[i];
+			values[row / size] = row % size + 1;
+		}
+	}
+
+	/**
+	 * Restores a column covered by {@link #cover(int)}. Columns must be
+	 * uncovered in the reverse order.
+	 *
+	 * @param _column the index of the column header.
+	 */
+	private void uncover(int _column) {
+		for(int i = up[_column]; i != _column; i = up[i])
+			for(int j = left[i]; j != i; j = left[j]) {
+				columnSizes[columns[j]]++;
+				down[up[j]] = j;
+				up[down[j]] = j;
+			}
+		right[left[_column]] = _column;
+		left[right[_column]] = _column;
+	}
+
+	/**
+	 * Creates a new engine for the game board made of
+	 * <code>_squareSize</code> x <code>_squareSize</code> squares and
+	 * builds the exact cover matrix.
+	 *
+	 * @param _squareSize the size of an edge of a square group.
+	 */
+	public DancingLinksEngine(int _squareSize) {
+		if(_squareSize < Sudoku.MIN_SQUARE_SIZE || _squareSize > Sudoku.MAX_SQUARE_SIZE)
+			throw new IllegalArgumentException("Unsupported square size: " + _squareSize);
+		squareSize = _squareSize;
+		size = _squareSize * _squareSize;
+		cellCount = size * size;
+		values = new int[cellCount];
+		solution = new int[cellCount];
+
+		int column_count = ROW_NODES * cellCount;
+		int row_count = cellCount * size;
+		int node_count = 1 + column_count + ROW_NODES * row_count;
+		left = new int[node_count];
+		right = new int[node_count];
+		up = new int[node_count];
+		down = new int[node_count];
+		columns = new int[node_count];
+		rows = new int[node_count];
+		columnSizes = new int[column_count + 1];
+		coveredColumns = new int[column_count];
+
+		// The root and the column headers
+		for(int i = 0; i <= column_count; i++) {
+			left[i] = i == 0 ? column_count : i - 1;
+			right[i] = i == column_count ? 0 : i + 1;
+			up[i] = i;
+			down[i] = i;
+			columns[i] = i;
+			rows[i] = -1;
+		}
+
+		// The rows; each row is appended to the bottom of its columns
+		for(int cell=0; cell < cellCount; cell++) {
+			int x = cell % size;
+			int y = cell / size;
+			int square = (x / squareSize) + (y / squareSize) * squareSize;
+			for(int value=0; value < size; value++) {
+				int row = cell * size + value;
+				int first = rowNode(row);
+				int[] row_columns = {
+					1 + cell,
+					1 + cellCount + y * size + value,
+					1 + 2 * cellCount + x * size + value,
+					1 + 3 * cellCount + square * size + value
+				};
+				for(int k = 0; k < ROW_NODES; k++) {
+					int node = first + k;
+					int column = row_columns[k];
+					left[node] = k == 0 ? first + ROW_NODES - 1 : node - 1;
+					right[node] = k == ROW_NODES - 1 ? first : node + 1;
+					up[node] = up[column];
+					down[node] = column;
+					down[up[column]] = node;
+					up[column] = node;
+					columns[node] = column;
+					rows[node] = row;
+					columnSizes[column]++;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,37 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku;
+
+/**
+ * Branches on the first cell without an assigned value, scanning the
+ * game board column by column. This is the strategy used by the original
+ * search, and it is kept mainly for comparison.
+ *
+ * @author Ondrej Sykora
+ */
+public class FirstUnassignedBranching implements BranchingStrategy {
+	public int selectCell(Sudoku _sudoku) {
+		int size = _sudoku.getSize();
+		for(int x=0; x < size; x++)
+			for(int y=0; y < size; y++) {
+				int cell = x + y * size;
+				if(!_sudoku.isAssigned(cell))
+					return cell;
+			}
+		return -1;
+	}
+}
@@ -0,0 +1,287 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku;
+
+/**
+ * The state of a puzzle that is being edited by hand. Unlike
+ * {@link Sudoku}, which propagates the constraints only when the puzzle is
+ * loaded or solved, the board keeps its derived state up to date after
+ * each edit, so it can be shown while the user types: the conflicting
+ * cells, the candidates of the empty cells and the forced cells.
+ * <p>
+ * The board keeps the number of cells with each value in each group. An
+ * edit changes only the counts of the three groups of the cell, both when
+ * a value is set and when it is cleared, so it takes constant time; the
+ * candidates of a cell are then the values not used in any of its groups.
+ * Only the direct constraints between peers are considered, no deeper
+ * propagation is done, so that clearing a cell never needs to rebuild the
+ * rest of the board.
+ *
+ * @author Ondrej Sykora
+ */
+public class InteractiveBoard {
+	private final int squareSize;
+
+	private final int size;
+
+	private final long allValues;
+	/**
+	 * The cells of each group, shared with the other boards of the same
+	 * size.
+	 */
+	private final int[][] groups;
+	/**
+	 * The groups of each cell, shared with the other boards of the same
+	 * size.
+	 */
+	private final int[][] cellGroups;
+
+	private final int[] values;
+	/**
+	 * The number of cells with each value in each group, indexed by
+	 * <code>group * (size + 1) + value</code>.
+	 */
+	private final int[] valueCounts;
+	/**
+	 * The values used in each group, one bit per value.
+	 */
+	private final long[] usedValues;
+	/**
+	 * The number of the pairs of a group and a value that occurs more than
+	 * once in the group.
+	 */
+	private int conflictCount;
+
+	/**
+	 * Clears all cells.
+	 */
+	public void clear() {
+		for(int cell = 0; cell < values.length; cell++)
+			if(values[cell] != 0)
+				clearValue(cell % size, cell / size);
+	}
+
+	/**
+	 * Clears the value of the given cell.
+	 *
+	 * @param x the x coordinate of the cell.
+	 * @param y the y coordinate of the cell.
+	 */
+	public void clearValue(int x, int y) {
+		int cell = x + y * size;
+		int value = values[cell];
+		if(value == 0)
+			return;
+		values[cell] = 0;
+		for(int group : cellGroups[cell]) {
+			int count = --valueCounts[group * (size + 1) + value];
+			if(count == 1)
+				conflictCount--;
+			else if(count == 0)
+				usedValues[group] &= ~(1L << (value - 1));
+		}
+	}
+
+	/**
+	 * Returns the candidates of the given cell: the values not used by any
+	 * of its peers.
+	 *
+	 * @param x the x coordinate of the cell.
+	 * @param y the y coordinate of the cell.
+	 * @return the candidates, one bit per value (bit <code>v - 1</code> for
+	 * 			value <code>v</code>), or zero if the cell has a value.
+	 */
+	public long getCandidates(int x, int y) {
+		int cell = x + y * size;
+		if(values[cell] != 0)
+			return 0;
+		return candidates(cell);
+	}
+
+	/**
+	 * Returns the value that is forced in the given empty cell, either
+	 * because it is the only candidate of the cell (a naked single), or
+	 * because the cell is the only place for the value in one of its groups
+	 * (a hidden single).
+	 *
+	 * @param x the x coordinate of the cell.
+	 * @param y the y coordinate of the cell.
+	 * @return the forced value, or zero if the cell has a value, or if no
+	 * 			value is forced.
+	 */
+	public int getForcedValue(int x, int y) {
+		int cell = x + y * size;
+		if(values[cell] != 0)
+			return 0;
+		long cell_candidates = candidates(cell);
+		if(Long.bitCount(cell_candidates) == 1)
+			return Long.numberOfTrailingZeros(cell_candidates) + 1;
+		for(int group : cellGroups[cell]) {
+			long elsewhere = usedValues[group];
+			for(int other : groups[group])
+				if(other != cell && values[other] == 0)
+					elsewhere |= candidates(other);
+			long hidden = cell_candidates & ~elsewhere;
+			if(hidden != 0)
+				return Long.numberOfTrailingZeros(hidden) + 1;
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns the size of the game board.
+	 *
+	 * @return the size of the game board.
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns the size of an edge of a square group.
+	 *
+	 * @return the size of an edge of a square group.
+	 */
+	public int getSquareSize() {
+		return squareSize;
+	}
+
+	/**
+	 * Returns the value of the given cell.
+	 *
+	 * @param x the x coordinate of the cell.
+	 * @param y the y coordinate of the cell.
+	 * @return the value of the cell, or zero if the cell is empty.
+	 */
+	public int getValue(int x, int y) {
+		return values[x + y * size];
+	}
+
+	/**
+	 * Checks if any value occurs twice in a group.
+	 *
+	 * @return <code>true</code> if the board has a conflict; otherwise,
+	 * 			<code>false</code>.
+	 */
+	public boolean hasConflicts() {
+		return conflictCount > 0;
+	}
+
+	private long candidates(int _cell) {
+		int[] cell_groups = cellGroups[_cell];
+		return allValues & ~(usedValues[cell_groups[0]] | usedValues[cell_groups[1]] | usedValues[cell_groups[2]]);
+	}
+
+	/**
+	 * Checks if the given cell takes part in a conflict: its value is also
+	 * used by one of its peers, or it is empty and has no candidates.
+	 *
+	 * @param x the x coordinate of the cell.
+	 * @param y the y coordinate of the cell.
+	 * @return <code>true</code> if the cell is in conflict; otherwise,
+	 * 			<code>false</code>.
+	 */
+	public boolean isConflict(int x, int y) {
+		int cell = x + y * size;
+		int value = values[cell];
+		if(value == 0)
+			return candidates(cell) == 0;
+		for(int group : cellGroups[cell])
+			if(valueCounts[group * (size + 1) + value] > 1)
+				return true;
+		return false;
+	}
+
+	/**
+	 * Checks if the given cell has a value.
+	 *
+	 * @param x the x coordinate of the cell.
+	 * @param y the y coordinate of the cell.
+	 * @return <code>true</code> if the cell has a value; otherwise,
+	 * 			<code>false</code>.
+	 */
+	public boolean isValueSet(int x, int y) {
+		return values[x + y * size] != 0;
+	}
+
+	/**
+	 * Loads the values of the board to a solver. The empty cells are
+	 * cleared.
+	 *
+	 * @param _engine the solver; must have the same size as the board.
+	 */
+	public void loadTo(SolverEngine _engine) {
+		if(_engine.getSize() != size)
+			throw new IllegalArgumentException("Expected a board of size " + size + ", found " + _engine.getSize());
+		for(int y = 0; y < size; y++)
+			for(int x = 0; x < size; x++) {
+				int value = values[x + y * size];
+				if(value == 0)
+					_engine.clearValue(x, y);
+				else
+					_engine.setValue(x, y, value);
+			}
+	}
+
+	/**
+	 * Sets the value of the given cell. Values that conflict with the peers
+	 * of the cell are accepted and reported by {@link #isConflict(int, int)}.
+	 *
+	 * @param x the x coordinate of the cell.
+	 * @param y the y coordinate of the cell.
+	 * @param _value the value, or zero to clear the cell.
+	 * @throws IllegalArgumentException if the value is out of range.
+	 */
+	public void setValue(int x, int y, int _value) {
+		if(_value < 0 || _value > size)
+			throw new IllegalArgumentException("Value out of range: " + _value);
+		int cell = x + y * size;
+		if(values[cell] == _value)
+			return;
+		clearValue(x, y);
+		if(_value == 0)
+			return;
+		values[cell] = _value;
+		for(int group : cellGroups[cell]) {
+			int count = ++valueCounts[group * (size + 1) + _value];
+			if(count == 2)
+				conflictCount++;
+			else if(count == 1)
+				usedValues[group] |= 1L << (_value - 1);
+		}
+	}
+
+	/**
+	 * Creates a new empty board.
+	 *
+	 * @param _squareSize the size of an edge of a square group, in the range
+	 * 			{@link Sudoku#MIN_SQUARE_SIZE} - {@link Sudoku#MAX_SQUARE_SIZE}.
+	 */
+	public InteractiveBoard(int _squareSize) {
+		if(_squareSize < Sudoku.MIN_SQUARE_SIZE || _squareSize > Sudoku.MAX_SQUARE_SIZE)
+			throw new IllegalArgumentException("Unsupported square size: " + _squareSize);
+		squareSize = _squareSize;
+		size = _squareSize * _squareSize;
+		allValues = size == Long.SIZE ? -1L : (1L << size) - 1;
+		BoardTopology topology = BoardTopology.get(_squareSize);
+		groups = topology.groups;
+		cellGroups = topology.cellGroups;
+		values = new int[topology.cellCount];
+		valueCounts = new int[topology.groupCount * (size + 1)];
+		usedValues = new long[topology.groupCount];
+	}
+}
@@ -0,0 +1,58 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku;
+
+/**
+ * Tries first the values that remove the fewest candidates from the peers
+ * of the cell. Ties are resolved in ascending order of the values.
+ *
+ * @author Ondrej Sykora
+ */
+public class LeastConstrainingValueOrdering implements ValueOrdering {
+	/**
+	 * The number of bits used to store the value in the sort keys.
+	 */
+	private static final int VALUE_BITS = 8;
+
+	public int orderValues(Sudoku _sudoku, int _cell, int[] _values) {
+		int[] peers = _sudoku.getPeers(_cell);
+		long mask = _sudoku.getCandidates(_cell);
+		int count = 0;
+		while(mask != 0) {
+			long bit = mask & -mask;
+			mask &= mask - 1;
+			int constrained = 0;
+			for(int i=0; i < peers.length; i++) {
+				int peer = peers[i];
+				if(!_sudoku.isAssigned(peer) && (_sudoku.getCandidates(peer) & bit) != 0)
+					constrained++;
+			}
+			// Sort keys combine the score and the value; insertion sort is
+			// enough for the values of a single cell
+			int key = (constrained << VALUE_BITS) | (Long.numberOfTrailingZeros(bit) + 1);
+			int pos = count++;
+			while(pos > 0 && _values[pos - 1] > key) {
+				_values[pos] = _values[pos - 1];
+				pos--;
+			}
+			_values[pos] = key;
+		}
+		for(int i=0; i < count; i++)
+			_values[i] &= (1 << VALUE_BITS) - 1;
+		return count;
+	}
+}
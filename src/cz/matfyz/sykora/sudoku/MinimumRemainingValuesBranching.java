@@ -0,0 +1,75 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku;
+
+/**
+ * Branches on the cell with the fewest values that can be assigned to it.
+ * The cell is taken from the index of cells by the number of candidates
+ * maintained by {@link Sudoku}, so the selection does not scan the game
+ * board.
+ * <p>
+ * Optionally, ties are broken by the degree of the cell, i.e. the number
+ * of its peers without an assigned value. Only the cells with the minimal
+ * number of candidates are examined in this case.
+ *
+ * @author Ondrej Sykora
+ */
+public class MinimumRemainingValuesBranching implements BranchingStrategy {
+	/**
+	 * Set to <code>true</code> if ties are broken by the degree of the cells.
+	 */
+	private final boolean breakTiesByDegree;
+
+	public int selectCell(Sudoku _sudoku) {
+		for(int count=0; count <= _sudoku.getSize(); count++) {
+			int cell = _sudoku.firstCellWithCandidateCount(count);
+			if(cell < 0)
+				continue;
+			if(!breakTiesByDegree || count < 2)
+				return cell;
+			int best_cell = cell;
+			int best_degree = _sudoku.countUnassignedPeers(cell);
+			for(cell = _sudoku.nextCellWithCandidateCount(cell); cell >= 0; cell = _sudoku.nextCellWithCandidateCount(cell)) {
+				int degree = _sudoku.countUnassignedPeers(cell);
+				if(degree > best_degree) {
+					best_cell = cell;
+					best_degree = degree;
+				}
+			}
+			return best_cell;
+		}
+		return -1;
+	}
+
+	/**
+	 * Creates a new strategy that breaks ties by the degree of the cells.
+	 */
+	public MinimumRemainingValuesBranching() {
+		this(true);
+	}
+
+	/**
+	 * Creates a new strategy.
+	 *
+	 * @param _breakTiesByDegree <code>true</code> if ties are broken by the
+	 * 			degree of the cells; <code>false</code> if the first cell
+	 * 			found in the index is used.
+	 */
+	public MinimumRemainingValuesBranching(boolean _breakTiesByDegree) {
+		breakTiesByDegree = _breakTiesByDegree;
+	}
+}
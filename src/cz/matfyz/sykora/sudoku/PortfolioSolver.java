@@ -0,0 +1,398 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku;
+
+import java.util.concurrent.*;
+
+/**
+ * Solves puzzles by racing differently configured searches, to cut the
+ * long tail of the solve times of a single fixed search order.
+ * <p>
+ * The portfolio has a fixed number of members, each with its own solver:
+ * <ul>
+ * <li>member 0 uses the default configuration of {@link Sudoku},
+ * <li>member 1 branches on the first cell with the fewest candidates
+ * and tries the least constraining values first,
+ * <li>the other members choose random cells among those with the fewest
+ * candidates and try their values in a random order, and restart the
+ * search after a number of nodes given by the Luby sequence, multiplied
+ * by the restart unit.
+ * </ul>
+ * The seeds of the random members are derived from the seed of the
+ * portfolio and the index of the member, so the search of each member is
+ * reproducible; only the winner of a race depends on the timing, and it
+ * can be replayed by {@link #solveMember(int, int[])}.
+ * <p>
+ * A solve first runs member 0 in the calling thread for a small number of
+ * nodes, so that the easy puzzles are solved exactly like by a single
+ * solver. Only when this budget is exhausted are all members started in
+ * the executor; the first member that solves the puzzle or proves that it
+ * has no solution wins, and the others are cancelled.
+ * <p>
+ * The portfolio is not safe for concurrent use.
+ *
+ * @author Ondrej Sykora
+ */
+public class PortfolioSolver {
+	/**
+	 * The default number of nodes searched by member 0 before the race is
+	 * started.
+	 */
+	public static final long DEFAULT_SEQUENTIAL_NODES = 1000;
+	/**
+	 * The default number of nodes of the shortest run of the restarting
+	 * members.
+	 */
+	public static final long DEFAULT_RESTART_UNIT = 100;
+
+	/**
+	 * A member of the portfolio.
+	 */
+	private class Member implements Runnable {
+		final int index;
+
+		final Sudoku sudoku;
+		/**
+		 * <code>true</code> if the member restarts the search.
+		 */
+		final boolean restarting;
+
+		final SolveLimits limits = new SolveLimits();
+
+		SolveResult result;
+
+		int restartCount;
+
+		Member(int _index) {
+			index = _index;
+			sudoku = new Sudoku(squareSize);
+			if(_index == 1) {
+				sudoku.setBranchingStrategy(new MinimumRemainingValuesBranching(false));
+				sudoku.setValueOrdering(new LeastConstrainingValueOrdering());
+			}
+			restarting = _index >= 2;
+		}
+
+		/**
+		 * Loads the puzzle and seeds the random choices, so that each
+		 * solve of the member searches in the same order.
+		 */
+		void load(int[] _values) {
+			sudoku.reset();
+			for(int cell = 0; cell < cellCount; cell++)
+				if(_values[cell] != 0)
+					sudoku.setValue(cell % size, cell / size, _values[cell]);
+			if(restarting) {
+				long member_seed = getMemberSeed(index);
+				sudoku.setBranchingStrategy(new RandomMinimumRemainingValuesBranching(member_seed));
+				sudoku.setValueOrdering(new RandomValueOrdering(~member_seed));
+			}
+		}
+
+		public void run() {
+			try {
+				result = solve(token);
+			}
+			finally {
+				finished(this);
+			}
+		}
+
+		/**
+		 * Solves the loaded puzzle.
+		 *
+		 * @param _token the token that cancels the search, or
+		 * 			<code>null</code>.
+		 */
+		SolveResult solve(CancellationToken _token) {
+			limits.setCancellationToken(_token);
+			restartCount = 0;
+			if(!restarting) {
+				limits.setNodeBudget(Long.MAX_VALUE);
+				return sudoku.solve(limits);
+			}
+			for(int run = 1; ; run++) {
+				limits.setNodeBudget(luby(run) * restartUnit);
+				SolveResult run_result = sudoku.solve(limits);
+				if(run_result != SolveResult.BUDGET_EXHAUSTED)
+					return run_result;
+				if(_token != null && _token.isCancelled())
+					return SolveResult.BUDGET_EXHAUSTED;
+				restartCount++;
+			}
+		}
+	}
+
+	private final int squareSize;
+
+	private final int size;
+
+	private final int cellCount;
+
+	private final long seed;
+
+	private final Executor executor;
+
+	private final Member[] members;
+
+	private long sequentialNodes = DEFAULT_SEQUENTIAL_NODES;
+
+	private long restartUnit = DEFAULT_RESTART_UNIT;
+
+	private final SolveLimits sequentialLimits = new SolveLimits();
+	/**
+	 * Cancels the members of the current race.
+	 */
+	private CancellationToken token;
+	private int runningCount;
+
+	private Member winner;
+
+	/**
+	 * Records the end of the search of a member.
+	 */
+	private synchronized void finished(Member _member) {
+		runningCount--;
+		boolean decisive = _member.result == SolveResult.SOLVED || _member.result == SolveResult.UNSATISFIABLE;
+		if(decisive && winner == null) {
+			winner = _member;
+			token.cancel();
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Returns a description of the configuration of a member, for the
+	 * reports of the races.
+	 *
+	 * @param _index the index of the member.
+	 * @return the description of the member.
+	 */
+	public String describeMember(int _index) {
+		if(_index < 0 || _index >= members.length)
+			throw new IllegalArgumentException("Invalid member: " + _index);
+		if(_index == 0)
+			return "default";
+		if(_index == 1)
+			return "first-minimum-remaining-values, least-constraining-value";
+		return "random-minimum-remaining-values, random-value, luby-restarts(" + restartUnit + "), seed=" + getMemberSeed(_index);
+	}
+
+	/**
+	 * Returns the number of members of the portfolio.
+	 *
+	 * @return the number of members.
+	 */
+	public int getMemberCount() {
+		return members.length;
+	}
+
+	/**
+	 * Returns the seed of the random choices of a member.
+	 */
+	private long getMemberSeed(int _index) {
+		// The mixing step of SplittableRandom, so that close seeds of the
+		// portfolio give unrelated seeds of the members
+		long z = seed + _index * 0x9e3779b97f4a7c15L;
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Returns the number of restarts of the winner of the last solve.
+	 *
+	 * @return the number of restarts.
+	 */
+	public int getRestartCount() {
+		return winner == null ? 0 : winner.restartCount;
+	}
+
+	/**
+	 * Returns the seed of the portfolio.
+	 *
+	 * @return the seed.
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Returns the index of the member that decided the last solve.
+	 *
+	 * @return the index of the winner, or <code>-1</code> if no solve
+	 * 			finished yet.
+	 */
+	public int getWinner() {
+		return winner == null ? -1 : winner.index;
+	}
+
+	/**
+	 * Returns the Luby sequence: 1, 1, 2, 1, 1, 2, 4, 1, 1, 2, ...
+	 *
+	 * @param _index the index of the element, starting from 1.
+	 * @return the element of the sequence.
+	 */
+	static long luby(int _index) {
+		int i = _index;
+		while(true) {
+			// The length of the smallest complete block 2^k - 1 containing i
+			int k = 32 - Integer.numberOfLeadingZeros(i);
+			if(i == (1 << k) - 1)
+				return 1L << (k - 1);
+			i -= (1 << (k - 1)) - 1;
+		}
+	}
+
+	/**
+	 * Sets the number of nodes searched by member 0 in the calling thread
+	 * before the race is started.
+	 *
+	 * @param _nodes the number of nodes.
+	 */
+	public void setSequentialNodes(long _nodes) {
+		if(_nodes < 1)
+			throw new IllegalArgumentException("The number of nodes must be positive: " + _nodes);
+		sequentialNodes = _nodes;
+	}
+
+	/**
+	 * Sets the number of nodes of the shortest run of the restarting
+	 * members.
+	 *
+	 * @param _nodes the number of nodes.
+	 */
+	public void setRestartUnit(long _nodes) {
+		if(_nodes < 1)
+			throw new IllegalArgumentException("The number of nodes must be positive: " + _nodes);
+		restartUnit = _nodes;
+	}
+
+	/**
+	 * Solves a puzzle.
+	 *
+	 * @param _values the values of the cells, indexed by
+	 * 			<code>x + y * size</code>. Zero stands for an empty cell.
+	 * 			The solution is written to this array.
+	 * @return <code>true</code> if the puzzle was solved; <code>false</code>
+	 * 			if it has no solution.
+	 * @throws IllegalArgumentException if the array has a wrong size.
+	 */
+	public boolean solve(int[] _values) {
+		if(_values.length != cellCount)
+			throw new IllegalArgumentException("Expected " + cellCount + " values, found " + _values.length);
+		Member first = members[0];
+		first.load(_values);
+		sequentialLimits.setNodeBudget(sequentialNodes);
+		SolveResult result = first.sudoku.solve(sequentialLimits);
+		if(result != SolveResult.BUDGET_EXHAUSTED || members.length == 1) {
+			if(result == SolveResult.BUDGET_EXHAUSTED)
+				result = first.solve(null);
+			winner = first;
+			first.restartCount = 0;
+			return store(result, first, _values);
+		}
+
+		synchronized(this) {
+			token = new CancellationToken();
+			winner = null;
+			runningCount = members.length;
+		}
+		for(Member member : members) {
+			if(member != first)
+				member.load(_values);
+			member.result = null;
+			executor.execute(member);
+		}
+		Member won;
+		synchronized(this) {
+			// The winner cancels the other members; the solvers are reused,
+			// so all of them must stop before the next solve
+			boolean interrupted = false;
+			while(runningCount > 0) {
+				try {
+					wait();
+				}
+				catch(InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if(interrupted)
+				Thread.currentThread().interrupt();
+			won = winner;
+		}
+		if(won == null)
+			throw new IllegalStateException("No member of the portfolio finished the search");
+		return store(won.result, won, _values);
+	}
+
+	/**
+	 * Solves a puzzle with a single member in the calling thread, e.g. to
+	 * replay the search of the winner of a race.
+	 *
+	 * @param _index the index of the member.
+	 * @param _values the values of the cells, indexed by
+	 * 			<code>x + y * size</code>. Zero stands for an empty cell.
+	 * 			The solution is written to this array.
+	 * @return <code>true</code> if the puzzle was solved; <code>false</code>
+	 * 			if it has no solution.
+	 * @throws IllegalArgumentException if the member does not exist, or if
+	 * 			the array has a wrong size.
+	 */
+	public boolean solveMember(int _index, int[] _values) {
+		if(_index < 0 || _index >= members.length)
+			throw new IllegalArgumentException("Invalid member: " + _index);
+		if(_values.length != cellCount)
+			throw new IllegalArgumentException("Expected " + cellCount + " values, found " + _values.length);
+		Member member = members[_index];
+		member.load(_values);
+		winner = member;
+		return store(member.solve(null), member, _values);
+	}
+
+	private boolean store(SolveResult _result, Member _member, int[] _values) {
+		if(_result != SolveResult.SOLVED)
+			return false;
+		for(int cell = 0; cell < cellCount; cell++)
+			_values[cell] = _member.sudoku.getValue(cell % size, cell / size);
+		return true;
+	}
+
+	/**
+	 * Creates a new portfolio.
+	 *
+	 * @param _squareSize the size of an edge of a square group.
+	 * @param _memberCount the number of members; the executor should be
+	 * 			able to run all of them at once.
+	 * @param _seed the seed of the random members.
+	 * @param _executor the executor that runs the members of the races.
+	 */
+	public PortfolioSolver(int _squareSize, int _memberCount, long _seed, Executor _executor) {
+		if(_squareSize < Sudoku.MIN_SQUARE_SIZE || _squareSize > Sudoku.MAX_SQUARE_SIZE)
+			throw new IllegalArgumentException("Unsupported square size: " + _squareSize);
+		if(_memberCount < 1)
+			throw new IllegalArgumentException("The number of members must be positive");
+		squareSize = _squareSize;
+		size = _squareSize * _squareSize;
+		cellCount = size * size;
+		seed = _seed;
+		executor = _executor;
+		members = new Member[_memberCount];
+		for(int i = 0; i < _memberCount; i++)
+			members[i] = new Member(i);
+	}
+}
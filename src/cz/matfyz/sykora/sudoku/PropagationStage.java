@@ -0,0 +1,57 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku;
+
+/**
+ * The stages of the constraint propagation. The stages are run in the
+ * order of declaration; whenever a stage removes a candidate, propagation
+ * restarts from the first stage, until no stage makes progress.
+ *
+ * @author Ondrej Sykora
+ * @see Sudoku#setPropagationStageEnabled(PropagationStage, boolean)
+ * @see Sudoku#getEliminationCount(PropagationStage)
+ */
+public enum PropagationStage {
+	/**
+	 * Removes the value of an assigned cell from all its peers, and assigns
+	 * the value to cells with a single candidate. This stage is always
+	 * enabled.
+	 */
+	NAKED_SINGLES,
+	/**
+	 * Assigns a value to a cell, if it is the only cell in one of its groups
+	 * that can hold the value.
+	 */
+	HIDDEN_SINGLES,
+	/**
+	 * If all candidates for a value in a square lie in a single row or
+	 * column (pointing), or all candidates for a value in a row or column
+	 * lie in a single square (claiming), removes the value from the rest
+	 * of the row, column or square.
+	 */
+	LOCKED_CANDIDATES,
+	/**
+	 * If two cells in a group have the same two candidates, removes these
+	 * candidates from the other cells in the group.
+	 */
+	NAKED_PAIRS,
+	/**
+	 * If two values in a group can be placed only in the same two cells,
+	 * removes all other candidates from these two cells.
+	 */
+	HIDDEN_PAIRS
+}
@@ -0,0 +1,72 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku;
+
+import java.util.*;
+
+/**
+ * Branches on a random cell among the cells with the fewest values that
+ * can be assigned to them. Combined with {@link RandomValueOrdering} and
+ * restarts, each run of the search explores a different part of the
+ * search tree, which avoids the long runs of an unlucky fixed order (see
+ * {@link PortfolioSolver}). The choices are reproducible for a given seed,
+ * as long as the strategy is used by a single solver.
+ *
+ * @author Ondrej Sykora
+ */
+public class RandomMinimumRemainingValuesBranching implements BranchingStrategy {
+	/**
+	 * The generator of the random choices.
+	 */
+	private final Random random;
+
+	public int selectCell(Sudoku _sudoku) {
+		for(int count=0; count <= _sudoku.getSize(); count++) {
+			int cell = _sudoku.firstCellWithCandidateCount(count);
+			if(cell < 0)
+				continue;
+			if(count < 2)
+				return cell;
+			// Reservoir sampling of a single cell from the bucket
+			int selected = cell;
+			int seen = 1;
+			for(cell = _sudoku.nextCellWithCandidateCount(cell); cell >= 0; cell = _sudoku.nextCellWithCandidateCount(cell))
+				if(random.nextInt(++seen) == 0)
+					selected = cell;
+			return selected;
+		}
+		return -1;
+	}
+
+	/**
+	 * Sets the seed of the random choices.
+	 *
+	 * @param _seed the seed.
+	 */
+	public void setSeed(long _seed) {
+		random.setSeed(_seed);
+	}
+
+	/**
+	 * Creates a new strategy.
+	 *
+	 * @param _seed the seed of the random choices.
+	 */
+	public RandomMinimumRemainingValuesBranching(long _seed) {
+		random = new Random(_seed);
+	}
+}
@@ -0,0 +1,63 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku;
+
+import java.util.*;
+
+/**
+ * Tries the values of a cell in a random order. The order is reproducible
+ * for a given seed, as long as the ordering is used by a single solver.
+ *
+ * @author Ondrej Sykora
+ */
+public class RandomValueOrdering implements ValueOrdering {
+	/**
+	 * The generator of the random orders.
+	 */
+	private final Random random;
+
+	public int orderValues(Sudoku _sudoku, int _cell, int[] _values) {
+		long mask = _sudoku.getCandidates(_cell);
+		int count = 0;
+		// Inside-out Fisher-Yates shuffle
+		while(mask != 0) {
+			int pos = random.nextInt(count + 1);
+			_values[count++] = _values[pos];
+			_values[pos] = Long.numberOfTrailingZeros(mask) + 1;
+			mask &= mask - 1;
+		}
+		return count;
+	}
+
+	/**
+	 * Restarts the sequence of random orders from the given seed.
+	 *
+	 * @param _seed the seed of the random generator.
+	 */
+	public void setSeed(long _seed) {
+		random.setSeed(_seed);
+	}
+
+	/**
+	 * Creates a new ordering with the given seed.
+	 *
+	 * @param _seed the seed of the random generator.
+	 */
+	public RandomValueOrdering(long _seed) {
+		random = new Random(_seed);
+	}
+}
@@ -0,0 +1,89 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku;
+
+import jdk.jfr.*;
+
+/**
+ * The Flight Recorder event emitted for solves that take longer than
+ * a threshold. The event is an instant event committed after the solve;
+ * its fields carry the statistics of the solve.
+ * <p>
+ * Loading the event class initializes the Flight Recorder support of the
+ * JVM, which takes a noticeable time, so the class is touched only when
+ * a recording is running.
+ *
+ * @author Ondrej Sykora
+ * @see Sudoku#solve(SolveStats)
+ * @see Sudoku#setSlowSolveThresholdNanos(long)
+ */
+@Name("cz.matfyz.sykora.sudoku.SlowSolve")
+@Label("Slow Solve")
+@Category("Sudoku")
+@Description("A puzzle that took longer than the threshold to solve")
+@StackTrace(false)
+public final class SlowSolveEvent extends Event {
+	@Label("Board Size")
+	int size;
+	
+	@Label("Solved")
+	boolean solved;
+	
+	@Label("Budget Exhausted")
+	@Description("The solve was stopped by its node budget, deadline or cancellation token")
+	boolean budgetExhausted;
+	
+	@Label("Solve Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long solveTime;
+	
+	@Label("Propagation Time")
+	@Description("Measured only when statistics were requested by the caller")
+	@Timespan(Timespan.NANOSECONDS)
+	long propagationTime;
+	
+	@Label("Nodes")
+	long nodes;
+	
+	@Label("Maximal Depth")
+	int maxDepth;
+	
+	@Label("Backtracks")
+	long backtracks;
+	
+	@Label("Propagations")
+	long propagations;
+	
+	/**
+	 * Commits an event for the given solve, if the event is enabled.
+	 */
+	static void emit(int _size, SolveStats _stats) {
+		SlowSolveEvent event = new SlowSolveEvent();
+		if(!event.shouldCommit())
+			return;
+		event.size = _size;
+		event.solved = _stats.isSolved();
+		event.budgetExhausted = _stats.result == SolveResult.BUDGET_EXHAUSTED;
+		event.solveTime = _stats.elapsedNanos;
+		event.propagationTime = _stats.propagationNanos;
+		event.nodes = _stats.nodeCount;
+		event.maxDepth = _stats.maxDepth;
+		event.backtracks = _stats.backtrackCount;
+		event.propagations = _stats.propagationCount;
+		event.commit();
+	}
+}
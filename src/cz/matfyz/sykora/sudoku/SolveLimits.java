@@ -0,0 +1,149 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The limits of a solve: a node budget, a deadline and a cancellation
+ * token, all of them optional. The node budget is exact; the deadline and
+ * the token are checked every 64 nodes. The limits also carry an
+ * optional listener that observes the progress of the search at the same
+ * points.
+ * <p>
+ * The limits may be reused for any number of solves, but a deadline is
+ * an absolute point in time, so it must be set again before each solve.
+ *
+ * @author Ondrej Sykora
+ * @see Sudoku#solve(SolveLimits)
+ */
+public class SolveLimits {
+	private CancellationToken cancellationToken;
+	
+	private long deadlineNanos;
+	
+	private boolean deadlineSet;
+	
+	private long nodeBudget = Long.MAX_VALUE;
+	
+	private SolveProgressListener progressListener;
+	
+	/**
+	 * Removes the deadline.
+	 */
+	public void clearDeadline() {
+		deadlineSet = false;
+	}
+	
+	/**
+	 * Returns the token that stops the solve.
+	 *
+	 * @return the token, or <code>null</code> if there is none.
+	 */
+	public CancellationToken getCancellationToken() {
+		return cancellationToken;
+	}
+	
+	/**
+	 * Returns the deadline of the solve, in the time of
+	 * {@link System#nanoTime()}. Valid only if {@link #hasDeadline()}.
+	 *
+	 * @return the deadline.
+	 */
+	public long getDeadlineNanos() {
+		return deadlineNanos;
+	}
+	
+	/**
+	 * Returns the maximal number of nodes explored by the solve.
+	 *
+	 * @return the node budget; {@link Long#MAX_VALUE} if unlimited.
+	 */
+	public long getNodeBudget() {
+		return nodeBudget;
+	}
+	
+	/**
+	 * Returns the listener that observes the progress of the search.
+	 *
+	 * @return the listener, or <code>null</code> if there is none.
+	 */
+	public SolveProgressListener getProgressListener() {
+		return progressListener;
+	}
+	
+	/**
+	 * Checks if a deadline is set.
+	 *
+	 * @return <code>true</code> if the solve has a deadline; otherwise,
+	 * 			<code>false</code>.
+	 */
+	public boolean hasDeadline() {
+		return deadlineSet;
+	}
+	
+	/**
+	 * Sets the token that stops the solve.
+	 *
+	 * @param _token the token, or <code>null</code> if there is none.
+	 */
+	public void setCancellationToken(CancellationToken _token) {
+		cancellationToken = _token;
+	}
+	
+	/**
+	 * Sets the deadline of the solve.
+	 *
+	 * @param _deadlineNanos the deadline, in the time of
+	 * 			{@link System#nanoTime()}.
+	 */
+	public void setDeadlineNanos(long _deadlineNanos) {
+		deadlineNanos = _deadlineNanos;
+		deadlineSet = true;
+	}
+	
+	/**
+	 * Sets the maximal number of nodes explored by the solve.
+	 *
+	 * @param _nodeBudget the node budget; {@link Long#MAX_VALUE} if
+	 * 			unlimited.
+	 */
+	public void setNodeBudget(long _nodeBudget) {
+		if(_nodeBudget < 1)
+			throw new IllegalArgumentException("The node budget must be positive: " + _nodeBudget);
+		nodeBudget = _nodeBudget;
+	}
+	
+	/**
+	 * Sets the listener that observes the progress of the search.
+	 *
+	 * @param _listener the listener, or <code>null</code> if there is none.
+	 */
+	public void setProgressListener(SolveProgressListener _listener) {
+		progressListener = _listener;
+	}
+	
+	/**
+	 * Sets the deadline to the given time from now.
+	 *
+	 * @param _timeout the time available for the solve.
+	 * @param _unit the unit of <code>_timeout</code>.
+	 */
+	public void setTimeout(long _timeout, TimeUnit _unit) {
+		setDeadlineNanos(System.nanoTime() + _unit.toNanos(_timeout));
+	}
+}
@@ -0,0 +1,39 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku;
+
+/**
+ * Observes a running search. The listener is called by the thread that
+ * runs the search, at the same points where the cancellation token and
+ * the deadline are checked, i.e. once in a few dozen nodes; it should
+ * return quickly and throttle any expensive work itself.
+ *
+ * @author Ondrej Sykora
+ * @see SolveLimits#setProgressListener(SolveProgressListener)
+ */
+public interface SolveProgressListener {
+	/**
+	 * Reports the progress of the search. The listener may read the current
+	 * game state of the solver through {@link Sudoku#getValue(int, int)}
+	 * and {@link Sudoku#isValueSet(int, int)}, but it must not change it.
+	 *
+	 * @param _sudoku the solver that runs the search.
+	 * @param _nodeCount the number of nodes explored so far.
+	 * @param _depth the current depth of the search.
+	 */
+	void searchProgress(Sudoku _sudoku, long _nodeCount, int _depth);
+}
@@ -0,0 +1,40 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku;
+
+/**
+ * The outcome of a solve with limits.
+ *
+ * @author Ondrej Sykora
+ * @see Sudoku#solve(SolveLimits)
+ */
+public enum SolveResult {
+	/**
+	 * A solution was found.
+	 */
+	SOLVED,
+	/**
+	 * The whole search tree was explored and the puzzle has no solution.
+	 */
+	UNSATISFIABLE,
+	/**
+	 * The search was stopped by the node budget, the deadline or the
+	 * cancellation token before it found a solution or explored the whole
+	 * tree.
+	 */
+	BUDGET_EXHAUSTED
+}
@@ -0,0 +1,190 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku;
+
+/**
+ * The statistics of a single call to {@link Sudoku#solve(SolveStats)}.
+ * The object can be reused for any number of calls; each call overwrites
+ * all values.
+ * <p>
+ * {@link Sudoku#loadGameState(String)} propagates the clues as soon as they
+ * are loaded, so this propagation is not included in the statistics of
+ * the following solve; the propagation of values set cell by cell is.
+ *
+ * @author Ondrej Sykora
+ */
+public class SolveStats {
+	long backjumpCount;
+	
+	long backtrackCount;
+	
+	long elapsedNanos;
+	
+	long learnedNogoodCount;
+	
+	int maxDepth;
+	
+	long nodeCount;
+	
+	long nogoodPruneCount;
+	
+	long propagationCount;
+	
+	long propagationNanos;
+	
+	SolveResult result;
+	
+	long skippedBranchCount;
+	
+	/**
+	 * Returns the number of backjumps, i.e. of choice points left by the
+	 * search with backjumping without trying their remaining values,
+	 * because the contradiction below did not depend on them.
+	 *
+	 * @return the number of backjumps.
+	 * @see Sudoku#setBackjumpingEnabled(boolean)
+	 */
+	public long getBackjumpCount() {
+		return backjumpCount;
+	}
+	
+	/**
+	 * Returns the number of values that were tried and led to a
+	 * contradiction.
+	 *
+	 * @return the number of backtracks.
+	 */
+	public long getBacktrackCount() {
+		return backtrackCount;
+	}
+	
+	/**
+	 * Returns the total time of the call, including the propagation of the
+	 * puzzle before the search.
+	 *
+	 * @return the elapsed time in nanoseconds.
+	 */
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+	
+	/**
+	 * Returns the number of nogoods learned by the search with
+	 * backjumping.
+	 *
+	 * @return the number of learned nogoods.
+	 */
+	public long getLearnedNogoodCount() {
+		return learnedNogoodCount;
+	}
+	
+	/**
+	 * Returns the maximal depth of the search, i.e. the maximal number of
+	 * choice points on the stack.
+	 *
+	 * @return the maximal depth.
+	 */
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+	
+	/**
+	 * Returns the number of nodes explored by the search.
+	 *
+	 * @return the number of nodes.
+	 */
+	public long getNodeCount() {
+		return nodeCount;
+	}
+	
+	/**
+	 * Returns the number of values not tried by the search with
+	 * backjumping, because their assignment completed a learned nogood.
+	 *
+	 * @return the number of values pruned by nogoods.
+	 */
+	public long getNogoodPruneCount() {
+		return nogoodPruneCount;
+	}
+	
+	/**
+	 * Returns the number of times the propagation was run.
+	 *
+	 * @return the number of propagations.
+	 */
+	public long getPropagationCount() {
+		return propagationCount;
+	}
+	
+	/**
+	 * Returns the time spent in the propagation.
+	 *
+	 * @return the propagation time in nanoseconds.
+	 */
+	public long getPropagationNanos() {
+		return propagationNanos;
+	}
+	
+	/**
+	 * Returns the time spent outside of the propagation, i.e. selecting the
+	 * cells and values, and restoring the game state.
+	 *
+	 * @return the search time in nanoseconds.
+	 */
+	public long getSearchNanos() {
+		return elapsedNanos - propagationNanos;
+	}
+	
+	/**
+	 * Returns the result of the solve.
+	 *
+	 * @return the result.
+	 */
+	public SolveResult getResult() {
+		return result;
+	}
+	
+	/**
+	 * Returns the number of values left untried at the choice points
+	 * skipped by the backjumps.
+	 *
+	 * @return the number of skipped branches.
+	 */
+	public long getSkippedBranchCount() {
+		return skippedBranchCount;
+	}
+	
+	/**
+	 * Checks if the puzzle was solved.
+	 *
+	 * @return <code>true</code> if a solution was found; otherwise,
+	 * 			<code>false</code>.
+	 */
+	public boolean isSolved() {
+		return result == SolveResult.SOLVED;
+	}
+	
+	public String toString() {
+		return "result=" + result + " nodes=" + nodeCount + " maxDepth=" + maxDepth
+			+ " backtracks=" + backtrackCount + " propagations=" + propagationCount
+			+ " elapsed=" + elapsedNanos + "ns propagation=" + propagationNanos + "ns"
+			+ (backjumpCount + learnedNogoodCount > 0
+				? " backjumps=" + backjumpCount + " skipped=" + skippedBranchCount
+					+ " nogoods=" + learnedNogoodCount + " nogoodPrunes=" + nogoodPruneCount
+				: "");
+	}
+}
@@ -0,0 +1,89 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku;
+
+/**
+ * The common interface of the sudoku solving engines. An engine maintains
+ * a game state that can be loaded or edited cell by cell, and solved in
+ * place.
+ *
+ * @author Ondrej Sykora
+ * @see SolverEngineType
+ */
+public interface SolverEngine {
+	/**
+	 * Clears the value of the cell at the given position.
+	 *
+	 * @param x the X position of the cell.
+	 * @param y the Y position of the cell.
+	 */
+	void clearValue(int x, int y);
+
+	/**
+	 * Returns the size of the game board (the number of cells in
+	 * a row/column).
+	 *
+	 * @return the size of the game board.
+	 */
+	int getSize();
+
+	/**
+	 * Returns the value assigned to the cell at the given position.
+	 *
+	 * @param x the X position of the cell.
+	 * @param y the Y position of the cell.
+	 * @return the value of the cell at the given position, or zero if
+	 * 			no value is assigned to the cell.
+	 */
+	int getValue(int x, int y);
+
+	/**
+	 * Checks if a value is assigned to the cell at the given position.
+	 *
+	 * @param x the X position of the cell.
+	 * @param y the Y position of the cell.
+	 * @return <code>true</code> if a value is assigned to the cell; otherwise,
+	 * 			<code>false</code>.
+	 */
+	boolean isValueSet(int x, int y);
+
+	/**
+	 * Loads the state of the game from a textual representation. See
+	 * {@link Sudoku#loadGameState(String)} for the format.
+	 *
+	 * @param _source the string, from which the state is loaded.
+	 */
+	void loadGameState(String _source);
+
+	/**
+	 * Assigns the given value to the cell at the given position.
+	 *
+	 * @param x the X position of the cell.
+	 * @param y the Y position of the cell.
+	 * @param value the value assigned to the cell.
+	 */
+	void setValue(int x, int y, int value);
+
+	/**
+	 * Assigns values to all cells. The solution replaces the current game
+	 * state, and is accessible through {@link #getValue(int, int)}.
+	 *
+	 * @return <code>true</code> if a solution was found; otherwise,
+	 * 			<code>false</code>.
+	 */
+	boolean solve();
+}
@@ -0,0 +1,63 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku;
+
+/**
+ * The available solving engines.
+ *
+ * @author Ondrej Sykora
+ */
+public enum SolverEngineType {
+	/**
+	 * The constraint propagation and backtracking search implemented by
+	 * {@link Sudoku}.
+	 */
+	PROPAGATION {
+		public SolverEngine create(int _squareSize) {
+			return new Sudoku(_squareSize);
+		}
+	},
+	/**
+	 * The search of {@link Sudoku} with conflict-directed backjumping and
+	 * nogood learning.
+	 *
+	 * @see Sudoku#setBackjumpingEnabled(boolean)
+	 */
+	BACKJUMPING {
+		public SolverEngine create(int _squareSize) {
+			Sudoku sudoku = new Sudoku(_squareSize);
+			sudoku.setBackjumpingEnabled(true);
+			return sudoku;
+		}
+	},
+	/**
+	 * The exact cover search implemented by {@link DancingLinksEngine}.
+	 */
+	DANCING_LINKS {
+		public SolverEngine create(int _squareSize) {
+			return new DancingLinksEngine(_squareSize);
+		}
+	};
+
+	/**
+	 * Creates a new engine of this type.
+	 *
+	 * @param _squareSize the size of an edge of a square group.
+	 * @return the new engine.
+	 */
+	public abstract SolverEngine create(int _squareSize);
+}
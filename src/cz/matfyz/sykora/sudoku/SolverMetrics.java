@@ -0,0 +1,204 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregates the statistics of the solves of any number of solvers into
+ * counters and histograms, which can be exported in the text format
+ * of Prometheus. The metrics are collected only by solvers, to which they
+ * were attached through {@link Sudoku#setMetrics(SolverMetrics)}; the
+ * solvers without metrics pay only for a single check per solve.
+ * <p>
+ * The histogram buckets grow by a factor of four; the solve times start
+ * at one microsecond, the node counts at one node.
+ *
+ * @author Ondrej Sykora
+ */
+public class SolverMetrics {
+	/**
+	 * The number of finite buckets of the solve time histogram, covering
+	 * up to 4^12 microseconds, i.e. about 16.8 seconds.
+	 */
+	private static final int DURATION_BUCKETS = 13;
+	/**
+	 * The number of finite buckets of the node count histogram, covering
+	 * up to 4^15 nodes.
+	 */
+	private static final int NODE_BUCKETS = 16;
+	
+	private final LongAdder backtrackCount = new LongAdder();
+	
+	private final LongAdder budgetExhaustedCount = new LongAdder();
+	
+	private final LongAdder[] durationBuckets = createAdders(DURATION_BUCKETS + 1);
+	
+	private final LongAdder durationSum = new LongAdder();
+	
+	private final LongAdder nodeCount = new LongAdder();
+	
+	private final LongAdder[] nodeBuckets = createAdders(NODE_BUCKETS + 1);
+	
+	private final LongAdder propagationCount = new LongAdder();
+	
+	private final LongAdder solveCount = new LongAdder();
+	
+	private final LongAdder solvedCount = new LongAdder();
+	
+	/**
+	 * Returns the index of the smallest bucket with the upper bound
+	 * 4^i that contains the value, or <code>_buckets</code> for values
+	 * above all bounds.
+	 */
+	private static int bucketIndex(long _value, int _buckets) {
+		int bits = 64 - Long.numberOfLeadingZeros(Math.max(_value - 1, 0));
+		return Math.min((bits + 1) / 2, _buckets);
+	}
+	
+	private static LongAdder[] createAdders(int _count) {
+		LongAdder[] adders = new LongAdder[_count];
+		for(int i = 0; i < _count; i++)
+			adders[i] = new LongAdder();
+		return adders;
+	}
+	
+	/**
+	 * Returns the total number of backtracks of all recorded solves.
+	 *
+	 * @return the number of backtracks.
+	 */
+	public long getBacktrackCount() {
+		return backtrackCount.sum();
+	}
+	
+	/**
+	 * Returns the number of recorded solves that were stopped by their
+	 * limits.
+	 *
+	 * @return the number of stopped solves.
+	 */
+	public long getBudgetExhaustedCount() {
+		return budgetExhaustedCount.sum();
+	}
+	
+	/**
+	 * Returns the total number of nodes explored by all recorded solves.
+	 *
+	 * @return the number of nodes.
+	 */
+	public long getNodeCount() {
+		return nodeCount.sum();
+	}
+	
+	/**
+	 * Returns the total number of propagations of all recorded solves.
+	 *
+	 * @return the number of propagations.
+	 */
+	public long getPropagationCount() {
+		return propagationCount.sum();
+	}
+	
+	/**
+	 * Returns the number of recorded solves.
+	 *
+	 * @return the number of solves.
+	 */
+	public long getSolveCount() {
+		return solveCount.sum();
+	}
+	
+	/**
+	 * Returns the number of recorded solves that found a solution.
+	 *
+	 * @return the number of solved puzzles.
+	 */
+	public long getSolvedCount() {
+		return solvedCount.sum();
+	}
+	
+	/**
+	 * Adds the statistics of a solve to the metrics.
+	 *
+	 * @param _stats the statistics of the solve.
+	 */
+	public void record(SolveStats _stats) {
+		solveCount.increment();
+		if(_stats.result == SolveResult.SOLVED)
+			solvedCount.increment();
+		else if(_stats.result == SolveResult.BUDGET_EXHAUSTED)
+			budgetExhaustedCount.increment();
+		nodeCount.add(_stats.nodeCount);
+		backtrackCount.add(_stats.backtrackCount);
+		propagationCount.add(_stats.propagationCount);
+		durationSum.add(_stats.elapsedNanos);
+		durationBuckets[bucketIndex(_stats.elapsedNanos / 1000, DURATION_BUCKETS)].increment();
+		nodeBuckets[bucketIndex(_stats.nodeCount, NODE_BUCKETS)].increment();
+	}
+	
+	/**
+	 * Writes the current values of the metrics in the text exposition
+	 * format of Prometheus.
+	 *
+	 * @param _output the output, to which the metrics are written.
+	 * @throws IOException if writing to the output fails.
+	 */
+	public void writeText(Appendable _output) throws IOException {
+		writeCounter(_output, "sudoku_solves_total", "The number of solves.", solveCount.sum());
+		writeCounter(_output, "sudoku_solved_total", "The number of solves that found a solution.", solvedCount.sum());
+		writeCounter(_output, "sudoku_budget_exhausted_total", "The number of solves stopped by their limits.", budgetExhaustedCount.sum());
+		writeCounter(_output, "sudoku_nodes_total", "The number of search nodes.", nodeCount.sum());
+		writeCounter(_output, "sudoku_backtracks_total", "The number of backtracks.", backtrackCount.sum());
+		writeCounter(_output, "sudoku_propagations_total", "The number of propagations.", propagationCount.sum());
+		
+		_output.append("# HELP sudoku_solve_duration_seconds The duration of the solves.\n");
+		_output.append("# TYPE sudoku_solve_duration_seconds histogram\n");
+		long count = 0;
+		for(int i = 0; i < DURATION_BUCKETS; i++) {
+			count += durationBuckets[i].sum();
+			writeBucket(_output, "sudoku_solve_duration_seconds", Double.toString((1L << (2 * i)) / 1e6), count);
+		}
+		count += durationBuckets[DURATION_BUCKETS].sum();
+		writeBucket(_output, "sudoku_solve_duration_seconds", "+Inf", count);
+		_output.append("sudoku_solve_duration_seconds_sum ").append(Double.toString(durationSum.sum() / 1e9)).append('\n');
+		_output.append("sudoku_solve_duration_seconds_count ").append(Long.toString(count)).append('\n');
+		
+		_output.append("# HELP sudoku_solve_nodes The number of search nodes per solve.\n");
+		_output.append("# TYPE sudoku_solve_nodes histogram\n");
+		count = 0;
+		for(int i = 0; i < NODE_BUCKETS; i++) {
+			count += nodeBuckets[i].sum();
+			writeBucket(_output, "sudoku_solve_nodes", Long.toString(1L << (2 * i)), count);
+		}
+		count += nodeBuckets[NODE_BUCKETS].sum();
+		writeBucket(_output, "sudoku_solve_nodes", "+Inf", count);
+		_output.append("sudoku_solve_nodes_sum ").append(Long.toString(nodeCount.sum())).append('\n');
+		_output.append("sudoku_solve_nodes_count ").append(Long.toString(count)).append('\n');
+	}
+	
+	private static void writeBucket(Appendable _output, String _name, String _bound, long _count) throws IOException {
+		_output.append(_name).append("_bucket{le=\"").append(_bound).append("\"} ").append(Long.toString(_count)).append('\n');
+	}
+	
+	private static void writeCounter(Appendable _output, String _name, String _help, long _value) throws IOException {
+		_output.append("# HELP ").append(_name).append(' ').append(_help).append('\n');
+		_output.append("# TYPE ").append(_name).append(" counter\n");
+		_output.append(_name).append(' ').append(Long.toString(_value)).append('\n');
+	}
+}
@@ -0,0 +1,139 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A pool of solvers of a single size, for services that solve each request
+ * with its own solver. A borrowed solver is used by a single thread until
+ * it is returned; a returned solver is reset (see {@link Sudoku#reset()})
+ * and handed out again, so the easy puzzles do not pay for the creation of
+ * a solver.
+ * <p>
+ * The pool is safe for concurrent use and never blocks: when it is empty,
+ * a new solver is created, and when it already holds the maximal number of
+ * idle solvers, a returned solver is dropped. The configuration of a
+ * returned solver is kept, so a borrower that changes it should restore
+ * it before the solver is returned.
+ *
+ * @author Ondrej Sykora
+ */
+public class SolverPool {
+	/**
+	 * The default maximal number of idle solvers.
+	 */
+	public static final int DEFAULT_MAX_IDLE = 64;
+
+	private final int squareSize;
+
+	private final BlockingQueue<Sudoku> idle;
+
+	private final LongAdder createdCount = new LongAdder();
+
+	private final LongAdder reusedCount = new LongAdder();
+
+	/**
+	 * Borrows a solver with an empty game board.
+	 *
+	 * @return the solver.
+	 */
+	public Sudoku borrow() {
+		Sudoku sudoku = idle.poll();
+		if(sudoku != null) {
+			reusedCount.increment();
+			return sudoku;
+		}
+		createdCount.increment();
+		return new Sudoku(squareSize);
+	}
+
+	/**
+	 * Returns the number of solvers created by the pool.
+	 *
+	 * @return the number of created solvers.
+	 */
+	public long getCreatedCount() {
+		return createdCount.sum();
+	}
+
+	/**
+	 * Returns the number of idle solvers in the pool.
+	 *
+	 * @return the number of idle solvers.
+	 */
+	public int getIdleCount() {
+		return idle.size();
+	}
+
+	/**
+	 * Returns the number of borrows served by an idle solver.
+	 *
+	 * @return the number of reused solvers.
+	 */
+	public long getReusedCount() {
+		return reusedCount.sum();
+	}
+
+	/**
+	 * Returns the size of an edge of a square group of the solvers.
+	 *
+	 * @return the size of an edge of a square group.
+	 */
+	public int getSquareSize() {
+		return squareSize;
+	}
+
+	/**
+	 * Returns a borrowed solver to the pool. The solver must not be used
+	 * after it was returned.
+	 *
+	 * @param _sudoku the solver.
+	 * @throws IllegalArgumentException if the solver has a different size.
+	 */
+	public void release(Sudoku _sudoku) {
+		if(_sudoku.getSquareSize() != squareSize)
+			throw new IllegalArgumentException("Expected a solver of square size " + squareSize + ", found " + _sudoku.getSquareSize());
+		_sudoku.reset();
+		idle.offer(_sudoku);
+	}
+
+	/**
+	 * Creates a new pool with the default maximal number of idle solvers.
+	 *
+	 * @param _squareSize the size of an edge of a square group.
+	 */
+	public SolverPool(int _squareSize) {
+		this(_squareSize, DEFAULT_MAX_IDLE);
+	}
+
+	/**
+	 * Creates a new pool.
+	 *
+	 * @param _squareSize the size of an edge of a square group.
+	 * @param _maxIdle the maximal number of idle solvers kept by the pool.
+	 */
+	public SolverPool(int _squareSize, int _maxIdle) {
+		if(_squareSize < Sudoku.MIN_SQUARE_SIZE || _squareSize > Sudoku.MAX_SQUARE_SIZE)
+			throw new IllegalArgumentException("Unsupported square size: " + _squareSize);
+		if(_maxIdle < 1)
+			throw new IllegalArgumentException("The maximal number of idle solvers must be positive");
+		squareSize = _squareSize;
+		idle = new ArrayBlockingQueue<Sudoku>(_maxIdle);
+	}
+}
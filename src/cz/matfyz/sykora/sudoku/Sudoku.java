@@ -16,329 +16,2390 @@
  */
 package cz.matfyz.sykora.sudoku;
 
-import java.awt.Point;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import jdk.jfr.FlightRecorder;
 
 /**
  * The core of the sudoku solver. Maintains the game state, the backtracking
  * stack and implements the search and constraint propagation algorithms.
- * 
+ * <p>
+ * The game state is stored in flat primitive arrays indexed by the cell
+ * index <code>x + y * size</code>, where <code>size</code> is the number
+ * of cells in a row. The values that can be assigned to
+ * a cell are kept as a bit mask, where bit <code>i</code> stands for the
+ * value <code>i + 1</code>.
+ *
  * @author Ondrej Sykora
  */
-public class Sudoku {
+public class Sudoku implements SolverEngine {
 	/**
-	 * The size of an edge of a square group. This is square root of
-	 * the size of a group in the game. 
+	 * The default size of an edge of a square group, used by {@link #Sudoku()}.
 	 */
 	public static final int GAME_SQUARE_SIZE = 3;
 	/**
-	 * The size of the game board (the number of cells in a row/column).
+	 * The default size of the game board (the number of cells in
+	 * a row/column), used by {@link #Sudoku()}.
 	 */
 	public static final int GAME_SIZE = GAME_SQUARE_SIZE * GAME_SQUARE_SIZE;
 	/**
-	 * Contains the list adjacent groups for each cell in the game. An
-	 * adjacent group is a group of cells in the same column, row, or
+	 * The smallest supported size of an edge of a square group.
+	 */
+	public static final int MIN_SQUARE_SIZE = 2;
+	/**
+	 * The largest supported size of an edge of a square group. The values
+	 * of a cell are kept in a <code>long</code> bit mask, so a group may
+	 * have at most 64 cells.
+	 */
+	public static final int MAX_SQUARE_SIZE = 8;
+	/**
+	 * The propagation stages in the order, in which they are run. Cached,
+	 * because {@link PropagationStage#values()} returns a new array.
+	 */
+	private static final PropagationStage[] PROPAGATION_STAGES = PropagationStage.values();
+	/**
+	 * The initial capacity of the backtracking trail.
+	 */
+	private static final int INITIAL_TRAIL_CAPACITY = 1024;
+	/**
+	 * The number of search nodes between two checks of the cancellation
+	 * flags and the deadline, as documented by {@link SolveLimits}. Must be
+	 * a power of two.
+	 */
+	private static final int CANCELLATION_CHECK_INTERVAL = 64;
+	/**
+	 * The number of nogoods kept by the search with backjumping. When the
+	 * cache is full, the oldest nogood is replaced.
+	 */
+	private static final int NOGOOD_CACHE_SIZE = 256;
+	/**
+	 * The maximal number of assignments of a learned nogood. Longer nogoods
+	 * are rarely matched again, so they are not kept.
+	 */
+	private static final int MAX_NOGOOD_LENGTH = 8;
+	/**
+	 * The number of search nodes a task of the parallel search explores
+	 * on its own before its subtree is considered large and split to
+	 * smaller tasks.
+	 */
+	private static final int PARALLEL_SPLIT_NODES = 2048;
+	/**
+	 * The number of tasks queued by a worker of the parallel search, above
+	 * which its subtrees are not split, because the other workers already
+	 * have enough tasks to steal.
+	 */
+	private static final int PARALLEL_SURPLUS_TASKS = 2;
+	/**
+	 * The default threshold for {@link SlowSolveEvent}, 100 milliseconds.
+	 */
+	public static final long DEFAULT_SLOW_SOLVE_THRESHOLD_NANOS = 100000000L;
+	/**
+	 * The minimal duration of a solve, for which {@link SlowSolveEvent} is
+	 * emitted.
+	 */
+	private static volatile long slowSolveThresholdNanos = DEFAULT_SLOW_SOLVE_THRESHOLD_NANOS;
+	/**
+	 * The bit mask that contains all values that can be assigned to a cell.
+	 */
+	private final long allValues;
+	/**
+	 * The number of cells on the game board.
+	 */
+	private final int cellCount;
+	/**
+	 * The number of groups on the game board (rows, columns and squares).
+	 */
+	private final int groupCount;
+	/**
+	 * The size of the game board (the number of cells in a row/column).
+	 */
+	private final int size;
+	/**
+	 * The size of an edge of a square group. This is square root of
+	 * the size of a group in the game.
+	 */
+	private final int squareSize;
+	/**
+	 * Set to <code>true</code> if the search jumps back over the choice
+	 * points that did not cause a contradiction, and learns nogoods.
+	 *
+	 * @see #setBackjumpingEnabled(boolean)
+	 */
+	private boolean backjumpingEnabled;
+	/**
+	 * The strategy used to select the cell to branch on.
+	 */
+	private BranchingStrategy branchingStrategy;
+	/**
+	 * For each number of candidates, the index of the first unassigned cell
+	 * with this number of candidates, or <code>-1</code> if there is no such
+	 * cell. Together with {@link #bucketNext} and {@link #bucketPrevious},
+	 * this forms an index of unassigned cells by the number of candidates,
+	 * which is updated whenever the candidates of a cell change.
+	 */
+	private int[] bucketHeads;
+	/**
+	 * The next cell in the same bucket of the candidate count index, or
+	 * <code>-1</code> for the last cell in the bucket.
+	 */
+	private int[] bucketNext;
+	/**
+	 * The previous cell in the same bucket of the candidate count index, or
+	 * <code>-1</code> for the first cell in the bucket.
+	 */
+	private int[] bucketPrevious;
+	/**
+	 * Contains the bit masks of the values that can be assigned to each
+	 * cell. For a cell with an assigned value, the mask contains just the
+	 * assigned value.
+	 */
+	private long[] candidates;
+	/**
+	 * For each cell, the bucket of the candidate count index that contains
+	 * the cell, or <code>-1</code> if the cell has an assigned value.
+	 */
+	private int[] cellBuckets;
+	/**
+	 * Contains the indices of the adjacent groups for each cell in the game.
+	 * An adjacent group is a group of cells in the same column, row, or
 	 * square as the given cell.
 	 */
-	private List<Point[]>[][] adjacentGroups;
+	private int[][] cellGroups;
+	/**
+	 * The choice points, on which the last contradiction found by the
+	 * search with backjumping depends, in the format of
+	 * {@link #dependencies}.
+	 */
+	private long conflictDependencies;
+	/**
+	 * The cell of the choice point at each depth of the search with
+	 * backjumping.
+	 */
+	private int[] decisionCells;
+	/**
+	 * The value of the choice point at each depth of the search with
+	 * backjumping.
+	 */
+	private int[] decisionValues;
+	/**
+	 * For each cell with an assigned value, the choice points that the
+	 * value depends on, maintained by the search with backjumping. Bit
+	 * <code>d</code> stands for the choice point at depth <code>d</code>;
+	 * bit 63 stands for all choice points at depth 63 or more.
+	 */
+	private long[] dependencies;
+	/**
+	 * A temporary buffer used by the hidden pairs stage. For each value,
+	 * contains the mask of positions in a group where the value can be
+	 * placed.
+	 */
+	private long[] digitPositions;
+	/**
+	 * The number of candidates removed by each propagation stage, indexed
+	 * by the ordinal of the stage.
+	 *
+	 * @see PropagationStage
+	 */
+	private long[] eliminationCounts;
+	/**
+	 * The choice points, on which the elimination in progress depends, in
+	 * the format of {@link #dependencies}. Set before the candidates are
+	 * removed by the search with backjumping.
+	 */
+	private long eliminationCause;
+	/**
+	 * For each cell and each value removed from its candidates, the choice
+	 * points that the removal depends on, in the format of
+	 * {@link #dependencies}, indexed by <code>cell * size + value - 1</code>.
+	 * An entry is written when the value is removed and only read while it
+	 * stays removed, so it does not need to be saved on the trail.
+	 */
+	private long[] eliminationReasons;
+	/**
+	 * Contains the indices of the cells in each group on the game board.
+	 */
+	private int[][] groups;
+	/**
+	 * For each intersection of a square with a row or column, the indices
+	 * of the square and of the row or column.
+	 *
+	 * @see #intersections
+	 */
+	private int[][] intersectionGroups;
+	/**
+	 * For each intersection of a square with a row or column, the cells
+	 * of the square outside of the intersection.
+	 *
+	 * @see #intersections
+	 */
+	private int[][] intersectionSquareRest;
+	/**
+	 * For each intersection of a square with a row or column, the cells
+	 * of the row or column outside of the intersection.
+	 *
+	 * @see #intersections
+	 */
+	private int[][] intersectionLineRest;
+	/**
+	 * Contains the cells of each intersection of a square with a row or
+	 * a column. Used by the locked candidates stage.
+	 */
+	private int[][] intersections;
+	/**
+	 * The metrics, to which the statistics of the solves are added, or
+	 * <code>null</code>.
+	 */
+	private SolverMetrics metrics;
+	/**
+	 * The cells of the assignments of the learned nogoods, at most
+	 * {@link #MAX_NOGOOD_LENGTH} per nogood.
+	 */
+	private int[] nogoodCells;
+	/**
+	 * The number of learned nogoods in the cache.
+	 */
+	private int nogoodCount;
+	/**
+	 * For each cell and value, the number of learned nogoods that contain
+	 * the assignment of the value to the cell, indexed by
+	 * <code>cell * size + value - 1</code>.
+	 */
+	private int[] nogoodKeyCounts;
+	/**
+	 * The number of assignments of each learned nogood.
+	 */
+	private int[] nogoodLengths;
+	/**
+	 * The slot of the cache, to which the next nogood is written.
+	 */
+	private int nogoodNext;
+	/**
+	 * The values of the assignments of the learned nogoods.
+	 */
+	private int[] nogoodValues;
+	/**
+	 * Contains the indices of all cells that share a group with the given
+	 * cell, not including the cell itself.
+	 */
+	private int[][] peers;
+	/**
+	 * Enables the propagation stages, indexed by the ordinal of the stage.
+	 *
+	 * @see PropagationStage
+	 */
+	private boolean[] propagationStages;
+	/**
+	 * The number of runs of the propagation since the start of the solve.
+	 */
+	private long propagationCount;
+	/**
+	 * The time spent in the propagation since the start of the solve, if
+	 * {@link #propagationTimed} is set.
+	 */
+	private long propagationNanos;
+	/**
+	 * Set to <code>true</code> if the time spent in the propagation is
+	 * measured. This costs two reads of the timer per node, so it is
+	 * enabled only when the caller asks for the statistics.
+	 */
+	private boolean propagationTimed;
+	/**
+	 * The list of cells, whose value has changed, and the constraints
+	 * arising from these changes need to be propagated through the
+	 * game board. This is a ring buffer; a cell is stored in the list at
+	 * most once, so <code>cellCount</code> elements are always enough.
+	 *
+	 * @see #propagateListHead
+	 * @see #propagateListSize
+	 * @see #propagateListMembers
+	 */
+	private int[] propagateList;
+	/**
+	 * The position of the first element of {@link #propagateList}.
+	 */
+	private int propagateListHead;
+	/**
+	 * A bit set of the cells stored in {@link #propagateList}.
+	 */
+	private long[] propagateListMembers;
+	/**
+	 * The number of elements in {@link #propagateList}.
+	 */
+	private int propagateListSize;
+	/**
+	 * Set to <code>true</code> when the search was stopped by the node limit
+	 * or by the cancellation flag before it explored the whole tree.
+	 */
+	private boolean searchAborted;
+	/**
+	 * Set to <code>true</code> if the current search uses backjumping and
+	 * learns nogoods.
+	 */
+	private boolean searchBackjumping;
+	/**
+	 * The number of backjumps of the search, i.e. of choice points left
+	 * without trying their remaining values.
+	 */
+	private long searchBackjumps;
+	/**
+	 * The number of values not tried by the search because of a backjump.
+	 */
+	private long searchSkippedBranches;
+	/**
+	 * The number of nogoods learned by the search.
+	 */
+	private long searchNogoodsLearned;
+	/**
+	 * The number of values not tried by the search because of a learned
+	 * nogood.
+	 */
+	private long searchNogoodPrunes;
+	/**
+	 * The token that stops the search, or <code>null</code>.
+	 */
+	private CancellationToken searchCancellationToken;
+	/**
+	 * The listener that observes the search, or <code>null</code>.
+	 */
+	private SolveProgressListener searchProgressListener;
+	/**
+	 * The deadline of the search, in the time of {@link System#nanoTime()}.
+	 * Valid only if {@link #searchDeadlineSet} is set.
+	 */
+	private long searchDeadlineNanos;
+	/**
+	 * Set to <code>true</code> if the search has a deadline.
+	 */
+	private boolean searchDeadlineSet;
+	/**
+	 * The number of values tried by the search that led to a contradiction.
+	 */
+	private long searchBacktracks;
+	/**
+	 * The maximal depth reached by the search.
+	 */
+	private int searchMaxDepth;
+	/**
+	 * The parallel search this solver takes part in, or <code>null</code>.
+	 * Its cancellation flag is checked periodically by the search, and the
+	 * solutions are counted by its shared counter.
+	 */
+	private ParallelSearch parallelSearch;
+	/**
+	 * The maximal number of nodes explored by the search.
+	 */
+	private long searchNodeLimit;
+	/**
+	 * The number of nodes explored by the search.
+	 */
+	private long searchNodes;
+	/**
+	 * The number of solutions found by the search of this solver.
+	 */
+	private int solutionCount;
+	/**
+	 * The number of solutions, after which the search stops.
+	 */
+	private int solutionLimit;
+	/**
+	 * The statistics used for the metrics and the events when the caller
+	 * does not ask for them. Created on first use.
+	 */
+	private SolveStats solveStats;
+	/**
+	 * Set to <code>false</code> if a contradiction was found while the
+	 * constraints of the current game state were propagated, e.g. when
+	 * the loaded game state contains a collision.
+	 */
+	private boolean stateConsistent;
+	/**
+	 * Set to <code>true</code> when the values on the game board were
+	 * changed through {@link #setValue(int, int, int)} or
+	 * {@link #clearValue(int, int)}, and the candidate masks must be
+	 * recomputed before the search.
+	 */
+	private boolean stateModified;
+	/**
+	 * The current depth of the search, i.e. the number of choice points
+	 * recorded in {@link #trailMarks}.
+	 */
+	private int stackPosition;
+	/**
+	 * The stamp of the current choice point. A cell or a group is saved
+	 * to the trail only if its stamp in {@link #trailStamps} differs from
+	 * this value, i.e. at most once per choice point.
+	 */
+	private int trailStamp;
+	/**
+	 * Contains the saved dependencies of the cells of the trail entries,
+	 * when the search uses backjumping.
+	 *
+	 * @see #dependencies
+	 */
+	private long[] trailDependencies;
+	/**
+	 * Contains the slot indices of the trail entries. Indices lower than
+	 * <code>cellCount</code> refer to cells, the others to groups.
+	 */
+	private int[] trailIndices;
+	/**
+	 * For each choice point, the size of the trail at the time the choice
+	 * point was created.
+	 *
+	 * @see #pushGameState()
+	 * @see #popGameState()
+	 */
+	private int[] trailMarks;
+	/**
+	 * Contains the saved candidate masks (for cells) or the masks of used
+	 * values (for groups) of the trail entries.
+	 */
+	private long[] trailMasks;
+	/**
+	 * The number of entries on the trail.
+	 */
+	private int trailSize;
+	/**
+	 * Contains, for each cell and group, the stamp of the choice point
+	 * at which it was last saved to the trail.
+	 *
+	 * @see #trailStamp
+	 */
+	private int[] trailStamps;
+	/**
+	 * Contains the saved assigned values of the trail entries.
+	 */
+	private int[] trailValues;
+	/**
+	 * Contains the bit masks of values already assigned in each group.
+	 */
+	private long[] usedValues;
+	/**
+	 * The strategy used to order the values tried at each node.
+	 */
+	private ValueOrdering valueOrdering;
+	/**
+	 * Contains the values assigned to the cells, or zero for cells without
+	 * an assigned value.
+	 */
+	private int[] values;
+	/**
+	 * Buffers for the ordered values at each depth of the search. The
+	 * buffers are created on first use, because the search rarely gets
+	 * deep.
+	 *
+	 * @see ValueOrdering
+	 * @see #getValueBuffer(int)
+	 */
+	private int[][] valueBuffers;
+
+	/**
+	 * The state shared by the tasks of a parallel search.
+	 */
+	private static class ParallelSearch {
+		/**
+		 * Set when the limit of solutions was reached, to stop all tasks.
+		 */
+		final AtomicBoolean cancelled = new AtomicBoolean();
+		/**
+		 * The values of the first solution found.
+		 */
+		final AtomicReference<int[]> solution = new AtomicReference<int[]>();
+		/**
+		 * The number of solutions found by all tasks.
+		 */
+		final AtomicInteger solutionCount = new AtomicInteger();
+		/**
+		 * The number of solutions, after which the search stops.
+		 */
+		final int solutionLimit;
+
+		/**
+		 * Counts a solution found on the given board.
+		 *
+		 * @return <code>true</code> if the limit of solutions was reached;
+		 * 			otherwise, <code>false</code>.
+		 */
+		boolean offerSolution(Sudoku _board) {
+			if(solution.get() == null)
+				solution.compareAndSet(null, _board.values.clone());
+			if(solutionCount.incrementAndGet() < solutionLimit)
+				return false;
+			cancelled.set(true);
+			return true;
+		}
+
+		ParallelSearch(int _solutionLimit) {
+			solutionLimit = _solutionLimit;
+		}
+	}
+
+	/**
+	 * Searches the subtree of the game state of its board. If the subtree
+	 * turns out to be large, the remaining values of the top-level cell are
+	 * split to new tasks.
+	 */
+	private static class SearchTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Sudoku board;
+
+		private final ParallelSearch parallelSearch;
+
+		protected void compute() {
+			Sudoku board = this.board;
+			if(parallelSearch.cancelled.get())
+				return;
+			board.startSearch(PARALLEL_SPLIT_NODES, parallelSearch.solutionLimit, parallelSearch);
+			int cell = board.branchingStrategy.selectCell(board);
+			if(cell < 0) {
+				board.acceptSolution();
+				return;
+			}
+			if(board.candidates[cell] == 0)
+				return;
+			int[] ordered_values = board.getValueBuffer(0);
+			int count = board.valueOrdering.orderValues(board, cell, ordered_values);
+			for(int i=0; i < count; i++) {
+				int solution_count = board.solutionCount;
+				board.pushGameState();
+				if(board.assign(cell, ordered_values[i]) && board.propagateAll() && board.search())
+					return;
+				board.popGameState();
+				if(board.searchAborted) {
+					if(!parallelSearch.cancelled.get()) {
+						// The solutions found in the aborted subtree are found
+						// again by the new tasks
+						parallelSearch.solutionCount.addAndGet(solution_count - board.solutionCount);
+						split(cell, ordered_values, i, count);
+					}
+					return;
+				}
+			}
+		}
+
+		/**
+		 * Creates a task for each of the given values of the cell and runs
+		 * them. The values before <code>_first</code> were already explored.
+		 */
+		private void split(int _cell, int[] _values, int _first, int _count) {
+			List<SearchTask> tasks = new ArrayList<SearchTask>(_count - _first);
+			for(int i = _first; i < _count; i++) {
+				// The board of this task is reused for the last value
+				Sudoku child = i + 1 < _count ? new Sudoku(board) : board;
+				if(child.assign(_cell, _values[i]) && child.propagateAll())
+					tasks.add(new SearchTask(child, parallelSearch));
+			}
+			invokeAll(tasks);
+		}
+
+		SearchTask(Sudoku _board, ParallelSearch _parallelSearch) {
+			board = _board;
+			parallelSearch = _parallelSearch;
+		}
+	}
+
+	/**
+	 * Returns the choice points, on which the absence of the given values
+	 * from the candidates of the cell depends: the dependencies of the
+	 * assigned value, or the reasons of the removals of the values.
+	 *
+	 * @param _cell the index of the cell.
+	 * @param _mask the mask of the values.
+	 * @see #eliminationReasons
+	 */
+	private long absenceDependencies(int _cell, long _mask) {
+		if(values[_cell] != 0)
+			return dependencies[_cell];
+		long absence = 0;
+		int base = _cell * size;
+		for(long mask = _mask & ~candidates[_cell]; mask != 0; mask &= mask - 1)
+			absence |= eliminationReasons[base + Long.numberOfTrailingZeros(mask)];
+		return absence;
+	}
+
+	/**
+	 * Returns the choice points, on which the absence of the given values
+	 * from the cells of a group depends.
+	 *
+	 * @param _cells the cells of the group.
+	 * @param _mask the mask of the values.
+	 * @param _skipped the mask of positions in the group of cells that are
+	 * 			not included.
+	 */
+	private long absenceDependencies(int[] _cells, long _mask, long _skipped) {
+		long absence = 0;
+		for(int i=0; i < _cells.length; i++)
+			if((_skipped & (1L << i)) == 0)
+				absence |= absenceDependencies(_cells[i], _mask);
+		return absence;
+	}
+
+	/**
+	 * Counts the solution in the current game state.
+	 *
+	 * @return <code>true</code> if the limit of solutions was reached and
+	 * 			the search should stop; otherwise, <code>false</code>.
+	 */
+	private boolean acceptSolution() {
+		solutionCount++;
+		if(parallelSearch != null)
+			return parallelSearch.offerSolution(this);
+		return solutionCount >= solutionLimit;
+	}
+
+	/**
+	 * Assigns a value to a cell, updates the masks of used values of the
+	 * adjacent groups and schedules the cell for propagation. The masks of
+	 * used values are also used to detect collisions, so that the game state
+	 * does not need to be validated after the propagation.
+	 *
+	 * @param _cell the index of the cell.
+	 * @param _value the value assigned to the cell.
+	 * @return <code>false</code> if the value is already assigned to another
+	 * 			cell in one of the adjacent groups; otherwise, <code>true</code>.
+	 */
+	private boolean assign(int _cell, int _value) {
+		long mask = 1L << (_value - 1);
+		int[] cell_groups = cellGroups[_cell];
+		for(int i = 0; i < cell_groups.length; i++)
+			if((usedValues[cell_groups[i]] & mask) != 0) {
+				if(searchBackjumping)
+					conflictDependencies = eliminationCause
+							| valueDependencies(groups[cell_groups[i]], _value);
+				return false;
+			}
+		saveCell(_cell);
+		values[_cell] = _value;
+		candidates[_cell] = mask;
+		if(searchBackjumping)
+			dependencies[_cell] = eliminationCause;
+		updateIndex(_cell);
+		for(int i = 0; i < cell_groups.length; i++) {
+			int group = cell_groups[i];
+			saveGroup(group);
+			usedValues[group] |= mask;
+		}
+		enqueueCell(_cell);
+		return true;
+	}
+
+	/**
+	 * Returns the number of peers of the given cell without an assigned
+	 * value.
+	 *
+	 * @param _cell the index of the cell.
+	 * @return the number of unassigned peers.
+	 */
+	int countUnassignedPeers(int _cell) {
+		int[] cell_peers = peers[_cell];
+		int count = 0;
+		for(int i=0; i < cell_peers.length; i++)
+			if(values[cell_peers[i]] == 0)
+				count++;
+		return count;
+	}
+
+	/**
+	 * Counts the solutions of the puzzle like
+	 * {@link #countSolutions(int, ForkJoinPool)}, using the common
+	 * <code>ForkJoinPool</code> for hard puzzles.
+	 *
+	 * @param _limit the number of solutions, after which the counting stops.
+	 * @return the number of solutions, at most <code>_limit</code>.
+	 */
+	public int countSolutions(int _limit) {
+		return countSolutions(_limit, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Counts the solutions of the puzzle, up to the given limit. With the
+	 * limit 2, this is the check if the puzzle has a unique solution.
+	 * <p>
+	 * The search is split to tasks like in
+	 * {@link #solveParallel(ForkJoinPool)}, and the tasks count the solutions
+	 * in a shared counter. Unlike {@link #solve()}, the game state is left
+	 * unchanged, so the puzzle can be solved or modified afterwards.
+	 *
+	 * @param _limit the number of solutions, after which the counting stops.
+	 * @param _pool the pool that runs the tasks.
+	 * @return the number of solutions, at most <code>_limit</code>.
+	 * @throws IllegalArgumentException if the limit is not positive.
+	 */
+	public int countSolutions(int _limit, ForkJoinPool _pool) {
+		if(_limit < 1)
+			throw new IllegalArgumentException("The limit must be positive: " + _limit);
+		if(stateModified)
+			rebuildGameState();
+		if(!stateConsistent)
+			return 0;
+		startSearch(PARALLEL_SPLIT_NODES, _limit, null);
+		boolean limit_reached = search();
+		// Restore the puzzle
+		while(stackPosition > 0)
+			popGameState();
+		if(limit_reached || !searchAborted)
+			return solutionCount;
+
+		// The solutions found so far are counted again by the tasks
+		ParallelSearch parallel_search = new ParallelSearch(_limit);
+		_pool.invoke(new SearchTask(new Sudoku(this), parallel_search));
+		return Math.min(parallel_search.solutionCount.get(), _limit);
+	}
+
+	/**
+	 * Removes all cells from the propagation list.
+	 */
+	private void clearPropagateList() {
+		for(; propagateListSize > 0; propagateListSize--) {
+			int cell = propagateList[propagateListHead];
+			propagateListMembers[cell >>> 6] &= ~(1L << cell);
+			if(++propagateListHead == cellCount)
+				propagateListHead = 0;
+		}
+	}
+
+	/**
+	 * Clears the value of the cell at the given position.
+	 *
+	 * @param x the X position of the cell.
+	 * @param y the Y position of the cell.
+	 */
+	public void clearValue(int x, int y) {
+		int cell = x + y * size;
+		values[cell] = 0;
+		candidates[cell] = allValues;
+		stateModified = true;
+	}
+
+	/**
+	 * Prints the current state of the game to standard output (for
+	 * debugging purposes).
+	 */
+	public void debugOutput() {
+		for(int y=0; y < size; y++) {
+			for(int x=0; x < size; x++) {
+				System.out.print(values[x + y * size]);
+				if(x < size)
+					System.out.print(" ");
+			}
+			System.out.println();
+		}
+	}
+
+	/**
+	 * Removes the given values from the candidates of an unassigned cell.
+	 * If a single candidate is left, it is assigned to the cell.
+	 *
+	 * @param _cell the index of the cell.
+	 * @param _mask the mask of the removed values.
+	 * @return the number of removed candidates, or <code>-1</code> if the
+	 * 			cell was left without candidates.
+	 */
+	private int eliminate(int _cell, long _mask) {
+		long cell_candidates = candidates[_cell];
+		long removed = cell_candidates & _mask;
+		if(removed == 0 || values[_cell] != 0)
+			return 0;
+		saveCell(_cell);
+		cell_candidates &= ~_mask;
+		candidates[_cell] = cell_candidates;
+		updateIndex(_cell);
+		if(searchBackjumping) {
+			int base = _cell * size;
+			for(long mask = removed; mask != 0; mask &= mask - 1)
+				eliminationReasons[base + Long.numberOfTrailingZeros(mask)] = eliminationCause;
+			if(cell_candidates == 0)
+				conflictDependencies = absenceDependencies(_cell, allValues);
+		}
+		if(cell_candidates == 0)
+			return -1;
+		if((cell_candidates & (cell_candidates - 1)) == 0) {
+			// The last value depends on the removals of all other values
+			long cause = eliminationCause;
+			if(searchBackjumping)
+				eliminationCause = absenceDependencies(_cell, allValues);
+			boolean assigned = assign(_cell, Long.numberOfTrailingZeros(cell_candidates) + 1);
+			eliminationCause = cause;
+			if(!assigned)
+				return -1;
+		}
+		return Long.bitCount(removed);
+	}
+
+	/**
+	 * Removes the given values from the candidates of the given cells.
+	 *
+	 * @return the number of removed candidates, or <code>-1</code> if a cell
+	 * 			was left without candidates.
+	 */
+	private int eliminateAll(int[] _cells, long _mask) {
+		int eliminated = 0;
+		for(int i=0; i < _cells.length; i++) {
+			int removed = eliminate(_cells[i], _mask);
+			if(removed < 0)
+				return -1;
+			eliminated += removed;
+		}
+		return eliminated;
+	}
+
+	/**
+	 * Checks if a task of the parallel search should continue with its
+	 * subtree instead of splitting it, and raises the node limit if so.
+	 *
+	 * @return <code>true</code> if the node limit was raised; otherwise,
+	 * 			<code>false</code>.
+	 */
+	private boolean extendParallelNodeLimit() {
+		if(parallelSearch == null || !ForkJoinTask.inForkJoinPool()
+				|| ForkJoinTask.getSurplusQueuedTaskCount() <= PARALLEL_SURPLUS_TASKS)
+			return false;
+		searchNodeLimit = searchNodes + PARALLEL_SPLIT_NODES;
+		return true;
+	}
+
+	/**
+	 * Returns the first unassigned cell with the given number of candidates
+	 * from the candidate count index.
+	 *
+	 * @param _count the number of candidates.
+	 * @return the index of the cell, or <code>-1</code> if there is no
+	 * 			unassigned cell with <code>_count</code> candidates.
+	 * @see #nextCellWithCandidateCount(int)
+	 */
+	int firstCellWithCandidateCount(int _count) {
+		return bucketHeads[_count];
+	}
+
+	/**
+	 * Returns the strategy used to select the cell to branch on.
+	 *
+	 * @return the branching strategy.
+	 */
+	public BranchingStrategy getBranchingStrategy() {
+		return branchingStrategy;
+	}
+
+	/**
+	 * Returns the bit mask of the values that can be assigned to the given
+	 * cell.
+	 *
+	 * @param _cell the index of the cell.
+	 * @return the mask of candidates.
+	 */
+	long getCandidates(int _cell) {
+		return candidates[_cell];
+	}
+
+	/**
+	 * Returns the indices of all cells that share a group with the given
+	 * cell. The returned array must not be modified.
+	 *
+	 * @param _cell the index of the cell.
+	 * @return the indices of the peers.
+	 */
+	int[] getPeers(int _cell) {
+		return peers[_cell];
+	}
+
+	/**
+	 * Adds the cell to the propagation list, unless it is already there.
+	 *
+	 * @param _cell the index of the cell.
+	 */
+	private void enqueueCell(int _cell) {
+		long bit = 1L << _cell;
+		if((propagateListMembers[_cell >>> 6] & bit) != 0)
+			return;
+		propagateListMembers[_cell >>> 6] |= bit;
+		int tail = propagateListHead + propagateListSize;
+		if(tail >= cellCount)
+			tail -= cellCount;
+		propagateList[tail] = _cell;
+		propagateListSize++;
+	}
+
+	/**
+	 * Returns the character that stands for the given value in the
+	 * one-character-per-cell format accepted by {@link #parseValue(char)}.
+	 *
+	 * @param _value the value, or zero for an empty cell.
+	 * @return the character that stands for the value; <code>'.'</code> for
+	 * 			an empty cell.
+	 * @throws IllegalArgumentException if the value can't be represented by
+	 * 			a single character.
+	 */
+	public static char formatValue(int _value) {
+		if(_value == 0)
+			return '.';
+		if(_value > 0 && _value <= 9)
+			return (char)('0' + _value);
+		if(_value >= 10 && _value <= 35)
+			return (char)('A' + _value - 10);
+		throw new IllegalArgumentException("Value can't be formatted as a character: " + _value);
+	}
+
+	/**
+	 * Returns the number of candidates removed by the given propagation
+	 * stage since the creation of the solver, or since the last call to
+	 * {@link #resetEliminationCounts()}.
+	 *
+	 * @param _stage the propagation stage.
+	 * @return the number of removed candidates.
+	 */
+	public long getEliminationCount(PropagationStage _stage) {
+		return eliminationCounts[_stage.ordinal()];
+	}
+
+	/**
+	 * Returns the metrics, to which the statistics of the solves are added.
+	 *
+	 * @return the metrics, or <code>null</code> if none are attached.
+	 */
+	public SolverMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Returns the minimal duration of a solve, for which
+	 * {@link SlowSolveEvent} is emitted.
+	 *
+	 * @return the threshold in nanoseconds.
+	 */
+	public static long getSlowSolveThresholdNanos() {
+		return slowSolveThresholdNanos;
+	}
+
+	/**
+	 * Returns the size of the game board (the number of cells in
+	 * a row/column). This is also the largest value that can be assigned
+	 * to a cell.
+	 *
+	 * @return the size of the game board.
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns the size of an edge of a square group.
+	 *
+	 * @return the size of an edge of a square group.
+	 */
+	public int getSquareSize() {
+		return squareSize;
+	}
+
+	/**
+	 * Returns the value assigned to the cell at the given position.
+	 *
+	 * @param x the X position of the cell.
+	 * @param y the Y position of the cell.
+	 * @return the value of the cell at the given position, or zero if
+	 * 			no value is assigned to the cell.
+	 */
+	public int getValue(int x, int y) {
+		return values[x + y * size];
+	}
+
+	private void initialize() {
+		initializeState();
+
+		// Configure the propagation
+		propagationStages = new boolean[PROPAGATION_STAGES.length];
+		propagationStages[PropagationStage.NAKED_SINGLES.ordinal()] = true;
+		propagationStages[PropagationStage.HIDDEN_SINGLES.ordinal()] = true;
+		propagationStages[PropagationStage.LOCKED_CANDIDATES.ordinal()] = true;
+
+		branchingStrategy = new MinimumRemainingValuesBranching();
+		valueOrdering = new AscendingValueOrdering();
+
+		// Share the topology of the board with the other solvers
+		BoardTopology topology = BoardTopology.get(squareSize);
+		groups = topology.groups;
+		cellGroups = topology.cellGroups;
+		peers = topology.peers;
+		intersections = topology.intersections;
+		intersectionGroups = topology.intersectionGroups;
+		intersectionLineRest = topology.intersectionLineRest;
+		intersectionSquareRest = topology.intersectionSquareRest;
+	}
+
+	/**
+	 * Creates the arrays of the game state, the backtracking trail, the
+	 * candidate count index and the propagation list. The topology of the
+	 * board (groups, peers and intersections) is not touched.
+	 */
+	private void initializeState() {
+		// Create the game state and the backtracking trail
+		candidates = new long[cellCount];
+		values = new int[cellCount];
+		usedValues = new long[groupCount];
+		Arrays.fill(candidates, allValues);
+		stateModified = true;
+		trailIndices = new int[INITIAL_TRAIL_CAPACITY];
+		trailMasks = new long[INITIAL_TRAIL_CAPACITY];
+		trailValues = new int[INITIAL_TRAIL_CAPACITY];
+		trailMarks = new int[cellCount + 1];
+		trailStamps = new int[cellCount + groupCount];
+		stackPosition = 0;
+		trailSize = 0;
+		trailStamp = 0;
+		valueBuffers = new int[cellCount + 1][];
+		digitPositions = new long[size];
+		eliminationCounts = new long[PROPAGATION_STAGES.length];
+		searchNodeLimit = Long.MAX_VALUE;
+
+		// Create the candidate count index
+		bucketHeads = new int[size + 1];
+		bucketNext = new int[cellCount];
+		bucketPrevious = new int[cellCount];
+		cellBuckets = new int[cellCount];
+		Arrays.fill(bucketHeads, -1);
+		Arrays.fill(cellBuckets, -1);
+
+		// Initialize the propagation list
+		propagateList = new int[cellCount];
+		propagateListMembers = new long[(cellCount + 63) / 64];
+		propagateListHead = 0;
+		propagateListSize = 0;
+	}
+
+	/**
+	 * Returns the buffer for the ordered values at the given depth of the
+	 * search.
+	 */
+	private int[] getValueBuffer(int _depth) {
+		int[] buffer = valueBuffers[_depth];
+		if(buffer == null) {
+			buffer = new int[size];
+			valueBuffers[_depth] = buffer;
+		}
+		return buffer;
+	}
+
+	/**
+	 * Returns the strategy used to order the values tried at each node.
+	 *
+	 * @return the value ordering.
+	 */
+	public ValueOrdering getValueOrdering() {
+		return valueOrdering;
+	}
+
+	/**
+	 * Inserts the cell to the given bucket of the candidate count index.
+	 */
+	private void indexCell(int _cell, int _bucket) {
+		int head = bucketHeads[_bucket];
+		bucketNext[_cell] = head;
+		bucketPrevious[_cell] = -1;
+		if(head >= 0)
+			bucketPrevious[head] = _cell;
+		bucketHeads[_bucket] = _cell;
+		cellBuckets[_cell] = _bucket;
+	}
+
+	/**
+	 * Checks if the puzzle has a solution, in which the cell at the given
+	 * position has a value other than <code>_value</code>. When
+	 * <code>_value</code> is the value of the cell in a known solution, this
+	 * checks if the solution is unique.
+	 * <p>
+	 * Only the subtree with the value excluded is searched, starting from
+	 * the propagated game state. The game state is left unchanged.
+	 *
+	 * @param x the X position of the cell.
+	 * @param y the Y position of the cell.
+	 * @param _value the excluded value.
+	 * @return <code>true</code> if such a solution exists; otherwise,
+	 * 			<code>false</code>.
+	 */
+	public boolean hasSolutionExcluding(int x, int y, int _value) {
+		if(stateModified)
+			rebuildGameState();
+		if(!stateConsistent)
+			return false;
+		int cell = x + y * size;
+		// Covers also values forced by the propagation
+		if(values[cell] == _value)
+			return false;
+		startSearch(Long.MAX_VALUE, 1, null);
+		pushGameState();
+		boolean found = eliminate(cell, 1L << (_value - 1)) >= 0 && propagateAll() && search();
+		while(stackPosition > 0)
+			popGameState();
+		return found;
+	}
+
+	/**
+	 * Checks if a value is assigned to the given cell.
+	 *
+	 * @param _cell the index of the cell.
+	 * @return <code>true</code> if a value is assigned to the cell; otherwise,
+	 * 			<code>false</code>.
+	 */
+	boolean isAssigned(int _cell) {
+		return values[_cell] != 0;
+	}
+
+	/**
+	 * Checks if the search should stop because of a cancellation flag or
+	 * the deadline.
+	 *
+	 * @return <code>true</code> if the search was cancelled; otherwise,
+	 * 			<code>false</code>.
+	 */
+	private boolean isSearchCancelled() {
+		if(parallelSearch != null && parallelSearch.cancelled.get())
+			return true;
+		if(searchCancellationToken != null && searchCancellationToken.isCancelled())
+			return true;
+		return searchDeadlineSet && System.nanoTime() - searchDeadlineNanos >= 0;
+	}
+
+	/**
+	 * Checks if the search uses conflict-directed backjumping and nogood
+	 * learning.
+	 *
+	 * @return <code>true</code> if backjumping is enabled; otherwise,
+	 * 			<code>false</code>.
+	 * @see #setBackjumpingEnabled(boolean)
+	 */
+	public boolean isBackjumpingEnabled() {
+		return backjumpingEnabled;
+	}
+
+	/**
+	 * Checks if the given propagation stage is enabled.
+	 *
+	 * @param _stage the propagation stage.
+	 * @return <code>true</code> if the stage is enabled; otherwise,
+	 * 			<code>false</code>.
+	 */
+	public boolean isPropagationStageEnabled(PropagationStage _stage) {
+		return propagationStages[_stage.ordinal()];
+	}
+
+	/**
+	 * Checks if a value is assigned to the cell at the given position.
+	 *
+	 * @param x the X position of the cell.
+	 * @param y the Y position of the cell.
+	 * @return <code>true</code> if a value is assigned to the cell; otherwise,
+	 * 			<code>false</code>.
+	 */
+	public boolean isValueSet(int x, int y) {
+		return values[x + y * size] != 0;
+	}
+
+	/**
+	 * Loads the state of the game from a textual representation. Propagates
+	 * all constraints after loading the state.
+	 * <p>
+	 * The cells are listed row by row. If the string contains whitespace or
+	 * commas, it is split to tokens, and each token is either a number or
+	 * a letter (see {@link #parseValue(String)}). Otherwise, each character
+	 * describes a single cell (see {@link #parseValue(char)}). Cells marked
+	 * by <code>'x'</code>, <code>'.'</code> or <code>'0'</code> are cleared;
+	 * cells marked by any other character that does not stand for a value
+	 * are left unchanged.
+	 *
+	 * @param _source the string, from which the state is loaded.
+	 * @throws IllegalArgumentException if the string contains a value that
+	 * 			is out of range, or if it has a wrong number of tokens.
+	 */
+	public void loadGameState(String _source) {
+		readGameState(_source, size, values);
+		rebuildGameState();
+	}
+
+
+	/**
+	 * Returns the next cell in the same bucket of the candidate count index.
+	 *
+	 * @param _cell the index of a cell in the index.
+	 * @return the index of the next cell with the same number of candidates,
+	 * 			or <code>-1</code> if <code>_cell</code> is the last one.
+	 * @see #firstCellWithCandidateCount(int)
+	 */
+	int nextCellWithCandidateCount(int _cell) {
+		return bucketNext[_cell];
+	}
+
+	private void nextTrailStamp() {
+		if(++trailStamp == Integer.MAX_VALUE) {
+			Arrays.fill(trailStamps, 0);
+			trailStamp = 1;
+		}
+	}
+
+	/**
+	 * Returns the value represented by the given character. The digits
+	 * <code>'1'</code> - <code>'9'</code> stand for the values 1 - 9, and
+	 * the letters <code>'A'</code> - <code>'Z'</code> stand for the values
+	 * 10 - 35. The characters <code>'0'</code>, <code>'.'</code> and
+	 * <code>'x'</code> stand for an empty cell.
+	 *
+	 * @param _char the parsed character.
+	 * @return the value, zero for an empty cell, or <code>-1</code> if the
+	 * 			character does not stand for a value.
+	 */
+	public static int parseValue(char _char) {
+		if('0' <= _char && '9' >= _char)
+			return _char - '0';
+		if('A' <= _char && 'Z' >= _char)
+			return _char - 'A' + 10;
+		if('x' == _char || '.' == _char)
+			return 0;
+		return -1;
+	}
+
+	/**
+	 * Returns the value represented by the given token. The token is either
+	 * a decimal number, or a single character accepted by
+	 * {@link #parseValue(char)}.
+	 *
+	 * @param _token the parsed token.
+	 * @return the value, zero for an empty cell, or <code>-1</code> if the
+	 * 			token does not stand for a value.
+	 */
+	public static int parseValue(String _token) {
+		if(_token.length() == 1)
+			return parseValue(_token.charAt(0));
+		int value = 0;
+		for(int i=0; i < _token.length(); i++) {
+			char digit = _token.charAt(i);
+			if(digit < '0' || digit > '9' || value > Long.SIZE)
+				return -1;
+			value = 10 * value + digit - '0';
+		}
+		return _token.length() > 0 ? value : -1;
+	}
+
 	/**
-	 * Contains the current game state. The current game state is always
-	 * a reference to a value in {@link gameStateStack}.
-	 * 
-	 * @see #gameStateStack
-	 * @see #stackPosition
+	 * Reverts all changes recorded on the trail since the last call to
+	 * {@link #pushGameState()}. Cells left in the propagation list by a
+	 * failed propagation are discarded.
 	 */
-	private Field[][] currentGameState;
+	private void popGameState() {
+		clearPropagateList();
+		int mark = trailMarks[--stackPosition];
+		for(int i = trailSize - 1; i >= mark; i--) {
+			int index = trailIndices[i];
+			if(index < cellCount) {
+				candidates[index] = trailMasks[i];
+				values[index] = trailValues[i];
+				if(searchBackjumping)
+					dependencies[index] = trailDependencies[i];
+				updateIndex(index);
+			}
+			else
+				usedValues[index - cellCount] = trailMasks[i];
+		}
+		trailSize = mark;
+		nextTrailStamp();
+	}
+
 	/**
-	 * The stack used for backtracking. This stack is preallocated and
-	 * re-used to minimize the impact of garbage collection. Reference
-	 * to the current item on the stack is maintained in {@link #currentGameState}.
-	 * 
-	 * @see #currentGameState
+	 * Creates a new choice point. All changes to the game state made after
+	 * this call are recorded on the trail and reverted by the matching
+	 * call to {@link #popGameState()}.
 	 */
-	private Field[][][] gameStateStack;
+	private void pushGameState() {
+		trailMarks[stackPosition++] = trailSize;
+		nextTrailStamp();
+	}
+
 	/**
-	 * The current position in {@link #gameStateStack}. This is the index
-	 * of the value stored in {@link #currentGameState}. 
+	 * Propagates the constraints of the values set through
+	 * {@link #setValue(int, int, int)} and {@link #clearValue(int, int)}
+	 * using the enabled propagation stages, without searching. The values
+	 * deduced by the propagation are then accessible through
+	 * {@link #getValue(int, int)}.
+	 *
+	 * @return <code>false</code> if a contradiction was found; otherwise,
+	 * 			<code>true</code>.
 	 */
-	private int stackPosition;
+	public boolean propagateConstraints() {
+		if(stateModified)
+			rebuildGameState();
+		return stateConsistent;
+	}
+
 	/**
-	 * The list of cells, whose value has changed, and the constraints
-	 * arising from these changes need to be propagated through the
-	 * game board.
+	 * Removes the value of the given cell from the candidates of all its
+	 * peers. Peers left with a single candidate are assigned that value.
+	 *
+	 * @param _cell the index of the propagated cell.
+	 * @return <code>false</code> if a cell was left without candidates;
+	 * 			otherwise, <code>true</code>.
 	 */
-	private Queue<Point> propagateList;
+	private boolean propagate(int _cell) {
+		if(searchBackjumping)
+			eliminationCause = dependencies[_cell];
+		int eliminated = eliminateAll(peers[_cell], candidates[_cell]);
+		if(eliminated < 0)
+			return false;
+		eliminationCounts[PropagationStage.NAKED_SINGLES.ordinal()] += eliminated;
+		return true;
+	}
+
 	/**
-	 * The list of groups on the game board. This is a complete list
-	 * of groups references from {@link #adjacentGroups}.
+	 * Runs the propagation and updates its statistics.
+	 *
+	 * @return <code>false</code> if a contradiction was found; otherwise,
+	 * 			<code>true</code>.
+	 * @see #propagateStages()
 	 */
-	private List<Point[]> sudokuGroups;
-	
-	private void addGroup(Point[] group) {
-		sudokuGroups.add(group);
+	private boolean propagateAll() {
+		propagationCount++;
+		if(!propagationTimed)
+			return propagateStages();
+		long start_time = System.nanoTime();
+		boolean consistent = propagateStages();
+		propagationNanos += System.nanoTime() - start_time;
+		return consistent;
 	}
-	
+
 	/**
-	 * Clears the value of the cell at the given position.
-	 * 
-	 * @param x the X position of the cell.
-	 * @param y the Y position of the cell.
+	 * Runs all enabled propagation stages until none of them can remove
+	 * a candidate.
+	 *
+	 * @return <code>false</code> if a contradiction was found; otherwise,
+	 * 			<code>true</code>.
 	 */
-	public void clearValue(int x, int y) {
-		currentGameState[x][y].clearValue();
-	}
-	
-	private void cloneGameState() {
-		Field[][] source = gameStateStack[stackPosition - 1];
-		Field[][] clone = gameStateStack[stackPosition];
-		for(int x=0; x < GAME_SIZE; x++)
-			for(int y=0; y < GAME_SIZE; y++)
-				clone[x][y].assign(source[x][y]);
+	private boolean propagateStages() {
+		PropagationStage[] stages = PROPAGATION_STAGES;
+		int stage = 0;
+		while(stage < stages.length) {
+			int eliminated;
+			if(!propagationStages[stage])
+				eliminated = 0;
+			else if(stage == PropagationStage.NAKED_SINGLES.ordinal())
+				eliminated = propagateSingles() ? 0 : -1;
+			else {
+				switch(stages[stage]) {
+				case HIDDEN_SINGLES:
+					eliminated = propagateHiddenSingles();
+					break;
+				case LOCKED_CANDIDATES:
+					eliminated = propagateLockedCandidates();
+					break;
+				case NAKED_PAIRS:
+					eliminated = propagateNakedPairs();
+					break;
+				case HIDDEN_PAIRS:
+					eliminated = propagateHiddenPairs();
+					break;
+				default:
+					eliminated = 0;
+				}
+				if(eliminated > 0)
+					eliminationCounts[stage] += eliminated;
+			}
+			if(eliminated < 0)
+				return false;
+			// Cheaper stages are re-run after every change
+			stage = eliminated > 0 ? 0 : stage + 1;
+		}
+		return true;
 	}
-	
+
 	/**
-	 * Prints the current state of the game to standard output (for
-	 * debugging purposes).
+	 * Assigns values that can be placed only in a single cell of a group.
+	 *
+	 * @return the number of removed candidates, or <code>-1</code> if a
+	 * 			contradiction was found.
 	 */
-	public void debugOutput() {
-		for(int y=0; y < GAME_SIZE; y++) {
-			for(int x=0; x < GAME_SIZE; x++) {
-				System.out.print(currentGameState[x][y].getValue());
-				if(x < GAME_SIZE)
-					System.out.print(" ");
+	private int propagateHiddenSingles() {
+		int eliminated = 0;
+		for(int group=0; group < groupCount; group++) {
+			int[] cells = groups[group];
+			long once = 0;
+			long twice = 0;
+			for(int i=0; i < cells.length; i++) {
+				int cell = cells[i];
+				if(values[cell] == 0) {
+					twice |= once & candidates[cell];
+					once |= candidates[cell];
+				}
+			}
+			long used = usedValues[group];
+			long singles = once & ~twice & ~used;
+			long missing = allValues & ~(once | used);
+			if(missing != 0) {
+				if(searchBackjumping)
+					conflictDependencies = absenceDependencies(cells, missing & -missing, 0);
+				return -1;
+			}
+			for(int i=0; singles != 0 && i < cells.length; i++) {
+				int cell = cells[i];
+				long single = candidates[cell] & singles;
+				if(values[cell] != 0 || single == 0)
+					continue;
+				if(searchBackjumping)
+					eliminationCause = absenceDependencies(cells, single, 1L << i);
+				if((single & (single - 1)) != 0) {
+					conflictDependencies = eliminationCause;
+					return -1;
+				}
+				singles &= ~single;
+				int removed = eliminate(cell, ~single);
+				if(removed < 0)
+					return -1;
+				// The value is forced by the other cells of the group, the
+				// previous candidates of the cell do not matter
+				if(searchBackjumping && values[cell] != 0)
+					dependencies[cell] = eliminationCause;
+				eliminated += removed;
 			}
-			System.out.println();
 		}
+		return eliminated;
 	}
-	
+
 	/**
-	 * Returns the value assigned to the cell at the given position.
-	 * 
-	 * @param x the X position of the cell.
-	 * @param y the Y position of the cell.
-	 * @return the value of the cell at the given position.
+	 * Restricts pairs of values that can be placed only in the same two
+	 * cells of a group to these two cells.
+	 *
+	 * @return the number of removed candidates, or <code>-1</code> if a
+	 * 			contradiction was found.
 	 */
-	public int getValue(int x, int y) {
-		return currentGameState[x][y].getValue();
-	}
-	
-	@SuppressWarnings("unchecked")
-	private void initialize() {
-		// Create the stack of state representations
-		gameStateStack = new Field[GAME_SIZE * GAME_SIZE][][];
-		for(int z = 0; z < GAME_SIZE * GAME_SIZE; z++) {
-			gameStateStack[z] = new Field[GAME_SIZE][];
-			for(int x = 0; x < GAME_SIZE; x++) {
-				gameStateStack[z][x] = new Field[GAME_SIZE];
-				for(int y = 0; y < GAME_SIZE; y++)
-					gameStateStack[z][x][y] = new Field();
+	private int propagateHiddenPairs() {
+		int eliminated = 0;
+		for(int group=0; group < groupCount; group++) {
+			int[] cells = groups[group];
+			Arrays.fill(digitPositions, 0);
+			for(int i=0; i < cells.length; i++) {
+				int cell = cells[i];
+				if(values[cell] != 0)
+					continue;
+				for(long mask = candidates[cell]; mask != 0; mask &= mask - 1)
+					digitPositions[Long.numberOfTrailingZeros(mask)] |= 1L << i;
+			}
+			// Values assigned but not yet propagated may still appear as
+			// candidates of other cells
+			long used = usedValues[group];
+			for(int first=0; first < size; first++) {
+				long positions = digitPositions[first];
+				if(Long.bitCount(positions) != 2 || (used & (1L << first)) != 0)
+					continue;
+				for(int second=first + 1; second < size; second++) {
+					if(digitPositions[second] != positions || (used & (1L << second)) != 0)
+						continue;
+					long pair = (1L << first) | (1L << second);
+					if(searchBackjumping)
+						eliminationCause = absenceDependencies(cells, pair, positions);
+					for(long mask = positions; mask != 0; mask &= mask - 1) {
+						int removed = eliminate(cells[Long.numberOfTrailingZeros(mask)], ~pair);
+						if(removed < 0)
+							return -1;
+						eliminated += removed;
+					}
+				}
 			}
 		}
-		currentGameState = gameStateStack[0];
+		return eliminated;
+	}
 
-		// Initialize the propagation list
-		propagateList = new LinkedList<Point>();
-
-		// Create representations of the adjacent groups
-		sudokuGroups = new LinkedList<Point[]>();
-		adjacentGroups = new List[GAME_SIZE][];
-		for(int x=0; x < GAME_SIZE; x++) {
-			adjacentGroups[x] = new List[GAME_SIZE];
-			for(int y=0; y < GAME_SIZE; y++)
-				adjacentGroups[x][y] = new ArrayList<Point[]>();
-		}
-		
-		for(int i=0; i < GAME_SIZE; i++) {
-			Point[] new_group = new Point[GAME_SIZE];
-			for(int j=0; j < GAME_SIZE; j++) {
-				new_group[j] = new Point(i, j);
-				adjacentGroups[i][j].add(new_group);
+	/**
+	 * Removes values locked in an intersection of a square with a row or
+	 * a column from the rest of the row, column or square.
+	 *
+	 * @return the number of removed candidates, or <code>-1</code> if a
+	 * 			contradiction was found.
+	 */
+	private int propagateLockedCandidates() {
+		int eliminated = 0;
+		for(int i=0; i < intersections.length; i++) {
+			int[] intersection_groups = intersectionGroups[i];
+			long used = usedValues[intersection_groups[0]] | usedValues[intersection_groups[1]];
+			long inside = unassignedCandidates(intersections[i]) & ~used;
+			if(inside == 0)
+				continue;
+			long square_rest = unassignedCandidates(intersectionSquareRest[i]);
+			long line_rest = unassignedCandidates(intersectionLineRest[i]);
+			// Pointing: the values must be placed in the intersection
+			// because of the square, so they can't be anywhere else in
+			// the line, and vice versa for claiming
+			long pointing = inside & ~square_rest & line_rest;
+			long claiming = inside & ~line_rest & square_rest;
+			if(pointing != 0) {
+				if(searchBackjumping)
+					eliminationCause = absenceDependencies(intersectionSquareRest[i], pointing, 0);
+				int removed = eliminateAll(intersectionLineRest[i], pointing);
+				if(removed < 0)
+					return -1;
+				eliminated += removed;
 			}
-			addGroup(new_group);
-		}
-		for(int i=0; i < GAME_SIZE; i++) {
-			Point[] new_group = new Point[GAME_SIZE];
-			for(int j=0; j < GAME_SIZE; j++) {
-				new_group[j] = new Point(j, i);
-				adjacentGroups[j][i].add(new_group);
+			if(claiming != 0) {
+				if(searchBackjumping)
+					eliminationCause = absenceDependencies(intersectionLineRest[i], claiming, 0);
+				int removed = eliminateAll(intersectionSquareRest[i], claiming);
+				if(removed < 0)
+					return -1;
+				eliminated += removed;
 			}
-			addGroup(new_group);
-		}
-		for(int xg=0; xg < GAME_SQUARE_SIZE; xg++)
-			for(int yg=0; yg < GAME_SQUARE_SIZE; yg++) {
-				Point[] new_group = new Point[GAME_SIZE];
-				int pos = 0;
-				for(int x=0; x < GAME_SQUARE_SIZE; x++)
-					for(int y = 0; y < GAME_SQUARE_SIZE; y++) {
-						new_group[pos++] = new Point(xg*GAME_SQUARE_SIZE + x,yg*GAME_SQUARE_SIZE + y);
-						adjacentGroups[xg*GAME_SQUARE_SIZE + x][yg*GAME_SQUARE_SIZE + y].add(new_group);
+		}
+		return eliminated;
+	}
+
+	/**
+	 * Removes the values of pairs of cells with the same two candidates from
+	 * the other cells in their group.
+	 *
+	 * @return the number of removed candidates, or <code>-1</code> if a
+	 * 			contradiction was found.
+	 */
+	private int propagateNakedPairs() {
+		int eliminated = 0;
+		for(int group=0; group < groupCount; group++) {
+			int[] cells = groups[group];
+			for(int i=0; i < cells.length; i++) {
+				long pair = candidates[cells[i]];
+				if(values[cells[i]] != 0 || Long.bitCount(pair) != 2)
+					continue;
+				for(int j=i + 1; j < cells.length; j++) {
+					if(values[cells[j]] != 0 || candidates[cells[j]] != pair)
+						continue;
+					if(searchBackjumping)
+						eliminationCause = absenceDependencies(cells[i], allValues)
+								| absenceDependencies(cells[j], allValues);
+					for(int k=0; k < cells.length; k++) {
+						if(k == i || k == j)
+							continue;
+						int removed = eliminate(cells[k], pair);
+						if(removed < 0)
+							return -1;
+						eliminated += removed;
 					}
-				addGroup(new_group);
+					break;
+				}
 			}
+		}
+		return eliminated;
 	}
-	
+
 	/**
-	 * Checks if a value is assigned to the cell at the given position.
-	 * 
-	 * @param x the X position of the cell.
-	 * @param y the Y position of the cell.
-	 * @return <code>true</code> if a value is assigned to the cell; otherwise,
-	 * 			<code>false</code>. 
+	 * Propagates the values of all cells in {@link #propagateList} to their
+	 * peers.
+	 *
+	 * @return <code>false</code> if a contradiction was found; otherwise,
+	 * 			<code>true</code>.
 	 */
-	public boolean isValueSet(int x, int y) {
-		return currentGameState[x][y].hasFixedValue();
+	private boolean propagateSingles() {
+		while(propagateListSize > 0) {
+			int cell = propagateList[propagateListHead];
+			propagateListMembers[cell >>> 6] &= ~(1L << cell);
+			if(++propagateListHead == cellCount)
+				propagateListHead = 0;
+			propagateListSize--;
+			if(!propagate(cell))
+				return false;
+		}
+		return true;
 	}
-	
+
 	/**
-	 * Loads the state of the game from a textual representation. Propagates
-	 * all constraints after loading the state.
-	 * 
+	 * Reads the values of the cells from a textual representation of the
+	 * game state. See {@link #loadGameState(String)} for the format.
+	 *
 	 * @param _source the string, from which the state is loaded.
+	 * @param _size the size of the game board.
+	 * @param _values the values of the cells. Only the values of the cells
+	 * 			described in <code>_source</code> are changed.
+	 * @throws IllegalArgumentException if the string contains a value that
+	 * 			is out of range, or if it has a wrong number of tokens.
 	 */
-	public void loadGameState(String _source) {
-		for(int x=0; x < GAME_SIZE; x++)
-			for(int y=0; y < GAME_SIZE; y++) {
-				char val = _source.charAt(x + y*GAME_SIZE);
-				if('0' <= val && '9' >= val) {
-					int ival = Character.getNumericValue(val) - Character.getNumericValue('0');
-					currentGameState[x][y].setValue(ival);
-					propagateList.add(new Point(x, y));
-				}
-				else if('x' == val)
-					currentGameState[x][y].clearValue();
+	public static void readGameState(String _source, int _size, int[] _values) {
+		boolean tokenized = false;
+		for(int i=0; i < _source.length() && !tokenized; i++) {
+			char val = _source.charAt(i);
+			tokenized = val == ',' || Character.isWhitespace(val);
+		}
+		if(tokenized) {
+			String[] tokens = _source.trim().split("[\\s,]+");
+			if(tokens.length != _values.length)
+				throw new IllegalArgumentException("Expected " + _values.length + " values, found " + tokens.length);
+			for(int cell=0; cell < _values.length; cell++) {
+				int value = parseValue(tokens[cell]);
+				if(value > _size)
+					throw new IllegalArgumentException("Value out of range: " + tokens[cell]);
+				if(value >= 0)
+					_values[cell] = value;
+			}
+		}
+		else {
+			for(int cell=0; cell < _values.length; cell++) {
+				char val = _source.charAt(cell);
+				int value = parseValue(val);
+				if(value > _size)
+					throw new IllegalArgumentException("Value out of range: " + val);
+				if(value >= 0)
+					_values[cell] = value;
 			}
-		propagateAll();
+		}
 	}
-	
-	private void popGameState() {
-		stackPosition--;
-		currentGameState = gameStateStack[stackPosition];
+
+	/**
+	 * Recomputes the candidate masks and the masks of used values from the
+	 * assigned values, and propagates all constraints.
+	 *
+	 * @return <code>false</code> if a contradiction was found during the
+	 * 			propagation; otherwise, <code>true</code>.
+	 */
+	private boolean rebuildGameState() {
+		stateModified = false;
+		stateConsistent = false;
+		clearPropagateList();
+		Arrays.fill(usedValues, 0);
+		for(int cell=0; cell < cellCount; cell++) {
+			candidates[cell] = allValues;
+			updateIndex(cell);
+		}
+		for(int cell=0; cell < cellCount; cell++) {
+			if(values[cell] != 0 && !assign(cell, values[cell]))
+				return false;
+		}
+		stateConsistent = propagateAll();
+		return stateConsistent;
 	}
-	
-	private void pushGameState() {
-		stackPosition++;
-		cloneGameState();
-		currentGameState = gameStateStack[stackPosition];
-	}
-	
-	private boolean propagate(int _value, Point[] _group) {
-		for(int i=0; i<_group.length; i++) {
-			Point pos = _group[i];
-			Field current = currentGameState[pos.x][pos.y];
-			if(!current.hasFixedValue()) {
-				current.clearPossibleValue(_value);
-				if(current.hasSinglePossibleValue()) {
-					current.assignSinglePossibleValue();
-					propagateList.add(new Point(pos.x, pos.y));
-				}
-				else if(!current.hasPossibleValues())
-					return false;
-			}
+
+	/**
+	 * Clears the game board, so that the solver can be reused for another
+	 * puzzle. Unlike {@link #loadGameState(String)}, which overlays the
+	 * loaded values over the current state, this clears all cells; the
+	 * configuration (the propagation stages, the strategies and the
+	 * metrics) is kept. Only the values and the candidates are cleared here,
+	 * which takes time linear in the number of cells; the rest of the state
+	 * is rebuilt by the next solve, like after
+	 * {@link #setValue(int, int, int)}.
+	 */
+	public void reset() {
+		Arrays.fill(values, 0);
+		Arrays.fill(candidates, allValues);
+		stackPosition = 0;
+		trailSize = 0;
+		stateModified = true;
+	}
+
+	/**
+	 * Resets the counts of removed candidates of all propagation stages.
+	 *
+	 * @see #getEliminationCount(PropagationStage)
+	 */
+	public void resetEliminationCounts() {
+		Arrays.fill(eliminationCounts, 0);
+	}
+
+	/**
+	 * Stores the statistics of the last solve, adds them to the metrics
+	 * and emits the event for slow solves.
+	 *
+	 * @param _stats the statistics requested by the caller, or
+	 * 			<code>null</code>.
+	 * @param _result the result of the solve.
+	 * @param _elapsedNanos the duration of the solve.
+	 */
+	private void recordStatistics(SolveStats _stats, SolveResult _result, long _elapsedNanos) {
+		SolveStats stats = _stats;
+		if(stats == null) {
+			if(solveStats == null)
+				solveStats = new SolveStats();
+			stats = solveStats;
 		}
-		return true;
+		stats.result = _result;
+		stats.elapsedNanos = _elapsedNanos;
+		stats.nodeCount = searchNodes;
+		stats.maxDepth = searchMaxDepth;
+		stats.backtrackCount = searchBacktracks;
+		stats.propagationCount = propagationCount;
+		stats.propagationNanos = propagationNanos;
+		stats.backjumpCount = searchBackjumps;
+		stats.skippedBranchCount = searchSkippedBranches;
+		stats.learnedNogoodCount = searchNogoodsLearned;
+		stats.nogoodPruneCount = searchNogoodPrunes;
+		if(metrics != null)
+			metrics.record(stats);
+		if(_elapsedNanos >= slowSolveThresholdNanos && FlightRecorder.isInitialized())
+			SlowSolveEvent.emit(size, stats);
 	}
-	
-	private boolean propagateAll() {
-		while(!propagateList.isEmpty()) {
-			Point pos = propagateList.remove();
-			Field propagated = currentGameState[pos.x][pos.y];
-			for(Object cur_object : adjacentGroups[pos.x][pos.y]) {
-				Point[] current_group = (Point[])cur_object;
-				if(!propagate(propagated.getValue(), current_group))
-					return false;
-			}
+
+	/**
+	 * Saves the state of the given cell to the trail, unless it was already
+	 * saved since the last choice point.
+	 *
+	 * @param _cell the index of the cell.
+	 */
+	private void saveCell(int _cell) {
+		if(stackPosition > 0 && trailStamps[_cell] != trailStamp) {
+			trailStamps[_cell] = trailStamp;
+			int entry = saveEntry(_cell);
+			trailMasks[entry] = candidates[_cell];
+			trailValues[entry] = values[_cell];
+			if(searchBackjumping)
+				trailDependencies[entry] = dependencies[_cell];
 		}
-		return true;
 	}
-	
+
+	private int saveEntry(int _index) {
+		if(trailSize == trailIndices.length) {
+			int capacity = 2 * trailIndices.length;
+			trailIndices = Arrays.copyOf(trailIndices, capacity);
+			trailMasks = Arrays.copyOf(trailMasks, capacity);
+			trailValues = Arrays.copyOf(trailValues, capacity);
+			if(trailDependencies != null)
+				trailDependencies = Arrays.copyOf(trailDependencies, capacity);
+		}
+		trailIndices[trailSize] = _index;
+		return trailSize++;
+	}
+
+	/**
+	 * Saves the mask of used values of the given group to the trail, unless
+	 * it was already saved since the last choice point.
+	 *
+	 * @param _group the index of the group.
+	 */
+	private void saveGroup(int _group) {
+		int index = cellCount + _group;
+		if(stackPosition > 0 && trailStamps[index] != trailStamp) {
+			trailStamps[index] = trailStamp;
+			int entry = saveEntry(index);
+			trailMasks[entry] = usedValues[_group];
+		}
+	}
+
+	/**
+	 * Attaches metrics, to which the statistics of all subsequent solves
+	 * are added. The same metrics may be shared by several solvers.
+	 *
+	 * @param _metrics the metrics, or <code>null</code> to stop collecting
+	 * 			them.
+	 */
+	public void setMetrics(SolverMetrics _metrics) {
+		metrics = _metrics;
+	}
+
+	/**
+	 * Sets the minimal duration of a solve, for which
+	 * {@link SlowSolveEvent} is emitted. The default is
+	 * {@link #DEFAULT_SLOW_SOLVE_THRESHOLD_NANOS}.
+	 *
+	 * @param _thresholdNanos the threshold in nanoseconds.
+	 */
+	public static void setSlowSolveThresholdNanos(long _thresholdNanos) {
+		slowSolveThresholdNanos = _thresholdNanos;
+	}
+
+	/**
+	 * Enables or disables conflict-directed backjumping and nogood learning
+	 * in the search. When enabled, every eliminated candidate remembers the
+	 * decisions it depends on; when a subtree fails without depending on the
+	 * decision of its parent, the remaining values of the parent are
+	 * skipped, and the failing combinations of decisions are cached as
+	 * nogoods and used to prune the values of later branches. Backjumping
+	 * is only used by sequential searches for a single solution; it is
+	 * disabled by default.
+	 *
+	 * @param _enabled <code>true</code> if backjumping is enabled;
+	 * 			otherwise, <code>false</code>.
+	 */
+	public void setBackjumpingEnabled(boolean _enabled) {
+		backjumpingEnabled = _enabled;
+	}
+
+	/**
+	 * Sets the strategy used to select the cell to branch on. The default
+	 * strategy is {@link MinimumRemainingValuesBranching}.
+	 *
+	 * @param _strategy the branching strategy.
+	 */
+	public void setBranchingStrategy(BranchingStrategy _strategy) {
+		branchingStrategy = _strategy;
+	}
+
+	/**
+	 * Enables or disables a propagation stage. By default, the naked
+	 * singles, hidden singles and locked candidates stages are enabled.
+	 * The naked singles stage can't be disabled.
+	 *
+	 * @param _stage the propagation stage.
+	 * @param _enabled <code>true</code> if the stage is enabled; otherwise,
+	 * 			<code>false</code>.
+	 */
+	public void setPropagationStageEnabled(PropagationStage _stage, boolean _enabled) {
+		if(_stage == PropagationStage.NAKED_SINGLES && !_enabled)
+			throw new IllegalArgumentException("The naked singles stage can't be disabled");
+		propagationStages[_stage.ordinal()] = _enabled;
+	}
+
 	/**
 	 * Assigns the given value to the cell at the given position.
-	 * 
+	 *
 	 * @param x the X position of the cell.
 	 * @param y the Y position of the cell.
 	 * @param value the value assigned to the cell.
 	 */
 	public void setValue(int x, int y, int value) {
-		currentGameState[x][y].setValue(value);
+		int cell = x + y * size;
+		values[cell] = value;
+		candidates[cell] = 1L << (value - 1);
+		stateModified = true;
+	}
+
+	/**
+	 * Sets the strategy used to order the values tried at each node. The
+	 * default ordering is {@link AscendingValueOrdering}.
+	 *
+	 * @param _ordering the value ordering.
+	 */
+	public void setValueOrdering(ValueOrdering _ordering) {
+		valueOrdering = _ordering;
 	}
-	
+
 	/**
 	 * Runs the propagation and search algorithm to assign values to
-	 * all cells. The solution will be stored in {@link #currentGameState},
+	 * all cells. The solution will be stored in the current game state,
 	 * and accessible through {@link #getValue(int, int)}.
-	 * 
+	 *
 	 * @return <code>true</code> if a solution was found; otherwise,
 	 * 			<code>false</code>.
 	 */
 	public boolean solve() {
-		for(int x=0; x < GAME_SIZE; x++)
-			for(int y=0; y < GAME_SIZE; y++) {
-				if(!currentGameState[x][y].hasFixedValue()) {
-					if(!currentGameState[x][y].hasPossibleValues())
-						return false;
-					for(int val=1; val <= GAME_SIZE; val++) {
-						if(!currentGameState[x][y].isPossibleValue(val))
-							continue;
-						pushGameState();
-						currentGameState[x][y].setValue(val);
-						propagateList.add(new Point(x, y));
-						if(propagateAll() && validate() && solve())
-							return true;
-						popGameState();
-					}
+		return solve(null, null) == SolveResult.SOLVED;
+	}
+
+	/**
+	 * Solves the puzzle like {@link #solve()} within the given limits. If
+	 * the search is stopped by the limits, the game state is restored to
+	 * the state before the call, so the solver can be used again.
+	 *
+	 * @param _limits the limits of the solve, or <code>null</code> for no
+	 * 			limits.
+	 * @return the result of the solve.
+	 */
+	public SolveResult solve(SolveLimits _limits) {
+		return solve(_limits, null);
+	}
+
+	/**
+	 * Solves the puzzle like {@link #solve()}, and stores the statistics of
+	 * the solve to <code>_stats</code>.
+	 * <p>
+	 * The statistics are also added to the metrics set through
+	 * {@link #setMetrics(SolverMetrics)}, and a {@link SlowSolveEvent} is
+	 * emitted when the solve takes longer than its threshold. The time
+	 * spent in the propagation is measured only when <code>_stats</code>
+	 * is given, because it needs to read the timer at each node.
+	 *
+	 * @param _stats the object, to which the statistics are stored, or
+	 * 			<code>null</code>.
+	 * @return <code>true</code> if a solution was found; otherwise,
+	 * 			<code>false</code>.
+	 */
+	public boolean solve(SolveStats _stats) {
+		return solve(null, _stats) == SolveResult.SOLVED;
+	}
+
+	/**
+	 * Solves the puzzle within the given limits like
+	 * {@link #solve(SolveLimits)}, and stores the statistics of the solve
+	 * like {@link #solve(SolveStats)}.
+	 *
+	 * @param _limits the limits of the solve, or <code>null</code> for no
+	 * 			limits.
+	 * @param _stats the object, to which the statistics are stored, or
+	 * 			<code>null</code>.
+	 * @return the result of the solve.
+	 */
+	public SolveResult solve(SolveLimits _limits, SolveStats _stats) {
+		long start_time = System.nanoTime();
+		propagationCount = 0;
+		propagationNanos = 0;
+		propagationTimed = _stats != null;
+		if(_limits == null)
+			startSearch(Long.MAX_VALUE, 1, null);
+		else {
+			startSearch(_limits.getNodeBudget(), 1, null);
+			searchCancellationToken = _limits.getCancellationToken();
+			searchProgressListener = _limits.getProgressListener();
+			searchDeadlineSet = _limits.hasDeadline();
+			searchDeadlineNanos = _limits.getDeadlineNanos();
+		}
+		if(stateModified)
+			rebuildGameState();
+		SolveResult result;
+		if(stateConsistent && search()) {
+			// Keep the solution as the new base state
+			stackPosition = 0;
+			trailSize = 0;
+			result = SolveResult.SOLVED;
+		}
+		else
+			result = searchAborted ? SolveResult.BUDGET_EXHAUSTED : SolveResult.UNSATISFIABLE;
+		propagationTimed = false;
+		long elapsed = System.nanoTime() - start_time;
+		if(_stats != null || metrics != null || elapsed >= slowSolveThresholdNanos)
+			recordStatistics(_stats, result, elapsed);
+		return result;
+	}
+
+	/**
+	 * Solves the puzzle like {@link #solve()}, using the common
+	 * <code>ForkJoinPool</code> for hard puzzles.
+	 *
+	 * @return <code>true</code> if a solution was found; otherwise,
+	 * 			<code>false</code>.
+	 * @see #solveParallel(ForkJoinPool)
+	 */
+	public boolean solveParallel() {
+		return solveParallel(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Solves the puzzle like {@link #solve()}, splitting the search tree
+	 * to tasks run in the given pool.
+	 * <p>
+	 * The search starts sequentially in the calling thread, so that easy
+	 * puzzles do not pay for the tasks. A subtree is split only when its
+	 * search explores more than a fixed number of nodes; each value of its
+	 * top-level cell not explored yet then becomes a new task with its own
+	 * copy of the game board. When one of the tasks finds a solution, the
+	 * others stop at their next check of the shared cancellation flag.
+	 *
+	 * @param _pool the pool that runs the tasks.
+	 * @return <code>true</code> if a solution was found; otherwise,
+	 * 			<code>false</code>.
+	 */
+	public boolean solveParallel(ForkJoinPool _pool) {
+		if(stateModified)
+			rebuildGameState();
+		if(!stateConsistent)
+			return false;
+		startSearch(PARALLEL_SPLIT_NODES, 1, null);
+		if(search()) {
+			stackPosition = 0;
+			trailSize = 0;
+			return true;
+		}
+		if(!searchAborted)
+			return false;
+
+		ParallelSearch parallel_search = new ParallelSearch(1);
+		_pool.invoke(new SearchTask(new Sudoku(this), parallel_search));
+		int[] solution = parallel_search.solution.get();
+		if(solution == null)
+			return false;
+		System.arraycopy(solution, 0, values, 0, cellCount);
+		return rebuildGameState();
+	}
+
+	/**
+	 * Explores the subtree of the current node. The search stops when the
+	 * limit of solutions is reached, when the node limit is reached, or
+	 * when it is cancelled (see {@link #isSearchCancelled()});
+	 * {@link #searchAborted} tells the latter two apart from an exhausted
+	 * subtree.
+	 *
+	 * @return <code>true</code> if the limit of solutions was reached; the
+	 * 			last solution is then left in the game state. Otherwise,
+	 * 			<code>false</code>.
+	 * @see #startSearch(long, int, ParallelSearch)
+	 */
+	private boolean search() {
+		long nodes = ++searchNodes;
+		if(nodes > searchNodeLimit && !extendParallelNodeLimit()) {
+			searchAborted = true;
+			return false;
+		}
+		if((nodes & (CANCELLATION_CHECK_INTERVAL - 1)) == 0) {
+			if(searchProgressListener != null)
+				searchProgressListener.searchProgress(this, nodes, stackPosition);
+			if(isSearchCancelled()) {
+				searchAborted = true;
+				return false;
+			}
+		}
+		if(stackPosition > searchMaxDepth)
+			searchMaxDepth = stackPosition;
+		int cell = branchingStrategy.selectCell(this);
+		if(cell < 0)
+			return acceptSolution();
+		if(candidates[cell] == 0) {
+			if(searchBackjumping)
+				conflictDependencies = absenceDependencies(cell, allValues);
+			return false;
+		}
+		int[] ordered_values = getValueBuffer(stackPosition);
+		int count = valueOrdering.orderValues(this, cell, ordered_values);
+		if(searchBackjumping)
+			return searchWithBackjumping(cell, ordered_values, count);
+		for(int i=0; i < count; i++) {
+			pushGameState();
+			if(assign(cell, ordered_values[i]) && propagateAll() && search())
+				return true;
+			popGameState();
+			searchBacktracks++;
+			if(searchAborted)
+				return false;
+		}
+		return false;
+	}
+
+	/**
+	 * Tries the values of the branching cell like {@link #search()}, with
+	 * conflict-directed backjumping: each contradiction comes with the set
+	 * of choice points it depends on (see {@link #dependencies}). When the
+	 * contradiction below a value does not depend on the choice point of
+	 * the cell, no other value can help, so the remaining values are skipped
+	 * and the search returns straight to the deepest choice point that took
+	 * part in the contradiction. When all values fail, the choice points of
+	 * the contradictions are learned as a nogood, which prunes the same
+	 * combination of assignments elsewhere in the tree.
+	 *
+	 * @param _cell the branching cell.
+	 * @param _values the ordered values of the cell.
+	 * @param _count the number of values.
+	 * @return <code>true</code> if a solution was found; otherwise,
+	 * 			<code>false</code>, and {@link #conflictDependencies}
+	 * 			contains the choice points of the contradiction.
+	 */
+	private boolean searchWithBackjumping(int _cell, int[] _values, int _count) {
+		int depth = stackPosition + 1;
+		long depth_bit = 1L << Math.min(depth, 63);
+		// The contradiction of the whole node depends also on the reasons,
+		// for which the other values were removed from the cell
+		long conflict = absenceDependencies(_cell, allValues);
+		decisionCells[depth] = _cell;
+		for(int i=0; i < _count; i++) {
+			int value = _values[i];
+			decisionValues[depth] = value;
+			long child_conflict;
+			if(nogoodKeyCounts[_cell * size + value - 1] > 0 && matchNogood(_cell, value)) {
+				searchNogoodPrunes++;
+				child_conflict = conflictDependencies | depth_bit;
+			}
+			else {
+				pushGameState();
+				eliminationCause = depth_bit;
+				if(assign(_cell, value) && propagateAll() && search())
+					return true;
+				child_conflict = conflictDependencies;
+				popGameState();
+				searchBacktracks++;
+				if(searchAborted)
 					return false;
+			}
+			if((child_conflict & depth_bit) == 0) {
+				// The contradiction does not depend on the value of the cell
+				searchBackjumps++;
+				searchSkippedBranches += _count - i - 1;
+				conflictDependencies = child_conflict;
+				return false;
+			}
+			// Bit 63 may stand also for shallower choice points
+			conflict |= depth < 63 ? child_conflict & ~depth_bit : child_conflict;
+		}
+		learnNogood(conflict);
+		conflictDependencies = conflict;
+		return false;
+	}
+
+	/**
+	 * Learns a nogood: the assignments of the given choice points can't be
+	 * extended to a solution. Nogoods with too many assignments, or with
+	 * choice points deeper than 62, are not kept. When the cache is full,
+	 * the oldest nogood is replaced.
+	 *
+	 * @param _conflict the choice points, in the format of
+	 * 			{@link #dependencies}.
+	 */
+	private void learnNogood(long _conflict) {
+		int length = Long.bitCount(_conflict);
+		if(length == 0 || length > MAX_NOGOOD_LENGTH || _conflict < 0)
+			return;
+		int slot = nogoodNext;
+		int offset = slot * MAX_NOGOOD_LENGTH;
+		if(nogoodCount == NOGOOD_CACHE_SIZE) {
+			for(int i=0; i < nogoodLengths[slot]; i++)
+				nogoodKeyCounts[nogoodCells[offset + i] * size + nogoodValues[offset + i] - 1]--;
+		}
+		else
+			nogoodCount++;
+		int i = 0;
+		for(long mask = _conflict; mask != 0; mask &= mask - 1) {
+			int depth = Long.numberOfTrailingZeros(mask);
+			int cell = decisionCells[depth];
+			int value = decisionValues[depth];
+			nogoodCells[offset + i] = cell;
+			nogoodValues[offset + i] = value;
+			nogoodKeyCounts[cell * size + value - 1]++;
+			i++;
+		}
+		nogoodLengths[slot] = length;
+		nogoodNext = slot + 1 == NOGOOD_CACHE_SIZE ? 0 : slot + 1;
+		searchNogoodsLearned++;
+	}
+
+	/**
+	 * Checks if assigning the value to the cell completes a learned nogood,
+	 * i.e. if all other assignments of the nogood hold in the current game
+	 * state. If so, {@link #conflictDependencies} is set to the choice
+	 * points the other assignments depend on.
+	 *
+	 * @param _cell the index of the cell.
+	 * @param _value the value.
+	 * @return <code>true</code> if a nogood is matched; otherwise,
+	 * 			<code>false</code>.
+	 */
+	private boolean matchNogood(int _cell, int _value) {
+		for(int slot=0; slot < nogoodCount; slot++) {
+			int offset = slot * MAX_NOGOOD_LENGTH;
+			int end = offset + nogoodLengths[slot];
+			boolean contains = false;
+			boolean holds = true;
+			long nogood_dependencies = 0;
+			for(int i=offset; i < end && holds; i++) {
+				int cell = nogoodCells[i];
+				if(cell == _cell) {
+					contains = nogoodValues[i] == _value;
+					holds = contains;
 				}
+				else if(values[cell] != nogoodValues[i])
+					holds = false;
+				else
+					nogood_dependencies |= dependencies[cell];
 			}
-		return true;
+			if(contains && holds) {
+				conflictDependencies = nogood_dependencies;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Resets the counters of the search and sets its limits.
+	 *
+	 * @param _nodeLimit the maximal number of explored nodes.
+	 * @param _solutionLimit the number of solutions, after which the search
+	 * 			stops.
+	 * @param _parallelSearch the parallel search the solver takes part in,
+	 * 			or <code>null</code>.
+	 */
+	private void startSearch(long _nodeLimit, int _solutionLimit, ParallelSearch _parallelSearch) {
+		searchNodes = 0;
+		searchMaxDepth = 0;
+		searchBacktracks = 0;
+		searchNodeLimit = _nodeLimit;
+		searchAborted = false;
+		solutionCount = 0;
+		solutionLimit = _solutionLimit;
+		parallelSearch = _parallelSearch;
+		searchCancellationToken = null;
+		searchProgressListener = null;
+		searchDeadlineSet = false;
+		searchBackjumps = 0;
+		searchSkippedBranches = 0;
+		searchNogoodsLearned = 0;
+		searchNogoodPrunes = 0;
+		// The dependencies are not tracked across tasks of a parallel
+		// search, and a search for more solutions does not fail in the
+		// subtrees with solutions
+		searchBackjumping = backjumpingEnabled && _parallelSearch == null && _solutionLimit == 1;
+		if(searchBackjumping)
+			startBackjumping();
+	}
+
+	/**
+	 * Prepares the state of the search with backjumping: creates the
+	 * arrays on first use, clears the dependencies of the base game state,
+	 * and forgets the nogoods of the previous search.
+	 */
+	private void startBackjumping() {
+		if(dependencies == null) {
+			dependencies = new long[cellCount];
+			trailDependencies = new long[trailIndices.length];
+			decisionCells = new int[cellCount + 2];
+			decisionValues = new int[cellCount + 2];
+			nogoodCells = new int[NOGOOD_CACHE_SIZE * MAX_NOGOOD_LENGTH];
+			nogoodValues = new int[NOGOOD_CACHE_SIZE * MAX_NOGOOD_LENGTH];
+			nogoodLengths = new int[NOGOOD_CACHE_SIZE];
+			nogoodKeyCounts = new int[cellCount * size];
+			eliminationReasons = new long[cellCount * size];
+		}
+		Arrays.fill(dependencies, 0);
+		Arrays.fill(eliminationReasons, 0);
+		eliminationCause = 0;
+		conflictDependencies = 0;
+		for(int slot=0; slot < nogoodCount; slot++) {
+			int offset = slot * MAX_NOGOOD_LENGTH;
+			for(int i=0; i < nogoodLengths[slot]; i++)
+				nogoodKeyCounts[nogoodCells[offset + i] * size + nogoodValues[offset + i] - 1]--;
+		}
+		nogoodCount = 0;
+		nogoodNext = 0;
+	}
+
+	/**
+	 * Returns the union of the candidates of the unassigned cells from the
+	 * given list.
+	 */
+	private long unassignedCandidates(int[] _cells) {
+		long mask = 0;
+		for(int i=0; i < _cells.length; i++)
+			if(values[_cells[i]] == 0)
+				mask |= candidates[_cells[i]];
+		return mask;
+	}
+
+	/**
+	 * Returns the dependencies of the cell from the given list, to which the
+	 * value is assigned, or <code>0</code> if there is no such cell.
+	 */
+	private long valueDependencies(int[] _cells, int _value) {
+		for(int i=0; i < _cells.length; i++)
+			if(values[_cells[i]] == _value)
+				return dependencies[_cells[i]];
+		return 0;
+	}
+
+	/**
+	 * Moves the cell to the bucket of the candidate count index that
+	 * corresponds to its current state.
+	 *
+	 * @param _cell the index of the cell.
+	 */
+	private void updateIndex(int _cell) {
+		int bucket = values[_cell] != 0 ? -1 : Long.bitCount(candidates[_cell]);
+		int current = cellBuckets[_cell];
+		if(bucket == current)
+			return;
+		if(current >= 0) {
+			int next = bucketNext[_cell];
+			int previous = bucketPrevious[_cell];
+			if(previous >= 0)
+				bucketNext[previous] = next;
+			else
+				bucketHeads[current] = next;
+			if(next >= 0)
+				bucketPrevious[next] = previous;
+		}
+		if(bucket >= 0)
+			indexCell(_cell, bucket);
+		else
+			cellBuckets[_cell] = -1;
 	}
-	
+
 	/**
 	 * Checks if the current game state is valid, i.e. that there are
 	 * no collisions, and all cells are either assigned to, or there is
 	 * at lease one value that can be assigned to them.
-	 * 
+	 * <p>
+	 * The search detects collisions already during the propagation, so this
+	 * full check is needed only for game states set up from outside.
+	 *
 	 * @return <code>true</code> if there are no collisions; otherwise,
 	 * 			<code>false</code>.
 	 */
 	public boolean validate() {
-		for(Point[] current : sudokuGroups) {
-			if(!validateGroup(current))
+		for(int group=0; group < groupCount; group++) {
+			if(!validateGroup(groups[group]))
 				return false;
 		}
 		return true;
 	}
-	
+
 	/**
 	 * Checks if the given group is valid, i.e. that it contains no
 	 * collisions, and that all cells are either assigned to, or there is
 	 * at least one value that can be assigned to them.
-	 * 
-	 * @param _fields the list of fields in the group.
+	 *
+	 * @param _cells the indices of the cells in the group.
 	 * @return <code>true</code> if there are no collisions; otherwise,
 	 * 			<code>false</code>.
 	 */
-	public boolean validateGroup(Point[] _fields) {
-		for(int i=0; i<_fields.length; i++) {
-			Field current = currentGameState[_fields[i].x][_fields[i].y];
-			if(current.hasFixedValue()) {
-				for(int j=i+1; j<_fields.length; j++) {
-					Field next = currentGameState[_fields[j].x][_fields[j].y];
-					if(next.hasFixedValue() && current.getValue() == next.getValue())
-						return false;
-				}
-			}
-			else {
-				if(!current.hasPossibleValues())
+	private boolean validateGroup(int[] _cells) {
+		long seen = 0;
+		for(int i=0; i<_cells.length; i++) {
+			int cell = _cells[i];
+			if(values[cell] != 0) {
+				long mask = 1L << (values[cell] - 1);
+				if((seen & mask) != 0)
 					return false;
+				seen |= mask;
 			}
+			else if(candidates[cell] == 0)
+				return false;
 		}
 		return true;
 	}
-	
+
 	/**
-	 * Creates and initializes a new Sudoku solver.
+	 * Creates and initializes a new Sudoku solver for the standard 9x9
+	 * game board.
 	 */
 	public Sudoku() {
+		this(GAME_SQUARE_SIZE);
+	}
+
+	/**
+	 * Creates and initializes a new Sudoku solver for a game board made of
+	 * <code>_squareSize</code> x <code>_squareSize</code> squares, e.g.
+	 * 4 for the 16x16 game board.
+	 *
+	 * @param _squareSize the size of an edge of a square group.
+	 * @throws IllegalArgumentException if the size is outside of the range
+	 * 			{@link #MIN_SQUARE_SIZE} - {@link #MAX_SQUARE_SIZE}.
+	 */
+	public Sudoku(int _squareSize) {
+		if(_squareSize < MIN_SQUARE_SIZE || _squareSize > MAX_SQUARE_SIZE)
+			throw new IllegalArgumentException("Unsupported square size: " + _squareSize);
+		squareSize = _squareSize;
+		size = _squareSize * _squareSize;
+		cellCount = size * size;
+		groupCount = 3 * size;
+		allValues = size == Long.SIZE ? -1L : (1L << size) - 1;
 		initialize();
 	}
+
+	/**
+	 * Creates a copy of the current game state of another solver, used by
+	 * the tasks of the parallel search. The copy shares the topology of
+	 * the board and the configuration, and starts with an empty trail.
+	 *
+	 * @param _source the copied solver; its game state must be consistent
+	 * 			and fully propagated.
+	 */
+	private Sudoku(Sudoku _source) {
+		squareSize = _source.squareSize;
+		size = _source.size;
+		cellCount = _source.cellCount;
+		groupCount = _source.groupCount;
+		allValues = _source.allValues;
+		groups = _source.groups;
+		cellGroups = _source.cellGroups;
+		peers = _source.peers;
+		intersections = _source.intersections;
+		intersectionGroups = _source.intersectionGroups;
+		intersectionLineRest = _source.intersectionLineRest;
+		intersectionSquareRest = _source.intersectionSquareRest;
+		branchingStrategy = _source.branchingStrategy;
+		valueOrdering = _source.valueOrdering;
+		backjumpingEnabled = _source.backjumpingEnabled;
+		propagationStages = _source.propagationStages.clone();
+
+		initializeState();
+		System.arraycopy(_source.candidates, 0, candidates, 0, cellCount);
+		System.arraycopy(_source.values, 0, values, 0, cellCount);
+		System.arraycopy(_source.usedValues, 0, usedValues, 0, groupCount);
+		for(int cell=0; cell < cellCount; cell++)
+			updateIndex(cell);
+		stateModified = false;
+		stateConsistent = true;
+	}
 }
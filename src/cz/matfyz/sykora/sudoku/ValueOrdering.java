@@ -0,0 +1,38 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku;
+
+/**
+ * Determines the order, in which the values of the selected cell are tried
+ * by the search.
+ *
+ * @author Ondrej Sykora
+ * @see Sudoku#setValueOrdering(ValueOrdering)
+ */
+public interface ValueOrdering {
+	/**
+	 * Writes the values that can be assigned to the given cell to
+	 * <code>_values</code> in the order, in which they should be tried.
+	 *
+	 * @param _sudoku the solver, whose current game state is examined.
+	 * @param _cell the index of the cell.
+	 * @param _values the array, to which the values are written. The array
+	 * 			has at least {@link Sudoku#getSize()} elements.
+	 * @return the number of values written to <code>_values</code>.
+	 */
+	int orderValues(Sudoku _sudoku, int _cell, int[] _values);
+}
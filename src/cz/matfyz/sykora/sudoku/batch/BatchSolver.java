@@ -0,0 +1,569 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku.batch;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.concurrent.*;
+
+import cz.matfyz.sykora.sudoku.*;
+import cz.matfyz.sykora.sudoku.corpus.PuzzleParser;
+import cz.matfyz.sykora.sudoku.store.SolutionStore;
+
+/**
+ * Solves a stream of puzzles, one puzzle per line in the formats accepted by
+ * {@link PuzzleParser} (a single character per cell, or numbers separated
+ * by spaces or commas), and writes one line for each puzzle: either the
+ * solution, or a failure marker.
+ * <p>
+ * The puzzles flow through a bounded pipeline: a reader thread splits the
+ * input to chunks of lines, a pool of worker threads solves them, each with
+ * its own reusable engine, and the calling thread writes the results,
+ * either in the input order or as soon as they are ready. The chunks are
+ * preallocated and recycled, so the memory used does not depend on the
+ * size of the input.
+ * <p>
+ * With a {@link SolutionStore}, the workers look each puzzle up in the
+ * store before solving it, and append the results of the new puzzles, so
+ * a restarted solver does not solve the known puzzles again.
+ * <p>
+ * Usage: <code>BatchSolver [-engine PROPAGATION|BACKJUMPING|DANCING_LINKS]
+ * [-threads n] [-size n] [-chunk n] [-unordered] [-store path] [input]
+ * [output]</code>, where <code>-size</code> is the size of an edge of
+ * a square group, and <code>-</code> (the default) stands for the standard
+ * input or output.
+ *
+ * @author Ondrej Sykora
+ */
+public class BatchSolver {
+	/**
+	 * The counts of processed puzzles returned by {@link BatchSolver#run}.
+	 */
+	public static class Result {
+		/**
+		 * The number of processed puzzles.
+		 */
+		public long puzzleCount;
+		/**
+		 * The number of solved puzzles.
+		 */
+		public long solvedCount;
+		/**
+		 * The time spent processing the puzzles, in nanoseconds.
+		 */
+		public long elapsedNanos;
+	}
+	
+	/**
+	 * The marker written for puzzles that have no solution.
+	 */
+	public static final String UNSOLVABLE = "unsolvable";
+	/**
+	 * The marker written for lines that do not describe a puzzle.
+	 */
+	public static final String INVALID = "invalid";
+	/**
+	 * The default number of puzzles in a chunk.
+	 */
+	public static final int DEFAULT_CHUNK_LINES = 1024;
+	/**
+	 * The size of the buffer used for reading the input.
+	 */
+	private static final int READ_BUFFER_SIZE = 1 << 16;
+	/**
+	 * Marks the end of the input in the queues of the pipeline.
+	 */
+	private static final PuzzleChunk END_OF_INPUT = new PuzzleChunk(0, 0, 0);
+	
+	private static final byte[] UNSOLVABLE_BYTES = UNSOLVABLE.getBytes(StandardCharsets.US_ASCII);
+	
+	private static final byte[] INVALID_BYTES = INVALID.getBytes(StandardCharsets.US_ASCII);
+	
+	private final SolverEngineType engineType;
+	
+	private final int squareSize;
+	
+	private final int threadCount;
+	
+	private final boolean ordered;
+	
+	private final int chunkLines;
+	
+	/**
+	 * The store of known solutions, or <code>null</code>.
+	 */
+	private SolutionStore store;
+	
+	/**
+	 * Reads the input and splits it to chunks of lines.
+	 */
+	private class Reader implements Runnable {
+		private final ReadableByteChannel input;
+		
+		private final BlockingQueue<PuzzleChunk> freeChunks;
+		
+		private final BlockingQueue<PuzzleChunk> workQueue;
+		
+		private final byte[] line;
+		
+		private final int maxPuzzleLength;
+		
+		private int lineLength;
+		
+		private boolean lineOverflow;
+		
+		private PuzzleChunk chunk;
+		
+		private long nextSequence;
+		
+		/**
+		 * The exception that stopped the reader, if any.
+		 */
+		volatile IOException failure;
+		
+		private void appendToLine(byte[] _bytes, int _from, int _length) {
+			if(lineOverflow || lineLength + _length > line.length) {
+				lineOverflow = true;
+				return;
+			}
+			System.arraycopy(_bytes, _from, line, lineLength, _length);
+			lineLength += _length;
+		}
+		
+		private void dispatchChunk() throws InterruptedException {
+			if(chunk == null)
+				return;
+			chunk.sequence = nextSequence++;
+			workQueue.put(chunk);
+			chunk = null;
+		}
+		
+		private void finishLine() throws InterruptedException {
+			while(lineLength > 0 && (line[lineLength - 1] & 0xff) <= ' ')
+				lineLength--;
+			if(lineLength > maxPuzzleLength)
+				lineOverflow = true;
+			if(lineLength > 0 || lineOverflow) {
+				int length = lineOverflow ? 0 : lineLength;
+				if(chunk != null && !chunk.canAppend(length))
+					dispatchChunk();
+				if(chunk == null)
+					chunk = freeChunks.take();
+				int index = chunk.lineCount++;
+				chunk.lineStarts[index] = chunk.inputSize;
+				chunk.lineLengths[index] = lineOverflow ? -1 : length;
+				System.arraycopy(line, 0, chunk.input, chunk.inputSize, length);
+				chunk.inputSize += length;
+			}
+			lineLength = 0;
+			lineOverflow = false;
+		}
+		
+		public void run() {
+			ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+			byte[] bytes = buffer.array();
+			try {
+				try {
+					while(input.read(buffer) >= 0) {
+						int end = buffer.position();
+						int pos = 0;
+						while(pos < end) {
+							int line_end = pos;
+							while(line_end < end && bytes[line_end] != '\n')
+								line_end++;
+							appendToLine(bytes, pos, line_end - pos);
+							if(line_end < end)
+								finishLine();
+							pos = line_end + 1;
+						}
+						buffer.clear();
+					}
+					finishLine();
+				}
+				catch(IOException e) {
+					failure = e;
+				}
+				dispatchChunk();
+				for(int i = 0; i < threadCount; i++)
+					workQueue.put(END_OF_INPUT);
+			}
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		
+		Reader(ReadableByteChannel _input, BlockingQueue<PuzzleChunk> _freeChunks,
+				BlockingQueue<PuzzleChunk> _workQueue, int _maxPuzzleLength) {
+			input = _input;
+			freeChunks = _freeChunks;
+			workQueue = _workQueue;
+			maxPuzzleLength = _maxPuzzleLength;
+			// Leave room for trailing whitespace and line terminators
+			line = new byte[_maxPuzzleLength + 8];
+		}
+	}
+	
+	/**
+	 * Solves the puzzles from the chunks in the work queue.
+	 */
+	private class Worker implements Runnable {
+		private final SolverEngine engine;
+		
+		private final BlockingQueue<PuzzleChunk> workQueue;
+		
+		private final BlockingQueue<PuzzleChunk> doneQueue;
+		
+		/**
+		 * The clues of the current puzzle, indexed by
+		 * <code>x + y * size</code>.
+		 */
+		private final int[] clues;
+		
+		private final int[] solution;
+		
+		/**
+		 * The first error of appending to the store. The worker stops using
+		 * the store after an error.
+		 */
+		IOException failure;
+		
+		/**
+		 * The exception that stopped the worker, if any.
+		 */
+		volatile RuntimeException error;
+		
+		/**
+		 * Loads a puzzle from the input of the chunk to the engine.
+		 *
+		 * @return <code>false</code> if the line does not describe a puzzle;
+		 * 			otherwise, <code>true</code>.
+		 */
+		private boolean loadPuzzle(PuzzleChunk _chunk, int _line) {
+			int size = engine.getSize();
+			if(!PuzzleParser.parse(_chunk.input, _chunk.lineStarts[_line], _chunk.lineLengths[_line], size, clues))
+				return false;
+			for(int y = 0; y < size; y++)
+				for(int x = 0; x < size; x++) {
+					int value = clues[x + y * size];
+					if(value == 0)
+						engine.clearValue(x, y);
+					else
+						engine.setValue(x, y, value);
+				}
+			return true;
+		}
+		
+		private void processChunk(PuzzleChunk _chunk) {
+			int size = engine.getSize();
+			byte[] output = _chunk.output;
+			int pos = 0;
+			for(int i = 0; i < _chunk.lineCount; i++) {
+				if(!loadPuzzle(_chunk, i)) {
+					System.arraycopy(INVALID_BYTES, 0, output, pos, INVALID_BYTES.length);
+					pos += INVALID_BYTES.length;
+				}
+				else if(!solve()) {
+					System.arraycopy(UNSOLVABLE_BYTES, 0, output, pos, UNSOLVABLE_BYTES.length);
+					pos += UNSOLVABLE_BYTES.length;
+				}
+				else {
+					for(int cell = 0; cell < solution.length; cell++)
+						output[pos++] = (byte)Sudoku.formatValue(solution[cell]);
+					_chunk.solvedCount++;
+				}
+				output[pos++] = '\n';
+			}
+			_chunk.outputSize = pos;
+		}
+		
+		/**
+		 * Solves the loaded puzzle, or looks it up in the store, and stores
+		 * the solution in {@link #solution}.
+		 *
+		 * @return <code>true</code> if a solution was found; otherwise,
+		 * 			<code>false</code>.
+		 */
+		private boolean solve() {
+			SolveResult known = store != null && failure == null ? store.lookup(clues, solution) : null;
+			if(known != null)
+				return known == SolveResult.SOLVED;
+			boolean solved = engine.solve();
+			if(solved) {
+				int size = engine.getSize();
+				for(int cell = 0; cell < solution.length; cell++)
+					solution[cell] = engine.getValue(cell % size, cell / size);
+			}
+			if(store != null && failure == null) {
+				try {
+					store.append(clues, solved ? solution : null);
+				}
+				catch(IOException e) {
+					failure = e;
+				}
+			}
+			return solved;
+		}
+		
+		public void run() {
+			try {
+				for(PuzzleChunk chunk = workQueue.take(); chunk != END_OF_INPUT; chunk = workQueue.take()) {
+					processChunk(chunk);
+					doneQueue.put(chunk);
+				}
+			}
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			catch(RuntimeException e) {
+				error = e;
+			}
+			finally {
+				// The done queue has room for all chunks and for the end
+				// markers of all workers, so this never fails
+				doneQueue.offer(END_OF_INPUT);
+			}
+		}
+		
+		Worker(BlockingQueue<PuzzleChunk> _workQueue, BlockingQueue<PuzzleChunk> _doneQueue) {
+			engine = engineType.create(squareSize);
+			workQueue = _workQueue;
+			doneQueue = _doneQueue;
+			int cell_count = engine.getSize() * engine.getSize();
+			clues = new int[cell_count];
+			solution = new int[cell_count];
+		}
+	}
+	
+	private static boolean hasFailedWorker(Worker[] _workers) {
+		for(Worker worker : _workers)
+			if(worker.error != null)
+				return true;
+		return false;
+	}
+	
+	/**
+	 * Solves all puzzles from the input and writes the results to the output.
+	 *
+	 * @param _input the channel, from which the puzzles are read.
+	 * @param _output the channel, to which the results are written.
+	 * @return the counts of processed and solved puzzles.
+	 * @throws IOException if reading or writing fails.
+	 * @throws InterruptedException if the calling thread was interrupted.
+	 * @throws RuntimeException if solving a puzzle failed in a worker.
+	 */
+	public Result run(ReadableByteChannel _input, WritableByteChannel _output) throws IOException, InterruptedException {
+		long start_time = System.nanoTime();
+		int cell_count = squareSize * squareSize * squareSize * squareSize;
+		// Numbers separated by spaces or commas take up to three characters
+		// per cell; longer lines are invalid
+		int max_line = 4 * cell_count + 16;
+		int output_line = Math.max(cell_count, Math.max(UNSOLVABLE_BYTES.length, INVALID_BYTES.length)) + 1;
+		// Enough chunks to keep all workers busy while the writer waits for
+		// the next chunk in order
+		int chunk_count = 2 * threadCount + 2;
+		BlockingQueue<PuzzleChunk> free_chunks = new ArrayBlockingQueue<PuzzleChunk>(chunk_count);
+		BlockingQueue<PuzzleChunk> work_queue = new ArrayBlockingQueue<PuzzleChunk>(chunk_count + threadCount);
+		BlockingQueue<PuzzleChunk> done_queue = new ArrayBlockingQueue<PuzzleChunk>(chunk_count + threadCount);
+		for(int i = 0; i < chunk_count; i++)
+			free_chunks.add(new PuzzleChunk(chunkLines, max_line, output_line));
+		
+		Reader reader = new Reader(_input, free_chunks, work_queue, max_line);
+		Worker[] workers = new Worker[threadCount];
+		Thread[] threads = new Thread[threadCount + 1];
+		threads[0] = new Thread(reader, "BatchSolver reader");
+		for(int i = 0; i < threadCount; i++) {
+			workers[i] = new Worker(work_queue, done_queue);
+			threads[i + 1] = new Thread(workers[i], "BatchSolver worker " + i);
+		}
+		for(Thread thread : threads) {
+			thread.setDaemon(true);
+			thread.start();
+		}
+		
+		Result result = new Result();
+		try {
+			PuzzleChunk[] pending = new PuzzleChunk[chunk_count];
+			long next_sequence = 0;
+			int finished_workers = 0;
+			while(finished_workers < threadCount) {
+				PuzzleChunk chunk = done_queue.take();
+				if(chunk == END_OF_INPUT) {
+					finished_workers++;
+					// The chunk of a failed worker is lost, the writer would
+					// wait for it forever
+					if(hasFailedWorker(workers))
+						break;
+					continue;
+				}
+				if(!ordered) {
+					writeChunk(chunk, _output, result);
+					free_chunks.put(chunk);
+					continue;
+				}
+				// At most chunk_count chunks are in flight, so their sequence
+				// numbers are unique modulo chunk_count
+				pending[(int)(chunk.sequence % chunk_count)] = chunk;
+				for(;;) {
+					int slot = (int)(next_sequence % chunk_count);
+					PuzzleChunk next = pending[slot];
+					if(next == null || next.sequence != next_sequence)
+						break;
+					pending[slot] = null;
+					writeChunk(next, _output, result);
+					free_chunks.put(next);
+					next_sequence++;
+				}
+			}
+		}
+		finally {
+			for(Thread thread : threads)
+				thread.interrupt();
+		}
+		for(Worker worker : workers)
+			if(worker.error != null)
+				throw worker.error;
+		if(reader.failure != null)
+			throw reader.failure;
+		for(Worker worker : workers)
+			if(worker.failure != null)
+				throw worker.failure;
+		result.elapsedNanos = System.nanoTime() - start_time;
+		return result;
+	}
+	
+	/**
+	 * Sets the store, in which the puzzles are looked up before they are
+	 * solved, and to which the new results are appended.
+	 *
+	 * @param _store the store, or <code>null</code> to solve all puzzles.
+	 * @throws IllegalArgumentException if the store holds puzzles of
+	 * 			a different size.
+	 */
+	public void setStore(SolutionStore _store) {
+		if(_store != null && _store.getSquareSize() != squareSize)
+			throw new IllegalArgumentException("The store holds puzzles of square size " + _store.getSquareSize());
+		store = _store;
+	}
+	
+	private static void writeChunk(PuzzleChunk _chunk, WritableByteChannel _output, Result _result) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(_chunk.output, 0, _chunk.outputSize);
+		while(buffer.hasRemaining())
+			_output.write(buffer);
+		_result.puzzleCount += _chunk.lineCount;
+		_result.solvedCount += _chunk.solvedCount;
+		_chunk.clear();
+	}
+	
+	/**
+	 * Creates a new batch solver.
+	 *
+	 * @param _engineType the type of the engines used by the workers.
+	 * @param _squareSize the size of an edge of a square group.
+	 * @param _threadCount the number of worker threads.
+	 * @param _ordered <code>true</code> if the results are written in the
+	 * 			order of the input; <code>false</code> if they are written as
+	 * 			soon as they are available.
+	 * @param _chunkLines the number of puzzles passed between the threads
+	 * 			at once.
+	 */
+	public BatchSolver(SolverEngineType _engineType, int _squareSize, int _threadCount, boolean _ordered, int _chunkLines) {
+		if(_squareSize < Sudoku.MIN_SQUARE_SIZE || _squareSize * _squareSize > 35)
+			throw new IllegalArgumentException("Unsupported square size: " + _squareSize);
+		if(_threadCount < 1 || _chunkLines < 1)
+			throw new IllegalArgumentException("The number of threads and the chunk size must be positive");
+		engineType = _engineType;
+		squareSize = _squareSize;
+		threadCount = _threadCount;
+		ordered = _ordered;
+		chunkLines = _chunkLines;
+	}
+	
+	private static void printUsage() {
+		System.err.println("Usage: BatchSolver [-engine PROPAGATION|BACKJUMPING|DANCING_LINKS] [-threads n] [-size n] [-chunk n] [-unordered] [-store path] [input] [output]");
+	}
+	
+	public static void main(String[] _args) {
+		SolverEngineType engine_type = SolverEngineType.PROPAGATION;
+		int thread_count = Runtime.getRuntime().availableProcessors();
+		int square_size = Sudoku.GAME_SQUARE_SIZE;
+		int chunk_lines = DEFAULT_CHUNK_LINES;
+		boolean ordered = true;
+		String store_name = null;
+		String input_name = "-";
+		String output_name = "-";
+		int positional = 0;
+		try {
+			for(int i = 0; i < _args.length; i++) {
+				String arg = _args[i];
+				if(arg.equals("-engine"))
+					engine_type = SolverEngineType.valueOf(_args[++i]);
+				else if(arg.equals("-threads"))
+					thread_count = Integer.parseInt(_args[++i]);
+				else if(arg.equals("-size"))
+					square_size = Integer.parseInt(_args[++i]);
+				else if(arg.equals("-chunk"))
+					chunk_lines = Integer.parseInt(_args[++i]);
+				else if(arg.equals("-unordered"))
+					ordered = false;
+				else if(arg.equals("-store"))
+					store_name = _args[++i];
+				else if(positional == 0) {
+					input_name = arg;
+					positional++;
+				}
+				else if(positional == 1) {
+					output_name = arg;
+					positional++;
+				}
+				else
+					throw new IllegalArgumentException("Unexpected argument: " + arg);
+			}
+		}
+		catch(RuntimeException e) {
+			System.err.println(e.getMessage());
+			printUsage();
+			System.exit(2);
+		}
+		
+		try(ReadableByteChannel input = input_name.equals("-")
+					? new FileInputStream(FileDescriptor.in).getChannel()
+					: FileChannel.open(Paths.get(input_name), StandardOpenOption.READ);
+			WritableByteChannel output = output_name.equals("-")
+					? new FileOutputStream(FileDescriptor.out).getChannel()
+					: FileChannel.open(Paths.get(output_name), StandardOpenOption.WRITE,
+							StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+			SolutionStore store = store_name != null ? new SolutionStore(Paths.get(store_name), square_size) : null) {
+			BatchSolver solver = new BatchSolver(engine_type, square_size, thread_count, ordered, chunk_lines);
+			solver.setStore(store);
+			Result result = solver.run(input, output);
+			double seconds = result.elapsedNanos / 1e9;
+			System.err.printf("Solved %d of %d puzzles in %.3f s (%.0f puzzles/s)%n",
+					result.solvedCount, result.puzzleCount, seconds, result.puzzleCount / seconds);
+		}
+		catch(IOException e) {
+			System.err.println("I/O error: " + e.getMessage());
+			System.exit(1);
+		}
+		catch(InterruptedException e) {
+			System.err.println("Interrupted");
+			System.exit(1);
+		}
+	}
+}
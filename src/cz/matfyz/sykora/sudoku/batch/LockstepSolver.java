@@ -0,0 +1,566 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku.batch;
+
+import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.*;
+import java.util.*;
+
+import cz.matfyz.sykora.sudoku.*;
+import cz.matfyz.sykora.sudoku.corpus.CorpusReader;
+
+/**
+ * Solves batches of puzzles in lockstep: the candidates of a fixed number
+ * of puzzles (the lanes) are stored as a structure of arrays, indexed by
+ * <code>cell * laneCount + lane</code>, and the naked and hidden singles
+ * are propagated through each group for all lanes at once. A batch that
+ * does not fill all lanes is propagated only in the lanes it uses. Only the
+ * puzzles that are neither solved nor refuted by the singles are passed to
+ * a scalar {@link Sudoku}, with the singles found so far as the clues.
+ * <p>
+ * The propagation of a group runs in the SIMD instructions of the
+ * processor through the Vector API, when the incubating module
+ * <code>jdk.incubator.vector</code> is present (the JVM is started with
+ * <code>--add-modules jdk.incubator.vector</code>); {@link #create(int, int)}
+ * then returns a solver that uses it. This class itself propagates the
+ * groups with scalar loops over the lanes, which have no branches and read
+ * and write consecutive elements of the arrays, and serve as the fallback
+ * on JVMs without the module. The gain depends on the corpus: the puzzles
+ * that are solved by the singles alone are propagated faster than they
+ * are loaded and solved one by one, while the others pay for the lockstep
+ * propagation on top of the scalar search.
+ * <p>
+ * The candidates are stored as <code>int</code> masks, so only boards with
+ * at most 32 values are supported. The solver is not safe for concurrent
+ * use.
+ * <p>
+ * Usage: <code>LockstepSolver [-size n] [-lanes n] [-repeat n] path</code>,
+ * which compares the throughput of the per-puzzle solving, the scalar
+ * lockstep solving and, when the Vector API is available, the vectorized
+ * lockstep solving on a corpus (see {@link CorpusReader}), and checks that
+ * they find the same puzzles solvable, and that the lockstep solutions are
+ * valid.
+ *
+ * @author Ondrej Sykora
+ */
+public class LockstepSolver {
+	/**
+	 * The default number of lanes.
+	 */
+	public static final int DEFAULT_LANE_COUNT = 64;
+	/**
+	 * The largest size of an edge of a square group supported by the
+	 * solver.
+	 */
+	public static final int MAX_SQUARE_SIZE = 5;
+	/**
+	 * The name of the module of the Vector API.
+	 */
+	private static final String VECTOR_MODULE = "jdk.incubator.vector";
+	/**
+	 * The solver that uses the Vector API. It is loaded by reflection, so
+	 * that this class works without the module.
+	 */
+	private static final String VECTOR_SOLVER_CLASS = "cz.matfyz.sykora.sudoku.batch.VectorLockstepSolver";
+
+	private final int squareSize;
+
+	private final int size;
+
+	private final int cellCount;
+
+	final int laneCount;
+	/**
+	 * The mask with all values of the board.
+	 */
+	final int allValues;
+	/**
+	 * The cells of each group, as in {@link BoardTopology}.
+	 */
+	private final int[][] groups;
+	/**
+	 * The candidates of the cells of all lanes, indexed by
+	 * <code>cell * laneCount + lane</code>.
+	 */
+	final int[] candidates;
+	/**
+	 * The values of the single cells of the current group, for each lane.
+	 */
+	private final int[] used;
+	/**
+	 * The values that are candidates of at least one cell of the current
+	 * group, for each lane.
+	 */
+	private final int[] once;
+	/**
+	 * The values that are candidates of at least two cells of the current
+	 * group, for each lane.
+	 */
+	private final int[] twice;
+	/**
+	 * The hidden singles of the current group, for each lane.
+	 */
+	private final int[] hidden;
+	/**
+	 * Non-zero for the lanes, in which a contradiction was found.
+	 */
+	final int[] failed;
+	/**
+	 * The candidates removed in the current round, for each lane.
+	 */
+	final int[] changed;
+	/**
+	 * The solver for the puzzles that need search.
+	 */
+	private final Sudoku fallback;
+
+	private long puzzleCount;
+
+	private long propagatedCount;
+
+	private long fallbackCount;
+
+	/**
+	 * Creates a new solver, which uses the Vector API if the module
+	 * <code>jdk.incubator.vector</code> is present, and the scalar loops
+	 * otherwise.
+	 *
+	 * @param _squareSize the size of an edge of a square group, at most
+	 * 			{@link #MAX_SQUARE_SIZE}.
+	 * @param _laneCount the number of puzzles propagated at once.
+	 * @return the new solver.
+	 * @throws IllegalArgumentException if the size or the number of lanes
+	 * 			is out of range.
+	 */
+	public static LockstepSolver create(int _squareSize, int _laneCount) {
+		if(ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) {
+			try {
+				return (LockstepSolver)Class.forName(VECTOR_SOLVER_CLASS)
+						.getDeclaredConstructor(int.class, int.class).newInstance(_squareSize, _laneCount);
+			}
+			catch(InvocationTargetException e) {
+				if(e.getCause() instanceof RuntimeException)
+					throw (RuntimeException)e.getCause();
+				// Falls back to the scalar loops
+			}
+			catch(ReflectiveOperationException | LinkageError e) {
+				// Falls back to the scalar loops
+			}
+		}
+		return new LockstepSolver(_squareSize, _laneCount);
+	}
+
+	/**
+	 * Returns the number of puzzles passed to the scalar solver, because
+	 * the singles did not solve or refute them.
+	 *
+	 * @return the number of puzzles solved by the scalar solver.
+	 */
+	public long getFallbackCount() {
+		return fallbackCount;
+	}
+
+	/**
+	 * Returns the number of lanes.
+	 *
+	 * @return the number of puzzles propagated at once.
+	 */
+	public int getLaneCount() {
+		return laneCount;
+	}
+
+	/**
+	 * Returns the number of puzzles solved or refuted by the lockstep
+	 * propagation alone.
+	 *
+	 * @return the number of propagated puzzles.
+	 */
+	public long getPropagatedCount() {
+		return propagatedCount;
+	}
+
+	/**
+	 * Returns the number of puzzles processed so far.
+	 *
+	 * @return the number of puzzles.
+	 */
+	public long getPuzzleCount() {
+		return puzzleCount;
+	}
+
+	/**
+	 * Returns the size of an edge of a square group of the puzzles.
+	 *
+	 * @return the size of an edge of a square group.
+	 */
+	public int getSquareSize() {
+		return squareSize;
+	}
+
+	/**
+	 * Checks if the solver propagates the groups with the Vector API.
+	 *
+	 * @return <code>true</code> if the solver is vectorized; otherwise,
+	 * 			<code>false</code>.
+	 */
+	public boolean isVectorized() {
+		return false;
+	}
+
+	/**
+	 * Checks if a solution keeps the clues of the puzzle and has all values
+	 * in each group. Puzzles with more than one solution may be solved
+	 * differently by the lockstep and the per-puzzle solving, so the
+	 * benchmark compares the solutions with the rules, not with each other.
+	 */
+	private boolean isSolution(int[] _puzzles, int[] _solutions, int _offset) {
+		for(int cell = 0; cell < cellCount; cell++) {
+			int clue = _puzzles[_offset + cell];
+			if(clue != 0 && clue != _solutions[_offset + cell])
+				return false;
+		}
+		for(int[] group : groups) {
+			int seen = 0;
+			for(int cell : group)
+				seen |= 1 << (_solutions[_offset + cell] - 1);
+			if(seen != allValues)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Loads the puzzles to the first <code>_count</code> lanes. The other
+	 * lanes are left as they are, and are skipped by the propagation.
+	 */
+	private void load(int[] _puzzles, int _first, int _count) {
+		for(int lane = 0; lane < _count; lane++) {
+			failed[lane] = 0;
+			int offset = (_first + lane) * cellCount;
+			for(int cell = 0; cell < cellCount; cell++) {
+				int value = _puzzles[offset + cell];
+				candidates[cell * laneCount + lane] = value == 0 ? allValues : 1 << (value - 1);
+			}
+		}
+	}
+
+	/**
+	 * Propagates the naked and hidden singles in the first
+	 * <code>_count</code> lanes until no candidate is removed from a lane
+	 * that did not fail.
+	 */
+	private void propagate(int _count) {
+		boolean modified = true;
+		while(modified) {
+			Arrays.fill(changed, 0, _count, 0);
+			for(int[] group : groups)
+				propagateGroup(group, 0, _count);
+			int active_changes = 0;
+			for(int lane = 0; lane < _count; lane++) {
+				int f = failed[lane];
+				// -1 if the lane failed, 0 otherwise
+				int failed_mask = (f | -f) >> 31;
+				active_changes |= changed[lane] & ~failed_mask;
+			}
+			modified = active_changes != 0;
+		}
+	}
+
+	/**
+	 * Propagates the singles of a group in the lanes from
+	 * <code>_first</code> (inclusive) to <code>_end</code> (exclusive).
+	 * This implementation runs a scalar loop over the lanes.
+	 *
+	 * @param _group the cells of the group.
+	 * @param _first the first lane.
+	 * @param _end the end of the range of lanes.
+	 */
+	void propagateGroup(int[] _group, int _first, int _end) {
+		Arrays.fill(used, _first, _end, 0);
+		Arrays.fill(once, _first, _end, 0);
+		Arrays.fill(twice, _first, _end, 0);
+		// Collects the singles and counts the candidates of the group
+		for(int cell : _group) {
+			int base = cell * laneCount;
+			for(int lane = _first; lane < _end; lane++) {
+				int m = candidates[base + lane];
+				int t = m & (m - 1);
+				// The value of a single cell, or 0
+				int single = m & ~((t | -t) >> 31);
+				failed[lane] |= used[lane] & single;
+				used[lane] |= single;
+				twice[lane] |= once[lane] & m;
+				once[lane] |= m;
+			}
+		}
+		for(int lane = _first; lane < _end; lane++) {
+			hidden[lane] = once[lane] & ~twice[lane] & ~used[lane];
+			// A value with no place in the group
+			failed[lane] |= allValues & ~once[lane];
+		}
+		// Removes the values of the singles from the other cells, and sets
+		// the hidden singles
+		for(int cell : _group) {
+			int base = cell * laneCount;
+			for(int lane = _first; lane < _end; lane++) {
+				int m = candidates[base + lane];
+				int t = m & (m - 1);
+				int not_single = (t | -t) >> 31;
+				int reduced = m & ~(used[lane] & not_single);
+				int h = reduced & hidden[lane];
+				int has_hidden = (h | -h) >> 31;
+				reduced = (h & has_hidden) | (reduced & ~has_hidden);
+				// An empty cell
+				failed[lane] |= ~((reduced | -reduced) >> 31) & 1;
+				changed[lane] |= m ^ reduced;
+				candidates[base + lane] = reduced;
+			}
+		}
+	}
+
+	/**
+	 * Solves a batch of puzzles. The puzzles are processed in groups of
+	 * {@link #getLaneCount()}; the puzzles of a group that are not solved
+	 * by the lockstep propagation are solved by a scalar solver.
+	 *
+	 * @param _puzzles the values of the cells of the puzzles, puzzle after
+	 * 			puzzle, each indexed by <code>x + y * size</code>. Zero
+	 * 			stands for an empty cell.
+	 * @param _puzzleCount the number of puzzles.
+	 * @param _solutions the array, to which the solutions are written, in
+	 * 			the same layout as the puzzles. The values of an unsolvable
+	 * 			puzzle are undefined.
+	 * @param _solved the array, to which the result of each puzzle is
+	 * 			written: <code>true</code> if the puzzle was solved;
+	 * 			<code>false</code> if it has no solution.
+	 * @return the number of solved puzzles.
+	 * @throws IllegalArgumentException if the arrays are too small, or if
+	 * 			a value is out of range.
+	 */
+	public int solve(int[] _puzzles, int _puzzleCount, int[] _solutions, boolean[] _solved) {
+		if(_puzzleCount < 0 || _puzzles.length < _puzzleCount * cellCount
+				|| _solutions.length < _puzzleCount * cellCount || _solved.length < _puzzleCount)
+			throw new IllegalArgumentException("The arrays are too small for " + _puzzleCount + " puzzles");
+		for(int i = 0; i < _puzzleCount * cellCount; i++)
+			if(_puzzles[i] < 0 || _puzzles[i] > size)
+				throw new IllegalArgumentException("Value out of range: " + _puzzles[i]);
+		int solved_count = 0;
+		for(int first = 0; first < _puzzleCount; first += laneCount) {
+			int count = Math.min(laneCount, _puzzleCount - first);
+			load(_puzzles, first, count);
+			propagate(count);
+			for(int lane = 0; lane < count; lane++) {
+				boolean solved = store(lane, _solutions, (first + lane) * cellCount);
+				_solved[first + lane] = solved;
+				if(solved)
+					solved_count++;
+			}
+			puzzleCount += count;
+		}
+		return solved_count;
+	}
+
+	/**
+	 * Writes the solution of a lane, solving it with the scalar solver if
+	 * the propagation did not solve it.
+	 *
+	 * @return <code>true</code> if the puzzle of the lane was solved.
+	 */
+	private boolean store(int _lane, int[] _solutions, int _offset) {
+		if(failed[_lane] != 0) {
+			propagatedCount++;
+			return false;
+		}
+		boolean complete = true;
+		for(int cell = 0; cell < cellCount; cell++) {
+			int m = candidates[cell * laneCount + _lane];
+			if((m & (m - 1)) != 0) {
+				complete = false;
+				break;
+			}
+		}
+		if(complete) {
+			for(int cell = 0; cell < cellCount; cell++)
+				_solutions[_offset + cell] = Integer.numberOfTrailingZeros(candidates[cell * laneCount + _lane]) + 1;
+			propagatedCount++;
+			return true;
+		}
+		fallbackCount++;
+		fallback.reset();
+		for(int cell = 0; cell < cellCount; cell++) {
+			int m = candidates[cell * laneCount + _lane];
+			if((m & (m - 1)) == 0)
+				fallback.setValue(cell % size, cell / size, Integer.numberOfTrailingZeros(m) + 1);
+		}
+		if(!fallback.solve())
+			return false;
+		for(int cell = 0; cell < cellCount; cell++)
+			_solutions[_offset + cell] = fallback.getValue(cell % size, cell / size);
+		return true;
+	}
+
+	private static void printUsage() {
+		System.err.println("Usage: LockstepSolver [-size square-size] [-lanes n] [-repeat n] path");
+	}
+
+	/**
+	 * Solves the puzzles of a corpus one by one, in scalar lockstep and in
+	 * vectorized lockstep, compares the results, and reports the throughput
+	 * of each.
+	 *
+	 * @param _args the command-line arguments.
+	 */
+	public static void main(String[] _args) {
+		int square_size = Sudoku.GAME_SQUARE_SIZE;
+		int lane_count = DEFAULT_LANE_COUNT;
+		int repeat = 5;
+		String path_name = null;
+		LockstepSolver lockstep = null;
+		LockstepSolver vector = null;
+		try {
+			for(int i = 0; i < _args.length; i++) {
+				String arg = _args[i];
+				if(arg.equals("-size"))
+					square_size = Integer.parseInt(_args[++i]);
+				else if(arg.equals("-lanes"))
+					lane_count = Integer.parseInt(_args[++i]);
+				else if(arg.equals("-repeat"))
+					repeat = Integer.parseInt(_args[++i]);
+				else if(path_name == null)
+					path_name = arg;
+				else
+					throw new IllegalArgumentException("Unexpected argument: " + arg);
+			}
+			if(path_name == null)
+				throw new IllegalArgumentException("Missing the path of the corpus");
+			if(repeat < 1)
+				throw new IllegalArgumentException("The number of repetitions must be positive");
+			lockstep = new LockstepSolver(square_size, lane_count);
+			vector = create(square_size, lane_count);
+			if(!vector.isVectorized()) {
+				System.err.println("The Vector API is not available; start the JVM with --add-modules " + VECTOR_MODULE);
+				vector = null;
+			}
+		}
+		catch(RuntimeException e) {
+			System.err.println(e.getMessage());
+			printUsage();
+			System.exit(2);
+		}
+
+		int size = square_size * square_size;
+		int cell_count = size * size;
+		int[] puzzles = new int[1024 * cell_count];
+		int puzzle_count = 0;
+		try(CorpusReader reader = new CorpusReader(Paths.get(path_name), square_size)) {
+			int[] values = new int[cell_count];
+			while(reader.next(values)) {
+				if((puzzle_count + 1) * cell_count > puzzles.length)
+					puzzles = Arrays.copyOf(puzzles, 2 * puzzles.length);
+				System.arraycopy(values, 0, puzzles, puzzle_count * cell_count, cell_count);
+				puzzle_count++;
+			}
+		}
+		catch(IOException e) {
+			System.err.println("I/O error: " + e.getMessage());
+			System.exit(1);
+		}
+
+		if(puzzle_count == 0) {
+			System.err.println("The corpus has no valid puzzles");
+			System.exit(1);
+		}
+
+		Sudoku sudoku = new Sudoku(square_size);
+		int[] scalar_solutions = new int[puzzle_count * cell_count];
+		boolean[] scalar_solved = new boolean[puzzle_count];
+		int[] lockstep_solutions = new int[puzzle_count * cell_count];
+		boolean[] lockstep_solved = new boolean[puzzle_count];
+		int[] vector_solutions = new int[puzzle_count * cell_count];
+		boolean[] vector_solved = new boolean[puzzle_count];
+		for(int r = 0; r < repeat; r++) {
+			long start = System.nanoTime();
+			for(int i = 0; i < puzzle_count; i++) {
+				int offset = i * cell_count;
+				sudoku.reset();
+				for(int cell = 0; cell < cell_count; cell++)
+					if(puzzles[offset + cell] != 0)
+						sudoku.setValue(cell % size, cell / size, puzzles[offset + cell]);
+				scalar_solved[i] = sudoku.solve();
+				if(scalar_solved[i])
+					for(int cell = 0; cell < cell_count; cell++)
+						scalar_solutions[offset + cell] = sudoku.getValue(cell % size, cell / size);
+			}
+			long scalar_nanos = System.nanoTime() - start;
+			start = System.nanoTime();
+			lockstep.solve(puzzles, puzzle_count, lockstep_solutions, lockstep_solved);
+			long lockstep_nanos = System.nanoTime() - start;
+			System.err.printf("Round %d: per-puzzle %.0f puzzles/s, lockstep %.0f puzzles/s (%.2fx)", r + 1,
+					puzzle_count / (scalar_nanos / 1e9), puzzle_count / (lockstep_nanos / 1e9),
+					(double)scalar_nanos / lockstep_nanos);
+			if(vector != null) {
+				start = System.nanoTime();
+				vector.solve(puzzles, puzzle_count, vector_solutions, vector_solved);
+				long vector_nanos = System.nanoTime() - start;
+				System.err.printf(", vector %.0f puzzles/s (%.2fx)", puzzle_count / (vector_nanos / 1e9),
+						(double)scalar_nanos / vector_nanos);
+			}
+			System.err.println();
+		}
+
+		int mismatch_count = 0;
+		for(int i = 0; i < puzzle_count; i++) {
+			if(scalar_solved[i] != lockstep_solved[i]
+					|| (lockstep_solved[i] && !lockstep.isSolution(puzzles, lockstep_solutions, i * cell_count)))
+				mismatch_count++;
+			else if(vector != null && (scalar_solved[i] != vector_solved[i]
+					|| (vector_solved[i] && !vector.isSolution(puzzles, vector_solutions, i * cell_count))))
+				mismatch_count++;
+		}
+		System.err.printf("%d puzzles, %.1f%% solved by the lockstep propagation, %d different results%n",
+				puzzle_count, 100.0 * lockstep.getPropagatedCount() / lockstep.getPuzzleCount(), mismatch_count);
+	}
+
+	/**
+	 * Creates a new solver.
+	 *
+	 * @param _squareSize the size of an edge of a square group, at most
+	 * 			{@link #MAX_SQUARE_SIZE}.
+	 * @param _laneCount the number of puzzles propagated at once.
+	 */
+	public LockstepSolver(int _squareSize, int _laneCount) {
+		if(_squareSize < Sudoku.MIN_SQUARE_SIZE || _squareSize > MAX_SQUARE_SIZE)
+			throw new IllegalArgumentException("Unsupported square size: " + _squareSize);
+		if(_laneCount < 1)
+			throw new IllegalArgumentException("The number of lanes must be positive");
+		squareSize = _squareSize;
+		size = _squareSize * _squareSize;
+		cellCount = size * size;
+		laneCount = _laneCount;
+		allValues = size == 32 ? -1 : (1 << size) - 1;
+		groups = BoardTopology.get(_squareSize).getGroups();
+		candidates = new int[cellCount * _laneCount];
+		used = new int[_laneCount];
+		once = new int[_laneCount];
+		twice = new int[_laneCount];
+		hidden = new int[_laneCount];
+		failed = new int[_laneCount];
+		changed = new int[_laneCount];
+		fallback = new Sudoku(_squareSize);
+	}
+}
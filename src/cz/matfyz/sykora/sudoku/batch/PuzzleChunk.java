@@ -0,0 +1,102 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku.batch;
+
+/**
+ * A block of puzzles passed through the pipeline of {@link BatchSolver}.
+ * The chunks are preallocated and recycled, so the memory used by the
+ * pipeline does not depend on the size of the input.
+ *
+ * @author Ondrej Sykora
+ */
+class PuzzleChunk {
+	/**
+	 * The bytes of the puzzles in this chunk. The line terminators are not
+	 * stored.
+	 */
+	final byte[] input;
+	/**
+	 * The number of bytes used in {@link #input}.
+	 */
+	int inputSize;
+	/**
+	 * The offset of each puzzle in {@link #input}.
+	 */
+	final int[] lineStarts;
+	/**
+	 * The length of each puzzle in {@link #input}, or <code>-1</code> if the
+	 * line was too long to be stored.
+	 */
+	final int[] lineLengths;
+	/**
+	 * The number of puzzles in this chunk.
+	 */
+	int lineCount;
+	/**
+	 * The output lines for the puzzles in this chunk, including the line
+	 * terminators.
+	 */
+	final byte[] output;
+	/**
+	 * The number of bytes used in {@link #output}.
+	 */
+	int outputSize;
+	/**
+	 * The position of this chunk in the input stream.
+	 */
+	long sequence;
+	/**
+	 * The number of puzzles in this chunk that were solved.
+	 */
+	int solvedCount;
+	
+	/**
+	 * Checks if there is space for another line of the given length.
+	 *
+	 * @param _length the length of the line.
+	 * @return <code>true</code> if the line fits into this chunk; otherwise,
+	 * 			<code>false</code>.
+	 */
+	boolean canAppend(int _length) {
+		return lineCount < lineStarts.length && inputSize + _length <= input.length;
+	}
+	
+	/**
+	 * Removes all lines from the chunk before it is reused.
+	 */
+	void clear() {
+		inputSize = 0;
+		lineCount = 0;
+		outputSize = 0;
+		solvedCount = 0;
+	}
+	
+	/**
+	 * Creates a new chunk.
+	 *
+	 * @param _lineCapacity the maximal number of puzzles in the chunk.
+	 * @param _lineLength the maximal length of a puzzle.
+	 * @param _outputLineLength the maximal length of an output line,
+	 * 			including the line terminator.
+	 */
+	PuzzleChunk(int _lineCapacity, int _lineLength, int _outputLineLength) {
+		input = new byte[_lineCapacity * _lineLength];
+		lineStarts = new int[_lineCapacity];
+		lineLengths = new int[_lineCapacity];
+		output = new byte[_lineCapacity * _outputLineLength];
+	}
+}
@@ -0,0 +1,97 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku.batch;
+
+import jdk.incubator.vector.*;
+
+/**
+ * A {@link LockstepSolver} that propagates the singles of a group with the
+ * Vector API: the lanes are processed in vectors of the preferred species
+ * of the processor, and the counters of a group stay in vector registers
+ * while its cells are scanned. The lanes that do not fill a whole vector
+ * are propagated by the scalar loops of {@link LockstepSolver}.
+ * <p>
+ * The class needs the incubating module <code>jdk.incubator.vector</code>,
+ * so it is only created by {@link LockstepSolver#create(int, int)}, which
+ * checks that the module is present.
+ *
+ * @author Ondrej Sykora
+ */
+final class VectorLockstepSolver extends LockstepSolver {
+	private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+	public boolean isVectorized() {
+		return true;
+	}
+
+	void propagateGroup(int[] _group, int _first, int _end) {
+		int step = SPECIES.length();
+		int bound = _first + SPECIES.loopBound(_end - _first);
+		IntVector zero = IntVector.zero(SPECIES);
+		IntVector all_values = IntVector.broadcast(SPECIES, allValues);
+		for(int lane = _first; lane < bound; lane += step) {
+			IntVector used = zero;
+			IntVector once = zero;
+			IntVector twice = zero;
+			IntVector failed_lanes = IntVector.fromArray(SPECIES, failed, lane);
+			// Collects the singles and counts the candidates of the group
+			for(int cell : _group) {
+				IntVector m = IntVector.fromArray(SPECIES, candidates, cell * laneCount + lane);
+				// The value of a single cell, or 0
+				IntVector single = zero.blend(m, m.and(m.sub(1)).eq(0));
+				failed_lanes = failed_lanes.or(used.and(single));
+				used = used.or(single);
+				twice = twice.or(once.and(m));
+				once = once.or(m);
+			}
+			IntVector hidden = once.and(twice.or(used).not());
+			// A value with no place in the group
+			failed_lanes = failed_lanes.or(all_values.and(once.not()));
+			// Removes the values of the singles from the other cells, and
+			// sets the hidden singles
+			IntVector not_used = used.not();
+			IntVector changed_lanes = IntVector.fromArray(SPECIES, changed, lane);
+			VectorMask<Integer> empty = SPECIES.maskAll(false);
+			for(int cell : _group) {
+				int index = cell * laneCount + lane;
+				IntVector m = IntVector.fromArray(SPECIES, candidates, index);
+				VectorMask<Integer> not_single = m.and(m.sub(1)).eq(0).not();
+				IntVector reduced = m.blend(m.and(not_used), not_single);
+				IntVector h = reduced.and(hidden);
+				reduced = reduced.blend(h, h.eq(0).not());
+				empty = empty.or(reduced.eq(0));
+				changed_lanes = changed_lanes.or(m.lanewise(VectorOperators.XOR, reduced));
+				reduced.intoArray(candidates, index);
+			}
+			failed_lanes.or(zero.blend(1, empty)).intoArray(failed, lane);
+			changed_lanes.intoArray(changed, lane);
+		}
+		if(bound < _end)
+			super.propagateGroup(_group, bound, _end);
+	}
+
+	/**
+	 * Creates a new solver.
+	 *
+	 * @param _squareSize the size of an edge of a square group, at most
+	 * 			{@link #MAX_SQUARE_SIZE}.
+	 * @param _laneCount the number of puzzles propagated at once.
+	 */
+	VectorLockstepSolver(int _squareSize, int _laneCount) {
+		super(_squareSize, _laneCount);
+	}
+}
@@ -0,0 +1,127 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku.benchmark;
+
+import cz.matfyz.sykora.sudoku.*;
+import cz.matfyz.sykora.sudoku.generator.*;
+
+/**
+ * The named sets of puzzles used by the benchmarks. The fixed corpora are
+ * the puzzles of {@link cz.matfyz.sykora.sudoku.test.SolverTest}; the
+ * generated ones are produced by {@link PuzzleGenerator} with a fixed seed
+ * on first use, so they are the same in every run.
+ *
+ * @author Ondrej Sykora
+ */
+public enum Corpus {
+	/**
+	 * The easy puzzles, solved by the propagation alone.
+	 */
+	EASY(Sudoku.GAME_SQUARE_SIZE,
+			"xxx7x3xx2187x92x35x5x4x8x97x34xxx9xx7x5x3x1x6xx2xxx37x97x1x6x4x32x94x7815xx3x7xxx",
+			"xxx5x7xxxx72x4x58xx541x297x2x54x87x9x8xx2xx4x4x96x38x2x287x143xx91x3x62xxxx2x6xxx",
+			"x876x452xxx6xxx8xx1xxx8xxx396xx2xx51xxx461xxxxx1xxx4xxx4x536x9x69xx7xx3481x9x2x65",
+			"xxx418xxxxx6x2x1xxx1x6x3x5x8x4x6x3x917x349x859x3x8x4x2x2x7x1x3xxx1x3x7xxxxx256xxx"),
+	/**
+	 * The medium puzzles.
+	 */
+	MEDIUM(Sudoku.GAME_SQUARE_SIZE,
+			"x2x176xx5xxx8xx1xx51xx9xx82xxxxxxx51xxxxxxxxx48xxxxxxx63xx5xx19xx4xx7xxx7xx913x4x",
+			"5xx17xx39xx79xxxxxx1xxxx4xxxxx8x27xx3x8xxx6x2xx54x6xxxxx2xxxx5xxxxxx59xx15xx29xx7",
+			"x43x8x25x6xxxxxxxxxxxxx1x949xxxx4x7xxxx6x8xxxx1x2xxxx382x5xxxxxxxxxxxxx5x34x9x71x"),
+	/**
+	 * The very hard puzzle.
+	 */
+	VERY_HARD(Sudoku.GAME_SQUARE_SIZE,
+			"xx84xx35xxxxxx1x8xxx39x8xx62xxx9x7xxx9xx6xx1xxx5x1xxx36xx1x24xxx4x6xxxxxx89xx56xx"),
+	/**
+	 * Puzzles with 17 clues, the minimal number for a unique solution.
+	 */
+	SEVENTEEN_CLUE(Sudoku.GAME_SQUARE_SIZE,
+			"xxxxxxx1x4xxxxxxxxx2xxxxxxxxxxx5x4x7xx8xxx3xxxx1x9xxxx3xx4xx2xxx5x1xxxxxxxx8x6xxx",
+			"4xxxxx8x5x3xxxxxxxxxx7xxxxxx2xxxxx9xxxxx8x4xxxxxx1xxxxxxx6x3x7x5xx2xxxxx1x4xxxxxx"),
+	/**
+	 * Puzzles with a unique solution and as few clues as the generator
+	 * could reach.
+	 */
+	GENERATED(Sudoku.GAME_SQUARE_SIZE, 1000, null),
+	/**
+	 * Puzzles that can't be solved without search.
+	 */
+	GENERATED_HARD(Sudoku.GAME_SQUARE_SIZE, 200, Difficulty.HARD),
+	/**
+	 * Puzzles on the 16x16 game board.
+	 */
+	GENERATED_16(4, 10, null);
+	
+	/**
+	 * The seed of the generated corpora.
+	 */
+	private static final long GENERATOR_SEED = 1;
+	
+	private final Difficulty difficulty;
+	
+	private final int generatedCount;
+	
+	private String[] puzzles;
+	
+	private final int squareSize;
+	
+	/**
+	 * Returns the puzzles of the corpus in the one-character-per-cell
+	 * format. Generated corpora are created on the first call.
+	 *
+	 * @return the puzzles.
+	 */
+	public synchronized String[] getPuzzles() {
+		if(puzzles == null) {
+			PuzzleGenerator generator = new PuzzleGenerator(squareSize);
+			generator.setDifficulty(difficulty);
+			puzzles = new String[generatedCount];
+			StringBuilder builder = new StringBuilder();
+			for(int i = 0; i < generatedCount; i++) {
+				builder.setLength(0);
+				for(int value : generator.generate(PuzzleGenerator.puzzleSeed(GENERATOR_SEED, i)))
+					builder.append(Sudoku.formatValue(value));
+				puzzles[i] = builder.toString();
+			}
+		}
+		return puzzles;
+	}
+	
+	/**
+	 * Returns the size of an edge of a square group of the puzzles.
+	 *
+	 * @return the square size.
+	 */
+	public int getSquareSize() {
+		return squareSize;
+	}
+	
+	private Corpus(int _squareSize, String... _puzzles) {
+		squareSize = _squareSize;
+		puzzles = _puzzles;
+		generatedCount = 0;
+		difficulty = null;
+	}
+	
+	private Corpus(int _squareSize, int _generatedCount, Difficulty _difficulty) {
+		squareSize = _squareSize;
+		generatedCount = _generatedCount;
+		difficulty = _difficulty;
+	}
+}
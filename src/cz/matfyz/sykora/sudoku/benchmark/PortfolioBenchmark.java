@@ -0,0 +1,142 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku.benchmark;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import cz.matfyz.sykora.sudoku.*;
+import cz.matfyz.sykora.sudoku.corpus.CorpusReader;
+
+/**
+ * Compares the solve times of a single solver and of
+ * a {@link PortfolioSolver} on the puzzles of a corpus. The portfolio is
+ * meant to cut the long tail of the solve times, so the benchmark reports
+ * the percentiles of the times rather than their mean.
+ * <p>
+ * Usage: <code>PortfolioBenchmark [-size n] [-members n] [-seed n]
+ * path</code>, where <code>-size</code> is the size of an edge of a square
+ * group.
+ *
+ * @author Ondrej Sykora
+ */
+public class PortfolioBenchmark {
+	/**
+	 * Solves the puzzles of a corpus with a single solver and with the
+	 * portfolio, and reports the percentiles of the solve times.
+	 *
+	 * @param _args the command-line arguments.
+	 */
+	public static void main(String[] _args) {
+		int square_size = Sudoku.GAME_SQUARE_SIZE;
+		int member_count = 4;
+		long seed = 1;
+		String path_name = null;
+		try {
+			for(int i = 0; i < _args.length; i++) {
+				String arg = _args[i];
+				if(arg.equals("-size"))
+					square_size = Integer.parseInt(_args[++i]);
+				else if(arg.equals("-members"))
+					member_count = Integer.parseInt(_args[++i]);
+				else if(arg.equals("-seed"))
+					seed = Long.parseLong(_args[++i]);
+				else if(path_name == null)
+					path_name = arg;
+				else
+					throw new IllegalArgumentException("Unexpected argument: " + arg);
+			}
+			if(path_name == null)
+				throw new IllegalArgumentException("Missing the path of the corpus");
+		}
+		catch(RuntimeException e) {
+			System.err.println(e.getMessage());
+			printUsage();
+			System.exit(2);
+		}
+
+		int cell_count = square_size * square_size * square_size * square_size;
+		List<int[]> puzzles = new ArrayList<int[]>();
+		try(CorpusReader reader = new CorpusReader(Paths.get(path_name), square_size)) {
+			int[] values = new int[cell_count];
+			while(reader.next(values))
+				puzzles.add(values.clone());
+		}
+		catch(IOException e) {
+			System.err.println("I/O error: " + e.getMessage());
+			System.exit(1);
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(member_count);
+		try {
+			PortfolioSolver portfolio = new PortfolioSolver(square_size, member_count, seed, executor);
+			Sudoku sudoku = new Sudoku(square_size);
+			int size = square_size * square_size;
+			long[] single_times = new long[puzzles.size()];
+			long[] portfolio_times = new long[puzzles.size()];
+			int[] wins = new int[member_count];
+			int mismatch_count = 0;
+			int[] values = new int[cell_count];
+			for(int i = 0; i < puzzles.size(); i++) {
+				int[] puzzle = puzzles.get(i);
+				long start = System.nanoTime();
+				sudoku.reset();
+				for(int cell = 0; cell < cell_count; cell++)
+					if(puzzle[cell] != 0)
+						sudoku.setValue(cell % size, cell / size, puzzle[cell]);
+				boolean single_solved = sudoku.solve();
+				single_times[i] = System.nanoTime() - start;
+
+				System.arraycopy(puzzle, 0, values, 0, cell_count);
+				start = System.nanoTime();
+				boolean portfolio_solved = portfolio.solve(values);
+				portfolio_times[i] = System.nanoTime() - start;
+				wins[portfolio.getWinner()]++;
+				if(single_solved != portfolio_solved)
+					mismatch_count++;
+			}
+			Arrays.sort(single_times);
+			Arrays.sort(portfolio_times);
+			System.err.printf("%d puzzles, %d different results, wins per member %s%n", puzzles.size(), mismatch_count,
+					Arrays.toString(wins));
+			System.err.printf("%-10s %12s %12s %12s %12s%n", "Solver", "p50 us", "p99 us", "p99.9 us", "max us");
+			printPercentiles("single", single_times);
+			printPercentiles("portfolio", portfolio_times);
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	private static void printPercentiles(String _name, long[] _sorted) {
+		System.err.printf("%-10s %12.1f %12.1f %12.1f %12.1f%n", _name, percentile(_sorted, 0.5) / 1e3,
+				percentile(_sorted, 0.99) / 1e3, percentile(_sorted, 0.999) / 1e3, percentile(_sorted, 1.0) / 1e3);
+	}
+
+	private static long percentile(long[] _sorted, double _fraction) {
+		if(_sorted.length == 0)
+			return 0;
+		int index = (int)Math.ceil(_fraction * _sorted.length) - 1;
+		return _sorted[Math.max(0, Math.min(_sorted.length - 1, index))];
+	}
+
+	private static void printUsage() {
+		System.err.println("Usage: PortfolioBenchmark [-size square-size] [-members n] [-seed n] path");
+	}
+}
@@ -0,0 +1,166 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku.cache;
+
+import cz.matfyz.sykora.sudoku.*;
+
+/**
+ * The canonical form of a puzzle found by {@link SymmetryCanonicalizer},
+ * together with the symmetry that maps the puzzle to its canonical form.
+ * The symmetry is stored as a permutation of the cells and a permutation
+ * of the values, so that grids can be mapped in both directions; in
+ * particular, a solution of the canonical puzzle is mapped back to
+ * a solution of the original puzzle by {@link #fromCanonical(int[], int[])}.
+ *
+ * @author Ondrej Sykora
+ */
+public class CanonicalForm {
+	/**
+	 * The original cell of each canonical cell. The cells are indexed by
+	 * <code>x + y * size</code>.
+	 */
+	private final int[] cells;
+	/**
+	 * The canonical value of each original value; the empty cell (zero)
+	 * is mapped to itself.
+	 */
+	private final int[] labels;
+	/**
+	 * The original value of each canonical value; the inverse of
+	 * {@link #labels}.
+	 */
+	private final int[] values;
+
+	private final boolean exact;
+
+	private final String key;
+
+	/**
+	 * Maps a grid in the canonical form back to the original puzzle.
+	 *
+	 * @param _canonical the values of the canonical grid.
+	 * @param _result the array, to which the values of the original grid
+	 * 			are written. May not be the same array as
+	 * 			<code>_canonical</code>.
+	 */
+	public void fromCanonical(int[] _canonical, int[] _result) {
+		for(int cell = 0; cell < cells.length; cell++)
+			_result[cells[cell]] = values[_canonical[cell]];
+	}
+
+	/**
+	 * Returns the canonical puzzle in the format accepted by
+	 * {@link Sudoku#loadGameState(String)}. Equivalent puzzles have the same
+	 * key, unless the search for the form of one of them was cut short (see
+	 * {@link #isExact()}).
+	 *
+	 * @return the canonical puzzle.
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * Returns the canonical value, to which the given value of the original
+	 * puzzle is mapped.
+	 *
+	 * @param _value the original value, or zero for an empty cell.
+	 * @return the canonical value.
+	 */
+	public int getLabel(int _value) {
+		return labels[_value];
+	}
+
+	/**
+	 * Returns the original cell, to which the given cell of the canonical
+	 * form is mapped.
+	 *
+	 * @param _cell the index of the canonical cell.
+	 * @return the index of the original cell.
+	 */
+	public int getOriginalCell(int _cell) {
+		return cells[_cell];
+	}
+
+	/**
+	 * Checks if the form is the exact canonical form. Forms found by
+	 * a search that hit the node limit of the canonicalizer are still valid
+	 * symmetries of the puzzle, so they can be used as keys, but equivalent
+	 * puzzles may have different keys.
+	 *
+	 * @return <code>true</code> if the form is the canonical form;
+	 * 			otherwise, <code>false</code>.
+	 */
+	public boolean isExact() {
+		return exact;
+	}
+
+	/**
+	 * Maps a grid of the original puzzle to the canonical form.
+	 *
+	 * @param _values the values of the original grid.
+	 * @param _result the array, to which the values of the canonical grid
+	 * 			are written. May not be the same array as
+	 * 			<code>_values</code>.
+	 */
+	public void toCanonical(int[] _values, int[] _result) {
+		for(int cell = 0; cell < cells.length; cell++)
+			_result[cell] = labels[_values[cells[cell]]];
+	}
+
+	/**
+	 * Returns the canonical form as a string in the format accepted by
+	 * {@link Sudoku#loadGameState(String)}: a single character per cell
+	 * for boards with up to 35 values, numbers separated by spaces for
+	 * the larger boards.
+	 *
+	 * @param _values the values of the grid.
+	 * @param _size the size of the board.
+	 * @return the string.
+	 */
+	static String formatGameState(int[] _values, int _size) {
+		StringBuilder builder = new StringBuilder(_size > 35 ? 3 * _values.length : _values.length);
+		for(int cell = 0; cell < _values.length; cell++) {
+			if(_size <= 35)
+				builder.append(Sudoku.formatValue(_values[cell]));
+			else {
+				if(cell > 0)
+					builder.append(' ');
+				builder.append(_values[cell]);
+			}
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Creates a new canonical form.
+	 *
+	 * @param _cells the original cell of each canonical cell.
+	 * @param _labels the canonical value of each original value.
+	 * @param _canonical the values of the canonical puzzle.
+	 * @param _exact specifies if the search for the form was complete.
+	 */
+	CanonicalForm(int[] _cells, int[] _labels, int[] _canonical, boolean _exact) {
+		cells = _cells;
+		labels = _labels;
+		values = new int[_labels.length];
+		for(int value = 0; value < _labels.length; value++)
+			values[_labels[value]] = value;
+		exact = _exact;
+		key = formatGameState(_canonical, _labels.length - 1);
+	}
+}
@@ -0,0 +1,357 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku.cache;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+import cz.matfyz.sykora.sudoku.*;
+
+/**
+ * A bounded cache of solutions placed in front of the solvers. The cache
+ * is keyed by the canonical form of the puzzle (see
+ * {@link SymmetryCanonicalizer}), so a puzzle that is a relabelled,
+ * transposed or permuted copy of a cached one is answered without solving.
+ * Puzzles without a solution are cached too; solves stopped by their limits
+ * are not. The key is computed from the clues of the puzzle rather than
+ * from the state of the solver, because the propagation fills many cells
+ * and the nearly full grids have many symmetric images.
+ * <p>
+ * The cache is safe for concurrent use. It is split into segments, each of
+ * which is a map in the least recently used order guarded by its own lock;
+ * when a segment is full, its least recently used entry is evicted. Two
+ * threads that miss the same puzzle at the same time both solve it.
+ * <p>
+ * The canonicalizers and the buffers are kept per thread, so lookups do not
+ * contend on anything but the lock of a segment.
+ *
+ * @author Ondrej Sykora
+ */
+public class SolutionCache {
+	/**
+	 * A segment of the cache.
+	 */
+	private class Segment extends LinkedHashMap<String, byte[]> {
+		private static final long serialVersionUID = 1L;
+
+		private final int capacity;
+
+		protected boolean removeEldestEntry(Map.Entry<String, byte[]> _eldest) {
+			if(size() <= capacity)
+				return false;
+			evictionCount.increment();
+			return true;
+		}
+
+		Segment(int _capacity) {
+			super(16, 0.75f, true);
+			capacity = _capacity;
+		}
+	}
+
+	/**
+	 * The buffers used by a single thread.
+	 */
+	private static class Workspace {
+		final SymmetryCanonicalizer canonicalizer;
+
+		final int[] canonical;
+
+		final int[] values;
+
+		Workspace(int _squareSize) {
+			canonicalizer = new SymmetryCanonicalizer(_squareSize);
+			int cell_count = _squareSize * _squareSize * _squareSize * _squareSize;
+			canonical = new int[cell_count];
+			values = new int[cell_count];
+		}
+	}
+
+	/**
+	 * The maximal number of segments.
+	 */
+	private static final int MAX_SEGMENTS = 16;
+	/**
+	 * The value stored for puzzles without a solution.
+	 */
+	private static final byte[] NO_SOLUTION = new byte[0];
+
+	private final int capacity;
+
+	private final Segment[] segments;
+
+	private final LongAdder evictionCount = new LongAdder();
+
+	private final LongAdder hitCount = new LongAdder();
+
+	private final LongAdder inexactCount = new LongAdder();
+
+	private final LongAdder missCount = new LongAdder();
+
+	private final ThreadLocal<Workspace[]> workspaces = new ThreadLocal<Workspace[]>() {
+		protected Workspace[] initialValue() {
+			return new Workspace[Sudoku.MAX_SQUARE_SIZE + 1];
+		}
+	};
+
+	/**
+	 * Removes all entries from the cache. The counters are not reset.
+	 */
+	public void clear() {
+		for(Segment segment : segments) {
+			synchronized(segment) {
+				segment.clear();
+			}
+		}
+	}
+
+	/**
+	 * Returns the maximal number of entries in the cache.
+	 *
+	 * @return the capacity of the cache.
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Returns the number of entries evicted from the cache.
+	 *
+	 * @return the number of evictions.
+	 */
+	public long getEvictionCount() {
+		return evictionCount.sum();
+	}
+
+	/**
+	 * Returns the number of lookups that found the puzzle in the cache.
+	 *
+	 * @return the number of hits.
+	 */
+	public long getHitCount() {
+		return hitCount.sum();
+	}
+
+	/**
+	 * Returns the ratio of the hits to all lookups.
+	 *
+	 * @return the hit ratio, or zero if there were no lookups.
+	 */
+	public double getHitRatio() {
+		long hits = hitCount.sum();
+		long lookups = hits + missCount.sum();
+		return lookups > 0 ? (double)hits / lookups : 0;
+	}
+
+	/**
+	 * Returns the number of lookups, for which the canonicalizer hit its
+	 * node limit, so the key was not the exact canonical form.
+	 *
+	 * @return the number of inexact lookups.
+	 */
+	public long getInexactCount() {
+		return inexactCount.sum();
+	}
+
+	/**
+	 * Returns the number of lookups that did not find the puzzle in the
+	 * cache.
+	 *
+	 * @return the number of misses.
+	 */
+	public long getMissCount() {
+		return missCount.sum();
+	}
+
+	private Segment getSegment(String _key) {
+		int hash = _key.hashCode();
+		hash ^= hash >>> 16;
+		return segments[hash & (segments.length - 1)];
+	}
+
+	/**
+	 * Returns the number of entries in the cache.
+	 *
+	 * @return the number of entries.
+	 */
+	public int getSize() {
+		int size = 0;
+		for(Segment segment : segments) {
+			synchronized(segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	private Workspace getWorkspace(int _size) {
+		int square_size = (int)Math.round(Math.sqrt(_size));
+		Workspace[] thread_workspaces = workspaces.get();
+		Workspace workspace = thread_workspaces[square_size];
+		if(workspace == null) {
+			workspace = new Workspace(square_size);
+			thread_workspaces[square_size] = workspace;
+		}
+		return workspace;
+	}
+
+	/**
+	 * Solves the given puzzle, or copies its solution from the cache. Like
+	 * {@link SolverEngine#solve()}, the solution is stored in the state of
+	 * the solver. The puzzle is loaded to the solver only when it is not
+	 * found in the cache.
+	 *
+	 * @param _engine the solver.
+	 * @param _puzzle the puzzle, in the format accepted by
+	 * 			{@link SolverEngine#loadGameState(String)}.
+	 * @return <code>true</code> if a solution was found; otherwise,
+	 * 			<code>false</code>.
+	 * @throws IllegalArgumentException if the puzzle can't be parsed.
+	 */
+	public boolean solve(SolverEngine _engine, String _puzzle) {
+		Workspace workspace = getWorkspace(_engine.getSize());
+		CanonicalForm form = workspace.canonicalizer.canonicalize(_puzzle);
+		SolveResult result = lookup(_engine, form, workspace);
+		if(result == null) {
+			_engine.loadGameState(_puzzle);
+			result = store(_engine, form, workspace, _engine.solve() ? SolveResult.SOLVED : SolveResult.UNSATISFIABLE);
+		}
+		return result == SolveResult.SOLVED;
+	}
+
+	/**
+	 * Solves the given puzzle within the given limits, or copies its
+	 * solution from the cache. See {@link Sudoku#solve(SolveLimits)}.
+	 *
+	 * @param _sudoku the solver.
+	 * @param _puzzle the puzzle, in the format accepted by
+	 * 			{@link Sudoku#loadGameState(String)}.
+	 * @param _limits the limits of the solve, or <code>null</code> for no
+	 * 			limits.
+	 * @return the result of the solve.
+	 * @throws IllegalArgumentException if the puzzle can't be parsed.
+	 */
+	public SolveResult solve(Sudoku _sudoku, String _puzzle, SolveLimits _limits) {
+		Workspace workspace = getWorkspace(_sudoku.getSize());
+		CanonicalForm form = workspace.canonicalizer.canonicalize(_puzzle);
+		SolveResult result = lookup(_sudoku, form, workspace);
+		if(result == null) {
+			_sudoku.loadGameState(_puzzle);
+			result = store(_sudoku, form, workspace, _sudoku.solve(_limits));
+		}
+		return result;
+	}
+
+	/**
+	 * Looks the puzzle up in the cache, and copies the solution to the
+	 * solver if it is found.
+	 *
+	 * @return the cached result, or <code>null</code> if the puzzle is not
+	 * 			in the cache.
+	 */
+	private SolveResult lookup(SolverEngine _engine, CanonicalForm _form, Workspace _workspace) {
+		if(!_form.isExact())
+			inexactCount.increment();
+		String key = _form.getKey();
+		Segment segment = getSegment(key);
+		byte[] solution;
+		synchronized(segment) {
+			solution = segment.get(key);
+		}
+		if(solution == null) {
+			missCount.increment();
+			return null;
+		}
+		hitCount.increment();
+		if(solution == NO_SOLUTION)
+			return SolveResult.UNSATISFIABLE;
+		int size = _engine.getSize();
+		for(int cell = 0; cell < solution.length; cell++)
+			_workspace.canonical[cell] = solution[cell];
+		_form.fromCanonical(_workspace.canonical, _workspace.values);
+		for(int cell = 0; cell < solution.length; cell++)
+			_engine.setValue(cell % size, cell / size, _workspace.values[cell]);
+		return SolveResult.SOLVED;
+	}
+
+	/**
+	 * Stores the result of a solve in the cache.
+	 *
+	 * @return <code>_result</code>.
+	 */
+	private SolveResult store(SolverEngine _engine, CanonicalForm _form, Workspace _workspace, SolveResult _result) {
+		byte[] solution;
+		if(_result == SolveResult.SOLVED) {
+			int size = _engine.getSize();
+			for(int y = 0; y < size; y++)
+				for(int x = 0; x < size; x++)
+					_workspace.values[x + y * size] = _engine.getValue(x, y);
+			_form.toCanonical(_workspace.values, _workspace.canonical);
+			solution = new byte[_workspace.canonical.length];
+			for(int cell = 0; cell < solution.length; cell++)
+				solution[cell] = (byte)_workspace.canonical[cell];
+		}
+		else if(_result == SolveResult.UNSATISFIABLE)
+			solution = NO_SOLUTION;
+		else
+			return _result;
+		String key = _form.getKey();
+		Segment segment = getSegment(key);
+		synchronized(segment) {
+			segment.put(key, solution);
+		}
+		return _result;
+	}
+
+	/**
+	 * Writes the current values of the metrics of the cache in the text
+	 * exposition format of Prometheus.
+	 *
+	 * @param _output the output, to which the metrics are written.
+	 * @throws IOException if writing to the output fails.
+	 */
+	public void writeText(Appendable _output) throws IOException {
+		writeMetric(_output, "sudoku_cache_hits_total", "counter", "The number of lookups that found the puzzle.", Long.toString(hitCount.sum()));
+		writeMetric(_output, "sudoku_cache_misses_total", "counter", "The number of lookups that did not find the puzzle.", Long.toString(missCount.sum()));
+		writeMetric(_output, "sudoku_cache_inexact_total", "counter", "The number of lookups with an inexact canonical form.", Long.toString(inexactCount.sum()));
+		writeMetric(_output, "sudoku_cache_evictions_total", "counter", "The number of evicted entries.", Long.toString(evictionCount.sum()));
+		writeMetric(_output, "sudoku_cache_entries", "gauge", "The number of entries in the cache.", Integer.toString(getSize()));
+		writeMetric(_output, "sudoku_cache_hit_ratio", "gauge", "The ratio of hits to all lookups.", Double.toString(getHitRatio()));
+	}
+
+	private static void writeMetric(Appendable _output, String _name, String _type, String _help, String _value) throws IOException {
+		_output.append("# HELP ").append(_name).append(' ').append(_help).append('\n');
+		_output.append("# TYPE ").append(_name).append(' ').append(_type).append('\n');
+		_output.append(_name).append(' ').append(_value).append('\n');
+	}
+
+	/**
+	 * Creates a new cache.
+	 *
+	 * @param _capacity the maximal number of entries in the cache.
+	 */
+	public SolutionCache(int _capacity) {
+		if(_capacity < 1)
+			throw new IllegalArgumentException("The capacity must be positive");
+		capacity = _capacity;
+		int segment_count = Integer.highestOneBit(Math.min(MAX_SEGMENTS, _capacity));
+		segments = new Segment[segment_count];
+		for(int i = 0; i < segment_count; i++)
+			segments[i] = new Segment((_capacity + i) / segment_count);
+	}
+}
@@ -0,0 +1,563 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku.cache;
+
+import java.util.*;
+
+import cz.matfyz.sykora.sudoku.*;
+
+/**
+ * Maps puzzles to a canonical form under the symmetries of Sudoku: the
+ * transposition of the board, permutations of the bands and of the rows
+ * within a band, permutations of the stacks and of the columns within
+ * a stack, and relabelling of the values. Two puzzles have the same
+ * canonical form if and only if one can be turned into the other by these
+ * symmetries.
+ * <p>
+ * The canonical form is the lexicographically smallest grid, read row by
+ * row with empty cells as zero, among the images of the puzzle whose values
+ * are numbered in the order of their first appearance. Only the images
+ * that order the bands, the rows, the stacks and the columns by a key
+ * derived from the numbers of clues in them and in the lines crossing them
+ * are considered. The keys are preserved by all symmetries, so the form is
+ * still canonical, but most permutations are ruled out before the search
+ * starts.
+ * <p>
+ * The smallest image is found by a depth-first search that places the rows
+ * one by one; the columns are placed while the first row is being built.
+ * A branch is cut as soon as its prefix gets greater than the prefix of
+ * the best image found so far. Puzzles with many symmetries (such as the
+ * empty board) have many equal images; the search is therefore stopped
+ * after a number of nodes, and the best image found until then is used
+ * (see {@link CanonicalForm#isExact()}).
+ * <p>
+ * Instances are not thread-safe, and reuse their buffers between puzzles.
+ *
+ * @author Ondrej Sykora
+ */
+public class SymmetryCanonicalizer {
+	/**
+	 * The default maximal number of search nodes per puzzle.
+	 */
+	public static final int DEFAULT_NODE_LIMIT = 100000;
+	/**
+	 * The number of rounds of the refinement of the keys of the rows and
+	 * the columns.
+	 */
+	private static final int REFINEMENT_ROUNDS = 2;
+
+	private final int squareSize;
+
+	private final int size;
+
+	private final int cellCount;
+	/**
+	 * The values of the puzzle, indexed by <code>x + y * size</code>, in
+	 * the original orientation and transposed.
+	 */
+	private final int[][] grids;
+	/**
+	 * The keys of the rows of both orientations (see {@link #computeKeys()}).
+	 * The keys of the columns of an orientation are the keys of the rows of
+	 * the other orientation.
+	 */
+	private long[][] rowKeys;
+
+	private long[][] refinedKeys;
+	/**
+	 * The numbers of clues in the intersections of the rows and the stacks
+	 * of both orientations, indexed by <code>stack + row * squareSize</code>.
+	 */
+	private final int[][] lineCounts;
+	/**
+	 * The numbers of clues in the squares of both orientations, indexed by
+	 * <code>stack + band * squareSize</code>.
+	 */
+	private final int[][] squareCounts;
+	/**
+	 * The keys of the bands of both orientations.
+	 */
+	private final long[][] bandKeys;
+
+	private int orientation;
+
+	private final int[] rowOrder;
+
+	private final int[] columnOrder;
+
+	private final boolean[] rowUsed;
+
+	private final boolean[] columnUsed;
+
+	private final boolean[] bandUsed;
+
+	private final boolean[] stackUsed;
+	/**
+	 * The labels assigned to the values of the puzzle in the current
+	 * image; zero for values that did not appear yet.
+	 */
+	private final int[] labels;
+	/**
+	 * The values labelled in the current branch, in the order of their
+	 * labels.
+	 */
+	private final int[] labelTrail;
+
+	private int labelCount;
+	/**
+	 * The prefix of the smallest image found so far. Only the first
+	 * {@link #bestLength} cells are valid.
+	 */
+	private final int[] best;
+
+	private int bestLength;
+	/**
+	 * Specifies if {@link #best} was lowered since the transformation of the
+	 * best image was last saved.
+	 */
+	private boolean improved;
+
+	private boolean found;
+
+	private int bestOrientation;
+
+	private final int[] bestRows;
+
+	private final int[] bestColumns;
+
+	private final int[] bestLabels;
+
+	private int nodeCount;
+
+	private int nodeLimit = DEFAULT_NODE_LIMIT;
+
+	private boolean truncated;
+
+	private final long[] sortBuffer;
+
+	/**
+	 * Checks the value placed at the given position of the current image
+	 * against the best image, and updates the best image if the current
+	 * image is smaller.
+	 *
+	 * @return <code>false</code> if the current image is greater than the
+	 * 			best image; otherwise, <code>true</code>.
+	 */
+	private boolean accept(int _position, int _value) {
+		if(_position < bestLength) {
+			if(_value > best[_position])
+				return false;
+			if(_value == best[_position])
+				return true;
+		}
+		best[_position] = _value;
+		bestLength = _position + 1;
+		improved = true;
+		return true;
+	}
+
+	/**
+	 * Finds the canonical form of the given puzzle.
+	 *
+	 * @param _values the values of the puzzle, indexed by
+	 * 			<code>x + y * size</code>. Zero stands for an empty cell.
+	 * @return the canonical form of the puzzle.
+	 * @throws IllegalArgumentException if the puzzle has a wrong number of
+	 * 			cells, or if a value is out of range.
+	 */
+	public CanonicalForm canonicalize(int[] _values) {
+		if(_values.length != cellCount)
+			throw new IllegalArgumentException("Expected " + cellCount + " values, found " + _values.length);
+		for(int cell = 0; cell < cellCount; cell++) {
+			if(_values[cell] < 0 || _values[cell] > size)
+				throw new IllegalArgumentException("Value out of range: " + _values[cell]);
+			grids[0][cell] = _values[cell];
+		}
+		return canonicalize();
+	}
+
+	/**
+	 * Finds the canonical form of the given puzzle.
+	 *
+	 * @param _puzzle the puzzle, in the format accepted by
+	 * 			{@link Sudoku#loadGameState(String)}.
+	 * @return the canonical form of the puzzle.
+	 * @throws IllegalArgumentException if the string contains a value that
+	 * 			is out of range, or if it has a wrong number of tokens.
+	 */
+	public CanonicalForm canonicalize(String _puzzle) {
+		Arrays.fill(grids[0], 0);
+		Sudoku.readGameState(_puzzle, size, grids[0]);
+		return canonicalize();
+	}
+
+	private CanonicalForm canonicalize() {
+		int[] grid = grids[0];
+		int[] transposed = grids[1];
+		for(int y = 0; y < size; y++)
+			for(int x = 0; x < size; x++)
+				transposed[y + x * size] = grid[x + y * size];
+		computeKeys();
+
+		bestLength = 0;
+		found = false;
+		improved = false;
+		truncated = false;
+		nodeCount = 0;
+		for(orientation = 0; orientation < 2; orientation++)
+			searchRow(0);
+
+		int[] cells = new int[cellCount];
+		for(int row = 0; row < size; row++) {
+			for(int column = 0; column < size; column++) {
+				int cell = bestOrientation == 0
+					? bestColumns[column] + bestRows[row] * size
+					: bestRows[row] + bestColumns[column] * size;
+				cells[column + row * size] = cell;
+			}
+		}
+		// Values missing in the puzzle get the remaining labels in order
+		int[] form_labels = Arrays.copyOf(bestLabels, size + 1);
+		boolean[] label_used = new boolean[size + 1];
+		for(int value = 1; value <= size; value++)
+			label_used[form_labels[value]] = true;
+		int next_label = 1;
+		for(int value = 1; value <= size; value++) {
+			if(form_labels[value] == 0) {
+				while(label_used[next_label])
+					next_label++;
+				form_labels[value] = next_label++;
+			}
+		}
+		int[] canonical = new int[cellCount];
+		for(int cell = 0; cell < cellCount; cell++)
+			canonical[cell] = form_labels[grid[cells[cell]]];
+		return new CanonicalForm(cells, form_labels, canonical, !truncated);
+	}
+
+	/**
+	 * Computes the keys of the rows and the bands of both orientations.
+	 * <p>
+	 * The key of a row starts as the sorted list of the numbers of clues in
+	 * its intersections with the stacks. In each round of the refinement,
+	 * the sorted list of the keys of the columns of its clues is added to
+	 * the key. The key of a band is the sorted list of the numbers of clues
+	 * in its squares, combined with the sorted list of the keys of its rows.
+	 * The lists are hashed to a single number; a collision only makes the
+	 * key weaker, not wrong.
+	 */
+	private void computeKeys() {
+		int[] grid = grids[0];
+		Arrays.fill(lineCounts[0], 0);
+		Arrays.fill(lineCounts[1], 0);
+		Arrays.fill(squareCounts[0], 0);
+		Arrays.fill(squareCounts[1], 0);
+		for(int y = 0; y < size; y++) {
+			int band = y / squareSize;
+			for(int x = 0; x < size; x++) {
+				if(grid[x + y * size] == 0)
+					continue;
+				int stack = x / squareSize;
+				lineCounts[0][stack + y * squareSize]++;
+				lineCounts[1][band + x * squareSize]++;
+				squareCounts[0][stack + band * squareSize]++;
+				squareCounts[1][band + stack * squareSize]++;
+			}
+		}
+		for(int o = 0; o < 2; o++) {
+			int[] counts = lineCounts[o];
+			long[] keys = rowKeys[o];
+			for(int row = 0; row < size; row++) {
+				for(int i = 0; i < squareSize; i++)
+					sortBuffer[i] = counts[i + row * squareSize];
+				keys[row] = sortedKey(0, squareSize);
+			}
+		}
+		for(int round = 0; round < REFINEMENT_ROUNDS; round++) {
+			for(int o = 0; o < 2; o++) {
+				int[] o_grid = grids[o];
+				long[] keys = rowKeys[o];
+				long[] column_keys = rowKeys[1 - o];
+				long[] refined_keys = refinedKeys[o];
+				for(int row = 0; row < size; row++) {
+					int count = 0;
+					int offset = row * size;
+					for(int column = 0; column < size; column++)
+						if(o_grid[column + offset] != 0)
+							sortBuffer[count++] = column_keys[column];
+					refined_keys[row] = sortedKey(keys[row], count);
+				}
+			}
+			long[][] keys = rowKeys;
+			rowKeys = refinedKeys;
+			refinedKeys = keys;
+		}
+		for(int o = 0; o < 2; o++) {
+			int[] counts = squareCounts[o];
+			long[] keys = rowKeys[o];
+			for(int band = 0; band < squareSize; band++) {
+				for(int i = 0; i < squareSize; i++)
+					sortBuffer[i] = counts[i + band * squareSize];
+				long key = sortedKey(0, squareSize);
+				for(int i = 0; i < squareSize; i++)
+					sortBuffer[i] = keys[i + band * squareSize];
+				bandKeys[o][band] = sortedKey(key, squareSize);
+			}
+		}
+	}
+
+	/**
+	 * Returns the maximal number of search nodes per puzzle.
+	 *
+	 * @return the maximal number of nodes.
+	 */
+	public int getNodeLimit() {
+		return nodeLimit;
+	}
+
+	/**
+	 * Returns the size of an edge of a square group of the puzzles.
+	 *
+	 * @return the size of an edge of a square group.
+	 */
+	public int getSquareSize() {
+		return squareSize;
+	}
+
+	/**
+	 * Returns the label of the given value in the current image. Values
+	 * that appear for the first time get the next free label.
+	 */
+	private int label(int _value) {
+		if(_value == 0)
+			return 0;
+		int label = labels[_value];
+		if(label == 0) {
+			labelTrail[labelCount] = _value;
+			label = ++labelCount;
+			labels[_value] = label;
+		}
+		return label;
+	}
+
+	/**
+	 * Counts a search node, and stops the search if the node limit was
+	 * reached. The search is never stopped before the first complete image
+	 * is found.
+	 *
+	 * @return <code>true</code> if the search continues; otherwise,
+	 * 			<code>false</code>.
+	 */
+	private boolean nextNode() {
+		if(++nodeCount > nodeLimit && found)
+			truncated = true;
+		return !truncated;
+	}
+
+	/**
+	 * Saves the transformation of the current image, if it is the smallest
+	 * image found so far.
+	 */
+	private void saveImage() {
+		if(found && !improved)
+			return;
+		found = true;
+		improved = false;
+		bestOrientation = orientation;
+		System.arraycopy(rowOrder, 0, bestRows, 0, size);
+		System.arraycopy(columnOrder, 0, bestColumns, 0, size);
+		System.arraycopy(labels, 0, bestLabels, 0, size + 1);
+	}
+
+	/**
+	 * Places the columns of the first row of the current image, starting
+	 * at the given position.
+	 */
+	private void searchColumn(int _position) {
+		if(_position == size) {
+			searchRow(1);
+			return;
+		}
+		long[] stack_keys = bandKeys[1 - orientation];
+		if(_position % squareSize == 0) {
+			long min_key = Long.MAX_VALUE;
+			for(int stack = 0; stack < squareSize; stack++)
+				if(!stackUsed[stack] && stack_keys[stack] < min_key)
+					min_key = stack_keys[stack];
+			for(int stack = 0; stack < squareSize && !truncated; stack++) {
+				if(stackUsed[stack] || stack_keys[stack] != min_key)
+					continue;
+				stackUsed[stack] = true;
+				searchColumnInStack(_position, stack);
+				stackUsed[stack] = false;
+			}
+		}
+		else
+			searchColumnInStack(_position, columnOrder[_position - 1] / squareSize);
+	}
+
+	private void searchColumnInStack(int _position, int _stack) {
+		int[] grid = grids[orientation];
+		long[] column_keys = rowKeys[1 - orientation];
+		int first_column = _stack * squareSize;
+		long min_key = Long.MAX_VALUE;
+		for(int column = first_column; column < first_column + squareSize; column++)
+			if(!columnUsed[column] && column_keys[column] < min_key)
+				min_key = column_keys[column];
+		int row = rowOrder[0];
+		for(int column = first_column; column < first_column + squareSize && nextNode(); column++) {
+			if(columnUsed[column] || column_keys[column] != min_key)
+				continue;
+			int mark = labelCount;
+			if(accept(_position, label(grid[column + row * size]))) {
+				columnUsed[column] = true;
+				columnOrder[_position] = column;
+				searchColumn(_position + 1);
+				columnUsed[column] = false;
+			}
+			unlabel(mark);
+		}
+	}
+
+	/**
+	 * Places the rows of the current image, starting at the given row.
+	 */
+	private void searchRow(int _row) {
+		if(_row == size) {
+			saveImage();
+			return;
+		}
+		long[] row_keys = rowKeys[orientation];
+		if(_row % squareSize == 0) {
+			long[] band_keys = bandKeys[orientation];
+			long min_key = Long.MAX_VALUE;
+			for(int band = 0; band < squareSize; band++)
+				if(!bandUsed[band] && band_keys[band] < min_key)
+					min_key = band_keys[band];
+			for(int band = 0; band < squareSize && !truncated; band++) {
+				if(bandUsed[band] || band_keys[band] != min_key)
+					continue;
+				bandUsed[band] = true;
+				searchRowInBand(_row, band, row_keys);
+				bandUsed[band] = false;
+			}
+		}
+		else
+			searchRowInBand(_row, rowOrder[_row - 1] / squareSize, row_keys);
+	}
+
+	private void searchRowInBand(int _row, int _band, long[] _rowKeys) {
+		int[] grid = grids[orientation];
+		int first_row = _band * squareSize;
+		long min_key = Long.MAX_VALUE;
+		for(int row = first_row; row < first_row + squareSize; row++)
+			if(!rowUsed[row] && _rowKeys[row] < min_key)
+				min_key = _rowKeys[row];
+		for(int row = first_row; row < first_row + squareSize && nextNode(); row++) {
+			if(rowUsed[row] || _rowKeys[row] != min_key)
+				continue;
+			rowUsed[row] = true;
+			rowOrder[_row] = row;
+			if(_row == 0)
+				searchColumn(0);
+			else {
+				int mark = labelCount;
+				int position = _row * size;
+				boolean accepted = true;
+				for(int column = 0; column < size && accepted; column++)
+					accepted = accept(position + column, label(grid[columnOrder[column] + row * size]));
+				if(accepted)
+					searchRow(_row + 1);
+				unlabel(mark);
+			}
+			rowUsed[row] = false;
+		}
+	}
+
+	/**
+	 * Sets the maximal number of search nodes per puzzle. When the limit is
+	 * reached, the smallest image found so far is used as the form.
+	 *
+	 * @param _nodeLimit the maximal number of nodes.
+	 */
+	public void setNodeLimit(int _nodeLimit) {
+		if(_nodeLimit < 1)
+			throw new IllegalArgumentException("The node limit must be positive");
+		nodeLimit = _nodeLimit;
+	}
+
+	/**
+	 * Sorts the first <code>_count</code> numbers in the sort buffer, and
+	 * hashes them together with <code>_key</code>.
+	 */
+	private long sortedKey(long _key, int _count) {
+		for(int i = 1; i < _count; i++) {
+			long value = sortBuffer[i];
+			int j = i - 1;
+			for(; j >= 0 && sortBuffer[j] > value; j--)
+				sortBuffer[j + 1] = sortBuffer[j];
+			sortBuffer[j + 1] = value;
+		}
+		long key = _key;
+		for(int i = 0; i < _count; i++) {
+			key = (key + sortBuffer[i]) * 0x9E3779B97F4A7C15L;
+			key ^= key >>> 32;
+		}
+		return key;
+	}
+
+	/**
+	 * Removes the labels assigned since the number of labels was
+	 * <code>_mark</code>.
+	 */
+	private void unlabel(int _mark) {
+		while(labelCount > _mark)
+			labels[labelTrail[--labelCount]] = 0;
+	}
+
+	/**
+	 * Creates a new canonicalizer for the puzzles of the given size.
+	 *
+	 * @param _squareSize the size of an edge of a square group.
+	 */
+	public SymmetryCanonicalizer(int _squareSize) {
+		if(_squareSize < Sudoku.MIN_SQUARE_SIZE || _squareSize > Sudoku.MAX_SQUARE_SIZE)
+			throw new IllegalArgumentException("Unsupported square size: " + _squareSize);
+		squareSize = _squareSize;
+		size = _squareSize * _squareSize;
+		cellCount = size * size;
+		grids = new int[2][cellCount];
+		rowKeys = new long[2][size];
+		refinedKeys = new long[2][size];
+		bandKeys = new long[2][squareSize];
+		lineCounts = new int[2][size * squareSize];
+		squareCounts = new int[2][size];
+		rowOrder = new int[size];
+		columnOrder = new int[size];
+		rowUsed = new boolean[size];
+		columnUsed = new boolean[size];
+		bandUsed = new boolean[squareSize];
+		stackUsed = new boolean[squareSize];
+		labels = new int[size + 1];
+		labelTrail = new int[size];
+		best = new int[cellCount];
+		bestRows = new int[size];
+		bestColumns = new int[size];
+		bestLabels = new int[size + 1];
+		sortBuffer = new long[size];
+	}
+}
@@ -0,0 +1,354 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku.corpus;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+import cz.matfyz.sykora.sudoku.*;
+
+/**
+ * Reads the puzzles of a corpus file through a memory mapping. The puzzles
+ * are decoded directly from the mapped bytes to an array of values or to
+ * the state of a solver; no strings or other objects are created for the
+ * individual puzzles.
+ * <p>
+ * The reader accepts both the binary files written by {@link CorpusWriter}
+ * and the text files with one puzzle per line (see {@link PuzzleParser});
+ * the format is detected from the header of the file. Empty lines are
+ * skipped, and invalid lines are skipped and counted. The file is mapped
+ * in windows, so files larger than 2 GB can be read; a line may not be
+ * longer than a window.
+ * <p>
+ * The reader is not safe for concurrent use.
+ *
+ * @author Ondrej Sykora
+ */
+public class CorpusReader implements Closeable {
+	/**
+	 * The default size of the mapped window.
+	 */
+	public static final int DEFAULT_WINDOW_SIZE = 1 << 26;
+
+	private final FileChannel channel;
+
+	private final long fileSize;
+
+	private final PuzzleCodec codec;
+
+	private final int size;
+
+	private final boolean binary;
+	/**
+	 * The size of the mapped window; a multiple of the size of a packed
+	 * puzzle in binary files.
+	 */
+	private final int windowSize;
+	/**
+	 * The values of the last puzzle loaded to a solver.
+	 */
+	private final int[] values;
+
+	private MappedByteBuffer window;
+	/**
+	 * The offset of the mapped window in the file.
+	 */
+	private long windowStart;
+	/**
+	 * The position of the next puzzle in the mapped window.
+	 */
+	private int position;
+
+	private long puzzleCount;
+
+	private long invalidCount;
+
+	/**
+	 * Closes the file.
+	 *
+	 * @throws IOException if the file can't be closed.
+	 */
+	public void close() throws IOException {
+		window = null;
+		channel.close();
+	}
+
+	/**
+	 * Returns the number of invalid puzzles skipped by the reader. A partial
+	 * puzzle at the end of a binary file is counted as invalid.
+	 *
+	 * @return the number of invalid puzzles.
+	 */
+	public long getInvalidCount() {
+		return invalidCount;
+	}
+
+	/**
+	 * Returns the number of puzzles read so far.
+	 *
+	 * @return the number of puzzles.
+	 */
+	public long getPuzzleCount() {
+		return puzzleCount;
+	}
+
+	/**
+	 * Returns the size of an edge of a square group of the puzzles.
+	 *
+	 * @return the size of an edge of a square group.
+	 */
+	public int getSquareSize() {
+		return codec.getSquareSize();
+	}
+
+	/**
+	 * Checks if the file is in the binary format.
+	 *
+	 * @return <code>true</code> if the file is a binary corpus; otherwise,
+	 * 			<code>false</code>.
+	 */
+	public boolean isBinary() {
+		return binary;
+	}
+
+	/**
+	 * Maps the window that starts at the given offset of the file.
+	 */
+	private void map(long _start) throws IOException {
+		window = channel.map(FileChannel.MapMode.READ_ONLY, _start, Math.min(windowSize, fileSize - _start));
+		windowStart = _start;
+		position = 0;
+	}
+
+	/**
+	 * Reads the next puzzle.
+	 *
+	 * @param _values the array, to which the values of the cells are
+	 * 			written, indexed by <code>x + y * size</code>. Zero stands
+	 * 			for an empty cell.
+	 * @return <code>true</code> if a puzzle was read; <code>false</code> at
+	 * 			the end of the file.
+	 * @throws IOException if the file can't be mapped, or if a line is
+	 * 			longer than the mapped window.
+	 * @throws IllegalArgumentException if the array has a wrong size.
+	 */
+	public boolean next(int[] _values) throws IOException {
+		if(_values.length != values.length)
+			throw new IllegalArgumentException("Expected an array of " + values.length + " values, found " + _values.length);
+		boolean found = binary ? nextBinary(_values) : nextText(_values);
+		if(found)
+			puzzleCount++;
+		return found;
+	}
+
+	/**
+	 * Reads the next puzzle and loads it to the solver. The clues are set
+	 * through {@link SolverEngine#setValue(int, int, int)}, and all other
+	 * cells are cleared.
+	 *
+	 * @param _engine the solver.
+	 * @return <code>true</code> if a puzzle was loaded; <code>false</code>
+	 * 			at the end of the file.
+	 * @throws IOException if the file can't be mapped, or if a line is
+	 * 			longer than the mapped window.
+	 * @throws IllegalArgumentException if the solver has a different size.
+	 */
+	public boolean next(SolverEngine _engine) throws IOException {
+		if(_engine.getSize() != size)
+			throw new IllegalArgumentException("Expected a board of size " + size + ", found " + _engine.getSize());
+		if(!next(values))
+			return false;
+		for(int y = 0; y < size; y++)
+			for(int x = 0; x < size; x++) {
+				int value = values[x + y * size];
+				if(value == 0)
+					_engine.clearValue(x, y);
+				else
+					_engine.setValue(x, y, value);
+			}
+		return true;
+	}
+
+	private boolean nextBinary(int[] _values) throws IOException {
+		int packed_size = codec.getPackedSize();
+		while(true) {
+			if(position + packed_size > window.limit()) {
+				long start = windowStart + position;
+				if(start + packed_size > fileSize) {
+					if(start < fileSize) {
+						// Skips the partial puzzle at the end of the file
+						invalidCount++;
+						map(fileSize);
+					}
+					return false;
+				}
+				map(start);
+			}
+			codec.decode(window, position, _values);
+			position += packed_size;
+			if(codec.isValid(_values))
+				return true;
+			invalidCount++;
+		}
+	}
+
+	private boolean nextText(int[] _values) throws IOException {
+		while(true) {
+			int limit = window.limit();
+			if(position >= limit) {
+				if(windowStart + limit >= fileSize)
+					return false;
+				map(windowStart + position);
+				continue;
+			}
+			int end = position;
+			while(end < limit && window.get(end) != '\n')
+				end++;
+			if(end == limit && windowStart + limit < fileSize) {
+				if(position == 0)
+					throw new IOException("Line at offset " + windowStart + " is longer than the mapped window");
+				map(windowStart + position);
+				continue;
+			}
+			int start = position;
+			position = end + 1;
+			while(end > start && PuzzleParser.isSeparator(window.get(end - 1)))
+				end--;
+			if(end == start)
+				continue;
+			if(PuzzleParser.parse(window, start, end - start, size, _values))
+				return true;
+			invalidCount++;
+		}
+	}
+
+	private static void printUsage() {
+		System.err.println("Usage: CorpusReader [-size square-size] [-engine type] [-solve] path");
+	}
+
+	/**
+	 * Reads all puzzles of a corpus, optionally solves them, and reports
+	 * the throughput.
+	 *
+	 * @param _args the command-line arguments.
+	 */
+	public static void main(String[] _args) {
+		SolverEngineType engine_type = SolverEngineType.PROPAGATION;
+		int square_size = Sudoku.GAME_SQUARE_SIZE;
+		boolean solve = false;
+		String path_name = null;
+		try {
+			for(int i = 0; i < _args.length; i++) {
+				String arg = _args[i];
+				if(arg.equals("-size"))
+					square_size = Integer.parseInt(_args[++i]);
+				else if(arg.equals("-engine"))
+					engine_type = SolverEngineType.valueOf(_args[++i]);
+				else if(arg.equals("-solve"))
+					solve = true;
+				else if(path_name == null)
+					path_name = arg;
+				else
+					throw new IllegalArgumentException("Unexpected argument: " + arg);
+			}
+			if(path_name == null)
+				throw new IllegalArgumentException("Missing the path of the corpus");
+		}
+		catch(RuntimeException e) {
+			System.err.println(e.getMessage());
+			printUsage();
+			System.exit(2);
+		}
+
+		try(CorpusReader reader = new CorpusReader(Paths.get(path_name), square_size)) {
+			SolverEngine engine = engine_type.create(reader.getSquareSize());
+			long solved_count = 0;
+			long start = System.nanoTime();
+			while(reader.next(engine))
+				if(solve && engine.solve())
+					solved_count++;
+			double seconds = (System.nanoTime() - start) / 1e9;
+			System.err.printf("Read %d puzzles (%s, %d invalid) in %.3f s (%.0f puzzles/s)%n",
+					reader.getPuzzleCount(), reader.isBinary() ? "binary" : "text",
+					reader.getInvalidCount(), seconds, reader.getPuzzleCount() / seconds);
+			if(solve)
+				System.err.printf("Solved %d puzzles%n", solved_count);
+		}
+		catch(IOException e) {
+			System.err.println("I/O error: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Opens a corpus file with the default size of the mapped window.
+	 *
+	 * @param _path the path of the file.
+	 * @param _squareSize the size of an edge of a square group of the
+	 * 			puzzles. Binary files record their size in the header, which
+	 * 			must match.
+	 * @throws IOException if the file can't be opened, or if it is a binary
+	 * 			corpus of a different size.
+	 */
+	public CorpusReader(Path _path, int _squareSize) throws IOException {
+		this(_path, _squareSize, DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * Opens a corpus file.
+	 *
+	 * @param _path the path of the file.
+	 * @param _squareSize the size of an edge of a square group of the
+	 * 			puzzles. Binary files record their size in the header, which
+	 * 			must match.
+	 * @param _windowSize the size of the mapped window.
+	 * @throws IOException if the file can't be opened, or if it is a binary
+	 * 			corpus of a different size.
+	 */
+	public CorpusReader(Path _path, int _squareSize, int _windowSize) throws IOException {
+		codec = new PuzzleCodec(_squareSize);
+		size = _squareSize * _squareSize;
+		values = new int[size * size];
+		channel = FileChannel.open(_path, StandardOpenOption.READ);
+		try {
+			fileSize = channel.size();
+			ByteBuffer header = ByteBuffer.allocate(PuzzleCodec.HEADER_SIZE);
+			while(header.hasRemaining())
+				if(channel.read(header, header.position()) < 0)
+					break;
+			header.flip();
+			int file_square_size = PuzzleCodec.readHeader(header);
+			binary = file_square_size >= 0;
+			if(binary && file_square_size != _squareSize)
+				throw new IOException("The corpus has puzzles of square size " + file_square_size + ", expected " + _squareSize);
+			if(binary) {
+				int packed_size = codec.getPackedSize();
+				windowSize = Math.max(1, _windowSize / packed_size) * packed_size;
+			}
+			else
+				windowSize = _windowSize;
+			map(binary ? PuzzleCodec.HEADER_SIZE : 0);
+		}
+		catch(IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+}
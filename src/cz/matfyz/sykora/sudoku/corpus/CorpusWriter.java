@@ -0,0 +1,206 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku.corpus;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.file.*;
+
+import cz.matfyz.sykora.sudoku.*;
+
+/**
+ * Writes puzzles to a corpus file, either in the binary format of
+ * {@link PuzzleCodec}, or as text with one puzzle per line. The text format
+ * uses a single character per cell, and <code>'.'</code> for the empty
+ * cells; boards with more than 35 values are written as numbers separated by
+ * spaces.
+ * <p>
+ * The writer is not safe for concurrent use.
+ *
+ * @author Ondrej Sykora
+ */
+public class CorpusWriter implements Closeable {
+	/**
+	 * The size of the output buffer.
+	 */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final WritableByteChannel channel;
+
+	private final PuzzleCodec codec;
+
+	private final int size;
+
+	private final boolean binary;
+
+	private final ByteBuffer buffer;
+	/**
+	 * The packed puzzle, or the line of text.
+	 */
+	private final byte[] record;
+
+	private long puzzleCount;
+
+	/**
+	 * Writes the buffered puzzles, and closes the channel.
+	 *
+	 * @throws IOException if the puzzles can't be written.
+	 */
+	public void close() throws IOException {
+		try {
+			flush();
+		}
+		finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Writes the buffered puzzles to the channel.
+	 *
+	 * @throws IOException if the puzzles can't be written.
+	 */
+	public void flush() throws IOException {
+		buffer.flip();
+		while(buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+	/**
+	 * Returns the number of puzzles written so far.
+	 *
+	 * @return the number of puzzles.
+	 */
+	public long getPuzzleCount() {
+		return puzzleCount;
+	}
+
+	private static void printUsage() {
+		System.err.println("Usage: CorpusWriter [-size square-size] [-text] input output");
+	}
+
+	/**
+	 * Writes a single puzzle.
+	 *
+	 * @param _values the values of the cells, indexed by
+	 * 			<code>x + y * size</code>. Zero stands for an empty cell.
+	 * @throws IOException if the buffered puzzles can't be written.
+	 * @throws IllegalArgumentException if the puzzle has a wrong number of
+	 * 			cells, or if a value is out of range.
+	 */
+	public void write(int[] _values) throws IOException {
+		int length;
+		if(binary) {
+			codec.encode(_values, record, 0);
+			length = codec.getPackedSize();
+		}
+		else {
+			if(!codec.isValid(_values))
+				throw new IllegalArgumentException("The puzzle has a wrong number of cells, or a value out of range");
+			length = 0;
+			for(int cell = 0; cell < _values.length; cell++) {
+				int value = _values[cell];
+				if(size <= 35)
+					record[length++] = (byte)Sudoku.formatValue(value);
+				else {
+					if(cell > 0)
+						record[length++] = ' ';
+					if(value >= 10)
+						record[length++] = (byte)('0' + value / 10);
+					record[length++] = (byte)('0' + value % 10);
+				}
+			}
+			record[length++] = '\n';
+		}
+		if(buffer.remaining() < length)
+			flush();
+		buffer.put(record, 0, length);
+		puzzleCount++;
+	}
+
+	/**
+	 * Converts a corpus to the binary or the text format.
+	 *
+	 * @param _args the command-line arguments.
+	 */
+	public static void main(String[] _args) {
+		int square_size = Sudoku.GAME_SQUARE_SIZE;
+		boolean binary = true;
+		String input_name = null;
+		String output_name = null;
+		try {
+			for(int i = 0; i < _args.length; i++) {
+				String arg = _args[i];
+				if(arg.equals("-size"))
+					square_size = Integer.parseInt(_args[++i]);
+				else if(arg.equals("-text"))
+					binary = false;
+				else if(input_name == null)
+					input_name = arg;
+				else if(output_name == null)
+					output_name = arg;
+				else
+					throw new IllegalArgumentException("Unexpected argument: " + arg);
+			}
+			if(output_name == null)
+				throw new IllegalArgumentException("Missing the input or the output path");
+		}
+		catch(RuntimeException e) {
+			System.err.println(e.getMessage());
+			printUsage();
+			System.exit(2);
+		}
+
+		try(CorpusReader reader = new CorpusReader(Paths.get(input_name), square_size);
+			CorpusWriter writer = new CorpusWriter(FileChannel.open(Paths.get(output_name), StandardOpenOption.WRITE,
+					StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING), square_size, binary)) {
+			int[] values = new int[square_size * square_size * square_size * square_size];
+			while(reader.next(values))
+				writer.write(values);
+			System.err.printf("Converted %d puzzles (%d invalid)%n", writer.getPuzzleCount(), reader.getInvalidCount());
+		}
+		catch(IOException e) {
+			System.err.println("I/O error: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Creates a new writer. The header of a binary corpus is written
+	 * immediately to the buffer.
+	 *
+	 * @param _channel the channel, to which the puzzles are written. The
+	 * 			channel is closed by {@link #close()}.
+	 * @param _squareSize the size of an edge of a square group of the
+	 * 			puzzles.
+	 * @param _binary specifies if the puzzles are written in the binary
+	 * 			format; otherwise, they are written as text.
+	 */
+	public CorpusWriter(WritableByteChannel _channel, int _squareSize, boolean _binary) {
+		channel = _channel;
+		codec = new PuzzleCodec(_squareSize);
+		size = _squareSize * _squareSize;
+		binary = _binary;
+		// Three bytes per cell are enough for the numbers with separators
+		record = new byte[_binary ? codec.getPackedSize() : 3 * size * size];
+		buffer = ByteBuffer.allocate(Math.max(BUFFER_SIZE, record.length));
+		if(_binary)
+			codec.writeHeader(buffer);
+	}
+}
@@ -0,0 +1,241 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku.corpus;
+
+import java.nio.ByteBuffer;
+
+import cz.matfyz.sykora.sudoku.*;
+
+/**
+ * Packs the cells of a board to the smallest number of bits that holds all
+ * values and the empty cell: four bits for the standard board, five bits
+ * for the boards of size 16 and 25. The cells are packed row by row, each
+ * starting at the lowest free bit of the current byte, so a standard
+ * puzzle takes 41 bytes, and the low half of the first byte holds the
+ * first cell.
+ * <p>
+ * The binary corpus files written by {@link CorpusWriter} consist of
+ * a header of {@link #HEADER_SIZE} bytes (the magic number, the version of
+ * the format and the size of an edge of a square group) followed by the
+ * packed puzzles.
+ *
+ * @author Ondrej Sykora
+ */
+public class PuzzleCodec {
+	/**
+	 * "SUDOKUPZ" in ASCII.
+	 */
+	public static final long MAGIC = 0x5355444f4b55505aL;
+	/**
+	 * The version of the format of the binary corpus files.
+	 */
+	public static final int VERSION = 1;
+	/**
+	 * The size of the header of a binary corpus file.
+	 */
+	public static final int HEADER_SIZE = 16;
+
+	private final int squareSize;
+
+	private final int size;
+
+	private final int cellCount;
+
+	private final int bitsPerCell;
+
+	private final int packedSize;
+
+	/**
+	 * Unpacks a puzzle.
+	 *
+	 * @param _input the packed puzzle.
+	 * @param _offset the offset of the puzzle in <code>_input</code>.
+	 * @param _values the array, to which the values of the cells are
+	 * 			written, indexed by <code>x + y * size</code>.
+	 */
+	public void decode(byte[] _input, int _offset, int[] _values) {
+		int mask = (1 << bitsPerCell) - 1;
+		long buffer = 0;
+		int bits = 0;
+		int position = _offset;
+		for(int cell = 0; cell < cellCount; cell++) {
+			while(bits < bitsPerCell) {
+				buffer |= (long)(_input[position++] & 0xff) << bits;
+				bits += 8;
+			}
+			_values[cell] = (int)buffer & mask;
+			buffer >>>= bitsPerCell;
+			bits -= bitsPerCell;
+		}
+	}
+
+	/**
+	 * Unpacks a puzzle directly from a buffer, without copying it to an
+	 * array first. The position of the buffer is not changed.
+	 *
+	 * @param _input the buffer with the packed puzzle.
+	 * @param _offset the absolute offset of the puzzle in
+	 * 			<code>_input</code>.
+	 * @param _values the array, to which the values of the cells are
+	 * 			written, indexed by <code>x + y * size</code>.
+	 */
+	public void decode(ByteBuffer _input, int _offset, int[] _values) {
+		if(bitsPerCell == 4) {
+			// The common case; two cells in each byte
+			int cell = 0;
+			for(int position = _offset; cell + 1 < cellCount; position++) {
+				int packed = _input.get(position);
+				_values[cell++] = packed & 0xf;
+				_values[cell++] = (packed >>> 4) & 0xf;
+			}
+			if(cell < cellCount)
+				_values[cell] = _input.get(_offset + cell / 2) & 0xf;
+			return;
+		}
+		int mask = (1 << bitsPerCell) - 1;
+		long buffer = 0;
+		int bits = 0;
+		int position = _offset;
+		for(int cell = 0; cell < cellCount; cell++) {
+			while(bits < bitsPerCell) {
+				buffer |= (long)(_input.get(position++) & 0xff) << bits;
+				bits += 8;
+			}
+			_values[cell] = (int)buffer & mask;
+			buffer >>>= bitsPerCell;
+			bits -= bitsPerCell;
+		}
+	}
+
+	/**
+	 * Checks if the values are in range, so that they can be packed.
+	 *
+	 * @param _values the values of the cells.
+	 * @return <code>true</code> if all values are between zero and the size
+	 * 			of the board; otherwise, <code>false</code>.
+	 */
+	public boolean isValid(int[] _values) {
+		if(_values.length != cellCount)
+			return false;
+		for(int value : _values)
+			if(value < 0 || value > size)
+				return false;
+		return true;
+	}
+
+	/**
+	 * Packs a puzzle.
+	 *
+	 * @param _values the values of the cells, indexed by
+	 * 			<code>x + y * size</code>. Zero stands for an empty cell.
+	 * @param _output the array, to which the packed puzzle is written.
+	 * @param _offset the offset of the puzzle in <code>_output</code>.
+	 * @throws IllegalArgumentException if the puzzle has a wrong number of
+	 * 			cells, or if a value is out of range.
+	 */
+	public void encode(int[] _values, byte[] _output, int _offset) {
+		if(_values.length != cellCount)
+			throw new IllegalArgumentException("Expected " + cellCount + " values, found " + _values.length);
+		long buffer = 0;
+		int bits = 0;
+		int position = _offset;
+		for(int cell = 0; cell < cellCount; cell++) {
+			int value = _values[cell];
+			if(value < 0 || value > size)
+				throw new IllegalArgumentException("Value out of range: " + value);
+			buffer |= (long)value << bits;
+			bits += bitsPerCell;
+			while(bits >= 8) {
+				_output[position++] = (byte)buffer;
+				buffer >>>= 8;
+				bits -= 8;
+			}
+		}
+		if(bits > 0)
+			_output[position] = (byte)buffer;
+	}
+
+	/**
+	 * Returns the number of bits used by a single cell.
+	 *
+	 * @return the number of bits per cell.
+	 */
+	public int getBitsPerCell() {
+		return bitsPerCell;
+	}
+
+	/**
+	 * Returns the number of bytes of a packed puzzle.
+	 *
+	 * @return the size of a packed puzzle.
+	 */
+	public int getPackedSize() {
+		return packedSize;
+	}
+
+	/**
+	 * Returns the size of an edge of a square group of the puzzles.
+	 *
+	 * @return the size of an edge of a square group.
+	 */
+	public int getSquareSize() {
+		return squareSize;
+	}
+
+	/**
+	 * Reads the header of a binary corpus file.
+	 *
+	 * @param _header the buffer with the first {@link #HEADER_SIZE} bytes
+	 * 			of the file.
+	 * @return the size of an edge of a square group of the puzzles in the
+	 * 			file, or <code>-1</code> if the buffer does not start with
+	 * 			the header of a supported version.
+	 */
+	public static int readHeader(ByteBuffer _header) {
+		if(_header.limit() < HEADER_SIZE || _header.getLong(0) != MAGIC || _header.getInt(8) != VERSION)
+			return -1;
+		return _header.getInt(12);
+	}
+
+	/**
+	 * Writes the header of a binary corpus file for the puzzles of this
+	 * codec.
+	 *
+	 * @param _output the buffer, to which the header is written at its
+	 * 			current position.
+	 */
+	public void writeHeader(ByteBuffer _output) {
+		_output.putLong(MAGIC);
+		_output.putInt(VERSION);
+		_output.putInt(squareSize);
+	}
+
+	/**
+	 * Creates a new codec.
+	 *
+	 * @param _squareSize the size of an edge of a square group.
+	 */
+	public PuzzleCodec(int _squareSize) {
+		if(_squareSize < Sudoku.MIN_SQUARE_SIZE || _squareSize > Sudoku.MAX_SQUARE_SIZE)
+			throw new IllegalArgumentException("Unsupported square size: " + _squareSize);
+		squareSize = _squareSize;
+		size = _squareSize * _squareSize;
+		cellCount = size * size;
+		bitsPerCell = 32 - Integer.numberOfLeadingZeros(size);
+		packedSize = (cellCount * bitsPerCell + 7) / 8;
+	}
+}
@@ -0,0 +1,188 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku.corpus;
+
+import java.nio.ByteBuffer;
+
+import cz.matfyz.sykora.sudoku.*;
+
+/**
+ * Parses puzzles in the text formats directly from bytes, without creating
+ * a string for each puzzle. A line is either a single character per cell
+ * (see {@link Sudoku#parseValue(char)}), or a list of numbers separated by
+ * whitespace or commas, which is needed for boards with more than 35
+ * values. Unlike {@link Sudoku#readGameState(String, int, int[])}, the
+ * parser does not leave any cell unchanged: a character that does not stand
+ * for a value makes the whole line invalid.
+ *
+ * @author Ondrej Sykora
+ */
+public class PuzzleParser {
+	/**
+	 * The value of each byte, as returned by
+	 * {@link Sudoku#parseValue(char)}.
+	 */
+	private static final byte[] VALUES = new byte[256];
+	/**
+	 * Marks the bytes that separate the tokens of a line.
+	 */
+	private static final boolean[] SEPARATORS = new boolean[256];
+
+	static {
+		for(int i = 0; i < VALUES.length; i++) {
+			VALUES[i] = (byte)Sudoku.parseValue((char)i);
+			SEPARATORS[i] = i == ',' || i == ' ' || i == '\t' || i == '\r';
+		}
+	}
+
+	/**
+	 * Checks if the given byte separates the tokens of a line.
+	 *
+	 * @param _byte the byte.
+	 * @return <code>true</code> if the byte is a comma or whitespace other
+	 * 			than the end of line; otherwise, <code>false</code>.
+	 */
+	public static boolean isSeparator(byte _byte) {
+		return SEPARATORS[_byte & 0xff];
+	}
+
+	/**
+	 * Parses a single line of a text corpus.
+	 *
+	 * @param _input the array with the line.
+	 * @param _offset the offset of the line in <code>_input</code>.
+	 * @param _length the length of the line without the line break. Trailing
+	 * 			whitespace is ignored.
+	 * @param _size the size of the game board.
+	 * @param _values the array, to which the values of the cells are
+	 * 			written, indexed by <code>x + y * size</code>.
+	 * @return <code>true</code> if the line is a valid puzzle; otherwise,
+	 * 			<code>false</code>. The contents of <code>_values</code>
+	 * 			are undefined when the line is not valid.
+	 */
+	public static boolean parse(byte[] _input, int _offset, int _length, int _size, int[] _values) {
+		int end = _offset + _length;
+		while(end > _offset && SEPARATORS[_input[end - 1] & 0xff])
+			end--;
+		int cell_count = _values.length;
+		if(end - _offset == cell_count) {
+			for(int cell = 0; cell < cell_count; cell++) {
+				int value = VALUES[_input[_offset + cell] & 0xff];
+				if(value < 0 || value > _size)
+					return false;
+				_values[cell] = value;
+			}
+			return true;
+		}
+		int cell = 0;
+		int position = _offset;
+		while(position < end) {
+			int c = _input[position] & 0xff;
+			if(SEPARATORS[c]) {
+				position++;
+				continue;
+			}
+			if(cell == cell_count)
+				return false;
+			int token_end = position;
+			while(token_end < end && !SEPARATORS[_input[token_end] & 0xff])
+				token_end++;
+			int value;
+			if(token_end - position == 1)
+				value = VALUES[c];
+			else {
+				value = 0;
+				for(; position < token_end && value <= _size; position++) {
+					int digit = (_input[position] & 0xff) - '0';
+					if(digit < 0 || digit > 9)
+						return false;
+					value = 10 * value + digit;
+				}
+			}
+			if(value < 0 || value > _size)
+				return false;
+			_values[cell++] = value;
+			position = token_end;
+		}
+		return cell == cell_count;
+	}
+
+	/**
+	 * Parses a single line of a text corpus directly from a buffer. The
+	 * position of the buffer is not changed.
+	 *
+	 * @param _input the buffer with the line.
+	 * @param _offset the absolute offset of the line in <code>_input</code>.
+	 * @param _length the length of the line without the line break. Trailing
+	 * 			whitespace is ignored.
+	 * @param _size the size of the game board.
+	 * @param _values the array, to which the values of the cells are
+	 * 			written, indexed by <code>x + y * size</code>.
+	 * @return <code>true</code> if the line is a valid puzzle; otherwise,
+	 * 			<code>false</code>. The contents of <code>_values</code>
+	 * 			are undefined when the line is not valid.
+	 */
+	public static boolean parse(ByteBuffer _input, int _offset, int _length, int _size, int[] _values) {
+		int end = _offset + _length;
+		while(end > _offset && SEPARATORS[_input.get(end - 1) & 0xff])
+			end--;
+		int cell_count = _values.length;
+		if(end - _offset == cell_count) {
+			for(int cell = 0; cell < cell_count; cell++) {
+				int value = VALUES[_input.get(_offset + cell) & 0xff];
+				if(value < 0 || value > _size)
+					return false;
+				_values[cell] = value;
+			}
+			return true;
+		}
+		int cell = 0;
+		int position = _offset;
+		while(position < end) {
+			int c = _input.get(position) & 0xff;
+			if(SEPARATORS[c]) {
+				position++;
+				continue;
+			}
+			if(cell == cell_count)
+				return false;
+			int token_end = position;
+			while(token_end < end && !SEPARATORS[_input.get(token_end) & 0xff])
+				token_end++;
+			int value;
+			if(token_end - position == 1)
+				value = VALUES[c];
+			else {
+				value = 0;
+				for(; position < token_end && value <= _size; position++) {
+					int digit = (_input.get(position) & 0xff) - '0';
+					if(digit < 0 || digit > 9)
+						return false;
+					value = 10 * value + digit;
+				}
+			}
+			if(value < 0 || value > _size)
+				return false;
+			_values[cell++] = value;
+			position = token_end;
+		}
+		return cell == cell_count;
+	}
+
+	private PuzzleParser() {
+	}
+}
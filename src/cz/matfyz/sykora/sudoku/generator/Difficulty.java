@@ -0,0 +1,39 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku.generator;
+
+/**
+ * The difficulty of a puzzle, rated by the propagation techniques needed
+ * to solve it.
+ *
+ * @author Ondrej Sykora
+ */
+public enum Difficulty {
+	/**
+	 * The puzzle is solved by naked and hidden singles alone.
+	 */
+	EASY,
+	/**
+	 * The puzzle is solved without search when locked candidates, naked
+	 * pairs and hidden pairs are also used.
+	 */
+	MEDIUM,
+	/**
+	 * The puzzle can't be solved without search.
+	 */
+	HARD
+}
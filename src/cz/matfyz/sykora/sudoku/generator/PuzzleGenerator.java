@@ -0,0 +1,418 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku.generator;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import cz.matfyz.sykora.sudoku.*;
+
+/**
+ * Generates puzzles with a unique solution.
+ * <p>
+ * A puzzle is generated from a random full grid, found by the search of
+ * {@link Sudoku} with {@link RandomValueOrdering} on an empty board. The
+ * clues are then removed in a random order; a removal is kept only if the
+ * solution stays unique, and if the puzzle does not get harder than the
+ * requested difficulty. When the resulting puzzle does not match the
+ * requested number of clues or difficulty, the generator starts over with
+ * a new grid.
+ * <p>
+ * The uniqueness check after removing a clue does not solve the puzzle
+ * again. If the propagation of the remaining clues deduces the removed
+ * value, the puzzle is unique without any search; otherwise, only the
+ * subtree in which the cell has a different value is searched.
+ * <p>
+ * All random choices are derived from the seed passed to
+ * {@link #generate(long)}, so the same seed always yields the same puzzle.
+ * Instances are not thread-safe; parallel generation uses one generator
+ * per thread.
+ * <p>
+ * Usage: <code>PuzzleGenerator [-count n] [-seed n] [-clues n]
+ * [-difficulty EASY|MEDIUM|HARD] [-threads n] [-size n] [output]</code>,
+ * where <code>-size</code> is the size of an edge of a square group, and
+ * <code>-</code> (the default) stands for the standard output.
+ *
+ * @author Ondrej Sykora
+ */
+public class PuzzleGenerator {
+	/**
+	 * The default number of full grids tried before the generator gives up.
+	 */
+	public static final int DEFAULT_MAX_ATTEMPTS = 100;
+	/**
+	 * The number of puzzles generated by a single task of the parallel
+	 * generation.
+	 */
+	private static final int BATCH_SIZE = 64;
+	
+	private final int cellCount;
+	
+	private final int size;
+	
+	/**
+	 * The clues of the puzzle being generated, indexed by
+	 * <code>x + y * size</code>. Zero stands for an empty cell.
+	 */
+	private final int[] clues;
+	/**
+	 * The order, in which the clues are removed.
+	 */
+	private final int[] cellOrder;
+	/**
+	 * The requested difficulty, or <code>null</code> for any difficulty.
+	 */
+	private Difficulty difficulty;
+	/**
+	 * Rates the puzzles that can be solved by singles alone.
+	 */
+	private final Sudoku easyRater;
+	/**
+	 * Rates the puzzles that can be solved by all propagation stages.
+	 */
+	private final Sudoku mediumRater;
+	
+	private int maxAttempts;
+	/**
+	 * Finds the full grids and checks the uniqueness of the solutions.
+	 */
+	private final Sudoku solver;
+	/**
+	 * The requested number of clues, or zero if the clues are removed while
+	 * the solution stays unique.
+	 */
+	private int targetClues;
+	
+	private final RandomValueOrdering valueOrdering;
+	
+	/**
+	 * Fills {@link #clues} with a random full grid.
+	 */
+	private void fillGrid(Random _random) {
+		Arrays.fill(clues, 0);
+		loadClues(solver);
+		valueOrdering.setSeed(_random.nextLong());
+		solver.solve();
+		for(int cell=0; cell < cellCount; cell++)
+			clues[cell] = solver.getValue(cell % size, cell / size);
+	}
+	
+	/**
+	 * Generates a puzzle with a unique solution.
+	 *
+	 * @param _seed the seed, from which all random choices are derived.
+	 * @return the values of the cells, indexed by <code>x + y * size</code>,
+	 * 			with zero for empty cells; or <code>null</code> if no puzzle
+	 * 			with the requested number of clues and difficulty was found
+	 * 			in the allowed number of attempts.
+	 */
+	public int[] generate(long _seed) {
+		Random random = new Random(_seed);
+		for(int attempt=0; attempt < maxAttempts; attempt++) {
+			if(generateAttempt(random))
+				return clues.clone();
+		}
+		return null;
+	}
+	
+	private boolean generateAttempt(Random _random) {
+		fillGrid(_random);
+		for(int i=0; i < cellCount; i++) {
+			int pos = _random.nextInt(i + 1);
+			cellOrder[i] = cellOrder[pos];
+			cellOrder[pos] = i;
+		}
+		int clue_count = cellCount;
+		for(int i=0; i < cellCount && clue_count > targetClues; i++) {
+			int cell = cellOrder[i];
+			int value = clues[cell];
+			clues[cell] = 0;
+			if(isUnique(cell, value) && (difficulty == null || rate().compareTo(difficulty) <= 0))
+				clue_count--;
+			else
+				clues[cell] = value;
+		}
+		if(targetClues > 0 && clue_count > targetClues)
+			return false;
+		return difficulty == null || rate() == difficulty;
+	}
+	
+	/**
+	 * Returns the requested difficulty of the puzzles.
+	 *
+	 * @return the difficulty, or <code>null</code> if any difficulty is
+	 * 			accepted.
+	 */
+	public Difficulty getDifficulty() {
+		return difficulty;
+	}
+	
+	/**
+	 * Returns the number of full grids tried for a puzzle before the
+	 * generator gives up.
+	 *
+	 * @return the maximal number of attempts.
+	 */
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+	
+	/**
+	 * Returns the size of the game board (the number of cells in a row).
+	 *
+	 * @return the size of the game board.
+	 */
+	public int getSize() {
+		return size;
+	}
+	
+	/**
+	 * Returns the requested number of clues.
+	 *
+	 * @return the number of clues, or zero if the clues are removed while
+	 * 			the solution stays unique.
+	 */
+	public int getTargetClues() {
+		return targetClues;
+	}
+	
+	/**
+	 * Checks if the current clues still have a unique solution after the
+	 * given value was removed from the cell.
+	 */
+	private boolean isUnique(int _cell, int _value) {
+		loadClues(solver);
+		return !solver.hasSolutionExcluding(_cell % size, _cell / size, _value);
+	}
+	
+	private static boolean isSolved(Sudoku _sudoku) {
+		int size = _sudoku.getSize();
+		for(int y=0; y < size; y++)
+			for(int x=0; x < size; x++)
+				if(!_sudoku.isValueSet(x, y))
+					return false;
+		return true;
+	}
+	
+	private void loadClues(Sudoku _sudoku) {
+		for(int cell=0; cell < cellCount; cell++) {
+			if(clues[cell] == 0)
+				_sudoku.clearValue(cell % size, cell / size);
+			else
+				_sudoku.setValue(cell % size, cell / size, clues[cell]);
+		}
+	}
+	
+	/**
+	 * Derives the seed of a puzzle from the seed of a sequence of puzzles,
+	 * so that the puzzles do not depend on the order, in which they are
+	 * generated.
+	 *
+	 * @param _seed the seed of the sequence.
+	 * @param _index the index of the puzzle in the sequence.
+	 * @return the seed of the puzzle.
+	 */
+	public static long puzzleSeed(long _seed, long _index) {
+		// The finalizer of SplitMix64
+		long z = _seed + (_index + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+	
+	/**
+	 * Rates the difficulty of the current clues.
+	 */
+	private Difficulty rate() {
+		loadClues(easyRater);
+		easyRater.propagateConstraints();
+		if(isSolved(easyRater))
+			return Difficulty.EASY;
+		loadClues(mediumRater);
+		mediumRater.propagateConstraints();
+		if(isSolved(mediumRater))
+			return Difficulty.MEDIUM;
+		return Difficulty.HARD;
+	}
+	
+	/**
+	 * Sets the requested difficulty of the puzzles.
+	 *
+	 * @param _difficulty the difficulty, or <code>null</code> if any
+	 * 			difficulty is accepted.
+	 */
+	public void setDifficulty(Difficulty _difficulty) {
+		difficulty = _difficulty;
+	}
+	
+	/**
+	 * Sets the number of full grids tried for a puzzle before the generator
+	 * gives up. The default is {@link #DEFAULT_MAX_ATTEMPTS}.
+	 *
+	 * @param _maxAttempts the maximal number of attempts.
+	 */
+	public void setMaxAttempts(int _maxAttempts) {
+		if(_maxAttempts < 1)
+			throw new IllegalArgumentException("The number of attempts must be positive");
+		maxAttempts = _maxAttempts;
+	}
+	
+	/**
+	 * Sets the requested number of clues. The removal of clues stops when
+	 * this number is reached, and puzzles that can't be reduced to this
+	 * number are rejected.
+	 *
+	 * @param _targetClues the number of clues, or zero if the clues are
+	 * 			removed while the solution stays unique.
+	 */
+	public void setTargetClues(int _targetClues) {
+		if(_targetClues < 0 || _targetClues > cellCount)
+			throw new IllegalArgumentException("Invalid number of clues: " + _targetClues);
+		targetClues = _targetClues;
+	}
+	
+	/**
+	 * Creates a new generator for a game board made of
+	 * <code>_squareSize</code> x <code>_squareSize</code> squares.
+	 *
+	 * @param _squareSize the size of an edge of a square group.
+	 */
+	public PuzzleGenerator(int _squareSize) {
+		solver = new Sudoku(_squareSize);
+		size = solver.getSize();
+		cellCount = size * size;
+		valueOrdering = new RandomValueOrdering(0);
+		solver.setValueOrdering(valueOrdering);
+		easyRater = new Sudoku(_squareSize);
+		easyRater.setPropagationStageEnabled(PropagationStage.LOCKED_CANDIDATES, false);
+		mediumRater = new Sudoku(_squareSize);
+		mediumRater.setPropagationStageEnabled(PropagationStage.NAKED_PAIRS, true);
+		mediumRater.setPropagationStageEnabled(PropagationStage.HIDDEN_PAIRS, true);
+		clues = new int[cellCount];
+		cellOrder = new int[cellCount];
+		maxAttempts = DEFAULT_MAX_ATTEMPTS;
+	}
+	
+	private static void printUsage() {
+		System.err.println("Usage: PuzzleGenerator [-count n] [-seed n] [-clues n] [-difficulty EASY|MEDIUM|HARD] [-threads n] [-size n] [output]");
+	}
+	
+	public static void main(String[] _args) {
+		int count = 1;
+		long seed = System.nanoTime();
+		int target_clues = 0;
+		Difficulty difficulty = null;
+		int thread_count = Runtime.getRuntime().availableProcessors();
+		int square_size = Sudoku.GAME_SQUARE_SIZE;
+		String output_name = "-";
+		try {
+			for(int i = 0; i < _args.length; i++) {
+				String arg = _args[i];
+				if(arg.equals("-count"))
+					count = Integer.parseInt(_args[++i]);
+				else if(arg.equals("-seed"))
+					seed = Long.parseLong(_args[++i]);
+				else if(arg.equals("-clues"))
+					target_clues = Integer.parseInt(_args[++i]);
+				else if(arg.equals("-difficulty"))
+					difficulty = Difficulty.valueOf(_args[++i]);
+				else if(arg.equals("-threads"))
+					thread_count = Integer.parseInt(_args[++i]);
+				else if(arg.equals("-size"))
+					square_size = Integer.parseInt(_args[++i]);
+				else if(output_name.equals("-"))
+					output_name = arg;
+				else
+					throw new IllegalArgumentException("Unexpected argument: " + arg);
+			}
+			if(square_size * square_size > 35)
+				throw new IllegalArgumentException("Unsupported square size: " + square_size);
+			if(thread_count < 1)
+				throw new IllegalArgumentException("The number of threads must be positive");
+			// Validate the options before the threads are started
+			new PuzzleGenerator(square_size).setTargetClues(target_clues);
+		}
+		catch(RuntimeException e) {
+			System.err.println(e.getMessage());
+			printUsage();
+			System.exit(2);
+		}
+		
+		final int final_square_size = square_size;
+		final int final_target_clues = target_clues;
+		final Difficulty final_difficulty = difficulty;
+		final long final_seed = seed;
+		final ThreadLocal<PuzzleGenerator> generators = new ThreadLocal<PuzzleGenerator>() {
+			protected PuzzleGenerator initialValue() {
+				PuzzleGenerator generator = new PuzzleGenerator(final_square_size);
+				generator.setTargetClues(final_target_clues);
+				generator.setDifficulty(final_difficulty);
+				return generator;
+			}
+		};
+		
+		ExecutorService executor = Executors.newFixedThreadPool(thread_count);
+		long start_time = System.nanoTime();
+		int generated = 0;
+		try(OutputStream output = new BufferedOutputStream(output_name.equals("-")
+				? new FileOutputStream(FileDescriptor.out) : new FileOutputStream(output_name))) {
+			// The batches are written in order; at most two per thread are
+			// kept in memory
+			Deque<Future<int[][]>> pending = new ArrayDeque<Future<int[][]>>();
+			int submitted = 0;
+			while(submitted < count || !pending.isEmpty()) {
+				while(submitted < count && pending.size() < 2 * thread_count) {
+					final int first = submitted;
+					final int last = Math.min(count, first + BATCH_SIZE);
+					pending.add(executor.submit(new Callable<int[][]>() {
+						public int[][] call() {
+							PuzzleGenerator generator = generators.get();
+							int[][] puzzles = new int[last - first][];
+							for(int i = first; i < last; i++)
+								puzzles[i - first] = generator.generate(puzzleSeed(final_seed, i));
+							return puzzles;
+						}
+					}));
+					submitted = last;
+				}
+				for(int[] puzzle : pending.removeFirst().get()) {
+					if(puzzle == null)
+						continue;
+					for(int value : puzzle)
+						output.write(Sudoku.formatValue(value));
+					output.write('\n');
+					generated++;
+				}
+			}
+		}
+		catch(IOException e) {
+			System.err.println("I/O error: " + e.getMessage());
+			System.exit(1);
+		}
+		catch(InterruptedException | ExecutionException e) {
+			System.err.println("Generation failed: " + e);
+			System.exit(1);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		double seconds = (System.nanoTime() - start_time) / 1e9;
+		System.err.printf("Generated %d of %d puzzles in %.3f s (%.1f puzzles/s, %.1f puzzles/s per thread)%n",
+				generated, count, seconds, generated / seconds, generated / seconds / thread_count);
+	}
+}
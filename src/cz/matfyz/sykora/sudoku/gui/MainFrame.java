@@ -16,12 +16,16 @@
  */
 package cz.matfyz.sykora.sudoku.gui;
 
+import java.awt.Color;
+import java.awt.Component;
 import java.awt.Dimension;
+import java.awt.Font;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.*;
-import javax.swing.event.*;
 import javax.swing.table.*;
 
 import cz.matfyz.sykora.sudoku.*;
@@ -30,17 +34,200 @@ public class MainFrame extends JFrame {
 	
 	static final long serialVersionUID = 0;
 	
-	private class SudokuTableModel implements TableModel {
-		public void addTableModelListener(TableModelListener _listener) {
-			
+	/**
+	 * Renders a cell of the board: marks the conflicts, and shows the forced
+	 * values and the candidates of the empty cells when they are enabled.
+	 * Nothing but the values is shown while a solve is running.
+	 */
+	private class SudokuCellRenderer extends DefaultTableCellRenderer {
+		static final long serialVersionUID = 0;
+		
+		public Component getTableCellRendererComponent(JTable _table, Object _value, boolean _isSelected,
+				boolean _hasFocus, int _row, int _col) {
+			// Reset the colors set for the previous cell
+			setForeground(null);
+			setBackground(null);
+			super.getTableCellRendererComponent(_table, _value, _isSelected, _hasFocus, _row, _col);
+			setHorizontalAlignment(CENTER);
+			setToolTipText(null);
+			if(sudokuTableModel.isShowingLiveValues())
+				return this;
+			if(board.isConflict(_row, _col) && !_isSelected)
+				setBackground(CONFLICT_COLOR);
+			if(board.isValueSet(_row, _col))
+				return this;
+			int forced = forcedBox.isSelected() ? board.getForcedValue(_row, _col) : 0;
+			if(forced != 0) {
+				setText(Integer.toString(forced));
+				setForeground(FORCED_COLOR);
+			}
+			else if(candidatesBox.isSelected()) {
+				String candidates = formatCandidates(board.getCandidates(_row, _col));
+				setText(candidates);
+				setToolTipText(candidates);
+				setForeground(Color.GRAY);
+				setFont(getFont().deriveFont(Font.PLAIN, CANDIDATE_FONT_SIZE));
+			}
+			return this;
 		}
+	}
+	
+	/**
+	 * A snapshot of a running search, published by the worker to the event
+	 * dispatch thread.
+	 */
+	private static class SolveProgress {
+		final int[] values;
+		
+		final long nodeCount;
 		
-		public Class<Integer> getColumnClass(int _col) {
-			return Integer.class;
+		final int depth;
+		
+		final long elapsedNanos;
+		
+		SolveProgress(int[] _values, long _nodeCount, int _depth, long _elapsedNanos) {
+			values = _values;
+			nodeCount = _nodeCount;
+			depth = _depth;
+			elapsedNanos = _elapsedNanos;
+		}
+	}
+	
+	/**
+	 * Solves a copy of the board in the background. While the search runs,
+	 * the worker publishes a snapshot of the board at most once per
+	 * {@link #LIVE_VIEW_INTERVAL_NANOS}; the table shows the snapshots
+	 * instead of the board, and the board is updated only when the solve
+	 * finishes.
+	 */
+	private class SolveWorker extends SwingWorker<SolveResult, SolveProgress> implements SolveProgressListener {
+		private final Sudoku copy;
+		
+		private final CancellationToken token = new CancellationToken();
+		
+		private final SolveStats stats = new SolveStats();
+		
+		private long startNanos;
+		
+		private long lastPublishNanos;
+		
+		protected SolveResult doInBackground() {
+			SolveLimits limits = new SolveLimits();
+			limits.setCancellationToken(token);
+			limits.setProgressListener(this);
+			startNanos = System.nanoTime();
+			lastPublishNanos = startNanos;
+			return copy.solve(limits, stats);
+		}
+		
+		protected void done() {
+			solveWorker = null;
+			SolveResult result;
+			try {
+				result = get();
+			}
+			catch(InterruptedException | ExecutionException e) {
+				sudokuTableModel.setLiveValues(null);
+				setControlsEnabled(true);
+				statusLabel.setText(" ");
+				JOptionPane.showMessageDialog(MainFrame.this, "The solver failed: " + e.getCause(), "Sudoku solver", JOptionPane.ERROR_MESSAGE);
+				return;
+			}
+			if(result == SolveResult.SOLVED) {
+				int size = board.getSize();
+				for(int y = 0; y < size; y++)
+					for(int x = 0; x < size; x++)
+						board.setValue(x, y, copy.getValue(x, y));
+			}
+			sudokuTableModel.setLiveValues(null);
+			sudokuTableModel.refreshCells();
+			setControlsEnabled(true);
+			if(result == SolveResult.SOLVED)
+				statusLabel.setText(String.format("Solved: %d nodes in %.1f ms", stats.getNodeCount(), stats.getElapsedNanos() / 1e6));
+			else if(result == SolveResult.UNSATISFIABLE) {
+				statusLabel.setText(" ");
+				JOptionPane.showMessageDialog(MainFrame.this, "There is no solution to this problem", "Sudoku solver", JOptionPane.ERROR_MESSAGE);
+			}
+			else
+				statusLabel.setText(String.format("Cancelled after %d nodes", stats.getNodeCount()));
+		}
+		
+		protected void process(List<SolveProgress> _chunks) {
+			if(solveWorker != this)
+				return;
+			// Only the latest snapshot is worth showing
+			SolveProgress progress = _chunks.get(_chunks.size() - 1);
+			sudokuTableModel.setLiveValues(progress.values);
+			double seconds = progress.elapsedNanos / 1e9;
+			statusLabel.setText(String.format("Solving: %.0f nodes/s, depth %d", progress.nodeCount / seconds, progress.depth));
+		}
+		
+		public void searchProgress(Sudoku _sudoku, long _nodeCount, int _depth) {
+			long now = System.nanoTime();
+			if(now - lastPublishNanos < LIVE_VIEW_INTERVAL_NANOS)
+				return;
+			lastPublishNanos = now;
+			int size = _sudoku.getSize();
+			int[] values = new int[size * size];
+			for(int y = 0; y < size; y++)
+				for(int x = 0; x < size; x++)
+					values[x + y * size] = _sudoku.getValue(x, y);
+			publish(new SolveProgress(values, _nodeCount, _depth, now - startNanos));
+		}
+		
+		SolveWorker() {
+			copy = new Sudoku(board.getSquareSize());
+			board.loadTo(copy);
+		}
+	}
+	
+	/**
+	 * The model of the table. The rows of the table are the x coordinates
+	 * of the board, and the columns are the y coordinates. The model fires
+	 * an event for each changed cell, so that only the changed cells are
+	 * repainted.
+	 * <p>
+	 * An edit may change the conflicts, the candidates and the forced values
+	 * of other cells too, so after each edit the model compares the shown
+	 * state of every cell with the state it last reported. This takes tens of
+	 * microseconds even on the larger boards.
+	 */
+	private class SudokuTableModel extends AbstractTableModel {
+		static final long serialVersionUID = 0;
+		/**
+		 * The values shown while a solve is running, indexed by
+		 * <code>x + y * size</code>, or <code>null</code> if the table
+		 * shows the board.
+		 */
+		private int[] liveValues;
+		/**
+		 * The candidates of each cell as last reported, or zero if they are
+		 * not shown.
+		 */
+		private final long[] shownCandidates;
+		/**
+		 * The value, the forced value and the conflict flag of each cell as
+		 * last reported; see {@link #getCellMark(int, int)}.
+		 */
+		private final int[] shownMarks;
+		
+		public Class<String> getColumnClass(int _col) {
+			return String.class;
+		}
+		
+		/**
+		 * Encodes the value, the shown forced value and the conflict flag of
+		 * a cell to a single number.
+		 */
+		private int getCellMark(int x, int y) {
+			int size = board.getSize();
+			int forced = forcedBox.isSelected() ? board.getForcedValue(x, y) : 0;
+			int mark = board.getValue(x, y) * (size + 1) + forced;
+			return 2 * mark + (board.isConflict(x, y) ? 1 : 0);
 		}
 		
 		public int getColumnCount() {
-			return Sudoku.GAME_SIZE;
+			return board.getSize();
 		}
 		
 		public String getColumnName(int _col) {
@@ -48,111 +235,324 @@ public class MainFrame extends JFrame {
 		}
 		
 		public int getRowCount() {
-			return Sudoku.GAME_SIZE;
+			return board.getSize();
+		}
+		
+		private int getShownValue(int _row, int _col) {
+			if(liveValues != null)
+				return liveValues[_row + _col * board.getSize()];
+			return board.getValue(_row, _col);
 		}
 		
 		public Object getValueAt(int _row, int _col) {
-			if(sudoku.isValueSet(_row, _col))
-				return sudoku.getValue(_row, _col);
-			return null;
+			int value = getShownValue(_row, _col);
+			return value != 0 ? Integer.toString(value) : null;
 		}
 		
 		public boolean isCellEditable(int _row, int _col) {
-			return true;
+			return liveValues == null;
+		}
+		
+		/**
+		 * Checks if the table shows the board of a running solve.
+		 *
+		 * @return <code>true</code> if a solve is running; otherwise,
+		 * 			<code>false</code>.
+		 */
+		boolean isShowingLiveValues() {
+			return liveValues != null;
 		}
 		
-		public void removeTableModelListener(TableModelListener _listener) {
-			
+		/**
+		 * Fires an event for each cell, whose conflict flag, forced value or
+		 * shown candidates changed since the last call.
+		 */
+		void refreshCells() {
+			int size = board.getSize();
+			boolean show_candidates = candidatesBox.isSelected();
+			for(int y = 0; y < size; y++)
+				for(int x = 0; x < size; x++) {
+					int cell = x + y * size;
+					long candidates = show_candidates ? board.getCandidates(x, y) : 0;
+					int mark = getCellMark(x, y);
+					if(candidates != shownCandidates[cell] || mark != shownMarks[cell]) {
+						shownCandidates[cell] = candidates;
+						shownMarks[cell] = mark;
+						fireTableCellUpdated(x, y);
+					}
+				}
+		}
+		
+		/**
+		 * Switches the table to the given values, or back to the puzzle,
+		 * and fires an event for each cell whose shown value changed.
+		 *
+		 * @param _values the values to show, indexed by
+		 * 			<code>x + y * size</code>, or <code>null</code> to show
+		 * 			the puzzle.
+		 */
+		void setLiveValues(int[] _values) {
+			int size = board.getSize();
+			int[] previous = liveValues;
+			liveValues = _values;
+			for(int y = 0; y < size; y++)
+				for(int x = 0; x < size; x++) {
+					int old_value = previous != null ? previous[x + y * size] : board.getValue(x, y);
+					if(old_value != getShownValue(x, y))
+						fireTableCellUpdated(x, y);
+				}
 		}
 		
 		public void setValueAt(Object _value, int _row, int _col) {
-			if(_value == null)
-				sudoku.clearValue(_row, _col);
+			String text = _value == null ? "" : _value.toString().trim();
+			// Accept both numbers and letters, e.g. "12" or "C" for 12
+			int value = text.length() == 0 ? 0 : Sudoku.parseValue(text);
+			if(value < 0)
+				value = Sudoku.parseValue(text.toUpperCase());
+			if(value == 0)
+				board.clearValue(_row, _col);
 			else {
-				int value = ((Integer)_value).intValue();
-				if((0 >= value) || (Sudoku.GAME_SIZE < value)) {
-					JOptionPane.showMessageDialog(MainFrame.this, "The value is outside the bounds 1 - " + Sudoku.GAME_SIZE,
+				if((0 > value) || (board.getSize() < value)) {
+					JOptionPane.showMessageDialog(MainFrame.this, "The value is outside the bounds 1 - " + board.getSize(),
 												"Sudoku solver", JOptionPane.ERROR_MESSAGE);
 					return;
 				}
-				sudoku.setValue(_row, _col, value);
+				board.setValue(_row, _col, value);
 			}
+			refreshCells();
+		}
+		
+		SudokuTableModel() {
+			int cell_count = board.getSize() * board.getSize();
+			shownCandidates = new long[cell_count];
+			shownMarks = new int[cell_count];
 		}
 	}
 	
-	private Sudoku sudoku;
+	/**
+	 * The board sizes offered in the GUI, given by the size of an edge
+	 * of a square group.
+	 */
+	private static final int[] SQUARE_SIZES = { 2, 3, 4, 5 };
+	/**
+	 * The minimal time between two updates of the board while a solve is
+	 * running.
+	 */
+	private static final long LIVE_VIEW_INTERVAL_NANOS = 100000000L;
+	/**
+	 * The background of the conflicting cells.
+	 */
+	private static final Color CONFLICT_COLOR = new Color(255, 190, 190);
+	/**
+	 * The color of the forced values.
+	 */
+	private static final Color FORCED_COLOR = new Color(0, 140, 0);
+	
+	private static final float CANDIDATE_FONT_SIZE = 9;
+	
+	private InteractiveBoard board;
+	
+	private JButton cancelButton;
+	
+	private JCheckBox candidatesBox;
+	
+	private JButton clearButton;
+	
+	private JCheckBox forcedBox;
+	
+	private JComboBox<String> sizeBox;
+	
+	private JButton solveButton;
+	
+	private SolveWorker solveWorker;
+	
+	private JLabel statusLabel;
 	
 	private JTable sudokuTable;
 	
-	private TableModel sudokuTableModel;
+	private SudokuTableModel sudokuTableModel;
 	
 	private void initializeControls() {
 		setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 		setMinimumSize(new Dimension(300, 300));
 		setMaximumSize(new Dimension(300, 300));
 		
+		ActionListener option_listener = new ActionListener() {
+											public void actionPerformed(ActionEvent _action) {
+												setColumnWidths();
+												sudokuTableModel.refreshCells();
+												pack();
+											}
+		};
+		candidatesBox = new JCheckBox("Candidates");
+		candidatesBox.addActionListener(option_listener);
+		forcedBox = new JCheckBox("Forced cells");
+		forcedBox.addActionListener(option_listener);
+		
 		// tabulka pro zadavani dat
 		sudokuTableModel = new SudokuTableModel();
 		sudokuTable = new JTable(sudokuTableModel);
-		for(int i = 0; i < sudokuTable.getColumnCount(); i++)
-			sudokuTable.getColumnModel().getColumn(i).setPreferredWidth(30);
+		sudokuTable.setDefaultRenderer(String.class, new SudokuCellRenderer());
+		setColumnWidths();
 		
 		JPanel button_pane = new JPanel();
 		button_pane.setLayout(new BoxLayout(button_pane, BoxLayout.X_AXIS));
 		button_pane.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
 		
-		JButton solve_button = new JButton("Solve");
-		solve_button.setActionCommand("solve");
-		solve_button.addActionListener(new ActionListener() {
+		String[] size_names = new String[SQUARE_SIZES.length];
+		for(int i = 0; i < SQUARE_SIZES.length; i++) {
+			int size = SQUARE_SIZES[i] * SQUARE_SIZES[i];
+			size_names[i] = size + "x" + size;
+		}
+		sizeBox = new JComboBox<String>(size_names);
+		for(int i = 0; i < SQUARE_SIZES.length; i++)
+			if(SQUARE_SIZES[i] == board.getSquareSize())
+				sizeBox.setSelectedIndex(i);
+		sizeBox.addActionListener(new ActionListener() {
+											public void actionPerformed(ActionEvent _action) {
+												resizeSudoku(SQUARE_SIZES[sizeBox.getSelectedIndex()]);
+											}
+		});
+		button_pane.add(sizeBox);
+		button_pane.add(Box.createRigidArea(new Dimension(10, 0)));
+		
+		solveButton = new JButton("Solve");
+		solveButton.setActionCommand("solve");
+		solveButton.addActionListener(new ActionListener() {
 											public void actionPerformed(ActionEvent _action) {
 												if(_action.getActionCommand().equals("solve")) {
 													solveSudoku();
 												}
 											}
 		});
-		button_pane.add(solve_button);
+		button_pane.add(solveButton);
 		button_pane.add(Box.createRigidArea(new Dimension(10, 0)));
 		
-		JButton clear_button = new JButton("Clear");
-		clear_button.setActionCommand("clear");
-		clear_button.addActionListener(new ActionListener() {
+		cancelButton = new JButton("Cancel");
+		cancelButton.setActionCommand("cancel");
+		cancelButton.setEnabled(false);
+		cancelButton.addActionListener(new ActionListener() {
+											public void actionPerformed(ActionEvent _action) {
+												if(_action.getActionCommand().equals("cancel")) {
+													cancelSolve();
+												}
+											}
+		});
+		button_pane.add(cancelButton);
+		button_pane.add(Box.createRigidArea(new Dimension(10, 0)));
+		
+		clearButton = new JButton("Clear");
+		clearButton.setActionCommand("clear");
+		clearButton.addActionListener(new ActionListener() {
 											public void actionPerformed(ActionEvent _action) {
 												if(_action.getActionCommand().equals("clear")) {
 													clearSudoku();
 												}
 											}
 		});
-		button_pane.add(clear_button);
+		button_pane.add(clearButton);
+		
+		JPanel option_pane = new JPanel();
+		option_pane.setLayout(new BoxLayout(option_pane, BoxLayout.X_AXIS));
+		option_pane.setBorder(BorderFactory.createEmptyBorder(0, 10, 10, 10));
+		option_pane.add(candidatesBox);
+		option_pane.add(Box.createRigidArea(new Dimension(10, 0)));
+		option_pane.add(forcedBox);
+		
+		statusLabel = new JLabel(" ");
+		statusLabel.setBorder(BorderFactory.createEmptyBorder(0, 10, 10, 10));
+		statusLabel.setAlignmentX(CENTER_ALIGNMENT);
 		
 		getContentPane().setLayout(new BoxLayout(getContentPane(), BoxLayout.Y_AXIS));
 		getContentPane().add(sudokuTable);
 		getContentPane().add(button_pane);
+		getContentPane().add(option_pane);
+		getContentPane().add(statusLabel);
 		pack();
 	}
 	
+	private void cancelSolve() {
+		if(solveWorker != null)
+			solveWorker.token.cancel();
+	}
+	
 	private void clearSudoku() {
+		if(sudokuTable.isEditing() || solveWorker != null)
+			return;
+		board.clear();
+		sudokuTableModel.refreshCells();
+		statusLabel.setText(" ");
+	}
+	
+	/**
+	 * Formats the candidates of a cell: the digits without separators on
+	 * the standard board, numbers separated by spaces on the larger ones.
+	 */
+	private String formatCandidates(long _candidates) {
+		StringBuilder builder = new StringBuilder();
+		for(long rest = _candidates; rest != 0; rest &= rest - 1) {
+			if(board.getSize() > 9 && builder.length() > 0)
+				builder.append(' ');
+			builder.append(Long.numberOfTrailingZeros(rest) + 1);
+		}
+		return builder.toString();
+	}
+	
+	private void resizeSudoku(int _squareSize) {
 		if(sudokuTable.isEditing())
+			sudokuTable.getCellEditor().cancelCellEditing();
+		if(_squareSize == board.getSquareSize())
 			return;
-		for(int x = 0; x < Sudoku.GAME_SIZE; x++)
-			for(int y = 0; y < Sudoku.GAME_SIZE; y++) {
-				sudoku.clearValue(x, y);
-			}
-		sudokuTable.updateUI();
+		board = new InteractiveBoard(_squareSize);
+		sudokuTableModel = new SudokuTableModel();
+		sudokuTable.setModel(sudokuTableModel);
+		sudokuTableModel.refreshCells();
+		setColumnWidths();
+		pack();
+	}
+	
+	/**
+	 * Enables the controls that change the puzzle, and disables the cancel
+	 * button, or the other way round while a solve is running.
+	 */
+	private void setControlsEnabled(boolean _enabled) {
+		solveButton.setEnabled(_enabled);
+		clearButton.setEnabled(_enabled);
+		sizeBox.setEnabled(_enabled);
+		cancelButton.setEnabled(!_enabled);
+	}
+	
+	private void setColumnWidths() {
+		// The candidates of the standard board fit to a wider column; the
+		// longer lists are available as tool tips
+		int width = candidatesBox.isSelected() ? 60 : 30;
+		for(int i = 0; i < sudokuTable.getColumnCount(); i++)
+			sudokuTable.getColumnModel().getColumn(i).setPreferredWidth(width);
 	}
 	
 	private void solveSudoku() {
-		if(sudokuTable.isEditing())
+		if(sudokuTable.isEditing() || solveWorker != null)
+			return;
+		if(board.hasConflicts()) {
+			JOptionPane.showMessageDialog(this, "The puzzle contains conflicting values", "Sudoku solver", JOptionPane.ERROR_MESSAGE);
 			return;
-		if(!sudoku.solve()) {
-			JOptionPane.showMessageDialog(this, "There is no solution to this problem", "Sudoku solver", JOptionPane.ERROR_MESSAGE);
 		}
-		sudokuTable.updateUI();
+		int size = board.getSize();
+		int[] values = new int[size * size];
+		for(int y = 0; y < size; y++)
+			for(int x = 0; x < size; x++)
+				values[x + y * size] = board.getValue(x, y);
+		sudokuTableModel.setLiveValues(values);
+		setControlsEnabled(false);
+		statusLabel.setText("Solving...");
+		solveWorker = new SolveWorker();
+		solveWorker.execute();
 	}
 	
 	public MainFrame() {
 		super("Sudoku Solver");
 		
-		sudoku = new Sudoku();
+		board = new InteractiveBoard(Sudoku.GAME_SQUARE_SIZE);
 		initializeControls();
 	}
 	
@@ -0,0 +1,231 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku.service;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Generates load for a {@link SolverService}: opens a number of
+ * connections, each sending puzzles of a corpus one after another and
+ * waiting for each answer, and reports the throughput and the percentiles
+ * of the latency of the answers.
+ * <p>
+ * Usage: <code>SolverClient [-host name] [-port n] [-connections n]
+ * [-requests n] path</code>, where <code>-requests</code> is the number of
+ * requests sent by each connection, and <code>path</code> is a text file
+ * with a puzzle per line.
+ *
+ * @author Ondrej Sykora
+ */
+public class SolverClient {
+	/**
+	 * The results of a single connection.
+	 */
+	private static class Results {
+		/**
+		 * The latencies of the answers in nanoseconds.
+		 */
+		final long[] latencies;
+
+		int count;
+
+		int solvedCount;
+
+		int unsolvableCount;
+
+		int invalidCount;
+
+		int busyCount;
+
+		IOException failure;
+
+		Results(int _requestCount) {
+			latencies = new long[_requestCount];
+		}
+	}
+
+	private static long percentile(long[] _sorted, double _fraction) {
+		if(_sorted.length == 0)
+			return 0;
+		int index = (int)Math.ceil(_fraction * _sorted.length) - 1;
+		return _sorted[Math.max(0, Math.min(_sorted.length - 1, index))];
+	}
+
+	private static void printUsage() {
+		System.err.println("Usage: SolverClient [-host name] [-port n] [-connections n] [-requests n] path");
+	}
+
+	/**
+	 * Sends the requests of a single connection.
+	 */
+	private static void run(String _host, int _port, List<String> _puzzles, int _first, CountDownLatch _start,
+			Results _results) {
+		try(Socket socket = new Socket(_host, _port)) {
+			socket.setTcpNoDelay(true);
+			OutputStream output = new BufferedOutputStream(socket.getOutputStream());
+			BufferedReader input = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+			_start.countDown();
+			_start.await();
+			for(int i = 0; i < _results.latencies.length; i++) {
+				String puzzle = _puzzles.get((_first + i) % _puzzles.size());
+				long start = System.nanoTime();
+				output.write(puzzle.getBytes(StandardCharsets.US_ASCII));
+				output.write('\n');
+				output.flush();
+				String answer = input.readLine();
+				if(answer == null)
+					throw new EOFException("The service closed the connection");
+				_results.latencies[_results.count++] = System.nanoTime() - start;
+				if(answer.startsWith("SOLVED"))
+					_results.solvedCount++;
+				else if(answer.startsWith("UNSOLVABLE"))
+					_results.unsolvableCount++;
+				else if(answer.startsWith("BUSY"))
+					_results.busyCount++;
+				else
+					_results.invalidCount++;
+			}
+		}
+		catch(IOException e) {
+			_results.failure = e;
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			// Does not block the other connections, if this one failed
+			while(_start.getCount() > 0)
+				_start.countDown();
+		}
+	}
+
+	/**
+	 * Runs the load test.
+	 *
+	 * @param _args the command-line arguments.
+	 */
+	public static void main(String[] _args) {
+		String host = InetAddress.getLoopbackAddress().getHostAddress();
+		int port = SolverService.DEFAULT_PORT;
+		int connection_count = 16;
+		int request_count = 1000;
+		String path_name = null;
+		try {
+			for(int i = 0; i < _args.length; i++) {
+				String arg = _args[i];
+				if(arg.equals("-host"))
+					host = _args[++i];
+				else if(arg.equals("-port"))
+					port = Integer.parseInt(_args[++i]);
+				else if(arg.equals("-connections"))
+					connection_count = Integer.parseInt(_args[++i]);
+				else if(arg.equals("-requests"))
+					request_count = Integer.parseInt(_args[++i]);
+				else if(path_name == null)
+					path_name = arg;
+				else
+					throw new IllegalArgumentException("Unexpected argument: " + arg);
+			}
+			if(path_name == null)
+				throw new IllegalArgumentException("Missing the path of the puzzles");
+			if(connection_count < 1 || request_count < 1)
+				throw new IllegalArgumentException("The numbers of connections and requests must be positive");
+		}
+		catch(RuntimeException e) {
+			System.err.println(e.getMessage());
+			printUsage();
+			System.exit(2);
+		}
+
+		List<String> puzzles = new ArrayList<String>();
+		try {
+			for(String line : Files.readAllLines(Paths.get(path_name), StandardCharsets.US_ASCII))
+				if(!line.trim().isEmpty())
+					puzzles.add(line.trim());
+		}
+		catch(IOException e) {
+			System.err.println("I/O error: " + e.getMessage());
+			System.exit(1);
+		}
+		if(puzzles.isEmpty()) {
+			System.err.println("The file has no puzzles");
+			System.exit(1);
+		}
+
+		final String service_host = host;
+		final int service_port = port;
+		final List<String> service_puzzles = puzzles;
+		final CountDownLatch start = new CountDownLatch(connection_count);
+		final Results[] results = new Results[connection_count];
+		Thread[] threads = new Thread[connection_count];
+		for(int i = 0; i < connection_count; i++) {
+			final int first = i * request_count;
+			final Results connection_results = results[i] = new Results(request_count);
+			threads[i] = new Thread(null, new Runnable() {
+				public void run() {
+					SolverClient.run(service_host, service_port, service_puzzles, first, start, connection_results);
+				}
+			}, "solver-client-" + i, 128 * 1024);
+			threads[i].start();
+		}
+		long start_time = 0;
+		try {
+			start.await();
+			start_time = System.nanoTime();
+			for(Thread thread : threads)
+				thread.join();
+		}
+		catch(InterruptedException e) {
+			return;
+		}
+		long elapsed = System.nanoTime() - start_time;
+
+		int total = 0;
+		int solved = 0;
+		int unsolvable = 0;
+		int invalid = 0;
+		int busy = 0;
+		int failed = 0;
+		for(Results r : results) {
+			total += r.count;
+			solved += r.solvedCount;
+			unsolvable += r.unsolvableCount;
+			invalid += r.invalidCount;
+			busy += r.busyCount;
+			if(r.failure != null)
+				failed++;
+		}
+		long[] latencies = new long[total];
+		int position = 0;
+		for(Results r : results) {
+			System.arraycopy(r.latencies, 0, latencies, position, r.count);
+			position += r.count;
+		}
+		Arrays.sort(latencies);
+		System.err.printf("%d connections (%d failed), %d answers in %.3f s (%.0f answers/s)%n", connection_count, failed,
+				total, elapsed / 1e9, total / (elapsed / 1e9));
+		System.err.printf("%d solved, %d unsolvable, %d invalid, %d busy%n", solved, unsolvable, invalid, busy);
+		System.err.printf("Latency: p50 %.0f us, p99 %.0f us, p99.9 %.0f us, max %.0f us%n",
+				percentile(latencies, 0.5) / 1e3, percentile(latencies, 0.99) / 1e3,
+				percentile(latencies, 0.999) / 1e3, percentile(latencies, 1.0) / 1e3);
+	}
+}
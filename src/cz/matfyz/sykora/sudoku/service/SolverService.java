@@ -0,0 +1,635 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku.service;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+import cz.matfyz.sykora.sudoku.*;
+import cz.matfyz.sykora.sudoku.batch.LockstepSolver;
+import cz.matfyz.sykora.sudoku.corpus.PuzzleParser;
+
+/**
+ * An embeddable service that solves puzzles sent over a local TCP socket.
+ * <p>
+ * The protocol is line based: the client sends a puzzle per line, in the
+ * format of {@link Sudoku#loadGameState(String)} (see
+ * {@link PuzzleParser}), and the service answers each line with one of
+ * <ul>
+ * <li><code>SOLVED solution micros batch</code>, with the solution in the
+ * one-character-per-cell format (numbers separated by spaces for boards
+ * with more than 35 values), the time spent solving the batch of the puzzle
+ * in microseconds, and the number of puzzles in the batch,
+ * <li><code>UNSOLVABLE micros batch</code>, if the puzzle has no solution,
+ * <li><code>INVALID</code>, if the line is not a puzzle of the size of the
+ * service,
+ * <li><code>BUSY</code>, if the queue of the service is full,
+ * <li><code>FAILED</code>, if the service was closed before the puzzle was
+ * solved, or if solving its batch failed.
+ * </ul>
+ * The answers are sent in the order of the requests of the connection.
+ * <p>
+ * Each connection is served by its own thread, which parses the requests
+ * and waits for their results, so a client has at most one request in
+ * the queue; this limits the load a client can put on the service. The
+ * requests of all connections share a bounded queue, and a request that
+ * does not fit is rejected immediately, so that an overloaded service
+ * answers quickly instead of letting the latency grow. A fixed pool of
+ * worker threads, one per processor by default, takes the queued requests
+ * in micro-batches: a worker takes all requests waiting in the queue, up
+ * to the size of a batch, and solves them together with
+ * a {@link LockstepSolver}, which propagates the singles of the whole batch
+ * at once. A batch of a single request, and the boards larger than
+ * supported by the lockstep solver, are solved one by one by a scalar
+ * {@link Sudoku}, which needs no copying to and from the lanes.
+ * <p>
+ * Usage: <code>SolverService [-port n] [-size n] [-workers n] [-batch n]
+ * [-queue n] [-connections n]</code>, where <code>-size</code> is the size
+ * of an edge of a square group.
+ *
+ * @author Ondrej Sykora
+ */
+public class SolverService implements Closeable {
+	/**
+	 * The default port of the service.
+	 */
+	public static final int DEFAULT_PORT = 7419;
+	/**
+	 * The default maximal number of puzzles in a batch.
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 64;
+	/**
+	 * The default maximal number of queued requests.
+	 */
+	public static final int DEFAULT_QUEUE_LIMIT = 4096;
+	/**
+	 * The default maximal number of open connections.
+	 */
+	public static final int DEFAULT_CONNECTION_LIMIT = 10000;
+	/**
+	 * The size of the stack of the connection threads. The threads only
+	 * parse and format lines, so a small stack lets the service keep
+	 * thousands of connections open.
+	 */
+	private static final long CONNECTION_STACK_SIZE = 128 * 1024;
+
+	private static final byte[] SOLVED = "SOLVED ".getBytes(StandardCharsets.US_ASCII);
+
+	private static final byte[] UNSOLVABLE = "UNSOLVABLE ".getBytes(StandardCharsets.US_ASCII);
+
+	private static final byte[] INVALID = "INVALID\n".getBytes(StandardCharsets.US_ASCII);
+
+	private static final byte[] BUSY = "BUSY\n".getBytes(StandardCharsets.US_ASCII);
+
+	private static final byte[] FAILED = "FAILED\n".getBytes(StandardCharsets.US_ASCII);
+	/**
+	 * Stops a worker when it is taken from the queue.
+	 */
+	private static final Request STOP = new Request(0);
+
+	/**
+	 * A request of a connection. Each connection reuses a single request.
+	 */
+	private static class Request {
+		/**
+		 * The values of the cells of the puzzle; replaced by the solution.
+		 */
+		final int[] values;
+		/**
+		 * Released by the worker, when the request is solved.
+		 */
+		final Semaphore done = new Semaphore(0);
+		/**
+		 * Set if the request was not solved, because the service was closed
+		 * or its batch failed.
+		 */
+		boolean failed;
+
+		boolean solved;
+
+		long solveNanos;
+
+		int batchSize;
+
+		Request(int _cellCount) {
+			values = new int[_cellCount];
+		}
+
+		/**
+		 * Releases the waiting connection without a result.
+		 */
+		void fail() {
+			failed = true;
+			done.release();
+		}
+	}
+
+	/**
+	 * Serves a single connection.
+	 */
+	private class Connection implements Runnable {
+		private final Socket socket;
+
+		private final Request request = new Request(cellCount);
+		/**
+		 * The current line; longer lines are invalid.
+		 */
+		private final byte[] line = new byte[4 * cellCount + 16];
+
+		Connection(Socket _socket) {
+			socket = _socket;
+		}
+
+		public void run() {
+			try(Socket s = socket) {
+				s.setTcpNoDelay(true);
+				InputStream input = new BufferedInputStream(s.getInputStream());
+				OutputStream output = new BufferedOutputStream(s.getOutputStream());
+				while(true) {
+					int length = readLine(input);
+					if(length < 0)
+						break;
+					if(length > line.length || !PuzzleParser.parse(line, 0, length, size, request.values))
+						output.write(INVALID);
+					else if(closed || !queue.offer(request)) {
+						rejectedCount.increment();
+						output.write(BUSY);
+					}
+					else {
+						// close() may have stopped the workers and drained the
+						// queue after the check above; otherwise a worker or
+						// close() releases the request
+						if(closed && queue.remove(request)) {
+							failedCount.increment();
+							request.fail();
+						}
+						request.done.acquireUninterruptibly();
+						writeResult(output);
+					}
+					// Answers the pipelined requests together
+					if(input.available() == 0)
+						output.flush();
+				}
+				output.flush();
+			}
+			catch(IOException e) {
+				// The client closed the connection, or the service is closing
+			}
+			finally {
+				connections.remove(socket);
+			}
+		}
+
+		/**
+		 * Reads the next line to {@link #line}.
+		 *
+		 * @return the length of the line without the line break, more than
+		 * 			the size of the buffer if the line is too long, or
+		 * 			<code>-1</code> at the end of the input.
+		 */
+		private int readLine(InputStream _input) throws IOException {
+			int length = 0;
+			while(true) {
+				int c = _input.read();
+				if(c < 0)
+					return length > 0 ? length : -1;
+				if(c == '\n')
+					return length;
+				if(length < line.length)
+					line[length] = (byte)c;
+				length++;
+			}
+		}
+
+		private void writeResult(OutputStream _output) throws IOException {
+			if(request.failed) {
+				_output.write(FAILED);
+				return;
+			}
+			if(request.solved) {
+				_output.write(SOLVED);
+				int[] values = request.values;
+				for(int cell = 0; cell < values.length; cell++) {
+					if(size <= 35)
+						_output.write(Sudoku.formatValue(values[cell]));
+					else {
+						if(cell > 0)
+							_output.write(' ');
+						_output.write(Integer.toString(values[cell]).getBytes(StandardCharsets.US_ASCII));
+					}
+				}
+				_output.write(' ');
+			}
+			else
+				_output.write(UNSOLVABLE);
+			String statistics = (request.solveNanos / 1000) + " " + request.batchSize + "\n";
+			_output.write(statistics.getBytes(StandardCharsets.US_ASCII));
+		}
+	}
+
+	/**
+	 * Solves the queued requests in batches.
+	 */
+	private class Worker implements Runnable {
+		private final List<Request> batch = new ArrayList<Request>(batchSize);
+		/**
+		 * The lockstep solver, or <code>null</code> if the board is too
+		 * large for it.
+		 */
+		private final LockstepSolver lockstep;
+		/**
+		 * The solver of the single requests and of the large boards.
+		 */
+		private final Sudoku sudoku;
+
+		private final int[] puzzles;
+
+		private final int[] solutions;
+
+		private final boolean[] solved;
+
+		Worker() {
+			if(squareSize <= LockstepSolver.MAX_SQUARE_SIZE)
+				lockstep = LockstepSolver.create(squareSize, batchSize);
+			else
+				lockstep = null;
+			sudoku = new Sudoku(squareSize);
+			puzzles = new int[batchSize * cellCount];
+			solutions = new int[batchSize * cellCount];
+			solved = new boolean[batchSize];
+		}
+
+		public void run() {
+			while(true) {
+				Request first;
+				try {
+					first = queue.take();
+				}
+				catch(InterruptedException e) {
+					return;
+				}
+				batch.add(first);
+				queue.drainTo(batch, batchSize - 1);
+				boolean stop = batch.remove(STOP);
+				if(!batch.isEmpty()) {
+					boolean complete = false;
+					try {
+						solveBatch();
+						complete = true;
+					}
+					catch(RuntimeException e) {
+						// The worker goes on with the next batch
+						failedCount.add(batch.size());
+					}
+					finally {
+						// No connection may wait forever
+						for(Request request : batch)
+							if(complete)
+								request.done.release();
+							else
+								request.fail();
+					}
+				}
+				batch.clear();
+				if(stop) {
+					// Puts the marker back for the other workers
+					try {
+						queue.put(STOP);
+					}
+					catch(InterruptedException e) {
+						// Stops anyway
+					}
+					return;
+				}
+			}
+		}
+
+		private void solveBatch() {
+			int count = batch.size();
+			long start = System.nanoTime();
+			if(lockstep != null && count > 1) {
+				for(int i = 0; i < count; i++)
+					System.arraycopy(batch.get(i).values, 0, puzzles, i * cellCount, cellCount);
+				lockstep.solve(puzzles, count, solutions, solved);
+				for(int i = 0; i < count; i++)
+					if(solved[i])
+						System.arraycopy(solutions, i * cellCount, batch.get(i).values, 0, cellCount);
+			}
+			else {
+				for(int i = 0; i < count; i++) {
+					int[] values = batch.get(i).values;
+					sudoku.reset();
+					for(int cell = 0; cell < cellCount; cell++)
+						if(values[cell] != 0)
+							sudoku.setValue(cell % size, cell / size, values[cell]);
+					solved[i] = sudoku.solve();
+					if(solved[i])
+						for(int cell = 0; cell < cellCount; cell++)
+							values[cell] = sudoku.getValue(cell % size, cell / size);
+				}
+			}
+			long solve_nanos = System.nanoTime() - start;
+			batchCount.increment();
+			for(int i = 0; i < count; i++) {
+				Request request = batch.get(i);
+				request.solved = solved[i];
+				request.solveNanos = solve_nanos;
+				request.batchSize = count;
+				request.failed = false;
+				solvedCount.increment();
+			}
+		}
+	}
+
+	private final int squareSize;
+
+	private final int size;
+
+	private final int cellCount;
+
+	private final int batchSize;
+
+	private final int connectionLimit;
+
+	private final ServerSocket serverSocket;
+
+	private final BlockingQueue<Request> queue;
+
+	private final Thread[] workers;
+
+	private final Thread acceptor;
+	/**
+	 * The sockets of the open connections.
+	 */
+	private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+
+	private final LongAdder connectionCount = new LongAdder();
+
+	private final LongAdder solvedCount = new LongAdder();
+
+	private final LongAdder batchCount = new LongAdder();
+
+	private final LongAdder rejectedCount = new LongAdder();
+
+	private final LongAdder failedCount = new LongAdder();
+
+	private volatile boolean closed;
+
+	private void accept() {
+		while(!closed) {
+			Socket socket;
+			try {
+				socket = serverSocket.accept();
+			}
+			catch(IOException e) {
+				// The server socket was closed
+				return;
+			}
+			if(connections.size() >= connectionLimit) {
+				rejectedCount.increment();
+				try(Socket s = socket) {
+					s.getOutputStream().write(BUSY);
+				}
+				catch(IOException e) {
+					// The connection is closed anyway
+				}
+				continue;
+			}
+			connections.add(socket);
+			connectionCount.increment();
+			Thread thread = new Thread(null, new Connection(socket), "solver-connection", CONNECTION_STACK_SIZE);
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Stops the service: closes the server socket and all connections, and
+	 * stops the workers after they solve the queued requests. The requests
+	 * left in the queue after the workers stopped are answered as failed.
+	 *
+	 * @throws IOException if the server socket can't be closed.
+	 */
+	public void close() throws IOException {
+		if(closed)
+			return;
+		closed = true;
+		try {
+			serverSocket.close();
+		}
+		finally {
+			for(Socket socket : connections)
+				try {
+					socket.close();
+				}
+				catch(IOException e) {
+					// Closes the other connections
+				}
+			try {
+				queue.put(STOP);
+				for(Thread worker : workers)
+					worker.join();
+				acceptor.join();
+			}
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			finally {
+				failQueued();
+			}
+		}
+	}
+
+	/**
+	 * Releases the requests left in the queue as failed.
+	 */
+	private void failQueued() {
+		List<Request> requests = new ArrayList<Request>();
+		queue.drainTo(requests);
+		for(Request request : requests)
+			if(request != STOP) {
+				failedCount.increment();
+				request.fail();
+			}
+	}
+
+	/**
+	 * Returns the number of batches solved by the workers.
+	 *
+	 * @return the number of batches.
+	 */
+	public long getBatchCount() {
+		return batchCount.sum();
+	}
+
+	/**
+	 * Returns the number of accepted connections.
+	 *
+	 * @return the number of connections.
+	 */
+	public long getConnectionCount() {
+		return connectionCount.sum();
+	}
+
+	/**
+	 * Returns the number of requests answered as failed, because the
+	 * service was closed before they were solved, or because solving their
+	 * batch failed.
+	 *
+	 * @return the number of failed requests.
+	 */
+	public long getFailedCount() {
+		return failedCount.sum();
+	}
+
+	/**
+	 * Returns the local port of the service.
+	 *
+	 * @return the port.
+	 */
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Returns the number of requests and connections rejected because the
+	 * queue or the connection limit was full.
+	 *
+	 * @return the number of rejections.
+	 */
+	public long getRejectedCount() {
+		return rejectedCount.sum();
+	}
+
+	/**
+	 * Returns the number of requests solved so far, including the ones
+	 * found unsolvable.
+	 *
+	 * @return the number of solved requests.
+	 */
+	public long getSolvedCount() {
+		return solvedCount.sum();
+	}
+
+	private static void printUsage() {
+		System.err.println("Usage: SolverService [-port n] [-size square-size] [-workers n] [-batch n] [-queue n] [-connections n]");
+	}
+
+	/**
+	 * Runs the service until the process is stopped, and reports its
+	 * counters every ten seconds.
+	 *
+	 * @param _args the command-line arguments.
+	 */
+	public static void main(String[] _args) {
+		int port = DEFAULT_PORT;
+		int square_size = Sudoku.GAME_SQUARE_SIZE;
+		int worker_count = Runtime.getRuntime().availableProcessors();
+		int batch_size = DEFAULT_BATCH_SIZE;
+		int queue_limit = DEFAULT_QUEUE_LIMIT;
+		int connection_limit = DEFAULT_CONNECTION_LIMIT;
+		try {
+			for(int i = 0; i < _args.length; i++) {
+				String arg = _args[i];
+				if(arg.equals("-port"))
+					port = Integer.parseInt(_args[++i]);
+				else if(arg.equals("-size"))
+					square_size = Integer.parseInt(_args[++i]);
+				else if(arg.equals("-workers"))
+					worker_count = Integer.parseInt(_args[++i]);
+				else if(arg.equals("-batch"))
+					batch_size = Integer.parseInt(_args[++i]);
+				else if(arg.equals("-queue"))
+					queue_limit = Integer.parseInt(_args[++i]);
+				else if(arg.equals("-connections"))
+					connection_limit = Integer.parseInt(_args[++i]);
+				else
+					throw new IllegalArgumentException("Unexpected argument: " + arg);
+			}
+		}
+		catch(RuntimeException e) {
+			System.err.println(e.getMessage());
+			printUsage();
+			System.exit(2);
+		}
+
+		try {
+			SolverService service = new SolverService(port, square_size, worker_count, batch_size, queue_limit, connection_limit);
+			System.err.printf("Listening on port %d%n", service.getPort());
+			while(true) {
+				Thread.sleep(10000);
+				System.err.printf("%d connections, %d solved in %d batches, %d rejected, %d failed%n",
+						service.getConnectionCount(), service.getSolvedCount(), service.getBatchCount(),
+						service.getRejectedCount(), service.getFailedCount());
+			}
+		}
+		catch(IOException e) {
+			System.err.println("I/O error: " + e.getMessage());
+			System.exit(1);
+		}
+		catch(InterruptedException e) {
+			// Exits
+		}
+	}
+
+	/**
+	 * Starts a new service on the loopback interface.
+	 *
+	 * @param _port the port of the service, or zero for any free port (see
+	 * 			{@link #getPort()}).
+	 * @param _squareSize the size of an edge of a square group of the
+	 * 			puzzles.
+	 * @param _workerCount the number of worker threads.
+	 * @param _batchSize the maximal number of puzzles solved together.
+	 * @param _queueLimit the maximal number of queued requests; further
+	 * 			requests are rejected.
+	 * @param _connectionLimit the maximal number of open connections;
+	 * 			further connections are rejected.
+	 * @throws IOException if the server socket can't be opened.
+	 */
+	public SolverService(int _port, int _squareSize, int _workerCount, int _batchSize, int _queueLimit, int _connectionLimit)
+			throws IOException {
+		if(_squareSize < Sudoku.MIN_SQUARE_SIZE || _squareSize > Sudoku.MAX_SQUARE_SIZE)
+			throw new IllegalArgumentException("Unsupported square size: " + _squareSize);
+		if(_workerCount < 1 || _batchSize < 1 || _queueLimit < 1 || _connectionLimit < 1)
+			throw new IllegalArgumentException("The numbers of workers, batch size and limits must be positive");
+		squareSize = _squareSize;
+		size = _squareSize * _squareSize;
+		cellCount = size * size;
+		batchSize = _batchSize;
+		connectionLimit = _connectionLimit;
+		queue = new ArrayBlockingQueue<Request>(_queueLimit);
+		serverSocket = new ServerSocket(_port, 1024, InetAddress.getLoopbackAddress());
+		workers = new Thread[_workerCount];
+		for(int i = 0; i < _workerCount; i++) {
+			workers[i] = new Thread(new Worker(), "solver-worker-" + i);
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+		acceptor = new Thread(new Runnable() {
+			public void run() {
+				accept();
+			}
+		}, "solver-acceptor");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+}
@@ -0,0 +1,747 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku.store;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32C;
+
+import cz.matfyz.sykora.sudoku.*;
+import cz.matfyz.sykora.sudoku.corpus.PuzzleCodec;
+
+/**
+ * A persistent store of solved puzzles, which survives the restarts of the
+ * solver. Known puzzles are answered from memory-mapped files, without
+ * parsing or solving.
+ * <p>
+ * The store consists of two files. The data file is a header followed by
+ * an append-only array of fixed-width records; a record holds a checksum,
+ * the status of the puzzle (solved or without a solution), and the clues
+ * and the solution packed by {@link PuzzleCodec}. The index file (the data
+ * file with the suffix <code>.idx</code>) is an open addressing hash table
+ * with linear probing, which maps the packed clues to the number of the
+ * record. The index is derived from the data and rebuilt from it whenever
+ * it does not match.
+ * <p>
+ * Appends are crash-safe: a record is written in full before it is added
+ * to the index, and its checksum is verified when the store is opened, so
+ * a record torn by a crash is ignored together with everything after it.
+ * The records written to the mapped file survive a crash of the process;
+ * {@link #sync()} (called by {@link #close()}) also makes them survive
+ * a crash of the system, and records their number in the header.
+ * <p>
+ * A store is used by a single process, enforced by a lock on the data file.
+ * Within the process, any number of threads may call {@link #lookup} at the
+ * same time as a thread appends records; the readers take no locks, and see
+ * an immutable snapshot of the mapped files and of the number of records.
+ * The appends are serialized.
+ * <p>
+ * Usage: <code>SolutionStore info|compact path</code>, where
+ * <code>compact</code> rewrites the store through {@link #compact(Path)}.
+ *
+ * @author Ondrej Sykora
+ */
+public class SolutionStore implements Closeable {
+	/**
+	 * The mapped files and the number of records visible to the readers.
+	 */
+	private static class State {
+		final MappedByteBuffer data;
+
+		final MappedByteBuffer index;
+
+		final int indexMask;
+
+		final int recordCount;
+
+		State(MappedByteBuffer _data, MappedByteBuffer _index, int _indexMask, int _recordCount) {
+			data = _data;
+			index = _index;
+			indexMask = _indexMask;
+			recordCount = _recordCount;
+		}
+	}
+
+	/**
+	 * The buffers used by a single thread.
+	 */
+	private class Workspace {
+		final byte[] record = new byte[recordSize];
+
+		final ByteBuffer recordBuffer = ByteBuffer.wrap(record);
+
+		final int[] clues = new int[cellCount];
+
+		final int[] solution = new int[cellCount];
+
+		final CRC32C checksum = new CRC32C();
+	}
+
+	/**
+	 * The version of the format of the files.
+	 */
+	public static final int VERSION = 1;
+	/**
+	 * The suffix of the name of the index file.
+	 */
+	public static final String INDEX_SUFFIX = ".idx";
+	/**
+	 * "SUDOKUDB" in ASCII.
+	 */
+	private static final long DATA_MAGIC = 0x5355444f4b554442L;
+	/**
+	 * "SUDOKUIX" in ASCII.
+	 */
+	private static final long INDEX_MAGIC = 0x5355444f4b554958L;
+
+	private static final int HEADER_SIZE = 64;
+
+	private static final int MAGIC_OFFSET = 0;
+
+	private static final int VERSION_OFFSET = 8;
+
+	private static final int SQUARE_SIZE_OFFSET = 12;
+
+	private static final int RECORD_SIZE_OFFSET = 16;
+	/**
+	 * The offset of the number of records in the header of the data file,
+	 * or of the number of indexed records in the header of the index file.
+	 */
+	private static final int COUNT_OFFSET = 24;
+	/**
+	 * The offset of the random identifier of the data file. The index is
+	 * only used with the data file that has the same identifier.
+	 */
+	private static final int GENERATION_OFFSET = 32;
+	/**
+	 * The offset of the number of slots in the header of the index file.
+	 */
+	private static final int CAPACITY_OFFSET = 40;
+	/**
+	 * The size of the checksum and the status at the start of a record.
+	 */
+	private static final int RECORD_HEADER_SIZE = 8;
+
+	private static final int STATUS_OFFSET = 4;
+
+	private static final byte STATUS_SOLVED = 1;
+
+	private static final byte STATUS_UNSATISFIABLE = 2;
+	/**
+	 * The number of records, for which the data file is initially mapped.
+	 */
+	private static final int INITIAL_CAPACITY = 1024;
+	/**
+	 * The smallest number of slots of the index. The index is kept at most
+	 * half full.
+	 */
+	private static final int MIN_INDEX_CAPACITY = 2048;
+
+	private final Path dataPath;
+
+	private final Path indexPath;
+
+	private final int squareSize;
+
+	private final int size;
+
+	private final int cellCount;
+
+	private final PuzzleCodec codec;
+	/**
+	 * The number of bytes of the packed clues or solution.
+	 */
+	private final int packedSize;
+
+	private final int recordSize;
+	/**
+	 * The largest number of records that fits into a single mapping.
+	 */
+	private final int maxCapacity;
+
+	private final FileChannel dataChannel;
+
+	private final FileLock lock;
+
+	private long generation;
+	/**
+	 * The number of records, for which the data file is mapped.
+	 */
+	private int dataCapacity;
+
+	private boolean closed;
+
+	private volatile State state;
+
+	private final ThreadLocal<Workspace> workspaces = new ThreadLocal<Workspace>() {
+		protected Workspace initialValue() {
+			return new Workspace();
+		}
+	};
+
+	/**
+	 * Adds the result of a solve to the store. Does nothing if the puzzle is
+	 * already stored.
+	 *
+	 * @param _clues the clues of the puzzle, indexed by
+	 * 			<code>x + y * size</code>. Zero stands for an empty cell.
+	 * @param _solution the solution of the puzzle, or <code>null</code> if
+	 * 			the puzzle has no solution.
+	 * @return <code>true</code> if the record was added; otherwise,
+	 * 			<code>false</code>.
+	 * @throws IOException if the files can't be extended.
+	 * @throws IllegalArgumentException if a value is out of range.
+	 */
+	public synchronized boolean append(int[] _clues, int[] _solution) throws IOException {
+		if(closed)
+			throw new IOException("The store is closed");
+		State current = state;
+		Workspace workspace = workspaces.get();
+		byte[] record = workspace.record;
+		Arrays.fill(record, (byte)0);
+		codec.encode(_clues, record, RECORD_HEADER_SIZE);
+		if(find(current, workspace.recordBuffer, RECORD_HEADER_SIZE) >= 0)
+			return false;
+		if(_solution != null) {
+			record[STATUS_OFFSET] = STATUS_SOLVED;
+			for(int value : _solution)
+				if(value == 0)
+					throw new IllegalArgumentException("The solution has an empty cell");
+			codec.encode(_solution, record, RECORD_HEADER_SIZE + packedSize);
+		}
+		else
+			record[STATUS_OFFSET] = STATUS_UNSATISFIABLE;
+		workspace.checksum.reset();
+		workspace.checksum.update(record, STATUS_OFFSET, recordSize - STATUS_OFFSET);
+		workspace.recordBuffer.putInt(0, (int)workspace.checksum.getValue());
+
+		int record_number = current.recordCount;
+		MappedByteBuffer data = current.data;
+		MappedByteBuffer index = current.index;
+		int index_mask = current.indexMask;
+		if(record_number == dataCapacity)
+			data = growData();
+		if(2L * (record_number + 1) > index_mask + 1L) {
+			index = buildIndex(indexPath, data, record_number, 2 * (index_mask + 1));
+			index_mask = index.getInt(CAPACITY_OFFSET) - 1;
+		}
+		// The record is complete before it becomes reachable from the index
+		data.put(recordOffset(record_number), record);
+		insert(index, index_mask, data, record_number);
+		state = new State(data, index, index_mask, record_number + 1);
+		return true;
+	}
+
+	/**
+	 * Creates a new index of the given records in a temporary file, and
+	 * moves it over the index file.
+	 */
+	private MappedByteBuffer buildIndex(Path _path, MappedByteBuffer _data, int _recordCount, int _minCapacity) throws IOException {
+		int capacity = MIN_INDEX_CAPACITY;
+		while(capacity < _minCapacity || capacity < 2L * _recordCount)
+			capacity *= 2;
+		Path temp_path = _path.resolveSibling(_path.getFileName() + ".tmp");
+		MappedByteBuffer index;
+		try(FileChannel channel = FileChannel.open(temp_path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			index = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + 4L * capacity);
+		}
+		index.putLong(MAGIC_OFFSET, INDEX_MAGIC);
+		index.putInt(VERSION_OFFSET, VERSION);
+		index.putInt(SQUARE_SIZE_OFFSET, squareSize);
+		index.putInt(RECORD_SIZE_OFFSET, recordSize);
+		index.putLong(COUNT_OFFSET, _recordCount);
+		index.putLong(GENERATION_OFFSET, generation);
+		index.putInt(CAPACITY_OFFSET, capacity);
+		for(int record = 0; record < _recordCount; record++)
+			insert(index, capacity - 1, _data, record);
+		index.force();
+		Files.move(temp_path, _path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return index;
+	}
+
+	private void checkHeader(ByteBuffer _header, long _magic, Path _path) throws IOException {
+		if(_header.getLong(MAGIC_OFFSET) != _magic)
+			throw new IOException("Not a solution store: " + _path);
+		if(_header.getInt(VERSION_OFFSET) != VERSION)
+			throw new IOException("Unsupported version " + _header.getInt(VERSION_OFFSET) + ": " + _path);
+		if(_header.getInt(SQUARE_SIZE_OFFSET) != squareSize || _header.getInt(RECORD_SIZE_OFFSET) != recordSize)
+			throw new IOException("The store holds puzzles of square size " + _header.getInt(SQUARE_SIZE_OFFSET) + ": " + _path);
+	}
+
+	/**
+	 * Writes the records to the disk and closes the store. The mapped files
+	 * are released when they are no longer reachable.
+	 *
+	 * @throws IOException if the records can't be written.
+	 */
+	public synchronized void close() throws IOException {
+		if(closed)
+			return;
+		try {
+			sync();
+		}
+		finally {
+			closed = true;
+			dataChannel.close();
+		}
+	}
+
+	/**
+	 * Rewrites the store at the given path. Only the records that pass the
+	 * verification of their checksums are kept; unlike opening the store,
+	 * which only verifies the records appended after the last
+	 * {@link #sync()}, the compaction verifies all of them. The space
+	 * reserved for the future records is released, and the index is rebuilt
+	 * at the smallest size. The store must not be open.
+	 *
+	 * @param _path the path of the data file.
+	 * @return the number of records that were dropped.
+	 * @throws IOException if the store can't be read or written.
+	 */
+	public static int compact(Path _path) throws IOException {
+		int square_size = readSquareSize(_path);
+		Path temp_path = _path.resolveSibling(_path.getFileName() + ".compact");
+		Path temp_index_path = temp_path.resolveSibling(temp_path.getFileName() + INDEX_SUFFIX);
+		Files.deleteIfExists(temp_path);
+		Files.deleteIfExists(temp_index_path);
+		int dropped = 0;
+		try(SolutionStore source = new SolutionStore(_path, square_size)) {
+			long compacted_size;
+			try(SolutionStore target = new SolutionStore(temp_path, square_size)) {
+				State current = source.state;
+				int[] clues = new int[source.cellCount];
+				int[] solution = new int[source.cellCount];
+				byte[] bytes = new byte[source.recordSize];
+				CRC32C checksum = new CRC32C();
+				for(int record = 0; record < current.recordCount; record++) {
+					current.data.get(source.recordOffset(record), bytes);
+					checksum.reset();
+					checksum.update(bytes, STATUS_OFFSET, source.recordSize - STATUS_OFFSET);
+					if((int)checksum.getValue() != ByteBuffer.wrap(bytes).getInt(0)) {
+						dropped++;
+						continue;
+					}
+					source.codec.decode(bytes, RECORD_HEADER_SIZE, clues);
+					boolean solved = bytes[STATUS_OFFSET] == STATUS_SOLVED;
+					if(solved)
+						source.codec.decode(bytes, RECORD_HEADER_SIZE + source.packedSize, solution);
+					if(!target.append(clues, solved ? solution : null))
+						dropped++;
+				}
+				compacted_size = target.recordOffset(target.getRecordCount());
+			}
+			try(FileChannel channel = FileChannel.open(temp_path, StandardOpenOption.WRITE)) {
+				channel.truncate(compacted_size);
+			}
+			// The new index has a new generation, so it is never used with
+			// the old data file and vice versa
+			Files.move(temp_path, _path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			Files.move(temp_index_path, source.indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		return dropped;
+	}
+
+	/**
+	 * Finds the record with the given packed clues.
+	 *
+	 * @return the number of the record, or <code>-1</code> if the clues are
+	 * 			not in the store.
+	 */
+	private int find(State _state, ByteBuffer _key, int _keyOffset) {
+		int slot = hashKey(_key, _keyOffset) & _state.indexMask;
+		while(true) {
+			int reference = _state.index.getInt(HEADER_SIZE + 4 * slot);
+			if(reference == 0)
+				return -1;
+			// Slots added after the snapshot refer to records it does not
+			// include; they are skipped
+			int record = reference - 1;
+			if(record < _state.recordCount && keyEquals(_state.data, recordOffset(record) + RECORD_HEADER_SIZE, _key, _keyOffset))
+				return record;
+			slot = (slot + 1) & _state.indexMask;
+		}
+	}
+
+	/**
+	 * Returns the number of records in the store.
+	 *
+	 * @return the number of records.
+	 */
+	public int getRecordCount() {
+		return state.recordCount;
+	}
+
+	/**
+	 * Returns the size of an edge of a square group of the puzzles in the
+	 * store.
+	 *
+	 * @return the size of an edge of a square group.
+	 */
+	public int getSquareSize() {
+		return squareSize;
+	}
+
+	/**
+	 * Doubles the number of records, for which the data file is mapped.
+	 */
+	private MappedByteBuffer growData() throws IOException {
+		if(dataCapacity == maxCapacity)
+			throw new IOException("The store is full: " + dataPath);
+		dataCapacity = (int)Math.min(2L * dataCapacity, maxCapacity);
+		return mapData();
+	}
+
+	private int hashKey(ByteBuffer _buffer, int _offset) {
+		long hash = 0;
+		int i = 0;
+		for(; i + 8 <= packedSize; i += 8)
+			hash = (hash ^ _buffer.getLong(_offset + i)) * 0x9E3779B97F4A7C15L;
+		for(; i < packedSize; i++)
+			hash = (hash ^ _buffer.get(_offset + i)) * 0x9E3779B97F4A7C15L;
+		return (int)(hash >>> 32);
+	}
+
+	/**
+	 * Adds a record to the index, unless the record or a record with the
+	 * same clues is already there. The index must not refer to records after
+	 * the added one.
+	 */
+	private void insert(MappedByteBuffer _index, int _indexMask, MappedByteBuffer _data, int _record) {
+		int key_offset = recordOffset(_record) + RECORD_HEADER_SIZE;
+		int slot = hashKey(_data, key_offset) & _indexMask;
+		while(true) {
+			int reference = _index.getInt(HEADER_SIZE + 4 * slot);
+			if(reference == 0) {
+				_index.putInt(HEADER_SIZE + 4 * slot, _record + 1);
+				return;
+			}
+			int record = reference - 1;
+			if(record == _record || (record < _record && keyEquals(_data, recordOffset(record) + RECORD_HEADER_SIZE, _data, key_offset)))
+				return;
+			slot = (slot + 1) & _indexMask;
+		}
+	}
+
+	/**
+	 * Checks if the record at the given position passes the verification of
+	 * its checksum.
+	 */
+	private boolean isValidRecord(MappedByteBuffer _data, int _record, CRC32C _checksum) {
+		int offset = recordOffset(_record);
+		byte status = _data.get(offset + STATUS_OFFSET);
+		if(status != STATUS_SOLVED && status != STATUS_UNSATISFIABLE)
+			return false;
+		_checksum.reset();
+		_checksum.update(_data.slice(offset + STATUS_OFFSET, recordSize - STATUS_OFFSET));
+		return (int)_checksum.getValue() == _data.getInt(offset);
+	}
+
+	private boolean keyEquals(ByteBuffer _first, int _firstOffset, ByteBuffer _second, int _secondOffset) {
+		int i = 0;
+		for(; i + 8 <= packedSize; i += 8)
+			if(_first.getLong(_firstOffset + i) != _second.getLong(_secondOffset + i))
+				return false;
+		for(; i < packedSize; i++)
+			if(_first.get(_firstOffset + i) != _second.get(_secondOffset + i))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Looks up the solution of the given puzzle. Does not block, even while
+	 * another thread appends records.
+	 *
+	 * @param _clues the clues of the puzzle, indexed by
+	 * 			<code>x + y * size</code>. Zero stands for an empty cell.
+	 * @param _solution the array, to which the solution is written if it is
+	 * 			found.
+	 * @return {@link SolveResult#SOLVED} if the solution was found,
+	 * 			{@link SolveResult#UNSATISFIABLE} if the puzzle is stored as
+	 * 			having no solution, or <code>null</code> if the puzzle is not
+	 * 			in the store.
+	 * @throws IllegalArgumentException if a value is out of range.
+	 */
+	public SolveResult lookup(int[] _clues, int[] _solution) {
+		State current = state;
+		Workspace workspace = workspaces.get();
+		codec.encode(_clues, workspace.record, RECORD_HEADER_SIZE);
+		int record = find(current, workspace.recordBuffer, RECORD_HEADER_SIZE);
+		if(record < 0)
+			return null;
+		int offset = recordOffset(record);
+		if(current.data.get(offset + STATUS_OFFSET) == STATUS_UNSATISFIABLE)
+			return SolveResult.UNSATISFIABLE;
+		// The bulk copy is much cheaper than reading the mapped file byte by
+		// byte
+		byte[] packed = workspace.record;
+		current.data.get(offset + RECORD_HEADER_SIZE + packedSize, packed, RECORD_HEADER_SIZE, packedSize);
+		codec.decode(packed, RECORD_HEADER_SIZE, _solution);
+		return SolveResult.SOLVED;
+	}
+
+	private MappedByteBuffer mapData() throws IOException {
+		return dataChannel.map(FileChannel.MapMode.READ_WRITE, 0, recordOffset(dataCapacity));
+	}
+
+	/**
+	 * Opens the data file, or initializes it if it is empty, and finds the
+	 * records that were appended after the last {@link #sync()}.
+	 *
+	 * @return the number of valid records.
+	 */
+	private int openData() throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		long file_size = dataChannel.size();
+		long committed = 0;
+		if(file_size == 0) {
+			generation = ThreadLocalRandom.current().nextLong();
+			header.putLong(MAGIC_OFFSET, DATA_MAGIC);
+			header.putInt(VERSION_OFFSET, VERSION);
+			header.putInt(SQUARE_SIZE_OFFSET, squareSize);
+			header.putInt(RECORD_SIZE_OFFSET, recordSize);
+			header.putLong(GENERATION_OFFSET, generation);
+			while(header.hasRemaining())
+				dataChannel.write(header, header.position());
+			dataChannel.force(true);
+		}
+		else {
+			if(file_size < HEADER_SIZE || readHeader(dataChannel, header) < HEADER_SIZE)
+				throw new IOException("Not a solution store: " + dataPath);
+			checkHeader(header, DATA_MAGIC, dataPath);
+			committed = header.getLong(COUNT_OFFSET);
+			generation = header.getLong(GENERATION_OFFSET);
+		}
+		long file_capacity = (file_size - HEADER_SIZE) / recordSize;
+		if(committed < 0 || committed > Math.min(file_capacity, maxCapacity))
+			throw new IOException("Corrupted header: " + dataPath);
+		dataCapacity = (int)Math.min(Math.max(INITIAL_CAPACITY, file_capacity), maxCapacity);
+		MappedByteBuffer data = mapData();
+		// The records up to the committed count were forced to the disk;
+		// the ones after it are kept up to the first one that is torn
+		int record_count = (int)committed;
+		CRC32C checksum = new CRC32C();
+		while(record_count < dataCapacity && isValidRecord(data, record_count, checksum))
+			record_count++;
+		state = new State(data, null, 0, record_count);
+		return record_count;
+	}
+
+	/**
+	 * Opens the index file, and adds the records missing in it. The index is
+	 * rebuilt if it does not belong to the data file, or if it refers to
+	 * records that were lost. The slots are written as the records are
+	 * appended, but the number of indexed records only by {@link #sync()},
+	 * so after a crash the index may refer to records beyond its count.
+	 */
+	private void openIndex(int _recordCount) throws IOException {
+		MappedByteBuffer data = state.data;
+		MappedByteBuffer index = null;
+		long indexed = -1;
+		if(Files.exists(indexPath)) {
+			try(FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+				if(readHeader(channel, header) == HEADER_SIZE
+						&& header.getLong(MAGIC_OFFSET) == INDEX_MAGIC
+						&& header.getInt(VERSION_OFFSET) == VERSION
+						&& header.getInt(SQUARE_SIZE_OFFSET) == squareSize
+						&& header.getInt(RECORD_SIZE_OFFSET) == recordSize
+						&& header.getLong(GENERATION_OFFSET) == generation) {
+					int capacity = header.getInt(CAPACITY_OFFSET);
+					indexed = header.getLong(COUNT_OFFSET);
+					if(capacity >= MIN_INDEX_CAPACITY && Integer.bitCount(capacity) == 1
+							&& channel.size() >= HEADER_SIZE + 4L * capacity
+							&& indexed >= 0 && indexed <= _recordCount && 2L * _recordCount <= capacity) {
+						index = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + 4L * capacity);
+						if(refersBeyond(index, capacity, _recordCount))
+							index = null;
+					}
+				}
+			}
+		}
+		if(index == null)
+			index = buildIndex(indexPath, data, _recordCount, MIN_INDEX_CAPACITY);
+		else
+			for(int record = (int)indexed; record < _recordCount; record++)
+				insert(index, index.getInt(CAPACITY_OFFSET) - 1, data, record);
+		state = new State(data, index, index.getInt(CAPACITY_OFFSET) - 1, _recordCount);
+	}
+
+	private static int readHeader(FileChannel _channel, ByteBuffer _header) throws IOException {
+		while(_header.hasRemaining())
+			if(_channel.read(_header, _header.position()) < 0)
+				break;
+		return _header.position();
+	}
+
+	/**
+	 * Reads the size of an edge of a square group from the header of the
+	 * data file.
+	 */
+	private static int readSquareSize(Path _path) throws IOException {
+		try(FileChannel channel = FileChannel.open(_path, StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			if(readHeader(channel, header) < HEADER_SIZE || header.getLong(MAGIC_OFFSET) != DATA_MAGIC)
+				throw new IOException("Not a solution store: " + _path);
+			return header.getInt(SQUARE_SIZE_OFFSET);
+		}
+	}
+
+	/**
+	 * Checks if a slot of the index refers to a record at or beyond the
+	 * given number of records.
+	 */
+	private static boolean refersBeyond(MappedByteBuffer _index, int _capacity, int _recordCount) {
+		for(int slot = 0; slot < _capacity; slot++)
+			// The references are the numbers of the records plus one
+			if(_index.getInt(HEADER_SIZE + 4 * slot) > _recordCount)
+				return true;
+		return false;
+	}
+
+	private int recordOffset(int _record) {
+		return HEADER_SIZE + _record * recordSize;
+	}
+
+	/**
+	 * Solves the given puzzle, or copies its solution from the store. New
+	 * results are appended to the store. Like {@link SolverEngine#solve()},
+	 * the solution is stored in the state of the solver; the puzzle is
+	 * loaded to the solver only when it is not found in the store.
+	 *
+	 * @param _engine the solver.
+	 * @param _puzzle the puzzle, in the format accepted by
+	 * 			{@link SolverEngine#loadGameState(String)}.
+	 * @return <code>true</code> if a solution was found; otherwise,
+	 * 			<code>false</code>.
+	 * @throws IOException if the result can't be appended to the store.
+	 * @throws IllegalArgumentException if the puzzle can't be parsed, or if
+	 * 			the solver has a different size.
+	 */
+	public boolean solve(SolverEngine _engine, String _puzzle) throws IOException {
+		if(_engine.getSize() != size)
+			throw new IllegalArgumentException("Expected a board of size " + size + ", found " + _engine.getSize());
+		Workspace workspace = workspaces.get();
+		int[] clues = workspace.clues;
+		int[] solution = workspace.solution;
+		Arrays.fill(clues, 0);
+		Sudoku.readGameState(_puzzle, size, clues);
+		SolveResult result = lookup(clues, solution);
+		if(result == SolveResult.SOLVED) {
+			for(int cell = 0; cell < cellCount; cell++)
+				_engine.setValue(cell % size, cell / size, solution[cell]);
+			return true;
+		}
+		if(result == SolveResult.UNSATISFIABLE)
+			return false;
+		_engine.loadGameState(_puzzle);
+		boolean solved = _engine.solve();
+		if(solved)
+			for(int cell = 0; cell < cellCount; cell++)
+				solution[cell] = _engine.getValue(cell % size, cell / size);
+		append(clues, solved ? solution : null);
+		return solved;
+	}
+
+	/**
+	 * Forces the appended records to the disk, and then records their number
+	 * in the headers of both files.
+	 *
+	 * @throws IOException if the records can't be written.
+	 */
+	public synchronized void sync() throws IOException {
+		if(closed)
+			throw new IOException("The store is closed");
+		State current = state;
+		current.data.force();
+		current.data.putLong(COUNT_OFFSET, current.recordCount);
+		current.data.force(0, HEADER_SIZE);
+		current.index.putLong(COUNT_OFFSET, current.recordCount);
+		current.index.force();
+	}
+
+	/**
+	 * Opens the store at the given path, or creates a new one.
+	 *
+	 * @param _path the path of the data file.
+	 * @param _squareSize the size of an edge of a square group of the
+	 * 			puzzles.
+	 * @throws IOException if the store can't be opened, if it is used by
+	 * 			another process, or if it holds puzzles of a different size.
+	 */
+	public SolutionStore(Path _path, int _squareSize) throws IOException {
+		if(_squareSize < Sudoku.MIN_SQUARE_SIZE || _squareSize > Sudoku.MAX_SQUARE_SIZE)
+			throw new IllegalArgumentException("Unsupported square size: " + _squareSize);
+		dataPath = _path;
+		indexPath = _path.resolveSibling(_path.getFileName() + INDEX_SUFFIX);
+		squareSize = _squareSize;
+		size = _squareSize * _squareSize;
+		cellCount = size * size;
+		codec = new PuzzleCodec(_squareSize);
+		packedSize = codec.getPackedSize();
+		recordSize = (RECORD_HEADER_SIZE + 2 * packedSize + 7) & ~7;
+		maxCapacity = (Integer.MAX_VALUE - HEADER_SIZE) / recordSize;
+
+		dataChannel = FileChannel.open(_path, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+		try {
+			lock = dataChannel.tryLock();
+			if(lock == null)
+				throw new IOException("The store is used by another process: " + _path);
+			openIndex(openData());
+		}
+		catch(IOException | RuntimeException e) {
+			dataChannel.close();
+			throw e;
+		}
+	}
+
+	private static void printUsage() {
+		System.err.println("Usage: SolutionStore info|compact path");
+	}
+
+	public static void main(String[] _args) {
+		if(_args.length != 2 || !(_args[0].equals("info") || _args[0].equals("compact"))) {
+			printUsage();
+			System.exit(2);
+		}
+		Path path = Paths.get(_args[1]);
+		try {
+			if(_args[0].equals("compact")) {
+				int dropped = compact(path);
+				System.out.println("Dropped " + dropped + " records");
+				System.out.println("Data file: " + Files.size(path) + " bytes");
+				return;
+			}
+			try(SolutionStore store = new SolutionStore(path, readSquareSize(path))) {
+				System.out.println("Square size: " + store.squareSize);
+				System.out.println("Records: " + store.getRecordCount());
+				System.out.println("Record size: " + store.recordSize + " bytes");
+				System.out.println("Data file: " + Files.size(path) + " bytes");
+				System.out.println("Index file: " + Files.size(store.indexPath) + " bytes");
+			}
+		}
+		catch(IOException e) {
+			System.err.println("I/O error: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,73 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku.test;
+
+import java.lang.management.ManagementFactory;
+
+import cz.matfyz.sykora.sudoku.*;
+
+/**
+ * Checks that the search does not allocate any memory once the solver
+ * is warmed up. Uses the allocation counters of the HotSpot JVM.
+ */
+public class AllocationTest {
+	private static final String PUZZLE =
+		"xxxxxxx1x" +
+		"4xxxxxxxx" +
+		"x2xxxxxxx" +
+		"xxxx5x4x7" +
+		"xx8xxx3xx" +
+		"xx1x9xxxx" +
+		"3xx4xx2xx" +
+		"x5x1xxxxx" +
+		"xxx8x6xxx";
+	
+	private static final int WARMUP_ROUNDS = 20000;
+	
+	private static final int MEASURED_ROUNDS = 1000;
+	
+	public static void main(String[] _args) {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+		long thread_id = Thread.currentThread().getId();
+		Sudoku test = new Sudoku();
+		
+		for(int i = 0; i < WARMUP_ROUNDS; i++) {
+			test.loadGameState(PUZZLE);
+			test.solve();
+		}
+		
+		// The first call to the counter allocates on its own
+		threads.getThreadAllocatedBytes(thread_id);
+		long start_bytes = threads.getThreadAllocatedBytes(thread_id);
+		long overhead = threads.getThreadAllocatedBytes(thread_id) - start_bytes;
+		start_bytes = threads.getThreadAllocatedBytes(thread_id);
+		boolean solved = true;
+		for(int i = 0; i < MEASURED_ROUNDS; i++) {
+			test.loadGameState(PUZZLE);
+			solved &= test.solve();
+		}
+		long allocated = threads.getThreadAllocatedBytes(thread_id) - start_bytes - overhead;
+		
+		System.out.println("Allocated " + allocated + " bytes in " + MEASURED_ROUNDS + " solves");
+		// Any allocation in the search would show up at least once per solve;
+		// a few bytes may come from the JIT compiler running in the background
+		if(solved && allocated < MEASURED_ROUNDS)
+			System.out.println("Succeeded");
+		else
+			System.out.println("Failed");
+	}
+}
@@ -0,0 +1,127 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku.test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import cz.matfyz.sykora.sudoku.*;
+import cz.matfyz.sykora.sudoku.cache.*;
+
+/**
+ * Checks that {@link SymmetryCanonicalizer} gives the same key to puzzles
+ * related by random symmetries of the board, that the canonical forms map
+ * the grids in both directions, and that the solutions found through
+ * {@link SolutionCache} for equivalent puzzles are valid solutions of each
+ * of them.
+ */
+public class CanonicalizerTest {
+	private static final long SEED = 16;
+	
+	private static final int PUZZLES_PER_SIZE = 200;
+	
+	/**
+	 * Checks the canonical forms of the puzzle and of its random image, and
+	 * solves both through the cache.
+	 *
+	 * @return <code>true</code> if all checks passed; otherwise,
+	 * 			<code>false</code>.
+	 */
+	private static boolean checkPuzzle(int[] _puzzle, int _squareSize, SymmetryCanonicalizer _canonicalizer,
+			SolutionCache _cache, Random _random) {
+		int[] image = TestGrids.applyRandomSymmetry(_puzzle, _squareSize, _random);
+		String puzzle = TestGrids.format(_puzzle);
+		CanonicalForm form = _canonicalizer.canonicalize(_puzzle);
+		if(!checkForm(form, _puzzle))
+			return false;
+		String key = form.getKey();
+		boolean exact = form.isExact();
+		CanonicalForm image_form = _canonicalizer.canonicalize(image);
+		if(!checkForm(image_form, image))
+			return false;
+		if(exact && image_form.isExact() && !key.equals(image_form.getKey())) {
+			System.out.println("Different keys of equivalent puzzles: " + puzzle + " " + TestGrids.format(image));
+			return false;
+		}
+		
+		boolean solvable = TestGrids.countSolutions(_puzzle, _squareSize, 1) > 0;
+		long hits = _cache.getHitCount();
+		if(!checkCachedSolve(_puzzle, _squareSize, _cache, solvable)
+				|| !checkCachedSolve(image, _squareSize, _cache, solvable))
+			return false;
+		// The image is found in the cache whenever it has the same key
+		if(key.equals(image_form.getKey()) && _cache.getHitCount() == hits) {
+			System.out.println("The image was not found in the cache: " + puzzle);
+			return false;
+		}
+		return true;
+	}
+	
+	private static boolean checkCachedSolve(int[] _puzzle, int _squareSize, SolutionCache _cache, boolean _solvable) {
+		Sudoku sudoku = new Sudoku(_squareSize);
+		String puzzle = TestGrids.format(_puzzle);
+		boolean solved = _cache.solve(sudoku, puzzle);
+		if(solved != _solvable) {
+			System.out.println("Wrong result " + solved + " from the cache: " + puzzle);
+			return false;
+		}
+		if(solved && !TestGrids.isSolution(TestGrids.getValues(sudoku), _puzzle, _squareSize)) {
+			System.out.println("Invalid solution from the cache: " + puzzle);
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Checks that the form maps the puzzle to its key and back.
+	 */
+	private static boolean checkForm(CanonicalForm _form, int[] _puzzle) {
+		int[] canonical = new int[_puzzle.length];
+		int[] original = new int[_puzzle.length];
+		_form.toCanonical(_puzzle, canonical);
+		_form.fromCanonical(canonical, original);
+		if(!TestGrids.format(canonical).equals(_form.getKey()) || !Arrays.equals(original, _puzzle)) {
+			System.out.println("The form does not map the puzzle to its key: " + TestGrids.format(_puzzle));
+			return false;
+		}
+		return true;
+	}
+	
+	public static void main(String[] _args) {
+		Random random = new Random(SEED);
+		long start_time = System.currentTimeMillis();
+		boolean succeeded = true;
+		for(int square_size = 2; square_size <= 3 && succeeded; square_size++) {
+			SymmetryCanonicalizer canonicalizer = new SymmetryCanonicalizer(square_size);
+			SolutionCache cache = new SolutionCache(4 * PUZZLES_PER_SIZE);
+			int cell_count = square_size * square_size * square_size * square_size;
+			for(int i = 0; i < PUZZLES_PER_SIZE && succeeded; i++) {
+				int[] puzzle = TestGrids.randomPuzzle(square_size, cell_count / 4 + random.nextInt(cell_count / 4), random);
+				if(i % 4 == 0)
+					TestGrids.spoil(puzzle, square_size, random);
+				succeeded = checkPuzzle(puzzle, square_size, canonicalizer, cache, random);
+			}
+			System.out.println(cell_count + " cells: " + cache.getHitCount() + " hits, "
+				+ cache.getMissCount() + " misses, " + cache.getInexactCount() + " inexact forms");
+		}
+		System.out.println("Total time: " + (System.currentTimeMillis() - start_time) + " milliseconds");
+		if(succeeded)
+			System.out.println("Succeeded");
+		else
+			System.out.println("Failed");
+	}
+}
@@ -0,0 +1,91 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku.test;
+
+import java.util.Random;
+
+import cz.matfyz.sykora.sudoku.*;
+
+/**
+ * Checks {@link Sudoku#countSolutions(int)} against a plain backtracking
+ * count on random 4x4 and 9x9 puzzles, with and without a solution, and
+ * checks that counting leaves the puzzle unchanged.
+ */
+public class CountSolutionsTest {
+	private static final long SEED = 11;
+	
+	private static final int PUZZLES_PER_SIZE = 300;
+	/**
+	 * The limit of the 4x4 counts; it is higher than the 288 solutions of
+	 * the empty board, so all counts are exact.
+	 */
+	private static final int SMALL_LIMIT = 1000;
+	/**
+	 * The limit of the 9x9 counts, as used by the uniqueness checks.
+	 */
+	private static final int LARGE_LIMIT = 2;
+	
+	private static boolean checkPuzzle(int[] _clues, int _squareSize, int _limit) {
+		Sudoku sudoku = new Sudoku(_squareSize);
+		String puzzle = TestGrids.format(_clues);
+		sudoku.loadGameState(puzzle);
+		// Reading the values propagates the clues, so the state is compared
+		// with the state before counting, not with the puzzle
+		String before = TestGrids.format(TestGrids.getValues(sudoku));
+		int count = sudoku.countSolutions(_limit);
+		int expected = TestGrids.countSolutions(_clues, _squareSize, _limit);
+		if(count != expected) {
+			System.out.println("Counted " + count + " solutions instead of " + expected + ": " + puzzle);
+			return false;
+		}
+		if(!TestGrids.format(TestGrids.getValues(sudoku)).equals(before)) {
+			System.out.println("The puzzle was modified by counting: " + puzzle);
+			return false;
+		}
+		// The puzzle can still be solved after counting
+		if(sudoku.solve() != (count > 0)
+				|| (count > 0 && !TestGrids.isSolution(TestGrids.getValues(sudoku), _clues, _squareSize))) {
+			System.out.println("Wrong solution after counting: " + puzzle);
+			return false;
+		}
+		return true;
+	}
+	
+	public static void main(String[] _args) {
+		Random random = new Random(SEED);
+		boolean succeeded = true;
+		int unsolvable = 0;
+		for(int i = 0; i < PUZZLES_PER_SIZE && succeeded; i++) {
+			int[] small = TestGrids.randomPuzzle(2, 1 + random.nextInt(8), random);
+			int[] large = TestGrids.randomPuzzle(3, 30 + random.nextInt(20), random);
+			if(i % 3 == 0) {
+				TestGrids.spoil(small, 2, random);
+				TestGrids.spoil(large, 3, random);
+			}
+			succeeded = checkPuzzle(small, 2, SMALL_LIMIT) && checkPuzzle(large, 3, LARGE_LIMIT);
+			if(TestGrids.countSolutions(large, 3, 1) == 0)
+				unsolvable++;
+		}
+		// The empty board is the largest count
+		succeeded &= checkPuzzle(new int[16], 2, SMALL_LIMIT);
+		System.out.println("Checked " + 2 * PUZZLES_PER_SIZE + " puzzles, " + unsolvable + " 9x9 puzzles without a solution");
+		if(succeeded && unsolvable > 0)
+			System.out.println("Succeeded");
+		else
+			System.out.println("Failed");
+	}
+}
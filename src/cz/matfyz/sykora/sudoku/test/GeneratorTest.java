@@ -0,0 +1,170 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku.test;
+
+import java.util.Arrays;
+
+import cz.matfyz.sykora.sudoku.*;
+import cz.matfyz.sykora.sudoku.generator.*;
+
+/**
+ * Checks that {@link PuzzleGenerator} produces puzzles with a unique
+ * solution, that the same seed always yields the same puzzle, that the
+ * puzzles without a requested difficulty are minimal, and that the
+ * requested number of clues and difficulty are respected.
+ */
+public class GeneratorTest {
+	private static final long SEED = 12;
+	
+	private static final int PUZZLES_PER_SETTING = 20;
+	
+	private static final int TARGET_CLUES = 30;
+	
+	private static int countClues(int[] _puzzle) {
+		int count = 0;
+		for(int cell = 0; cell < _puzzle.length; cell++)
+			if(_puzzle[cell] != 0)
+				count++;
+		return count;
+	}
+	
+	private static int countSolutions(int[] _puzzle, int _squareSize) {
+		Sudoku sudoku = new Sudoku(_squareSize);
+		sudoku.loadGameState(TestGrids.format(_puzzle));
+		return sudoku.countSolutions(2);
+	}
+	
+	/**
+	 * Checks the puzzles generated with the given settings.
+	 *
+	 * @param _squareSize the size of an edge of a square group.
+	 * @param _difficulty the requested difficulty, or <code>null</code>.
+	 * @param _targetClues the requested number of clues, or zero.
+	 * @return <code>true</code> if all checks passed; otherwise,
+	 * 			<code>false</code>.
+	 */
+	private static boolean checkSetting(int _squareSize, Difficulty _difficulty, int _targetClues) {
+		PuzzleGenerator generator = createGenerator(_squareSize, _difficulty, _targetClues);
+		PuzzleGenerator other = createGenerator(_squareSize, _difficulty, _targetClues);
+		String setting = (_squareSize * _squareSize) + "x" + (_squareSize * _squareSize) + " " + _difficulty + " " + _targetClues + " clues";
+		int[] first = null;
+		boolean different = false;
+		for(int i = 0; i < PUZZLES_PER_SETTING; i++) {
+			long seed = PuzzleGenerator.puzzleSeed(SEED, i);
+			int[] puzzle = generator.generate(seed);
+			if(puzzle == null) {
+				System.out.println(setting + ": no puzzle for seed " + seed);
+				return false;
+			}
+			String text = TestGrids.format(puzzle);
+			// The other generator has a different history, the puzzle
+			// depends only on the seed
+			if(!Arrays.equals(puzzle, other.generate(seed)) || !Arrays.equals(puzzle, generator.generate(seed))) {
+				System.out.println(setting + ": seed " + seed + " is not reproducible: " + text);
+				return false;
+			}
+			if(countSolutions(puzzle, _squareSize) != 1 || TestGrids.countSolutions(puzzle, _squareSize, 2) != 1) {
+				System.out.println(setting + ": the solution is not unique: " + text);
+				return false;
+			}
+			if(_targetClues != 0 && countClues(puzzle) != _targetClues) {
+				System.out.println(setting + ": " + countClues(puzzle) + " clues: " + text);
+				return false;
+			}
+			if(_difficulty == null && _targetClues == 0 && !isMinimal(puzzle, _squareSize)) {
+				System.out.println(setting + ": a clue can be removed: " + text);
+				return false;
+			}
+			if(_difficulty != null && rate(puzzle, _squareSize) != _difficulty) {
+				System.out.println(setting + ": the puzzle is " + rate(puzzle, _squareSize) + ": " + text);
+				return false;
+			}
+			if(first == null)
+				first = puzzle;
+			else
+				different |= !Arrays.equals(first, puzzle);
+		}
+		if(!different) {
+			System.out.println(setting + ": all seeds yield the same puzzle");
+			return false;
+		}
+		return true;
+	}
+	
+	private static PuzzleGenerator createGenerator(int _squareSize, Difficulty _difficulty, int _targetClues) {
+		PuzzleGenerator generator = new PuzzleGenerator(_squareSize);
+		generator.setDifficulty(_difficulty);
+		generator.setTargetClues(_targetClues);
+		return generator;
+	}
+	
+	/**
+	 * Checks that removing any clue makes the solution ambiguous.
+	 */
+	private static boolean isMinimal(int[] _puzzle, int _squareSize) {
+		int[] puzzle = _puzzle.clone();
+		for(int cell = 0; cell < puzzle.length; cell++) {
+			if(puzzle[cell] == 0)
+				continue;
+			puzzle[cell] = 0;
+			int count = countSolutions(puzzle, _squareSize);
+			puzzle[cell] = _puzzle[cell];
+			if(count == 1)
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Rates the puzzle by the number of search nodes needed with the singles
+	 * alone, and with all propagation stages.
+	 */
+	private static Difficulty rate(int[] _puzzle, int _squareSize) {
+		Sudoku singles = new Sudoku(_squareSize);
+		singles.setPropagationStageEnabled(PropagationStage.LOCKED_CANDIDATES, false);
+		if(solveWithoutSearch(singles, _puzzle))
+			return Difficulty.EASY;
+		Sudoku all = new Sudoku(_squareSize);
+		for(PropagationStage stage : PropagationStage.values())
+			all.setPropagationStageEnabled(stage, true);
+		if(solveWithoutSearch(all, _puzzle))
+			return Difficulty.MEDIUM;
+		return Difficulty.HARD;
+	}
+	
+	private static boolean solveWithoutSearch(Sudoku _sudoku, int[] _puzzle) {
+		SolveStats stats = new SolveStats();
+		_sudoku.loadGameState(TestGrids.format(_puzzle));
+		// The root of the search is counted as a node
+		return _sudoku.solve(stats) && stats.getNodeCount() <= 1;
+	}
+	
+	public static void main(String[] _args) {
+		long start_time = System.currentTimeMillis();
+		boolean succeeded = checkSetting(2, null, 0)
+			&& checkSetting(3, null, 0)
+			&& checkSetting(3, null, TARGET_CLUES)
+			&& checkSetting(3, Difficulty.EASY, 0)
+			&& checkSetting(3, Difficulty.MEDIUM, 0)
+			&& checkSetting(3, Difficulty.HARD, 0);
+		System.out.println("Total time: " + (System.currentTimeMillis() - start_time) + " milliseconds");
+		if(succeeded)
+			System.out.println("Succeeded");
+		else
+			System.out.println("Failed");
+	}
+}
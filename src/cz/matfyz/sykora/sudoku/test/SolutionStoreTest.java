@@ -0,0 +1,227 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku.test;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.Random;
+
+import cz.matfyz.sykora.sudoku.*;
+import cz.matfyz.sykora.sudoku.corpus.PuzzleCodec;
+import cz.matfyz.sykora.sudoku.store.SolutionStore;
+
+/**
+ * Checks the recovery of {@link SolutionStore}: reopening, records appended
+ * after the last sync, a torn record, an index of another store, and the
+ * compaction. A crash is simulated by copying the files of an open store
+ * after records were appended without a sync; the mapped files already
+ * contain the records, but the headers still hold the old counts.
+ */
+public class SolutionStoreTest {
+	private static final long SEED = 17;
+	
+	private static final int PUZZLE_COUNT = 300;
+	/**
+	 * The number of puzzles appended before the simulated crash.
+	 */
+	private static final int SYNCED_COUNT = 200;
+	/**
+	 * The puzzle, whose record is torn by the simulated crash.
+	 */
+	private static final int TORN_PUZZLE = 220;
+	/**
+	 * The puzzle, whose record is corrupted before the compaction.
+	 */
+	private static final int CORRUPTED_PUZZLE = 50;
+	
+	private static int[][] clues;
+	
+	private static int[][] solutions;
+	
+	private static PuzzleCodec codec = new PuzzleCodec(3);
+	
+	private static void append(SolutionStore _store, int _from, int _to) throws IOException {
+		for(int i = _from; i < _to; i++)
+			_store.append(clues[i], solutions[i]);
+	}
+	
+	/**
+	 * Checks that the puzzles before the given one, except for the missing
+	 * one, are found with the right results, and that the others are not
+	 * found.
+	 */
+	private static boolean check(SolutionStore _store, String _stage, int _to, int _missing, int _expectedCount) {
+		if(_store.getRecordCount() != _expectedCount) {
+			System.out.println(_stage + ": " + _store.getRecordCount() + " records instead of " + _expectedCount);
+			return false;
+		}
+		int[] solution = new int[81];
+		for(int i = 0; i < PUZZLE_COUNT; i++) {
+			SolveResult result = _store.lookup(clues[i], solution);
+			SolveResult expected = i >= _to || i == _missing ? null
+				: solutions[i] != null ? SolveResult.SOLVED : SolveResult.UNSATISFIABLE;
+			if(result != expected || (result == SolveResult.SOLVED && !Arrays.equals(solution, solutions[i]))) {
+				System.out.println(_stage + ": wrong result " + result + " of puzzle " + i);
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Copies the data and the index file of a store.
+	 */
+	private static void copyStore(Path _source, Path _target) throws IOException {
+		Files.copy(_source, _target, StandardCopyOption.REPLACE_EXISTING);
+		Files.copy(indexPath(_source), indexPath(_target), StandardCopyOption.REPLACE_EXISTING);
+	}
+	
+	/**
+	 * Flips a byte of the record of the given puzzle, found by its packed
+	 * clues, at the given distance from the clues.
+	 */
+	private static void corrupt(Path _path, int _puzzle, int _delta) throws IOException {
+		byte[] key = new byte[codec.getPackedSize()];
+		codec.encode(clues[_puzzle], key, 0);
+		byte[] data = Files.readAllBytes(_path);
+		for(int offset = 0; offset + key.length <= data.length; offset++) {
+			if(Arrays.equals(data, offset, offset + key.length, key, 0, key.length)) {
+				data[offset + _delta] ^= 0x5a;
+				Files.write(_path, data);
+				return;
+			}
+		}
+		throw new IllegalStateException("The record of puzzle " + _puzzle + " was not found");
+	}
+	
+	private static void deleteStore(Path _path) throws IOException {
+		Files.deleteIfExists(_path);
+		Files.deleteIfExists(indexPath(_path));
+	}
+	
+	private static Path indexPath(Path _path) {
+		return _path.resolveSibling(_path.getFileName() + SolutionStore.INDEX_SUFFIX);
+	}
+	
+	/**
+	 * Creates the puzzles; every tenth is stored as having no solution.
+	 */
+	private static void createPuzzles() {
+		Random random = new Random(SEED);
+		clues = new int[PUZZLE_COUNT][];
+		solutions = new int[PUZZLE_COUNT][];
+		Sudoku sudoku = new Sudoku();
+		for(int i = 0; i < PUZZLE_COUNT; i++) {
+			clues[i] = TestGrids.randomPuzzle(3, 30, random);
+			if(i % 10 == 9)
+				continue;
+			sudoku.loadGameState(TestGrids.format(clues[i]));
+			sudoku.solve();
+			solutions[i] = TestGrids.getValues(sudoku);
+		}
+	}
+	
+	private static boolean run(Path _directory) throws IOException {
+		Path path = _directory.resolve("store");
+		Path crashed = _directory.resolve("crashed");
+		Path complete = _directory.resolve("complete");
+		Path other = _directory.resolve("other");
+		
+		try(SolutionStore store = new SolutionStore(path, 3)) {
+			append(store, 0, SYNCED_COUNT);
+		}
+		try(SolutionStore store = new SolutionStore(path, 3)) {
+			if(!check(store, "Reopened", SYNCED_COUNT, -1, SYNCED_COUNT))
+				return false;
+			// The crash: the records are in the mapped files, the counts in
+			// the headers are not updated
+			append(store, SYNCED_COUNT, PUZZLE_COUNT);
+			copyStore(path, crashed);
+			copyStore(path, complete);
+		}
+		
+		// All records survived; the index catches up with them
+		try(SolutionStore store = new SolutionStore(complete, 3)) {
+			if(!check(store, "Stale index", PUZZLE_COUNT, -1, PUZZLE_COUNT))
+				return false;
+		}
+		
+		// The torn record is dropped with all records after it, although the
+		// index still refers to them
+		corrupt(crashed, TORN_PUZZLE, 0);
+		try(SolutionStore store = new SolutionStore(crashed, 3)) {
+			if(!check(store, "Torn record", TORN_PUZZLE, -1, TORN_PUZZLE))
+				return false;
+			// The records get lower numbers than their lost copies
+			append(store, TORN_PUZZLE + 1, PUZZLE_COUNT);
+			if(!check(store, "Appended after recovery", PUZZLE_COUNT, TORN_PUZZLE, PUZZLE_COUNT - 1))
+				return false;
+			append(store, TORN_PUZZLE, TORN_PUZZLE + 1);
+		}
+		try(SolutionStore store = new SolutionStore(crashed, 3)) {
+			if(!check(store, "Reopened after recovery", PUZZLE_COUNT, -1, PUZZLE_COUNT))
+				return false;
+		}
+		
+		// The index of another store is not used
+		try(SolutionStore store = new SolutionStore(other, 3)) {
+			append(store, 0, 10);
+		}
+		Files.copy(indexPath(other), indexPath(crashed), StandardCopyOption.REPLACE_EXISTING);
+		try(SolutionStore store = new SolutionStore(crashed, 3)) {
+			if(!check(store, "Generation mismatch", PUZZLE_COUNT, -1, PUZZLE_COUNT))
+				return false;
+		}
+		
+		// A synced record is not verified on opening, only by the compaction
+		corrupt(crashed, CORRUPTED_PUZZLE, codec.getPackedSize());
+		int dropped = SolutionStore.compact(crashed);
+		if(dropped != 1) {
+			System.out.println("Compaction dropped " + dropped + " records");
+			return false;
+		}
+		try(SolutionStore store = new SolutionStore(crashed, 3)) {
+			if(!check(store, "Compacted", PUZZLE_COUNT, CORRUPTED_PUZZLE, PUZZLE_COUNT - 1))
+				return false;
+			append(store, CORRUPTED_PUZZLE, CORRUPTED_PUZZLE + 1);
+		}
+		try(SolutionStore store = new SolutionStore(crashed, 3)) {
+			if(!check(store, "Reopened after compaction", PUZZLE_COUNT, -1, PUZZLE_COUNT))
+				return false;
+		}
+		return true;
+	}
+	
+	public static void main(String[] _args) throws IOException {
+		createPuzzles();
+		Path directory = Files.createTempDirectory("solution-store-test");
+		boolean succeeded;
+		try {
+			succeeded = run(directory);
+		}
+		finally {
+			for(String name : new String[] { "store", "crashed", "complete", "other" })
+				deleteStore(directory.resolve(name));
+			Files.deleteIfExists(directory);
+		}
+		if(succeeded)
+			System.out.println("Succeeded");
+		else
+			System.out.println("Failed");
+	}
+}
@@ -16,9 +16,170 @@
  */
 package cz.matfyz.sykora.sudoku.test;
 
+import java.util.Random;
+
 import cz.matfyz.sykora.sudoku.*;
 
+/**
+ * Solves a sample puzzle, and then solves the same random 9x9 and 16x16
+ * puzzles, with and without a solution, by all engines of
+ * {@link SolverEngineType}, and checks that the engines agree and that
+ * their solutions are valid. The searches with and without backjumping are
+ * also compared on the same puzzles: backjumping must never explore more
+ * nodes, and it must skip nodes and prune with learned nogoods on some of
+ * the puzzles.
+ */
 public class SolverTest {
+	/**
+	 * The statistics of the searches with backjumping, summed over the
+	 * compared puzzles.
+	 */
+	private static class SearchTotals {
+		/**
+		 * The number of puzzles solved or refuted with fewer nodes than
+		 * without backjumping.
+		 */
+		int fewerNodeCount;
+		
+		long backjumpCount;
+		
+		long nogoodPruneCount;
+	}
+	
+	private static final long SEED = 25;
+	
+	private static final int PUZZLES_PER_SIZE = 60;
+	/**
+	 * The node budget of the searches compared by
+	 * {@link #compareSearches(int[], int, SearchTotals)}. Without the
+	 * stronger propagation stages, some of the random 16x16 puzzles take
+	 * too long.
+	 */
+	private static final long NODE_BUDGET = 100000;
+	
+	/**
+	 * Solves the puzzle by all engines. The 9x9 puzzles are also checked
+	 * against the plain backtracking of {@link TestGrids}, which would be
+	 * too slow for the larger boards.
+	 *
+	 * @return <code>true</code> if the puzzle has a solution, or
+	 * 			<code>false</code> if it has none, or <code>null</code> if the
+	 * 			engines disagree or a solution is not valid.
+	 */
+	private static Boolean compareEngines(int[] _clues, int _squareSize) {
+		String puzzle = TestGrids.format(_clues);
+		Boolean expected = null;
+		if(_squareSize <= 3)
+			expected = TestGrids.countSolutions(_clues, _squareSize, 1) > 0;
+		for(SolverEngineType type : SolverEngineType.values()) {
+			SolverEngine engine = type.create(_squareSize);
+			engine.loadGameState(puzzle);
+			boolean solved = engine.solve();
+			if(expected != null && solved != expected) {
+				System.out.println(type + (solved ? " solved " : " did not solve ") + puzzle);
+				return null;
+			}
+			if(solved && !TestGrids.isSolution(TestGrids.getValues(engine), _clues, _squareSize)) {
+				System.out.println(type + " found a wrong solution of " + puzzle);
+				return null;
+			}
+			expected = solved;
+		}
+		return expected;
+	}
+	
+	/**
+	 * Compares the engines on random puzzles of the given size, every
+	 * second of them spoiled by {@link TestGrids#spoil(int[], int, Random)},
+	 * and compares the searches on the same puzzles.
+	 *
+	 * @return <code>true</code> if the engines agreed on all puzzles, and
+	 * 			some puzzles had a solution and some did not.
+	 */
+	private static boolean compareEngines(int _squareSize, int _minClues, int _maxClues, Random _random,
+			SearchTotals _totals) {
+		int size = _squareSize * _squareSize;
+		int solvable = 0;
+		int unsolvable = 0;
+		for(int i = 0; i < PUZZLES_PER_SIZE; i++) {
+			int[] clues = TestGrids.randomPuzzle(_squareSize, _minClues + _random.nextInt(_maxClues - _minClues + 1), _random);
+			if(i % 2 == 1)
+				TestGrids.spoil(clues, _squareSize, _random);
+			Boolean result = compareEngines(clues, _squareSize);
+			if(result == null || !compareSearches(clues, _squareSize, _totals))
+				return false;
+			if(result)
+				solvable++;
+			else
+				unsolvable++;
+		}
+		System.out.print(size + "x" + size + ": " + solvable + " solved, " + unsolvable + " without a solution; ");
+		return solvable > 0 && unsolvable > 0;
+	}
+	
+	/**
+	 * Solves the puzzle by the {@link SolverEngineType#PROPAGATION} and the
+	 * {@link SolverEngineType#BACKJUMPING} engines with only the naked
+	 * singles enabled; with all propagation stages, the random puzzles
+	 * rarely need enough search for backjumping to matter. Backjumping only
+	 * skips branches that can't lead to a solution, so it must not explore
+	 * more nodes than the plain search.
+	 *
+	 * @return <code>true</code> if the searches agree, and the search with
+	 * 			backjumping explored at most as many nodes; otherwise,
+	 * 			<code>false</code>.
+	 */
+	private static boolean compareSearches(int[] _clues, int _squareSize, SearchTotals _totals) {
+		String puzzle = TestGrids.format(_clues);
+		SolveLimits limits = new SolveLimits();
+		limits.setNodeBudget(NODE_BUDGET);
+		Sudoku plain = createSearch(SolverEngineType.PROPAGATION, _squareSize);
+		plain.loadGameState(puzzle);
+		SolveStats plain_stats = new SolveStats();
+		SolveResult plain_result = plain.solve(limits, plain_stats);
+		Sudoku backjumping = createSearch(SolverEngineType.BACKJUMPING, _squareSize);
+		backjumping.loadGameState(puzzle);
+		SolveStats stats = new SolveStats();
+		SolveResult result = backjumping.solve(limits, stats);
+		if(result == SolveResult.BUDGET_EXHAUSTED) {
+			if(plain_result == SolveResult.BUDGET_EXHAUSTED)
+				return true;
+			System.out.println("Backjumping exhausted the node budget: " + puzzle);
+			return false;
+		}
+		if(plain_result != SolveResult.BUDGET_EXHAUSTED && plain_result != result) {
+			System.out.println("The searches disagree: " + puzzle);
+			return false;
+		}
+		if(result == SolveResult.SOLVED
+				&& !TestGrids.isSolution(TestGrids.getValues(backjumping), _clues, _squareSize)) {
+			System.out.println("Backjumping found a wrong solution of " + puzzle);
+			return false;
+		}
+		if(stats.getNodeCount() > plain_stats.getNodeCount()) {
+			System.out.println("Backjumping explored " + stats.getNodeCount() + " nodes instead of "
+					+ plain_stats.getNodeCount() + ": " + puzzle);
+			return false;
+		}
+		if(stats.getNodeCount() < plain_stats.getNodeCount())
+			_totals.fewerNodeCount++;
+		_totals.backjumpCount += stats.getBackjumpCount();
+		_totals.nogoodPruneCount += stats.getNogoodPruneCount();
+		return true;
+	}
+	
+	/**
+	 * Creates an engine of the given type, which must be {@link Sudoku},
+	 * and disables all propagation stages but the naked singles.
+	 */
+	private static Sudoku createSearch(SolverEngineType _type, int _squareSize) {
+		Sudoku sudoku = (Sudoku)_type.create(_squareSize);
+		for(PropagationStage stage : PropagationStage.values())
+			if(stage != PropagationStage.NAKED_SINGLES)
+				sudoku.setPropagationStageEnabled(stage, false);
+		return sudoku;
+	}
+	
 	public static void main(String[] _args) {
 		System.out.print("Solving...");
 		long start_time = System.currentTimeMillis();
@@ -144,5 +305,18 @@ public class SolverTest {
 			System.out.println("Failed");
 		test.debugOutput();
 		System.out.println("Total time: " + (end_time - start_time) + " milliseconds");
+		
+		System.out.print("Comparing the engines...");
+		Random random = new Random(SEED);
+		SearchTotals totals = new SearchTotals();
+		boolean succeeded = compareEngines(3, 22, 32, random, totals) && compareEngines(4, 90, 130, random, totals);
+		System.out.println(succeeded ? "Succeeded" : "Failed");
+		System.out.print("Comparing the searches...");
+		System.out.print(totals.fewerNodeCount + " puzzles with fewer nodes, " + totals.backjumpCount
+				+ " backjumps, " + totals.nogoodPruneCount + " nogood prunes; ");
+		if(succeeded && totals.fewerNodeCount > 0 && totals.backjumpCount > 0 && totals.nogoodPruneCount > 0)
+			System.out.println("Succeeded");
+		else
+			System.out.println("Failed");
 	}
 }
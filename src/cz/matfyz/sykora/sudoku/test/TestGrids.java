@@ -0,0 +1,241 @@
+/*
+    This file is part of Sudoku Solver.
+
+    Sudoku Solver is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Sudoku Solver is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Sudoku Solver.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cz.matfyz.sykora.sudoku.test;
+
+import java.util.Random;
+
+import cz.matfyz.sykora.sudoku.*;
+
+/**
+ * Helper methods shared by the tests: random grids and puzzles, the
+ * symmetries of the board, and a plain backtracking solver used as the
+ * reference. Grids are arrays of values indexed by
+ * <code>x + y * size</code>, with zero for empty cells.
+ *
+ * @author Ondrej Sykora
+ */
+class TestGrids {
+	/**
+	 * Applies a random symmetry to the grid: permutes the bands, the rows
+	 * within the bands, the stacks and the columns within the stacks,
+	 * optionally transposes the board, and relabels the values.
+	 *
+	 * @param _grid the grid.
+	 * @param _squareSize the size of an edge of a square group.
+	 * @param _random the source of the random choices.
+	 * @return the transformed grid.
+	 */
+	static int[] applyRandomSymmetry(int[] _grid, int _squareSize, Random _random) {
+		int size = _squareSize * _squareSize;
+		int[] rows = randomLinePermutation(_squareSize, _random);
+		int[] columns = randomLinePermutation(_squareSize, _random);
+		int[] labels = new int[size + 1];
+		int[] shuffled = randomPermutation(size, _random);
+		for(int value = 1; value <= size; value++)
+			labels[value] = shuffled[value - 1] + 1;
+		boolean transpose = _random.nextBoolean();
+		int[] result = new int[_grid.length];
+		for(int y = 0; y < size; y++)
+			for(int x = 0; x < size; x++) {
+				int value = labels[_grid[columns[x] + rows[y] * size]];
+				if(transpose)
+					result[y + x * size] = value;
+				else
+					result[x + y * size] = value;
+			}
+		return result;
+	}
+	
+	private static boolean canPlace(int[] _grid, int _squareSize, int _cell, int _value) {
+		int size = _squareSize * _squareSize;
+		int x = _cell % size;
+		int y = _cell / size;
+		int left = x - x % _squareSize;
+		int top = y - y % _squareSize;
+		for(int i = 0; i < size; i++) {
+			if(_grid[i + y * size] == _value || _grid[x + i * size] == _value)
+				return false;
+			if(_grid[left + i % _squareSize + (top + i / _squareSize) * size] == _value)
+				return false;
+		}
+		return true;
+	}
+	
+	private static int countCompletions(int[] _grid, int _squareSize, int _limit) {
+		// Branch on the empty cell with the fewest values that can be placed
+		int size = _squareSize * _squareSize;
+		int best_cell = -1;
+		int best_count = size + 1;
+		for(int cell = 0; cell < _grid.length && best_count > 1; cell++) {
+			if(_grid[cell] != 0)
+				continue;
+			int count = 0;
+			for(int value = 1; value <= size; value++)
+				if(canPlace(_grid, _squareSize, cell, value))
+					count++;
+			if(count < best_count) {
+				best_cell = cell;
+				best_count = count;
+			}
+		}
+		if(best_cell < 0)
+			return 1;
+		int count = 0;
+		for(int value = 1; value <= size && count < _limit; value++) {
+			if(!canPlace(_grid, _squareSize, best_cell, value))
+				continue;
+			_grid[best_cell] = value;
+			count += countCompletions(_grid, _squareSize, _limit - count);
+			_grid[best_cell] = 0;
+		}
+		return count;
+	}
+	
+	/**
+	 * Counts the solutions of the puzzle by plain backtracking, without any
+	 * propagation; only the cell to branch on is chosen by the number of
+	 * values that can be placed in it.
+	 *
+	 * @param _clues the puzzle.
+	 * @param _squareSize the size of an edge of a square group.
+	 * @param _limit the number of solutions, after which the counting stops.
+	 * @return the number of solutions, at most <code>_limit</code>.
+	 */
+	static int countSolutions(int[] _clues, int _squareSize, int _limit) {
+		int[] grid = _clues.clone();
+		for(int cell = 0; cell < grid.length; cell++) {
+			if(grid[cell] == 0)
+				continue;
+			int value = grid[cell];
+			grid[cell] = 0;
+			if(!canPlace(grid, _squareSize, cell, value))
+				return 0;
+			grid[cell] = value;
+		}
+		return countCompletions(grid, _squareSize, _limit);
+	}
+	
+	/**
+	 * Formats the grid in the one-character-per-cell format accepted by
+	 * {@link Sudoku#loadGameState(String)}.
+	 */
+	static String format(int[] _grid) {
+		StringBuilder builder = new StringBuilder(_grid.length);
+		for(int cell = 0; cell < _grid.length; cell++)
+			builder.append(Sudoku.formatValue(_grid[cell]));
+		return builder.toString();
+	}
+	
+	/**
+	 * Returns the values of the cells of the solver.
+	 */
+	static int[] getValues(SolverEngine _engine) {
+		int size = _engine.getSize();
+		int[] values = new int[size * size];
+		for(int cell = 0; cell < values.length; cell++)
+			values[cell] = _engine.getValue(cell % size, cell / size);
+		return values;
+	}
+	
+	/**
+	 * Checks if the grid is a solution of the puzzle: it must be complete,
+	 * valid, and keep all clues.
+	 *
+	 * @param _grid the grid.
+	 * @param _clues the puzzle.
+	 * @param _squareSize the size of an edge of a square group.
+	 * @return <code>true</code> if the grid solves the puzzle; otherwise,
+	 * 			<code>false</code>.
+	 */
+	static boolean isSolution(int[] _grid, int[] _clues, int _squareSize) {
+		int[] grid = _grid.clone();
+		for(int cell = 0; cell < grid.length; cell++) {
+			if(_clues[cell] != 0 && _clues[cell] != grid[cell])
+				return false;
+			int value = grid[cell];
+			grid[cell] = 0;
+			if(value == 0 || !canPlace(grid, _squareSize, cell, value))
+				return false;
+			grid[cell] = value;
+		}
+		return true;
+	}
+	
+	/**
+	 * Creates a random full grid.
+	 */
+	static int[] randomGrid(int _squareSize, Random _random) {
+		Sudoku sudoku = new Sudoku(_squareSize);
+		sudoku.setValueOrdering(new RandomValueOrdering(_random.nextLong()));
+		sudoku.solve();
+		return getValues(sudoku);
+	}
+	
+	private static int[] randomLinePermutation(int _squareSize, Random _random) {
+		int[] blocks = randomPermutation(_squareSize, _random);
+		int[] lines = new int[_squareSize * _squareSize];
+		for(int block = 0; block < _squareSize; block++) {
+			int[] inner = randomPermutation(_squareSize, _random);
+			for(int i = 0; i < _squareSize; i++)
+				lines[block * _squareSize + i] = blocks[block] * _squareSize + inner[i];
+		}
+		return lines;
+	}
+	
+	private static int[] randomPermutation(int _length, Random _random) {
+		int[] permutation = new int[_length];
+		for(int i = 0; i < _length; i++) {
+			int j = _random.nextInt(i + 1);
+			permutation[i] = permutation[j];
+			permutation[j] = i;
+		}
+		return permutation;
+	}
+	
+	/**
+	 * Creates a random puzzle by keeping the given number of clues of a
+	 * random full grid. The puzzle has at least one solution, but it need not
+	 * be unique.
+	 */
+	static int[] randomPuzzle(int _squareSize, int _clueCount, Random _random) {
+		int[] grid = randomGrid(_squareSize, _random);
+		int[] order = randomPermutation(grid.length, _random);
+		for(int i = _clueCount; i < grid.length; i++)
+			grid[order[i]] = 0;
+		return grid;
+	}
+	
+	/**
+	 * Changes a random clue of the puzzle to another value. The new value
+	 * may repeat a value in a group of the cell, and it usually leaves the
+	 * puzzle without a solution.
+	 *
+	 * @param _puzzle the puzzle; it must have at least one clue.
+	 * @param _squareSize the size of an edge of a square group.
+	 * @param _random the source of the random choices.
+	 */
+	static void spoil(int[] _puzzle, int _squareSize, Random _random) {
+		int size = _squareSize * _squareSize;
+		for(;;) {
+			int cell = _random.nextInt(_puzzle.length);
+			if(_puzzle[cell] != 0) {
+				_puzzle[cell] = 1 + (_puzzle[cell] + _random.nextInt(size - 1)) % size;
+				return;
+			}
+		}
+	}
+}